@@ -0,0 +1,39 @@
+package android.util;
+
+/** JVM stand-in for {@code android.util.Size}, so size selection can run off-device. */
+public final class Size {
+  private final int width;
+  private final int height;
+
+  public Size(int width, int height) {
+    this.width = width;
+    this.height = height;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (!(obj instanceof Size)) {
+      return false;
+    }
+    Size other = (Size) obj;
+    return width == other.width && height == other.height;
+  }
+
+  @Override
+  public int hashCode() {
+    return height ^ ((width << (Integer.SIZE / 2)) | (width >>> (Integer.SIZE / 2)));
+  }
+
+  @Override
+  public String toString() {
+    return width + "x" + height;
+  }
+}
@@ -0,0 +1,8 @@
+package io.flutter.plugin.common;
+
+import java.nio.ByteBuffer;
+
+/** JVM stand-in for the Flutter {@code BinaryMessenger}; only sending is needed. */
+public interface BinaryMessenger {
+  void send(String channel, ByteBuffer message);
+}
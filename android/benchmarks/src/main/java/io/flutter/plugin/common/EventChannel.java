@@ -0,0 +1,14 @@
+package io.flutter.plugin.common;
+
+/** JVM stand-in for the Flutter {@code EventChannel}; only the sink interface is needed. */
+public final class EventChannel {
+  private EventChannel() {}
+
+  public interface EventSink {
+    void success(Object event);
+
+    void error(String errorCode, String errorMessage, Object errorDetails);
+
+    void endOfStream();
+  }
+}
@@ -0,0 +1,22 @@
+package io.flutter.plugin.common;
+
+import java.util.Map;
+
+/** JVM stand-in for the Flutter {@code MethodCall}, holding a map of arguments. */
+public final class MethodCall {
+  public final String method;
+  public final Object arguments;
+
+  public MethodCall(String method, Object arguments) {
+    this.method = method;
+    this.arguments = arguments;
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> T argument(String key) {
+    if (arguments == null) {
+      return null;
+    }
+    return (T) ((Map<?, ?>) arguments).get(key);
+  }
+}
@@ -0,0 +1,14 @@
+package io.flutter.plugin.common;
+
+/** JVM stand-in for the Flutter {@code MethodChannel}; only the reply interface is needed. */
+public final class MethodChannel {
+  private MethodChannel() {}
+
+  public interface Result {
+    void success(Object result);
+
+    void error(String errorCode, String errorMessage, Object errorDetails);
+
+    void notImplemented();
+  }
+}
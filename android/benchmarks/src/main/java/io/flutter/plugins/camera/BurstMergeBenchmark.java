@@ -0,0 +1,52 @@
+package io.flutter.plugins.camera;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Aligning and averaging a whole burst, as takeBurstPicture does before encoding the JPEG. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BurstMergeBenchmark {
+  @Param({"1920x1080", "4000x3000"})
+  public String resolution;
+
+  @Param({"4", "8"})
+  public int frameCount;
+
+  private FrameSource.Frame frame;
+  private BurstMerger merger;
+  private byte[] nv21;
+
+  @Setup
+  public void setUp() {
+    SyntheticFrames frames = new SyntheticFrames(resolution);
+    frame = frames.asFrame();
+    merger = new BurstMerger(frames.width, frames.height);
+    nv21 = new byte[frames.nv21Size()];
+  }
+
+  // The same frame each time; the search and tile comparison do the same work regardless.
+  @Benchmark
+  public byte[] merge() {
+    merger.reset();
+    for (int i = 0; i < frameCount; i++) {
+      merger.addFrame(frame);
+    }
+    merger.toNv21(nv21);
+    return nv21;
+  }
+}
@@ -0,0 +1,60 @@
+package io.flutter.plugins.camera;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Per-frame plane work done by the image stream listener. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PlaneCopyBenchmark {
+  @Param({"1280x720", "1920x1080", "2560x1440"})
+  public String resolution;
+
+  private SyntheticFrames frames;
+  private byte[] nv21;
+
+  @Setup
+  public void setUp() {
+    frames = new SyntheticFrames(resolution);
+    nv21 = new byte[frames.nv21Size()];
+  }
+
+  /** What ImageStreamPublisher does today: one fresh array per plane. */
+  @Benchmark
+  public void copyPlanes(Blackhole blackhole) {
+    frames.rewind();
+    blackhole.consume(ImageBuffers.copyPlane(frames.yPlane));
+    blackhole.consume(ImageBuffers.copyPlane(frames.uPlane));
+    blackhole.consume(ImageBuffers.copyPlane(frames.vPlane));
+  }
+
+  @Benchmark
+  public byte[] packNv21() {
+    ImageBuffers.packNv21(
+        frames.yPlane,
+        frames.yRowStride,
+        frames.uPlane,
+        frames.vPlane,
+        frames.uvRowStride,
+        frames.uvPixelStride,
+        frames.width,
+        frames.height,
+        nv21);
+    return nv21;
+  }
+}
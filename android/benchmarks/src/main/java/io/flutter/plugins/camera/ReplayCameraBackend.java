@@ -0,0 +1,316 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodChannel.Result;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A {@link CameraBackend} whose image stream comes from a {@link ReplayFrameSource}. The stream
+ * runs the same {@link ImageStream} as {@link Camera}, on a {@link ReplayCaptureDevice}, so the
+ * harness measures the plugin's own output, session and frame handling. Adaptive quality reads the
+ * thermal status from the given source, so it can be simulated. Barcodes are scanned by the
+ * plugin's {@link BarcodeScanner} and only counted in its stats.
+ */
+final class ReplayCameraBackend implements CameraBackend {
+  private final ReplayFrameSource frameSource;
+  private final AdaptiveQualityController.ThermalSource thermalSource;
+  private final CameraMemoryBudget memoryBudget =
+      new CameraMemoryBudget(CameraMemoryBudget.DEFAULT_BUDGET_BYTES);
+  private final SessionTracker sessionTracker;
+  private final ImageStream imageStream;
+  private final List<String> qualityChanges = Collections.synchronizedList(new ArrayList<>());
+  private final List<String> sessionErrors = Collections.synchronizedList(new ArrayList<>());
+  private final PipelineMetrics metrics;
+  private final ExecutorService barcodeWorker = Executors.newSingleThreadExecutor();
+  private CaptureDevice.Session session;
+  private volatile BarcodeScanner barcodeScanner;
+
+  ReplayCameraBackend(
+      ReplayFrameSource frameSource,
+      BinaryMessenger messenger,
+      PipelineMetrics metrics,
+      AdaptiveQualityController.ThermalSource thermalSource) {
+    this.frameSource = frameSource;
+    this.thermalSource = thermalSource;
+    this.metrics = metrics;
+    this.sessionTracker = new SessionTracker(metrics);
+    this.imageStream =
+        new ImageStream(
+            new ReplayCaptureDevice(frameSource),
+            memoryBudget,
+            new BinaryFrameSender(messenger),
+            frameSource::runOnListenerThread,
+            metrics,
+            this::tapFrame);
+  }
+
+  private void tapFrame(FrameSource.Frame frame) {
+    BarcodeScanner scanner = barcodeScanner;
+    if (scanner != null) {
+      scanner.onFrame(frame);
+    }
+  }
+
+  /** Returns the adaptive quality changes so far, one line each. */
+  List<String> getQualityChanges() {
+    synchronized (qualityChanges) {
+      return new ArrayList<>(qualityChanges);
+    }
+  }
+
+  /** Returns the errors of the stream's sessions so far. */
+  List<String> getSessionErrors() {
+    synchronized (sessionErrors) {
+      return new ArrayList<>(sessionErrors);
+    }
+  }
+
+  @Override
+  public void open(Result result) {
+    Map<String, Object> reply = new HashMap<>();
+    reply.put("textureId", 0L);
+    reply.put("previewWidth", frameSource.getWidth());
+    reply.put("previewHeight", frameSource.getHeight());
+    result.success(reply);
+  }
+
+  @Override
+  public void setFlashMode(boolean flashMode) {}
+
+  @Override
+  public void lockFocus(double x, double y, Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public void unlockFocus(Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public boolean isConfiguringSession() {
+    return sessionTracker.isConfiguring();
+  }
+
+  @Override
+  public void setSessionConfiguredListener(Runnable listener) {
+    sessionTracker.setConfiguredListener(listener);
+  }
+
+  // Quality changes only pace the replayed stream, so the camera never queues a command.
+  @Override
+  public void setCommandScheduler(CommandScheduler scheduler) {}
+
+  @Override
+  public void applySettings(Map<String, Object> settings, Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public void takePicture(String filePath, Map<String, Object> metadata, Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public void takeBurstPicture(String filePath, int frameCount, Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public void takeVideoSnapshot(String filePath, Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public void snapshot(String filePath, int quality, int maxSize, Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public void addAnalysisOutput(int maxWidth, int maxHeight, double maxFps, Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public void removeAnalysisOutput(int outputId, Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public void startVideoRecording(
+      String filePath, String proxyFilePath, boolean enableVideoSnapshot, Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public void stopVideoRecording(Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public void pauseVideoRecording(Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public void resumeVideoRecording(Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public boolean isRecordingHighSpeedVideo() {
+    return false;
+  }
+
+  @Override
+  public void setImageStreamSink(EventChannel.EventSink imageStreamSink) {
+    imageStream.setSink(imageStreamSink);
+  }
+
+  @Override
+  public void setAdaptiveQuality(List<AdaptiveQualityController.Level> ladder, Result result) {
+    imageStream.setQualityController(
+        ladder == null
+            ? null
+            : new AdaptiveQualityController(
+                ladder,
+                thermalSource,
+                (levelIndex, level, reason) ->
+                    qualityChanges.add(
+                        String.format(
+                            "level %d (%d fps, analysis x%.2f, bitrate x%.2f): %s",
+                            levelIndex,
+                            level.streamFps,
+                            level.analysisScale,
+                            level.bitRateScale,
+                            reason))));
+    result.success(null);
+  }
+
+  @Override
+  public void startPreviewWithImageStream(ImageStreamOptions options)
+      throws CameraMemoryBudget.ExceededException {
+    imageStream.allocateOutput(frameSource.getWidth(), frameSource.getHeight());
+    imageStream.start(options);
+    createSession();
+  }
+
+  private void createSession() {
+    closeSession();
+    imageStream.createSession(
+        sessionTracker,
+        new ImageStream.SessionListener() {
+          @Override
+          public void onStreaming(CaptureDevice.Session session) {
+            ReplayCameraBackend.this.session = session;
+          }
+
+          @Override
+          public void onFailed(String message) {
+            sessionErrors.add(message);
+          }
+        });
+  }
+
+  @Override
+  public void stopImageStream() {
+    if (imageStream.stop() && barcodeScanner == null) {
+      // Without a preview to fall back to, the session goes with the stream.
+      closeSession();
+    }
+  }
+
+  private void closeSession() {
+    if (session != null) {
+      session.close();
+      session = null;
+    }
+  }
+
+  @Override
+  public void startBarcodeScanning(BarcodeScanOptions options)
+      throws CameraMemoryBudget.ExceededException {
+    imageStream.allocateOutput(frameSource.getWidth(), frameSource.getHeight());
+    boolean sessionHasStream = imageStream.isStreaming() || barcodeScanner != null;
+    closeBarcodeScanner();
+    barcodeScanner =
+        new BarcodeScanner(
+            options,
+            metrics,
+            barcodeWorker,
+            frameSource::runOnListenerThread,
+            (barcodes, width, height, timestamp, latencyNanos) -> true);
+    if (!sessionHasStream) {
+      createSession();
+    }
+  }
+
+  @Override
+  public void stopBarcodeScanning() {
+    if (barcodeScanner == null) {
+      return;
+    }
+    closeBarcodeScanner();
+    if (!imageStream.isStreaming()) {
+      closeSession();
+    }
+  }
+
+  @Override
+  public Map<String, Object> getBarcodeScanStats() {
+    BarcodeScanner scanner = barcodeScanner;
+    return scanner == null ? null : scanner.getStats();
+  }
+
+  private void closeBarcodeScanner() {
+    if (barcodeScanner != null) {
+      barcodeScanner.close();
+      barcodeScanner = null;
+    }
+  }
+
+  @Override
+  public void suspend(Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public void resume(Result result) {
+    notSupported(result);
+  }
+
+  @Override
+  public boolean isSuspended() {
+    return false;
+  }
+
+  @Override
+  public Map<String, Object> getMemoryUsage() {
+    return memoryBudget.toMap();
+  }
+
+  @Override
+  public void close() {
+    closeBarcodeScanner();
+    closeSession();
+    imageStream.stop();
+    imageStream.closeOutput();
+  }
+
+  @Override
+  public void dispose() {
+    frameSource.close();
+    barcodeWorker.shutdown();
+  }
+
+  private static void notSupported(Result result) {
+    result.error("notSupported", "Replayed cameras only support the image stream.", null);
+  }
+}
@@ -0,0 +1,50 @@
+package io.flutter.plugins.camera;
+
+import java.util.List;
+
+/**
+ * A {@link CaptureDevice} whose only output is a {@link ReplayFrameSource}, which emits frames
+ * while a session repeats into it.
+ *
+ * <p>Sessions configure before {@link #createSession} returns, so the replayed camera replies to
+ * every call before it returns.
+ */
+final class ReplayCaptureDevice implements CaptureDevice {
+  private final ReplayFrameSource frameSource;
+
+  ReplayCaptureDevice(ReplayFrameSource frameSource) {
+    this.frameSource = frameSource;
+  }
+
+  @Override
+  public FrameSource createOutput(int width, int height, int format, int maxImages) {
+    if (width != frameSource.getWidth() || height != frameSource.getHeight()) {
+      throw new IllegalArgumentException(
+          String.format(
+              "The recording is %dx%d, not %dx%d.",
+              frameSource.getWidth(), frameSource.getHeight(), width, height));
+    }
+    return frameSource;
+  }
+
+  @Override
+  public void createSession(List<FrameSource> outputs, SessionCallback callback) {
+    callback.onConfigured(new ReplaySession());
+  }
+
+  private final class ReplaySession implements Session {
+    @Override
+    public void setRepeating(List<FrameSource> targets) {
+      if (targets.contains(frameSource)) {
+        frameSource.start();
+      } else {
+        frameSource.stop();
+      }
+    }
+
+    @Override
+    public void close() {
+      frameSource.stop();
+    }
+  }
+}
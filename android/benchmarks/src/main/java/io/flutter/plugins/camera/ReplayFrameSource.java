@@ -0,0 +1,206 @@
+package io.flutter.plugins.camera;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Replays a recorded frame sequence as a {@link FrameSource}, looping at a fixed frame rate.
+ *
+ * <p>The recording is raw planar I420, as written by {@code ffmpeg -f rawvideo -pix_fmt
+ * yuv420p}. Without a recording, a few random frames are generated instead.
+ *
+ * <p>Frames are emitted on one thread and listeners are called on another, mirroring the camera
+ * HAL and the handler thread of an {@code ImageReader}. Only the newest frame is kept, so frames
+ * that are not acquired before the next one is emitted are counted as dropped.
+ */
+final class ReplayFrameSource implements FrameSource {
+  // android.graphics.ImageFormat.YUV_420_888
+  private static final int YUV_420_888 = 0x23;
+  private static final int SYNTHETIC_FRAME_COUNT = 8;
+
+  private final int width;
+  private final int height;
+  private final int frameSize;
+  private final int frameCount;
+  private final ByteBuffer frames;
+  private final long frameIntervalNanos;
+  private final ScheduledExecutorService emitter = Executors.newSingleThreadScheduledExecutor();
+  private final ExecutorService listenerThread = Executors.newSingleThreadExecutor();
+  private final AtomicReference<ReplayFrame> latestFrame = new AtomicReference<>();
+  private final AtomicLong emittedFrames = new AtomicLong();
+  private final AtomicLong droppedFrames = new AtomicLong();
+  private volatile Listener listener;
+  private ScheduledFuture<?> emission;
+  private int nextFrame;
+
+  /** @param recording an I420 file of {@code width}x{@code height} frames, or null. */
+  ReplayFrameSource(File recording, int width, int height, double fps) throws IOException {
+    this.width = width;
+    this.height = height;
+    this.frameSize = width * height * 3 / 2;
+    this.frameIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / fps);
+    if (recording == null) {
+      frames = syntheticFrames(frameSize);
+    } else {
+      try (RandomAccessFile file = new RandomAccessFile(recording, "r")) {
+        frames = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+      }
+    }
+    frameCount = frames.capacity() / frameSize;
+    if (frameCount == 0) {
+      throw new IOException(
+          recording + " does not contain a single " + width + "x" + height + " frame");
+    }
+  }
+
+  int getWidth() {
+    return width;
+  }
+
+  int getHeight() {
+    return height;
+  }
+
+  long getEmittedFrames() {
+    return emittedFrames.get();
+  }
+
+  long getDroppedFrames() {
+    return droppedFrames.get();
+  }
+
+  /** Runs {@code task} on the listener thread, which plays the camera's main looper. */
+  void runOnListenerThread(Runnable task) {
+    try {
+      listenerThread.execute(task);
+    } catch (RejectedExecutionException e) {
+      // Closed; like a looper that has quit, the task is dropped.
+    }
+  }
+
+  synchronized void start() {
+    if (emission == null) {
+      emission =
+          emitter.scheduleAtFixedRate(
+              this::emitFrame, 0, frameIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  synchronized void stop() {
+    if (emission != null) {
+      emission.cancel(false);
+      emission = null;
+    }
+    latestFrame.set(null);
+  }
+
+  @Override
+  public Frame acquireLatestFrame() {
+    return latestFrame.getAndSet(null);
+  }
+
+  @Override
+  public void setListener(Listener listener) {
+    this.listener = listener;
+  }
+
+  @Override
+  public void close() {
+    stop();
+    emitter.shutdownNow();
+    listenerThread.shutdownNow();
+  }
+
+  private void emitFrame() {
+    ReplayFrame frame = new ReplayFrame(nextFrame, System.nanoTime());
+    nextFrame = (nextFrame + 1) % frameCount;
+    emittedFrames.incrementAndGet();
+    if (latestFrame.getAndSet(frame) != null) {
+      droppedFrames.incrementAndGet();
+    }
+
+    final Listener listener = this.listener;
+    if (listener != null) {
+      listenerThread.execute(() -> listener.onFrameAvailable(this));
+    }
+  }
+
+  private static ByteBuffer syntheticFrames(int frameSize) {
+    byte[] bytes = new byte[frameSize * SYNTHETIC_FRAME_COUNT];
+    new Random(42).nextBytes(bytes);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+    buffer.put(bytes);
+    buffer.rewind();
+    return buffer;
+  }
+
+  private final class ReplayFrame implements Frame {
+    private final int index;
+    private final long timestamp;
+
+    ReplayFrame(int index, long timestamp) {
+      this.index = index;
+      this.timestamp = timestamp;
+    }
+
+    @Override
+    public int getWidth() {
+      return width;
+    }
+
+    @Override
+    public int getHeight() {
+      return height;
+    }
+
+    @Override
+    public int getFormat() {
+      return YUV_420_888;
+    }
+
+    @Override
+    public long getTimestamp() {
+      return timestamp;
+    }
+
+    @Override
+    public int getPlaneCount() {
+      return 3;
+    }
+
+    @Override
+    public ByteBuffer getPlaneBuffer(int plane) {
+      int lumaSize = width * height;
+      int chromaSize = lumaSize / 4;
+      int offset = index * frameSize + (plane == 0 ? 0 : lumaSize + (plane - 1) * chromaSize);
+      ByteBuffer buffer = frames.duplicate();
+      buffer.position(offset).limit(offset + (plane == 0 ? lumaSize : chromaSize));
+      return buffer.slice();
+    }
+
+    @Override
+    public int getRowStride(int plane) {
+      return plane == 0 ? width : width / 2;
+    }
+
+    @Override
+    public int getPixelStride(int plane) {
+      return 1;
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,45 @@
+package io.flutter.plugins.camera;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** YUV to RGB conversion for image streams started with an RGB output format. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RgbConversionBenchmark {
+  @Param({"1280x720", "1920x1080", "2560x1440"})
+  public String resolution;
+
+  @Param({"RGBA_8888", "RGB_565"})
+  public String outputFormat;
+
+  private FrameSource.Frame frame;
+  private YuvToRgbConverter converter;
+
+  @Setup
+  public void setUp() {
+    frame = new SyntheticFrames(resolution).asFrame();
+    converter = new YuvToRgbConverter(YuvToRgbConverter.OutputFormat.valueOf(outputFormat));
+  }
+
+  @Benchmark
+  public byte[] convert() {
+    byte[] rgb = converter.convert(frame);
+    converter.release(rgb);
+    return rgb;
+  }
+}
@@ -0,0 +1,70 @@
+package io.flutter.plugins.camera;
+
+import android.util.Size;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Output size selection over a size list typical of a current back camera. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SizeSelectionBenchmark {
+  private final Size[] choices = {
+    new Size(4032, 3024), new Size(4000, 3000), new Size(3840, 2160), new Size(3264, 2448),
+    new Size(3264, 1836), new Size(2880, 2160), new Size(2688, 1512), new Size(2560, 1440),
+    new Size(2592, 1944), new Size(2048, 1536), new Size(1920, 1440), new Size(1920, 1080),
+    new Size(1600, 1200), new Size(1440, 1080), new Size(1280, 960), new Size(1280, 720),
+    new Size(1024, 768), new Size(960, 720), new Size(800, 600), new Size(720, 480),
+    new Size(640, 480), new Size(640, 360), new Size(352, 288), new Size(320, 240),
+    new Size(176, 144),
+  };
+  private final Size aspectRatio = new Size(16, 9);
+  private final List<StreamSizeNegotiator.Candidate> candidates = new ArrayList<>();
+  private final StreamSizeNegotiator negotiator =
+      new StreamSizeNegotiator(StreamSizeNegotiator.Constraints.DEFAULT);
+
+  public SizeSelectionBenchmark() {
+    for (Size size : choices) {
+      // Full sensor readouts typically run at 20 fps, everything else at 30.
+      long minFrameDurationNanos =
+          (long) size.getWidth() * size.getHeight() >= 8_000_000 ? 50_000_000L : 33_333_333L;
+      candidates.add(new StreamSizeNegotiator.Candidate(size, minFrameDurationNanos));
+    }
+  }
+
+  @Benchmark
+  public Size chooseOptimalSize() {
+    return CameraSizes.chooseOptimalSize(choices, 2560, 1440, aspectRatio);
+  }
+
+  @Benchmark
+  public Size chooseBoundedSize() {
+    return CameraSizes.chooseBoundedSize(choices, 640, 480, aspectRatio);
+  }
+
+  @Benchmark
+  public Size negotiateStreamSize() {
+    return negotiator.chooseStreamSize(candidates, 1920, 1080);
+  }
+
+  @Benchmark
+  public Size[] sortByArea() {
+    Size[] sorted = choices.clone();
+    Arrays.sort(sorted, new CameraSizes.CompareSizesByArea());
+    return sorted;
+  }
+}
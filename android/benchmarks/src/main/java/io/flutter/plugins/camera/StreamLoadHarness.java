@@ -0,0 +1,206 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel.Result;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Streams a replayed frame sequence through the plugin's method handling and reports the
+ * delivered frame rate, dropped frames and end-to-end latency.
+ *
+ * <pre>
+ *   gradle replay -PreplayArgs='--size 1920x1080 --fps 30 --seconds 10 --file frames.yuv'
+ * </pre>
+ *
+ * <p>{@code --consumerMicros} busy-waits in the event sink for every frame to simulate a slow
+ * Dart side. {@code --trace} writes a Chrome trace of the run to the given path. {@code
+ * --outputFormat} streams {@code rgba8888} or {@code rgb565} instead of YUV planes. {@code
+ * --transport binary} sends frames as {@link BinaryFrameSender} messages, which the harness
+ * copies out like the engine does. {@code --adaptive true} turns on adaptive quality with the
+ * default ladder, reading the simulated {@code --thermalStatus}, and lists its level changes.
+ * {@code --barcodes true} scans the stream for barcodes too and reports the scanner's stats.
+ */
+public final class StreamLoadHarness {
+  private StreamLoadHarness() {}
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> options = new HashMap<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      options.put(args[i].replaceFirst("^--", ""), args[i + 1]);
+    }
+    String[] size = options.getOrDefault("size", "1280x720").split("x");
+    int width = Integer.parseInt(size[0]);
+    int height = Integer.parseInt(size[1]);
+    double fps = Double.parseDouble(options.getOrDefault("fps", "30"));
+    long seconds = Long.parseLong(options.getOrDefault("seconds", "5"));
+    long consumerNanos =
+        TimeUnit.MICROSECONDS.toNanos(Long.parseLong(options.getOrDefault("consumerMicros", "0")));
+    File recording = options.containsKey("file") ? new File(options.get("file")) : null;
+    String tracePath = options.get("trace");
+    boolean adaptive = Boolean.parseBoolean(options.get("adaptive"));
+    int thermalStatus = Integer.parseInt(options.getOrDefault("thermalStatus", "0"));
+    boolean barcodes = Boolean.parseBoolean(options.get("barcodes"));
+
+    final ReplayFrameSource frameSource = new ReplayFrameSource(recording, width, height, fps);
+    final CountingSink sink = new CountingSink(consumerNanos);
+    final AtomicReference<ReplayCameraBackend> backend = new AtomicReference<>();
+    CameraMethodHandler methodHandler =
+        new CameraMethodHandler(
+            (call, metrics) -> {
+              backend.set(new ReplayCameraBackend(frameSource, sink, metrics, () -> thermalStatus));
+              return backend.get();
+            },
+            new PipelineMetrics(),
+            (exception, result) -> result.error("replay", exception.getMessage(), null),
+            Runnable::run,
+            // The replayed camera replies before each call returns, so nothing can get stuck.
+            (task, delayMillis) -> {});
+
+    Map<String, Object> initializeArguments = new HashMap<>();
+    initializeArguments.put("cameraName", "replay");
+    initializeArguments.put("resolutionPreset", "high");
+    invoke(methodHandler, "initialize", initializeArguments);
+    methodHandler.setImageStreamSink(sink);
+    if (adaptive) {
+      Map<String, Object> adaptiveQualityArguments = new HashMap<>();
+      adaptiveQualityArguments.put("ladder", new ArrayList<>());
+      invoke(methodHandler, "setAdaptiveQuality", adaptiveQualityArguments);
+    }
+    if (tracePath != null) {
+      invoke(methodHandler, "startTrace", null);
+    }
+    long startNanos = System.nanoTime();
+    Map<String, Object> startImageStreamArguments = new HashMap<>();
+    startImageStreamArguments.put("outputFormat", options.get("outputFormat"));
+    startImageStreamArguments.put("transport", options.get("transport"));
+    invoke(methodHandler, "startImageStream", startImageStreamArguments);
+    if (barcodes) {
+      invoke(methodHandler, "startBarcodeScanning", new HashMap<String, Object>());
+    }
+    Thread.sleep(TimeUnit.SECONDS.toMillis(seconds));
+    Object barcodeScanStats = null;
+    if (barcodes) {
+      barcodeScanStats = invoke(methodHandler, "getBarcodeScanStats", null);
+      invoke(methodHandler, "stopBarcodeScanning", null);
+    }
+    invoke(methodHandler, "stopImageStream", null);
+    double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+    methodHandler.setImageStreamSink(null);
+    Object trace = null;
+    if (tracePath != null) {
+      Map<String, Object> stopTraceArguments = new HashMap<>();
+      stopTraceArguments.put("path", tracePath);
+      trace = invoke(methodHandler, "stopTrace", stopTraceArguments);
+    }
+    Object pipelineMetrics = invoke(methodHandler, "getMetrics", null);
+    invoke(methodHandler, "dispose", null);
+
+    System.out.printf("frames:    %dx%d at %.1f fps for %.1f s%n", width, height, fps, elapsedSeconds);
+    System.out.printf("emitted:   %d%n", frameSource.getEmittedFrames());
+    System.out.printf(
+        "delivered: %d (%.1f fps)%n", sink.delivered.get(), sink.delivered.get() / elapsedSeconds);
+    System.out.printf("dropped:   %d%n", frameSource.getDroppedFrames());
+    System.out.println("latency:   " + sink.latency.toMap());
+    System.out.println("pipeline:  " + pipelineMetrics);
+    if (adaptive) {
+      System.out.println("quality:   " + backend.get().getQualityChanges());
+    }
+    if (barcodes) {
+      System.out.println("barcodes:  " + barcodeScanStats);
+    }
+    if (!backend.get().getSessionErrors().isEmpty()) {
+      System.out.println("sessions:  " + backend.get().getSessionErrors());
+    }
+    if (trace != null) {
+      System.out.println("trace:     " + trace + " written to " + tracePath);
+    }
+  }
+
+  /** Sends a method call the way {@link CameraPlugin#onMethodCall} does and returns its reply. */
+  private static Object invoke(CameraMethodHandler methodHandler, String method, Object arguments) {
+    MethodCall call = new MethodCall(method, arguments);
+    ReplyResult result = new ReplyResult(method);
+    if (method.equals("initialize")) {
+      methodHandler.initialize(call, result);
+    } else if (!methodHandler.onMethodCall(call, result)) {
+      result.notImplemented();
+    }
+    return result.reply;
+  }
+
+  private static final class ReplyResult implements Result {
+    private final String method;
+    Object reply;
+
+    ReplyResult(String method) {
+      this.method = method;
+    }
+
+    @Override
+    public void success(Object result) {
+      reply = result;
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {
+      throw new IllegalStateException(method + " failed: " + errorCode + ": " + errorMessage);
+    }
+
+    @Override
+    public void notImplemented() {
+      throw new IllegalStateException(method + " is not implemented");
+    }
+  }
+
+  /** Records the time from emission to delivery for every streamed frame. */
+  private static final class CountingSink implements EventChannel.EventSink, BinaryMessenger {
+    final AtomicLong delivered = new AtomicLong();
+    final LatencyHistogram latency = new LatencyHistogram();
+    private final long consumerNanos;
+
+    CountingSink(long consumerNanos) {
+      this.consumerNanos = consumerNanos;
+    }
+
+    @Override
+    public void success(Object event) {
+      consume((Long) ((Map<?, ?>) event).get("timestamp"));
+    }
+
+    @Override
+    public void send(String channel, ByteBuffer message) {
+      byte[] copy = new byte[message.position()];
+      ByteBuffer bytes = message.duplicate();
+      bytes.flip();
+      bytes.get(copy);
+      consume(ByteBuffer.wrap(copy).order(ByteOrder.LITTLE_ENDIAN).getLong(16));
+    }
+
+    private void consume(long timestamp) {
+      long deadline = System.nanoTime() + consumerNanos;
+      while (System.nanoTime() < deadline) {
+        // Simulated processing.
+      }
+      latency.recordNanos(System.nanoTime() - timestamp);
+      delivered.incrementAndGet();
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {
+      throw new IllegalStateException(errorCode + ": " + errorMessage);
+    }
+
+    @Override
+    public void endOfStream() {}
+  }
+}
@@ -0,0 +1,108 @@
+package io.flutter.plugins.camera;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Synthetic YUV_420_888 frames laid out the way most camera HALs deliver them: a padded Y plane
+ * and semi-planar chroma, where the U and V planes are views with a pixel stride of 2 into the
+ * same interleaved buffer.
+ */
+final class SyntheticFrames {
+  private static final int ROW_ALIGNMENT = 64;
+
+  final int width;
+  final int height;
+  final int yRowStride;
+  final int uvRowStride;
+  final int uvPixelStride = 2;
+  final ByteBuffer yPlane;
+  final ByteBuffer uPlane;
+  final ByteBuffer vPlane;
+
+  /** @param resolution a size formatted as {@code <width>x<height>}, e.g. {@code 1920x1080}. */
+  SyntheticFrames(String resolution) {
+    String[] parts = resolution.split("x");
+    width = Integer.parseInt(parts[0]);
+    height = Integer.parseInt(parts[1]);
+    yRowStride = (width + ROW_ALIGNMENT - 1) / ROW_ALIGNMENT * ROW_ALIGNMENT;
+    uvRowStride = yRowStride;
+
+    Random random = new Random(42);
+    yPlane = randomDirectBuffer(random, yRowStride * (height - 1) + width);
+    // Android exposes planes without the padding that follows their last row.
+    ByteBuffer chroma = randomDirectBuffer(random, uvRowStride * (height / 2 - 1) + width);
+    chroma.limit(chroma.capacity() - 1);
+    uPlane = chroma.slice();
+    chroma.limit(chroma.capacity()).position(1);
+    vPlane = chroma.slice();
+  }
+
+  int nv21Size() {
+    return width * height * 3 / 2;
+  }
+
+  /** A YUV_420_888 frame over these planes. */
+  FrameSource.Frame asFrame() {
+    return new FrameSource.Frame() {
+      @Override
+      public int getWidth() {
+        return width;
+      }
+
+      @Override
+      public int getHeight() {
+        return height;
+      }
+
+      @Override
+      public int getFormat() {
+        // android.graphics.ImageFormat.YUV_420_888
+        return 0x23;
+      }
+
+      @Override
+      public long getTimestamp() {
+        return 0;
+      }
+
+      @Override
+      public int getPlaneCount() {
+        return 3;
+      }
+
+      @Override
+      public ByteBuffer getPlaneBuffer(int plane) {
+        return plane == 0 ? yPlane : (plane == 1 ? uPlane : vPlane);
+      }
+
+      @Override
+      public int getRowStride(int plane) {
+        return plane == 0 ? yRowStride : uvRowStride;
+      }
+
+      @Override
+      public int getPixelStride(int plane) {
+        return plane == 0 ? 1 : uvPixelStride;
+      }
+
+      @Override
+      public void close() {}
+    };
+  }
+
+  void rewind() {
+    yPlane.rewind();
+    uPlane.rewind();
+    vPlane.rewind();
+  }
+
+  private static ByteBuffer randomDirectBuffer(Random random, int size) {
+    byte[] bytes = new byte[size];
+    random.nextBytes(bytes);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+    buffer.put(bytes);
+    buffer.rewind();
+    return buffer;
+  }
+}
@@ -0,0 +1,62 @@
+package io.flutter.plugins.camera;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Writing a captured JPEG buffer to disk, as takePicture does. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class WriteToFileBenchmark {
+  // JPEGs are assumed to take about a quarter of the YUV frame size.
+  @Param({"1280x720", "1920x1080", "2560x1440"})
+  public String resolution;
+
+  private ByteBuffer jpeg;
+  private File file;
+
+  @Setup
+  public void setUp() throws IOException {
+    SyntheticFrames frames = new SyntheticFrames(resolution);
+    byte[] bytes = new byte[frames.nv21Size() / 4];
+    new Random(42).nextBytes(bytes);
+    jpeg = ByteBuffer.allocateDirect(bytes.length);
+    jpeg.put(bytes);
+    file = File.createTempFile("camera-benchmark", ".jpg");
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteFile() {
+    file.delete();
+  }
+
+  @TearDown
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  public void writeToFile() throws IOException {
+    jpeg.rewind();
+    ImageBuffers.writeToFile(jpeg, file);
+  }
+}
@@ -0,0 +1,118 @@
+package io.flutter.plugins.camera;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class AdaptiveQualityControllerTest {
+  private static final long MILLIS = 1_000_000;
+
+  private final List<String> changes = new ArrayList<>();
+  private int thermalStatus = AdaptiveQualityController.THERMAL_STATUS_NONE;
+  private final AdaptiveQualityController controller =
+      new AdaptiveQualityController(
+          AdaptiveQualityController.DEFAULT_LADDER,
+          () -> thermalStatus,
+          (levelIndex, level, reason) -> changes.add(levelIndex + " " + reason));
+  private long nowNanos;
+
+  @Test
+  public void limitsFramesToTheLevelsRate() {
+    int accepted = 0;
+    for (int i = 0; i < 60; i++) {
+      if (controller.acceptFrame(i * 1_000_000_000L / 60)) {
+        accepted++;
+      }
+    }
+    assertEquals(30, accepted);
+  }
+
+  @Test
+  public void stepsDownWhenHotDroppingFramesOrSlow() {
+    thermalStatus = AdaptiveQualityController.THERMAL_STATUS_SEVERE;
+    window(30, 0);
+    thermalStatus = AdaptiveQualityController.THERMAL_STATUS_NONE;
+    window(15, 0);
+    window(15, 60 * MILLIS);
+    assertEquals(Arrays.asList("1 thermal", "2 frameDrops", "3 processingTime"), changes);
+    assertEquals(10, controller.getLevel().streamFps);
+  }
+
+  @Test
+  public void staysAtTheLowestLevel() {
+    thermalStatus = AdaptiveQualityController.THERMAL_STATUS_SEVERE;
+    for (int i = 0; i < 5; i++) {
+      window(10, 0);
+    }
+    assertEquals(Arrays.asList("1 thermal", "2 thermal", "3 thermal"), changes);
+    assertEquals(3, controller.getLevelIndex());
+  }
+
+  @Test
+  public void recoversOnlyOnceCool() {
+    thermalStatus = AdaptiveQualityController.THERMAL_STATUS_SEVERE;
+    window(30, 0);
+    changes.clear();
+
+    thermalStatus = AdaptiveQualityController.THERMAL_STATUS_MODERATE;
+    healthyWindows(AdaptiveQualityController.RECOVERY_WINDOWS * 2);
+    assertEquals(Collections.emptyList(), changes);
+
+    thermalStatus = AdaptiveQualityController.THERMAL_STATUS_NONE;
+    healthyWindows(AdaptiveQualityController.RECOVERY_WINDOWS - 1);
+    assertEquals(Collections.emptyList(), changes);
+    healthyWindows(1);
+    assertEquals(Collections.singletonList("0 recovered"), changes);
+  }
+
+  @Test
+  public void backsOffFromALevelThatFailsRightAfterRecovering() {
+    thermalStatus = AdaptiveQualityController.THERMAL_STATUS_SEVERE;
+    window(30, 0);
+    thermalStatus = AdaptiveQualityController.THERMAL_STATUS_NONE;
+    healthyWindows(AdaptiveQualityController.RECOVERY_WINDOWS);
+    // The probed level is too slow, so the next probe waits twice as long.
+    window(30, 30 * MILLIS);
+    changes.clear();
+    healthyWindows(AdaptiveQualityController.RECOVERY_WINDOWS * 2 - 1);
+    assertEquals(Collections.emptyList(), changes);
+    healthyWindows(1);
+    assertEquals(Collections.singletonList("0 recovered"), changes);
+
+    // Once the level holds, the wait is back to normal.
+    healthyWindows(AdaptiveQualityController.RECOVERY_WINDOWS);
+    thermalStatus = AdaptiveQualityController.THERMAL_STATUS_SEVERE;
+    window(30, 0);
+    thermalStatus = AdaptiveQualityController.THERMAL_STATUS_NONE;
+    healthyWindows(AdaptiveQualityController.RECOVERY_WINDOWS);
+    assertEquals(Arrays.asList("0 recovered", "1 thermal", "0 recovered"), changes);
+  }
+
+  private void healthyWindows(int count) {
+    for (int i = 0; i < count; i++) {
+      window(controller.getLevel().streamFps, 0);
+    }
+  }
+
+  // Streams frames at fps, each taking processingNanos to publish, until the window is evaluated.
+  private void window(int fps, long processingNanos) {
+    long intervalNanos = 1_000_000_000L / fps;
+    long startNanos = nowNanos + intervalNanos;
+    for (nowNanos = startNanos;
+        nowNanos - startNanos < AdaptiveQualityController.WINDOW_NANOS;
+        nowNanos += intervalNanos) {
+      process(processingNanos);
+    }
+    process(processingNanos);
+  }
+
+  private void process(long processingNanos) {
+    if (controller.acceptFrame(nowNanos)) {
+      controller.onFrameProcessed(nowNanos, processingNanos);
+    }
+  }
+}
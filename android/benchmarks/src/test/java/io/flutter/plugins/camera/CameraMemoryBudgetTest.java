@@ -0,0 +1,58 @@
+package io.flutter.plugins.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class CameraMemoryBudgetTest {
+  private static final int YUV = CameraMemoryBudget.FORMAT_YUV_420_888;
+  // One 1000x1000 YUV buffer.
+  private static final long BUFFER = 1_500_000;
+
+  @Test
+  public void downgradesBufferCountsToFit() throws CameraMemoryBudget.ExceededException {
+    CameraMemoryBudget budget = new CameraMemoryBudget(5 * BUFFER);
+    assertEquals(3, budget.reserve("a", 1000, 1000, YUV, 3, 1));
+    assertEquals(2, budget.reserve("b", 1000, 1000, YUV, 4, 2));
+    assertEquals(5 * BUFFER, budget.getUsedBytes());
+  }
+
+  @Test
+  public void keepsThePreviousReservationWhenANewOneDoesNotFit()
+      throws CameraMemoryBudget.ExceededException {
+    CameraMemoryBudget budget = new CameraMemoryBudget(3 * BUFFER);
+    budget.reserve("a", 1000, 1000, YUV, 2, 1);
+    try {
+      budget.reserve("a", 2000, 2000, YUV, 2, 1);
+      fail();
+    } catch (CameraMemoryBudget.ExceededException e) {
+      // Expected.
+    }
+    assertEquals(2 * BUFFER, budget.getUsedBytes());
+  }
+
+  @Test
+  public void countsWorkingMemoryAgainstTheReaders() throws CameraMemoryBudget.ExceededException {
+    CameraMemoryBudget budget = new CameraMemoryBudget(4 * BUFFER);
+    budget.reserve("burst", 1000, 1000, YUV, 3, 2);
+    try {
+      budget.reserveBytes("burstMerge", 1000, 1000, 2 * BUFFER);
+      fail();
+    } catch (CameraMemoryBudget.ExceededException e) {
+      // Expected.
+    }
+    budget.reserveBytes("burstMerge", 1000, 1000, BUFFER);
+    assertEquals(4 * BUFFER, budget.getUsedBytes());
+
+    budget.release("burstMerge");
+    budget.release("burst");
+    assertEquals(0, budget.getUsedBytes());
+  }
+
+  @Test
+  public void countsEveryBufferOfTheBurstMerger() {
+    // 12 MB for each luma plane, 6 MB of VU, 36 MB of sums and 8 MB of pyramid levels.
+    assertEquals(74_000_000, BurstMerger.workingBytes(4000, 3000));
+  }
+}
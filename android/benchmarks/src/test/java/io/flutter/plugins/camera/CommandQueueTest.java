@@ -0,0 +1,272 @@
+package io.flutter.plugins.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.flutter.plugin.common.MethodChannel.Result;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CommandQueueTest {
+  private static final CommandQueue.Coalescing FOCUS =
+      CommandQueue.Coalescing.supersedes("lockFocus", "unlockFocus")
+          .failingWhenSuperseded()
+          .detached();
+  private static final CommandQueue.Coalescing STOP_STREAM =
+      CommandQueue.Coalescing.supersedes("startImageStream", "stopImageStream");
+
+  private final Deque<Runnable> posted = new ArrayDeque<>();
+  private final List<Runnable> timers = new ArrayList<>();
+  private final List<String> ran = new ArrayList<>();
+  private boolean busy;
+  private CommandQueue queue;
+
+  @Before
+  public void setUp() {
+    queue =
+        new CommandQueue(
+            posted::add,
+            (task, delayMillis) -> {
+              assertEquals(CommandQueue.TIMEOUT_MILLIS, delayMillis);
+              timers.add(task);
+            },
+            () -> busy);
+  }
+
+  @Test
+  public void runsOneCommandAtATime() {
+    Reply first = new Reply();
+    Reply second = new Reply();
+    List<Result> results = new ArrayList<>();
+    queue.enqueue("takePicture", CommandQueue.Coalescing.NONE, holding("a", results), first);
+    queue.enqueue("takePicture", CommandQueue.Coalescing.NONE, holding("b", results), second);
+    drain();
+    assertEquals(Arrays.asList("a"), ran);
+
+    results.get(0).success("a");
+    drain();
+    assertEquals(Arrays.asList("a", "b"), ran);
+    assertEquals("a", first.value);
+    assertNull(second.reply);
+  }
+
+  @Test
+  public void waitsWhileTheGateIsBusy() {
+    busy = true;
+    queue.enqueue("applySettings", CommandQueue.Coalescing.NONE, replying("a"), new Reply());
+    drain();
+    assertTrue(ran.isEmpty());
+
+    busy = false;
+    queue.runNextLater();
+    drain();
+    assertEquals(Arrays.asList("a"), ran);
+  }
+
+  @Test
+  public void supersedesWaitingCommandsAtTheEnd() {
+    List<Result> results = new ArrayList<>();
+    Reply start = new Reply();
+    Reply stop = new Reply();
+    queue.enqueue("takePicture", CommandQueue.Coalescing.NONE, holding("picture", results),
+        new Reply());
+    queue.enqueue("startImageStream", CommandQueue.Coalescing.NONE, replying("start"), start);
+    queue.enqueue("stopImageStream", STOP_STREAM, replying("stop"), stop);
+
+    assertEquals("success", start.reply);
+    results.get(0).success(null);
+    drain();
+    assertEquals(Arrays.asList("picture", "stop"), ran);
+    assertEquals("success", stop.reply);
+    Map<String, Object> stats = queue.toMap();
+    assertEquals(1L, stats.get("superseded"));
+    assertEquals(1L, ((Map<?, ?>) stats.get("supersededByMethod")).get("startImageStream"));
+  }
+
+  @Test
+  public void doesNotSupersedePastAnotherCommand() {
+    List<Result> results = new ArrayList<>();
+    Reply start = new Reply();
+    queue.enqueue("takePicture", CommandQueue.Coalescing.NONE, holding("picture", results),
+        new Reply());
+    queue.enqueue("startImageStream", CommandQueue.Coalescing.NONE, replying("start"), start);
+    queue.enqueue("applySettings", CommandQueue.Coalescing.NONE, replying("settings"),
+        new Reply());
+    queue.enqueue("stopImageStream", STOP_STREAM, replying("stop"), new Reply());
+
+    results.get(0).success(null);
+    drain();
+    assertEquals(Arrays.asList("picture", "start", "settings", "stop"), ran);
+    assertEquals("success", start.reply);
+  }
+
+  @Test
+  public void failsSupersededFocusLocks() {
+    List<Result> results = new ArrayList<>();
+    Reply waiting = new Reply();
+    queue.enqueue("takePicture", CommandQueue.Coalescing.NONE, holding("picture", results),
+        new Reply());
+    queue.enqueue("lockFocus", FOCUS, replying("lock"), waiting);
+    queue.enqueue("unlockFocus", FOCUS, replying("unlock"), new Reply());
+
+    assertEquals("commandSuperseded", waiting.reply);
+  }
+
+  @Test
+  public void detachedCommandFreesItsSlotOnceItHasRun() {
+    List<Result> results = new ArrayList<>();
+    Reply lock = new Reply();
+    Reply picture = new Reply();
+    queue.enqueue("lockFocus", FOCUS, holding("lock", results), lock);
+    queue.enqueue("takePicture", CommandQueue.Coalescing.NONE, replying("picture"), picture);
+    drain();
+
+    assertEquals(Arrays.asList("lock", "picture"), ran);
+    assertEquals("success", picture.reply);
+    assertNull(lock.reply);
+    assertEquals(Arrays.asList("lockFocus"), queue.toMap().get("detached"));
+
+    results.get(0).success("focused");
+    assertEquals("focused", lock.value);
+    assertTrue(((List<?>) queue.toMap().get("detached")).isEmpty());
+  }
+
+  @Test
+  public void newerFocusCommandCancelsTheStartedOne() {
+    List<Result> results = new ArrayList<>();
+    Reply first = new Reply();
+    Reply second = new Reply();
+    queue.enqueue("lockFocus", FOCUS, holding("first", results), first);
+    drain();
+    queue.enqueue("lockFocus", FOCUS, holding("second", results), second);
+    drain();
+
+    assertEquals("commandSuperseded", first.reply);
+    assertEquals(Arrays.asList("first", "second"), ran);
+    // The camera's own late reply to the replaced lock is dropped.
+    results.get(0).success("late");
+    assertEquals("commandSuperseded", first.reply);
+    results.get(1).success("focused");
+    assertEquals("focused", second.value);
+  }
+
+  @Test
+  public void startedCommandIsNotCancelledPastAWaitingOne() {
+    List<Result> results = new ArrayList<>();
+    Reply lock = new Reply();
+    busy = true;
+    queue.enqueue("lockFocus", FOCUS, holding("lock", results), lock);
+    busy = false;
+    queue.runNext();
+    busy = true;
+    queue.enqueue("takePicture", CommandQueue.Coalescing.NONE, replying("picture"), new Reply());
+    queue.enqueue("unlockFocus", FOCUS, replying("unlock"), new Reply());
+
+    assertNull(lock.reply);
+  }
+
+  @Test
+  public void watchdogFailsACommandThatNeverReplies() {
+    Reply stuck = new Reply();
+    Reply next = new Reply();
+    queue.enqueue("resume", CommandQueue.Coalescing.NONE, holding("resume", new ArrayList<>()),
+        stuck);
+    queue.enqueue("applySettings", CommandQueue.Coalescing.NONE, replying("settings"), next);
+    drain();
+    assertEquals(1, timers.size());
+
+    timers.get(0).run();
+    drain();
+    assertEquals("commandTimedOut", stuck.reply);
+    assertEquals("success", next.reply);
+    assertEquals(1L, queue.toMap().get("timedOut"));
+  }
+
+  @Test
+  public void watchdogIgnoresCommandsThatReplied() {
+    Reply reply = new Reply();
+    queue.enqueue("applySettings", CommandQueue.Coalescing.NONE, replying("settings"), reply);
+    timers.get(0).run();
+
+    assertEquals("success", reply.reply);
+    assertEquals(0L, queue.toMap().get("timedOut"));
+  }
+
+  @Test
+  public void failsCommandThatThrows() {
+    Reply reply = new Reply();
+    queue.enqueue(
+        "applySettings",
+        CommandQueue.Coalescing.NONE,
+        result -> {
+          throw new IllegalStateException("closed");
+        },
+        reply);
+
+    assertEquals("commandFailed", reply.reply);
+  }
+
+  @Test
+  public void clearFailsWaitingCommands() {
+    Reply waiting = new Reply();
+    queue.enqueue("takePicture", CommandQueue.Coalescing.NONE, holding("a", new ArrayList<>()),
+        new Reply());
+    queue.enqueue("takePicture", CommandQueue.Coalescing.NONE, replying("b"), waiting);
+    queue.clear("closed");
+
+    assertEquals("cameraClosed", waiting.reply);
+    assertNull(queue.toMap().get("running"));
+  }
+
+  private CommandQueue.Command replying(String name) {
+    return result -> {
+      ran.add(name);
+      result.success(null);
+    };
+  }
+
+  // Leaves the reply to the test, like a command waiting for the camera.
+  private CommandQueue.Command holding(String name, List<Result> results) {
+    return result -> {
+      ran.add(name);
+      results.add(result);
+    };
+  }
+
+  private void drain() {
+    while (!posted.isEmpty()) {
+      posted.removeFirst().run();
+    }
+  }
+
+  private static final class Reply implements Result {
+    String reply;
+    Object value;
+
+    @Override
+    public void success(Object value) {
+      assertNull(reply);
+      reply = "success";
+      this.value = value;
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {
+      assertNull(reply);
+      reply = errorCode;
+    }
+
+    @Override
+    public void notImplemented() {
+      assertNull(reply);
+      reply = "notImplemented";
+    }
+  }
+}
@@ -0,0 +1,241 @@
+package io.flutter.plugins.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.flutter.plugin.common.EventChannel;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImageStreamTest {
+  private final FakeDevice device = new FakeDevice();
+  private final SessionTracker tracker = new SessionTracker(new PipelineMetrics());
+  private final List<String> events = new ArrayList<>();
+  private final CountingSink sink = new CountingSink();
+  private int tapped;
+  private int configuredListenerRuns;
+  private ImageStream imageStream;
+
+  @Before
+  public void setUp() throws CameraMemoryBudget.ExceededException {
+    tracker.setConfiguredListener(() -> configuredListenerRuns++);
+    imageStream =
+        new ImageStream(
+            device,
+            new CameraMemoryBudget(CameraMemoryBudget.DEFAULT_BUDGET_BYTES),
+            new BinaryFrameSender((channel, message) -> {}),
+            Runnable::run,
+            new PipelineMetrics(),
+            frame -> tapped++);
+    imageStream.allocateOutput(16, 8);
+    imageStream.setSink(sink);
+  }
+
+  @Test
+  public void staysConfiguringUntilTheSessionRepeatsIntoTheOutput() {
+    imageStream.createSession(tracker, listener());
+    assertTrue(tracker.isConfiguring());
+    assertEquals(Collections.singletonList(imageStream.getOutput()), device.sessionOutputs);
+
+    device.callback.onConfigured(device.session);
+    assertFalse(tracker.isConfiguring());
+    assertEquals(1, configuredListenerRuns);
+    assertEquals(Collections.singletonList(imageStream.getOutput()), device.session.targets);
+    assertEquals(Arrays.asList("streaming"), events);
+  }
+
+  @Test
+  public void reportsSessionsThatFail() {
+    imageStream.createSession(tracker, listener());
+    device.callback.onConfigureFailed();
+    assertFalse(tracker.isConfiguring());
+
+    device.session.failRepeating = true;
+    imageStream.createSession(tracker, listener());
+    device.callback.onConfigured(device.session);
+
+    device.failCreate = true;
+    imageStream.createSession(tracker, listener());
+    assertFalse(tracker.isConfiguring());
+    assertEquals(3, configuredListenerRuns);
+    assertEquals(
+        Arrays.asList(
+            "failed: Failed to configure the camera for streaming images.",
+            "failed: The camera was closed during configuration.",
+            "failed: The camera is disconnected."),
+        events);
+  }
+
+  @Test
+  public void publishesFramesOnlyWhileStreaming() {
+    FakeOutput output = (FakeOutput) imageStream.getOutput();
+    assertSame(imageStream, output.listener);
+    output.emit();
+    assertEquals(1, tapped);
+    assertEquals(0, sink.events);
+
+    imageStream.start(ImageStreamOptions.DEFAULT);
+    output.emit();
+    assertEquals(1, sink.events);
+
+    assertTrue(imageStream.stop());
+    assertFalse(imageStream.stop());
+    output.emit();
+    assertEquals(3, tapped);
+    assertEquals(1, sink.events);
+    assertEquals(3, output.closedFrames);
+  }
+
+  private ImageStream.SessionListener listener() {
+    return new ImageStream.SessionListener() {
+      @Override
+      public void onStreaming(CaptureDevice.Session session) {
+        events.add("streaming");
+      }
+
+      @Override
+      public void onFailed(String message) {
+        events.add("failed: " + message);
+      }
+    };
+  }
+
+  private static final class FakeDevice implements CaptureDevice {
+    final FakeSession session = new FakeSession();
+    List<FrameSource> sessionOutputs;
+    SessionCallback callback;
+    boolean failCreate;
+
+    @Override
+    public FrameSource createOutput(int width, int height, int format, int maxImages) {
+      return new FakeOutput(width + "x" + height);
+    }
+
+    @Override
+    public void createSession(List<FrameSource> outputs, SessionCallback callback) {
+      if (failCreate) {
+        throw new IllegalStateException("The camera is disconnected.");
+      }
+      sessionOutputs = outputs;
+      this.callback = callback;
+    }
+  }
+
+  private static final class FakeSession implements CaptureDevice.Session {
+    List<FrameSource> targets;
+    boolean failRepeating;
+
+    @Override
+    public void setRepeating(List<FrameSource> targets) {
+      if (failRepeating) {
+        throw new IllegalStateException("The camera was closed during configuration.");
+      }
+      this.targets = targets;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  private static final class FakeOutput implements FrameSource {
+    private final SyntheticFrames frames;
+    private boolean pending;
+    Listener listener;
+    int closedFrames;
+
+    FakeOutput(String resolution) {
+      frames = new SyntheticFrames(resolution);
+    }
+
+    void emit() {
+      pending = true;
+      listener.onFrameAvailable(this);
+    }
+
+    @Override
+    public Frame acquireLatestFrame() {
+      if (!pending) {
+        return null;
+      }
+      pending = false;
+      frames.rewind();
+      final Frame frame = frames.asFrame();
+      return new Frame() {
+        @Override
+        public int getWidth() {
+          return frame.getWidth();
+        }
+
+        @Override
+        public int getHeight() {
+          return frame.getHeight();
+        }
+
+        @Override
+        public int getFormat() {
+          return frame.getFormat();
+        }
+
+        @Override
+        public long getTimestamp() {
+          return frame.getTimestamp();
+        }
+
+        @Override
+        public int getPlaneCount() {
+          return frame.getPlaneCount();
+        }
+
+        @Override
+        public ByteBuffer getPlaneBuffer(int plane) {
+          return frame.getPlaneBuffer(plane);
+        }
+
+        @Override
+        public int getRowStride(int plane) {
+          return frame.getRowStride(plane);
+        }
+
+        @Override
+        public int getPixelStride(int plane) {
+          return frame.getPixelStride(plane);
+        }
+
+        @Override
+        public void close() {
+          closedFrames++;
+        }
+      };
+    }
+
+    @Override
+    public void setListener(Listener listener) {
+      this.listener = listener;
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  private static final class CountingSink implements EventChannel.EventSink {
+    int events;
+
+    @Override
+    public void success(Object event) {
+      events++;
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {}
+
+    @Override
+    public void endOfStream() {}
+  }
+}
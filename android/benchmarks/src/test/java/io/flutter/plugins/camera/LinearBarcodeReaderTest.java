@@ -0,0 +1,245 @@
+package io.flutter.plugins.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.Test;
+
+public class LinearBarcodeReaderTest {
+  // EAN digits in their left odd parity encoding, as modules.
+  private static final String[] L_CODES = {
+    "0001101", "0011001", "0010011", "0111101", "0100011",
+    "0110001", "0101111", "0111011", "0110111", "0001011"
+  };
+  // The parity of the six left digits of an EAN-13, by its first digit.
+  private static final String[] FIRST_DIGIT_PARITY = {
+    "LLLLLL", "LLGLGG", "LLGGLG", "LLGGGL", "LGLLGG",
+    "LGGLLG", "LGGGLL", "LGLGLG", "LGLGGL", "LGGLGL"
+  };
+  // The run widths of each Code 128 symbol, starting with a bar. The stop symbol is followed by a
+  // bar two modules wide.
+  private static final String[] CODE_128_WIDTHS = {
+    "212222", "222122", "222221", "121223", "121322", "131222", "122213", "122312", "132212",
+    "221213", "221312", "231212", "112232", "122132", "122231", "113222", "123122", "123221",
+    "223211", "221132", "221231", "213212", "223112", "312131", "311222", "321122", "321221",
+    "312212", "322112", "322211", "212123", "212321", "232121", "111323", "131123", "131321",
+    "112313", "132113", "132311", "211313", "231113", "231311", "112133", "112331", "132131",
+    "113123", "113321", "133121", "313121", "211331", "231131", "213113", "213311", "213131",
+    "311123", "311321", "331121", "312113", "312311", "332111", "314111", "221411", "431111",
+    "111224", "111422", "121124", "121421", "141122", "141221", "112214", "112412", "122114",
+    "122411", "142112", "142211", "241211", "221114", "413111", "241112", "134111", "111242",
+    "121142", "121241", "114212", "124112", "124211", "411212", "421112", "421211", "212141",
+    "214121", "412121", "111143", "111341", "131141", "114113", "114311", "411113", "411311",
+    "113141", "114131", "311141", "411131", "211412", "211214", "211232", "233111"
+  };
+  private static final int START_A = 103;
+  private static final int START_B = 104;
+  private static final int START_C = 105;
+  private static final int CODE_C = 99;
+  private static final int CODE_A = 101;
+  private static final int SHIFT = 98;
+  private static final int FNC_1 = 102;
+  private static final int STOP = 106;
+  // Tall enough for several of the reader's lines to cross the bars at any of the test angles.
+  private static final int BAR_MODULES = 60;
+
+  @Test
+  public void readsEan13() {
+    assertReads(ean13("400638133393"), Barcode.Format.EAN_13, "4006381333931");
+  }
+
+  @Test
+  public void readsEveryEan13FirstDigit() {
+    for (int first = 1; first <= 9; first++) {
+      String digits = first + "12345678901";
+      String expected = digits + checkDigit(digits);
+      assertReads(ean13(digits), Barcode.Format.EAN_13, expected);
+    }
+  }
+
+  @Test
+  public void readsUpcAAsTheEan13WithALeadingZero() {
+    assertReads(ean13("003600029145"), Barcode.Format.UPC_A, "036000291452");
+  }
+
+  @Test
+  public void readsEan8() {
+    assertReads(ean8("9638507"), Barcode.Format.EAN_8, "96385074");
+  }
+
+  @Test
+  public void readsCode128InEveryCodeSet() {
+    // Set B text, then a latch to set C for digit pairs.
+    List<Integer> codes = new ArrayList<>(Arrays.asList(START_B, 'A' - 32, 'b' - 32, '-' - 32));
+    codes.addAll(Arrays.asList(CODE_C, 12, 34));
+    assertReads(code128(codes), Barcode.Format.CODE_128, "Ab-1234");
+
+    // Set C digit pairs, then a latch to set A for a control character.
+    codes = new ArrayList<>(Arrays.asList(START_C, 98, 76, CODE_A, 'X' - 32, 64 + '\t'));
+    assertReads(code128(codes), Barcode.Format.CODE_128, "9876X\t");
+
+    // Set A with a single set B character shifted in.
+    codes = new ArrayList<>(Arrays.asList(START_A, 'Q' - 32, SHIFT, 'q' - 32, 'Q' - 32));
+    assertReads(code128(codes), Barcode.Format.CODE_128, "QqQ");
+  }
+
+  @Test
+  public void readsCode128Fnc1AsAGroupSeparator() {
+    List<Integer> codes = Arrays.asList(START_C, FNC_1, 1, 23, FNC_1, 45);
+    assertReads(code128(codes), Barcode.Format.CODE_128, "0123\u001d45");
+  }
+
+  @Test
+  public void readsRotatedBarcodes() {
+    String modules = ean13("400638133393");
+    for (int degrees : new int[] {90, 180, 270, 4, -4, 94}) {
+      assertEquals(
+          "degrees " + degrees,
+          "4006381333931",
+          decode(modules, 3, degrees, false, Barcode.Format.EAN_13));
+    }
+    String code128 = code128(Arrays.asList(START_B, 'R' - 32, 'o' - 32, 't' - 32));
+    for (int degrees : new int[] {90, 180, 270}) {
+      assertEquals(
+          "degrees " + degrees, "Rot", decode(code128, 3, degrees, false, Barcode.Format.CODE_128));
+    }
+  }
+
+  @Test
+  public void readsMirroredBarcodes() {
+    String code128 = code128(Arrays.asList(START_B, 'M' - 32, 'i' - 32, 'r' - 32, 'o' - 32));
+    for (int degrees : new int[] {0, 90, 180}) {
+      assertEquals(
+          "degrees " + degrees,
+          "96385074",
+          decode(ean8("9638507"), 3, degrees, true, Barcode.Format.EAN_8));
+      assertEquals(
+          "degrees " + degrees,
+          "Miro",
+          decode(code128, 3, degrees, true, Barcode.Format.CODE_128));
+    }
+  }
+
+  @Test
+  public void rejectsABadCheckDigit() {
+    String modules = ean13("400638133393");
+    // The last digit of the right half, 1, drawn as 2.
+    String wrong =
+        modules.substring(0, modules.length() - 10)
+            + rightCode(L_CODES[2], false)
+            + modules.substring(modules.length() - 3);
+    assertEquals(null, decode(wrong, 3, 0, false, Barcode.Format.EAN_13));
+  }
+
+  @Test
+  public void onlyReportsTheRequestedFormats() {
+    SymbolRenderer image = render(ean8("9638507"), 3, 0, false);
+    List<Barcode> barcodes =
+        new BarcodeDecoder(EnumSet.of(Barcode.Format.EAN_13, Barcode.Format.CODE_128))
+            .decode(image.luma, image.width, image.height);
+    assertTrue(barcodes.isEmpty());
+  }
+
+  private static void assertReads(String modules, Barcode.Format format, String expected) {
+    assertEquals(expected, decode(modules, 3, 0, false, format));
+  }
+
+  private static String decode(
+      String modules,
+      double modulePixels,
+      double degrees,
+      boolean mirrored,
+      Barcode.Format format) {
+    SymbolRenderer image = render(modules, modulePixels, degrees, mirrored);
+    List<Barcode> barcodes =
+        new BarcodeDecoder(EnumSet.allOf(Barcode.Format.class))
+            .decode(image.luma, image.width, image.height);
+    assertTrue(barcodes.size() <= 1);
+    if (barcodes.isEmpty()) {
+      return null;
+    }
+    assertEquals(format, barcodes.get(0).format);
+    return barcodes.get(0).text;
+  }
+
+  private static SymbolRenderer render(
+      String modules, double modulePixels, double degrees, boolean mirrored) {
+    boolean[][] bars = new boolean[BAR_MODULES][modules.length()];
+    for (boolean[] row : bars) {
+      for (int i = 0; i < modules.length(); i++) {
+        row[i] = modules.charAt(i) == '1';
+      }
+    }
+    return SymbolRenderer.render(
+        SymbolRenderer.withQuietZone(bars, 12), modulePixels, degrees, mirrored);
+  }
+
+  private static int checkDigit(String digits) {
+    int sum = 0;
+    for (int i = digits.length() - 1, weight = 3; i >= 0; i--, weight = 4 - weight) {
+      sum += weight * (digits.charAt(i) - '0');
+    }
+    return (10 - sum % 10) % 10;
+  }
+
+  private static String ean13(String twelveDigits) {
+    String digits = twelveDigits + checkDigit(twelveDigits);
+    String parity = FIRST_DIGIT_PARITY[digits.charAt(0) - '0'];
+    StringBuilder modules = new StringBuilder("101");
+    for (int i = 1; i <= 6; i++) {
+      String code = L_CODES[digits.charAt(i) - '0'];
+      modules.append(parity.charAt(i - 1) == 'L' ? code : rightCode(code, true));
+    }
+    modules.append("01010");
+    for (int i = 7; i <= 12; i++) {
+      modules.append(rightCode(L_CODES[digits.charAt(i) - '0'], false));
+    }
+    return modules.append("101").toString();
+  }
+
+  private static String ean8(String sevenDigits) {
+    String digits = sevenDigits + checkDigit(sevenDigits);
+    StringBuilder modules = new StringBuilder("101");
+    for (int i = 0; i < 4; i++) {
+      modules.append(L_CODES[digits.charAt(i) - '0']);
+    }
+    modules.append("01010");
+    for (int i = 4; i < 8; i++) {
+      modules.append(rightCode(L_CODES[digits.charAt(i) - '0'], false));
+    }
+    return modules.append("101").toString();
+  }
+
+  // R codes are the complement of L codes, and G codes are R codes reversed.
+  private static String rightCode(String lCode, boolean reversed) {
+    StringBuilder code = new StringBuilder();
+    for (char module : lCode.toCharArray()) {
+      code.append(module == '1' ? '0' : '1');
+    }
+    return reversed ? code.reverse().toString() : code.toString();
+  }
+
+  private static String code128(List<Integer> codes) {
+    List<Integer> symbols = new ArrayList<>(codes);
+    int checksum = codes.get(0);
+    for (int i = 1; i < codes.size(); i++) {
+      checksum += i * codes.get(i);
+    }
+    symbols.add(checksum % 103);
+    symbols.add(STOP);
+    StringBuilder modules = new StringBuilder();
+    for (int symbol : symbols) {
+      String widths = CODE_128_WIDTHS[symbol];
+      for (int i = 0; i < widths.length(); i++) {
+        for (int module = 0; module < widths.charAt(i) - '0'; module++) {
+          modules.append(i % 2 == 0 ? '1' : '0');
+        }
+      }
+    }
+    return modules.append("11").toString();
+  }
+}
@@ -0,0 +1,213 @@
+package io.flutter.plugins.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.List;
+import org.junit.Test;
+
+public class QrCodeReaderTest {
+  private static final String TEXT = "HELLO QR";
+
+  @Test
+  public void readsVersion1AtEveryLevelAndMask() {
+    for (int level = QrCodeWriter.L; level <= QrCodeWriter.H; level++) {
+      for (int mask = 0; mask < 8; mask++) {
+        boolean[][] modules =
+            QrCodeWriter.encode(1, level, mask, QrCodeWriter.alphanumeric(TEXT));
+        assertEquals("level " + level + " mask " + mask, TEXT, decode(modules, 4, 0, false));
+      }
+    }
+  }
+
+  @Test
+  public void readsVersion7WithVersionInformationAtEveryLevelAndMask() {
+    String text = repeat("0123456789", 6);
+    for (int level = QrCodeWriter.L; level <= QrCodeWriter.H; level++) {
+      for (int mask = 0; mask < 8; mask++) {
+        boolean[][] modules = QrCodeWriter.encode(7, level, mask, QrCodeWriter.numeric(text));
+        assertEquals("level " + level + " mask " + mask, text, decode(modules, 3, 0, false));
+      }
+    }
+  }
+
+  @Test
+  public void readsEveryVersionFrom7To40() {
+    for (int version = 7; version <= 40; version++) {
+      String text = repeat("QR CODE VERSION " + version + " ", version);
+      boolean[][] modules =
+          QrCodeWriter.encode(
+              version, QrCodeWriter.M, version % 8, QrCodeWriter.alphanumeric(text));
+      assertEquals("version " + version, text, decode(modules, 3, 0, false));
+    }
+  }
+
+  @Test
+  public void readsVersion40AtEveryLevel() {
+    for (int level = QrCodeWriter.L; level <= QrCodeWriter.H; level++) {
+      // Fills the symbol, so every block carries data.
+      int capacity = QrCodeWriter.dataCapacity(40, level) - 3;
+      byte[] data = new byte[capacity];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = (byte) ('a' + i % 26);
+      }
+      boolean[][] modules = QrCodeWriter.encode(40, level, 5, QrCodeWriter.bytes(data));
+      assertEquals(
+          "level " + level,
+          new String(data, StandardCharsets.US_ASCII),
+          decode(modules, 3, 0, false));
+    }
+  }
+
+  @Test
+  public void readsNumericSegmentsOfEveryRemainder() {
+    for (String digits : new String[] {"1", "12", "123", "1234", "01234567890"}) {
+      boolean[][] modules = QrCodeWriter.encode(1, QrCodeWriter.M, 2, QrCodeWriter.numeric(digits));
+      assertEquals(digits, decode(modules, 4, 0, false));
+    }
+  }
+
+  @Test
+  public void readsAlphanumericSegmentsOfOddLength() {
+    String text = "AC-42 $%*+./:";
+    boolean[][] modules =
+        QrCodeWriter.encode(2, QrCodeWriter.Q, 3, QrCodeWriter.alphanumeric(text));
+    assertEquals(text, decode(modules, 4, 0, false));
+  }
+
+  @Test
+  public void readsByteSegmentsAsUtf8() {
+    String text = "Gr\u00fc\u00dfe, \u4e16\u754c";
+    boolean[][] modules =
+        QrCodeWriter.encode(
+            3, QrCodeWriter.L, 4, QrCodeWriter.bytes(text.getBytes(StandardCharsets.UTF_8)));
+    assertEquals(text, decode(modules, 4, 0, false));
+  }
+
+  @Test
+  public void readsInvalidUtf8AsIso88591() {
+    byte[] data = {'c', 'a', 'f', (byte) 0xe9};
+    boolean[][] modules = QrCodeWriter.encode(1, QrCodeWriter.L, 0, QrCodeWriter.bytes(data));
+    assertEquals("caf\u00e9", decode(modules, 4, 0, false));
+  }
+
+  @Test
+  public void readsKanjiSegments() {
+    String text = "\u70b9\u8317\u6f22\u5b57";
+    boolean[][] modules = QrCodeWriter.encode(1, QrCodeWriter.H, 6, QrCodeWriter.kanji(text));
+    assertEquals(text, decode(modules, 4, 0, false));
+  }
+
+  @Test
+  public void readsByteSegmentsInTheCharsetOfAnEci() {
+    // Valid UTF-8, but the ECI says ISO-8859-1.
+    byte[] data = "\u00c3\u00a9".getBytes(StandardCharsets.ISO_8859_1);
+    boolean[][] modules =
+        QrCodeWriter.encode(
+            1, QrCodeWriter.M, 1, QrCodeWriter.eci(3), QrCodeWriter.bytes(data));
+    assertEquals("\u00c3\u00a9", decode(modules, 4, 0, false));
+
+    byte[] shiftJis = "\u30c6\u30b9\u30c8".getBytes(java.nio.charset.Charset.forName("Shift_JIS"));
+    modules =
+        QrCodeWriter.encode(
+            1, QrCodeWriter.M, 1, QrCodeWriter.eci(20), QrCodeWriter.bytes(shiftJis));
+    assertEquals("\u30c6\u30b9\u30c8", decode(modules, 4, 0, false));
+  }
+
+  @Test
+  public void readsMixedSegments() {
+    boolean[][] modules =
+        QrCodeWriter.encode(
+            5,
+            QrCodeWriter.Q,
+            7,
+            QrCodeWriter.alphanumeric("ORDER "),
+            QrCodeWriter.numeric("0042"),
+            QrCodeWriter.bytes(" f\u00fcr ".getBytes(StandardCharsets.UTF_8)),
+            QrCodeWriter.kanji("\u6f22\u5b57"));
+    assertEquals("ORDER 0042 f\u00fcr \u6f22\u5b57", decode(modules, 3, 0, false));
+  }
+
+  @Test
+  public void correctsErrorsUpToEachBlocksCapacity() {
+    // Version 5 at level Q has four blocks of 18 check codewords.
+    int capacity = QrCodeWriter.correctableErrors(5, QrCodeWriter.Q);
+    assertEquals(9, capacity);
+    String text = repeat("ERRORS ", 6);
+    for (int errors = 0; errors <= capacity; errors++) {
+      boolean[][] modules =
+          QrCodeWriter.encode(5, QrCodeWriter.Q, 0, errors, QrCodeWriter.alphanumeric(text));
+      assertEquals("errors " + errors, text, decode(modules, 3, 0, false));
+    }
+  }
+
+  @Test
+  public void rejectsBlocksWithMoreErrorsThanTheirCapacity() {
+    int capacity = QrCodeWriter.correctableErrors(5, QrCodeWriter.Q);
+    boolean[][] modules =
+        QrCodeWriter.encode(
+            5, QrCodeWriter.Q, 0, capacity + 1, QrCodeWriter.alphanumeric(repeat("ERRORS ", 6)));
+    assertEquals(null, decode(modules, 3, 0, false));
+  }
+
+  @Test
+  public void readsRotatedSymbols() {
+    boolean[][] modules =
+        QrCodeWriter.encode(3, QrCodeWriter.M, 2, QrCodeWriter.alphanumeric(TEXT));
+    for (int degrees : new int[] {90, 180, 270, 30, -45, 135}) {
+      assertEquals("degrees " + degrees, TEXT, decode(modules, 5, degrees, false));
+    }
+  }
+
+  @Test
+  public void readsMirroredSymbols() {
+    boolean[][] modules =
+        QrCodeWriter.encode(3, QrCodeWriter.M, 2, QrCodeWriter.alphanumeric(TEXT));
+    for (int degrees : new int[] {0, 90, 20}) {
+      assertEquals("degrees " + degrees, TEXT, decode(modules, 5, degrees, true));
+    }
+  }
+
+  @Test
+  public void reportsCornersClockwiseFromTheUprightTopLeft() {
+    boolean[][] modules =
+        QrCodeWriter.encode(1, QrCodeWriter.L, 0, QrCodeWriter.alphanumeric(TEXT));
+    SymbolRenderer image =
+        SymbolRenderer.render(SymbolRenderer.withQuietZone(modules, 4), 4, 90, false);
+    Barcode barcode = decodeBarcode(image);
+    assertNotNull(barcode);
+    // Turned clockwise, the symbol's top left corner is at the top right of the frame.
+    assertTrue(barcode.corners[0] > image.width / 2);
+    assertTrue(barcode.corners[1] < image.height / 2);
+    assertTrue(barcode.corners[2] > image.width / 2);
+    assertTrue(barcode.corners[3] > image.height / 2);
+  }
+
+  private static String decode(
+      boolean[][] modules, double modulePixels, double degrees, boolean mirrored) {
+    Barcode barcode =
+        decodeBarcode(
+            SymbolRenderer.render(
+                SymbolRenderer.withQuietZone(modules, 4), modulePixels, degrees, mirrored));
+    return barcode == null ? null : barcode.text;
+  }
+
+  private static Barcode decodeBarcode(SymbolRenderer image) {
+    List<Barcode> barcodes =
+        new BarcodeDecoder(EnumSet.of(Barcode.Format.QR_CODE))
+            .decode(image.luma, image.width, image.height);
+    assertTrue(barcodes.size() <= 1);
+    return barcodes.isEmpty() ? null : barcodes.get(0);
+  }
+
+  private static String repeat(String text, int times) {
+    StringBuilder repeated = new StringBuilder();
+    for (int i = 0; i < times; i++) {
+      repeated.append(text);
+    }
+    return repeated.toString();
+  }
+}
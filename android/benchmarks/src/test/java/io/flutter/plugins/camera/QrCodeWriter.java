@@ -0,0 +1,437 @@
+package io.flutter.plugins.camera;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes QR codes for the reader's tests, following ISO/IEC 18004 independently of the reader:
+ * the block structure is derived from the per-level check codeword and block counts rather than
+ * read from the reader's table.
+ */
+final class QrCodeWriter {
+  static final int L = 0;
+  static final int M = 1;
+  static final int Q = 2;
+  static final int H = 3;
+
+  // Check codewords per block and block counts, by level then version.
+  private static final int[][] CHECK_CODEWORDS = {
+    {-1, 7, 10, 15, 20, 26, 18, 20, 24, 30, 18, 20, 24, 26, 30, 22, 24, 28, 30, 28, 28, 28, 28,
+      30, 30, 26, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30},
+    {-1, 10, 16, 26, 18, 24, 16, 18, 22, 22, 26, 30, 22, 22, 24, 24, 28, 28, 26, 26, 26, 26, 28,
+      28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28, 28},
+    {-1, 13, 22, 18, 26, 18, 24, 18, 22, 20, 24, 28, 26, 24, 20, 30, 24, 28, 28, 26, 30, 28, 30,
+      30, 30, 30, 28, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30},
+    {-1, 17, 28, 22, 16, 22, 28, 26, 26, 24, 28, 24, 28, 22, 24, 24, 30, 28, 28, 26, 28, 30, 24,
+      30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30, 30}
+  };
+  private static final int[][] BLOCK_COUNTS = {
+    {-1, 1, 1, 1, 1, 1, 2, 2, 2, 2, 4, 4, 4, 4, 4, 6, 6, 6, 6, 7, 8, 8, 9, 9, 10, 12, 12, 12, 13,
+      14, 15, 16, 17, 18, 19, 19, 20, 21, 22, 24, 25},
+    {-1, 1, 1, 1, 2, 2, 4, 4, 4, 5, 5, 5, 8, 9, 9, 10, 10, 11, 13, 14, 16, 17, 17, 18, 20, 21, 23,
+      25, 26, 28, 29, 31, 33, 35, 37, 38, 40, 43, 45, 47, 49},
+    {-1, 1, 1, 2, 2, 4, 4, 6, 6, 8, 8, 8, 10, 12, 16, 12, 17, 16, 18, 21, 20, 23, 23, 25, 27, 29,
+      34, 34, 35, 38, 40, 43, 45, 48, 51, 53, 56, 59, 62, 65, 68},
+    {-1, 1, 1, 2, 4, 4, 4, 5, 6, 8, 8, 11, 11, 16, 16, 18, 16, 19, 21, 25, 25, 25, 34, 30, 32, 35,
+      37, 40, 42, 45, 48, 51, 54, 57, 60, 63, 66, 70, 74, 77, 81}
+  };
+  // The format information's level bits, by level L, M, Q, H.
+  private static final int[] LEVEL_BITS = {1, 0, 3, 2};
+  private static final String ALPHANUMERIC = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+  private static final Charset SHIFT_JIS = Charset.forName("Shift_JIS");
+
+  /** A data segment: its mode indicator, character count and payload bits. */
+  static final class Segment {
+    final int mode;
+    final int count;
+    final List<Integer> bits = new ArrayList<>();
+
+    private Segment(int mode, int count) {
+      this.mode = mode;
+      this.count = count;
+    }
+
+    private void append(int value, int length) {
+      for (int i = length - 1; i >= 0; i--) {
+        bits.add((value >>> i) & 1);
+      }
+    }
+  }
+
+  static Segment numeric(String digits) {
+    Segment segment = new Segment(0x1, digits.length());
+    for (int i = 0; i < digits.length(); i += 3) {
+      int end = Math.min(i + 3, digits.length());
+      segment.append(Integer.parseInt(digits.substring(i, end)), (end - i) * 3 + 1);
+    }
+    return segment;
+  }
+
+  static Segment alphanumeric(String text) {
+    Segment segment = new Segment(0x2, text.length());
+    int i = 0;
+    for (; i + 1 < text.length(); i += 2) {
+      segment.append(
+          ALPHANUMERIC.indexOf(text.charAt(i)) * 45 + ALPHANUMERIC.indexOf(text.charAt(i + 1)), 11);
+    }
+    if (i < text.length()) {
+      segment.append(ALPHANUMERIC.indexOf(text.charAt(i)), 6);
+    }
+    return segment;
+  }
+
+  static Segment bytes(byte[] data) {
+    Segment segment = new Segment(0x4, data.length);
+    for (byte value : data) {
+      segment.append(value & 0xff, 8);
+    }
+    return segment;
+  }
+
+  static Segment kanji(String text) {
+    byte[] encoded = text.getBytes(SHIFT_JIS);
+    Segment segment = new Segment(0x8, encoded.length / 2);
+    for (int i = 0; i < encoded.length; i += 2) {
+      int code = (encoded[i] & 0xff) << 8 | (encoded[i + 1] & 0xff);
+      code -= code <= 0x9ffc ? 0x8140 : 0xc140;
+      segment.append((code >> 8) * 0xc0 + (code & 0xff), 13);
+    }
+    return segment;
+  }
+
+  /** An ECI designator below 128, which takes one byte. */
+  static Segment eci(int designator) {
+    Segment segment = new Segment(0x7, -1);
+    segment.append(designator, 8);
+    return segment;
+  }
+
+  private final int version;
+  private final int level;
+  private final int mask;
+  private final int size;
+  private final boolean[][] modules;
+  private final boolean[][] function;
+
+  private QrCodeWriter(int version, int level, int mask) {
+    this.version = version;
+    this.level = level;
+    this.mask = mask;
+    size = version * 4 + 17;
+    modules = new boolean[size][size];
+    function = new boolean[size][size];
+  }
+
+  /** Returns the modules, by row then column, without a quiet zone. */
+  static boolean[][] encode(int version, int level, int mask, Segment... segments) {
+    return encode(version, level, mask, 0, segments);
+  }
+
+  /**
+   * Returns the modules like {@link #encode(int, int, int, Segment...)}, with {@code errors}
+   * codewords of each block replaced by their complement.
+   */
+  static boolean[][] encode(int version, int level, int mask, int errors, Segment... segments) {
+    QrCodeWriter writer = new QrCodeWriter(version, level, mask);
+    writer.drawFunctionPatterns();
+    writer.drawCodewords(writer.interleave(writer.dataCodewords(segments), errors));
+    writer.applyMask();
+    return writer.modules;
+  }
+
+  /** Returns the modules a version has for data and check codewords. */
+  static int rawModules(int version) {
+    int modules = (16 * version + 128) * version + 64;
+    if (version >= 2) {
+      int alignments = version / 7 + 2;
+      modules -= (25 * alignments - 10) * alignments - 55;
+      if (version >= 7) {
+        modules -= 36;
+      }
+    }
+    return modules;
+  }
+
+  static int dataCapacity(int version, int level) {
+    return rawModules(version) / 8
+        - CHECK_CODEWORDS[level][version] * BLOCK_COUNTS[level][version];
+  }
+
+  /** The codewords of each block that its check codewords can correct. */
+  static int correctableErrors(int version, int level) {
+    return CHECK_CODEWORDS[level][version] / 2;
+  }
+
+  private int[] dataCodewords(Segment[] segments) {
+    int sizeClass = version <= 9 ? 0 : version <= 26 ? 1 : 2;
+    Segment bits = new Segment(0, 0);
+    for (Segment segment : segments) {
+      bits.append(segment.mode, 4);
+      switch (segment.mode) {
+        case 0x1:
+          bits.append(segment.count, new int[] {10, 12, 14}[sizeClass]);
+          break;
+        case 0x2:
+          bits.append(segment.count, new int[] {9, 11, 13}[sizeClass]);
+          break;
+        case 0x4:
+          bits.append(segment.count, new int[] {8, 16, 16}[sizeClass]);
+          break;
+        case 0x8:
+          bits.append(segment.count, new int[] {8, 10, 12}[sizeClass]);
+          break;
+        default:
+          break;
+      }
+      bits.bits.addAll(segment.bits);
+    }
+    int capacity = dataCapacity(version, level) * 8;
+    if (bits.bits.size() > capacity) {
+      throw new IllegalArgumentException("The segments don't fit version " + version + ".");
+    }
+    bits.append(0, Math.min(4, capacity - bits.bits.size()));
+    bits.append(0, (8 - bits.bits.size() % 8) % 8);
+    for (int pad = 0xec; bits.bits.size() < capacity; pad ^= 0xec ^ 0x11) {
+      bits.append(pad, 8);
+    }
+    int[] codewords = new int[capacity / 8];
+    for (int i = 0; i < bits.bits.size(); i++) {
+      codewords[i >>> 3] |= bits.bits.get(i) << (7 - (i & 7));
+    }
+    return codewords;
+  }
+
+  private int[] interleave(int[] data, int errors) {
+    int blockCount = BLOCK_COUNTS[level][version];
+    int checkCount = CHECK_CODEWORDS[level][version];
+    int raw = rawModules(version) / 8;
+    int shortBlocks = blockCount - raw % blockCount;
+    int shortLength = raw / blockCount;
+    int[] generator = generator(checkCount);
+    List<int[]> blocks = new ArrayList<>();
+    for (int i = 0, offset = 0; i < blockCount; i++) {
+      int dataLength = shortLength - checkCount + (i < shortBlocks ? 0 : 1);
+      int[] blockData = Arrays.copyOfRange(data, offset, offset + dataLength);
+      offset += dataLength;
+      // Short blocks get a placeholder where long blocks have their extra data codeword.
+      int[] block = Arrays.copyOf(blockData, shortLength + 1);
+      int[] check = remainder(blockData, generator);
+      System.arraycopy(check, 0, block, block.length - checkCount, checkCount);
+      // The data codewords first, then the check codewords from the end.
+      for (int e = 0; e < errors; e++) {
+        block[e < dataLength ? e : block.length - 1 - (e - dataLength)] ^= 0xff;
+      }
+      blocks.add(block);
+    }
+    int[] interleaved = new int[raw];
+    int index = 0;
+    for (int i = 0; i <= shortLength; i++) {
+      for (int j = 0; j < blockCount; j++) {
+        if (i != shortLength - checkCount || j >= shortBlocks) {
+          interleaved[index++] = blocks.get(j)[i];
+        }
+      }
+    }
+    return interleaved;
+  }
+
+  private static int multiply(int x, int y) {
+    int product = 0;
+    for (int i = 7; i >= 0; i--) {
+      product = (product << 1) ^ ((product >>> 7) * 0x11d);
+      product ^= ((y >>> i) & 1) * x;
+    }
+    return product;
+  }
+
+  private static int[] generator(int degree) {
+    int[] coefficients = new int[degree];
+    coefficients[degree - 1] = 1;
+    int root = 1;
+    for (int i = 0; i < degree; i++) {
+      for (int j = 0; j < degree; j++) {
+        coefficients[j] = multiply(coefficients[j], root);
+        if (j + 1 < degree) {
+          coefficients[j] ^= coefficients[j + 1];
+        }
+      }
+      root = multiply(root, 2);
+    }
+    return coefficients;
+  }
+
+  private static int[] remainder(int[] data, int[] generator) {
+    int[] remainder = new int[generator.length];
+    for (int value : data) {
+      int factor = value ^ remainder[0];
+      System.arraycopy(remainder, 1, remainder, 0, remainder.length - 1);
+      remainder[remainder.length - 1] = 0;
+      for (int i = 0; i < remainder.length; i++) {
+        remainder[i] ^= multiply(generator[i], factor);
+      }
+    }
+    return remainder;
+  }
+
+  private void drawFunctionPatterns() {
+    for (int i = 0; i < size; i++) {
+      set(6, i, i % 2 == 0);
+      set(i, 6, i % 2 == 0);
+    }
+    drawFinder(3, 3);
+    drawFinder(size - 4, 3);
+    drawFinder(3, size - 4);
+    int[] positions = alignmentPositions();
+    int count = positions.length;
+    for (int i = 0; i < count; i++) {
+      for (int j = 0; j < count; j++) {
+        if ((i == 0 && j == 0) || (i == 0 && j == count - 1) || (i == count - 1 && j == 0)) {
+          continue;
+        }
+        for (int dy = -2; dy <= 2; dy++) {
+          for (int dx = -2; dx <= 2; dx++) {
+            set(positions[i] + dx, positions[j] + dy, Math.max(Math.abs(dx), Math.abs(dy)) != 1);
+          }
+        }
+      }
+    }
+    drawFormat();
+    if (version >= 7) {
+      drawVersion();
+    }
+  }
+
+  private void drawFinder(int centerX, int centerY) {
+    for (int dy = -4; dy <= 4; dy++) {
+      for (int dx = -4; dx <= 4; dx++) {
+        int x = centerX + dx;
+        int y = centerY + dy;
+        int distance = Math.max(Math.abs(dx), Math.abs(dy));
+        if (x >= 0 && x < size && y >= 0 && y < size) {
+          set(x, y, distance != 2 && distance != 4);
+        }
+      }
+    }
+  }
+
+  private int[] alignmentPositions() {
+    if (version == 1) {
+      return new int[0];
+    }
+    int count = version / 7 + 2;
+    int step = version == 32 ? 26 : (version * 4 + count * 2 + 1) / (count * 2 - 2) * 2;
+    int[] positions = new int[count];
+    positions[0] = 6;
+    for (int i = count - 1, position = size - 7; i >= 1; i--, position -= step) {
+      positions[i] = position;
+    }
+    return positions;
+  }
+
+  private void drawFormat() {
+    int data = LEVEL_BITS[level] << 3 | mask;
+    int remainder = data;
+    for (int i = 0; i < 10; i++) {
+      remainder = (remainder << 1) ^ ((remainder >>> 9) * 0x537);
+    }
+    int bits = (data << 10 | remainder) ^ 0x5412;
+    for (int i = 0; i <= 5; i++) {
+      set(8, i, bit(bits, i));
+    }
+    set(8, 7, bit(bits, 6));
+    set(8, 8, bit(bits, 7));
+    set(7, 8, bit(bits, 8));
+    for (int i = 9; i < 15; i++) {
+      set(14 - i, 8, bit(bits, i));
+    }
+    for (int i = 0; i < 8; i++) {
+      set(size - 1 - i, 8, bit(bits, i));
+    }
+    for (int i = 8; i < 15; i++) {
+      set(8, size - 15 + i, bit(bits, i));
+    }
+    set(8, size - 8, true);
+  }
+
+  private void drawVersion() {
+    int remainder = version;
+    for (int i = 0; i < 12; i++) {
+      remainder = (remainder << 1) ^ ((remainder >>> 11) * 0x1f25);
+    }
+    int bits = version << 12 | remainder;
+    for (int i = 0; i < 18; i++) {
+      int a = size - 11 + i % 3;
+      int b = i / 3;
+      set(a, b, bit(bits, i));
+      set(b, a, bit(bits, i));
+    }
+  }
+
+  private void drawCodewords(int[] codewords) {
+    int i = 0;
+    for (int right = size - 1; right >= 1; right -= 2) {
+      if (right == 6) {
+        right = 5;
+      }
+      for (int vertical = 0; vertical < size; vertical++) {
+        for (int j = 0; j < 2; j++) {
+          int x = right - j;
+          boolean upward = ((right + 1) & 2) == 0;
+          int y = upward ? size - 1 - vertical : vertical;
+          if (!function[y][x] && i < codewords.length * 8) {
+            modules[y][x] = bit(codewords[i >>> 3], 7 - (i & 7));
+            i++;
+          }
+        }
+      }
+    }
+  }
+
+  private void applyMask() {
+    for (int y = 0; y < size; y++) {
+      for (int x = 0; x < size; x++) {
+        boolean invert;
+        switch (mask) {
+          case 0:
+            invert = (x + y) % 2 == 0;
+            break;
+          case 1:
+            invert = y % 2 == 0;
+            break;
+          case 2:
+            invert = x % 3 == 0;
+            break;
+          case 3:
+            invert = (x + y) % 3 == 0;
+            break;
+          case 4:
+            invert = (x / 3 + y / 2) % 2 == 0;
+            break;
+          case 5:
+            invert = x * y % 2 + x * y % 3 == 0;
+            break;
+          case 6:
+            invert = (x * y % 2 + x * y % 3) % 2 == 0;
+            break;
+          default:
+            invert = ((x + y) % 2 + x * y % 3) % 2 == 0;
+            break;
+        }
+        if (!function[y][x] && invert) {
+          modules[y][x] = !modules[y][x];
+        }
+      }
+    }
+  }
+
+  private static boolean bit(int value, int index) {
+    return ((value >>> index) & 1) != 0;
+  }
+
+  private void set(int x, int y, boolean dark) {
+    modules[y][x] = dark;
+    function[y][x] = true;
+  }
+}
@@ -0,0 +1,64 @@
+package io.flutter.plugins.camera;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+
+public class ReedSolomonDecoderTest {
+  // The version 1-M block of "01234567" from ISO/IEC 18004 Annex I: 16 data codewords, then 10
+  // check codewords.
+  private static final int[] BLOCK = {
+    16, 32, 12, 86, 97, 128, 236, 17, 236, 17, 236, 17, 236, 17, 236, 17,
+    165, 36, 212, 193, 237, 54, 199, 135, 44, 85
+  };
+  private static final int CHECK_COUNT = 10;
+
+  @Test
+  public void leavesCleanBlocksAlone() throws ReedSolomonDecoder.DecodeException {
+    int[] codewords = BLOCK.clone();
+    assertEquals(0, ReedSolomonDecoder.decode(codewords, CHECK_COUNT));
+    assertArrayEquals(BLOCK, codewords);
+  }
+
+  @Test
+  public void correctsUpToHalfTheCheckCodewords() throws ReedSolomonDecoder.DecodeException {
+    Random random = new Random(1);
+    for (int errors = 1; errors <= CHECK_COUNT / 2; errors++) {
+      for (int trial = 0; trial < 200; trial++) {
+        int[] codewords = corrupt(random, errors);
+        assertEquals(errors, ReedSolomonDecoder.decode(codewords, CHECK_COUNT));
+        assertArrayEquals(BLOCK, codewords);
+      }
+    }
+  }
+
+  @Test
+  public void rejectsMoreErrorsThanItCanCorrect() {
+    Random random = new Random(2);
+    for (int trial = 0; trial < 200; trial++) {
+      try {
+        ReedSolomonDecoder.decode(corrupt(random, CHECK_COUNT / 2 + 1), CHECK_COUNT);
+        fail("trial " + trial + " was miscorrected");
+      } catch (ReedSolomonDecoder.DecodeException e) {
+        // Expected.
+      }
+    }
+  }
+
+  private static int[] corrupt(Random random, int errors) {
+    int[] codewords = BLOCK.clone();
+    Set<Integer> positions = new HashSet<>();
+    while (positions.size() < errors) {
+      positions.add(random.nextInt(codewords.length));
+    }
+    for (int position : positions) {
+      codewords[position] ^= 1 + random.nextInt(255);
+    }
+    return codewords;
+  }
+}
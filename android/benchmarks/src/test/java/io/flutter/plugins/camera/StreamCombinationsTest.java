@@ -0,0 +1,117 @@
+package io.flutter.plugins.camera;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.flutter.plugins.camera.StreamCombinations.Type;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class StreamCombinationsTest {
+  private static final StreamCombinations LEGACY =
+      new StreamCombinations(StreamCombinations.LEVEL_LEGACY, 1920, 1080);
+  private static final StreamCombinations LIMITED =
+      new StreamCombinations(StreamCombinations.LEVEL_LIMITED, 3840, 2160);
+  private static final StreamCombinations FULL =
+      new StreamCombinations(StreamCombinations.LEVEL_FULL, 3840, 2160);
+
+  @Test
+  public void classifiesSizesByTheirPixels() {
+    assertEquals(StreamCombinations.SizeClass.VGA, FULL.stream(Type.YUV, 640, 480).size);
+    assertEquals(StreamCombinations.SizeClass.PREVIEW, FULL.stream(Type.YUV, 1280, 720).size);
+    assertEquals(StreamCombinations.SizeClass.RECORD, FULL.stream(Type.YUV, 3840, 2160).size);
+    assertEquals(StreamCombinations.SizeClass.MAXIMUM, FULL.stream(Type.YUV, 4000, 3000).size);
+  }
+
+  @Test
+  public void mapsEachHardwareLevelToItsTable() {
+    assertEquals("LEGACY", LEGACY.getLevelName());
+    assertEquals("LIMITED", LIMITED.getLevelName());
+    assertEquals("FULL", FULL.getLevelName());
+    assertEquals("FULL", new StreamCombinations(StreamCombinations.LEVEL_3, 0, 0).getLevelName());
+    assertEquals(
+        "LIMITED",
+        new StreamCombinations(StreamCombinations.LEVEL_EXTERNAL, 0, 0).getLevelName());
+  }
+
+  @Test
+  public void everyLevelFitsPreviewStreamAndStill() {
+    for (StreamCombinations combinations : Arrays.asList(LEGACY, LIMITED, FULL)) {
+      assertTrue(
+          combinations.getLevelName(),
+          combinations.isGuaranteed(
+              Arrays.asList(
+                  combinations.stream(Type.PRIV, 1920, 1080),
+                  combinations.stream(Type.YUV, 1280, 720),
+                  combinations.stream(Type.JPEG, 4000, 3000))));
+    }
+  }
+
+  @Test
+  public void noLevelFitsFourOutputs() {
+    for (StreamCombinations combinations : Arrays.asList(LEGACY, LIMITED, FULL)) {
+      assertFalse(
+          combinations.getLevelName(),
+          combinations.isGuaranteed(
+              Arrays.asList(
+                  combinations.stream(Type.PRIV, 1920, 1080),
+                  combinations.stream(Type.YUV, 640, 480),
+                  combinations.stream(Type.YUV, 640, 480),
+                  combinations.stream(Type.JPEG, 640, 480))));
+    }
+  }
+
+  @Test
+  public void onlyFullFitsAVgaAnalysisOutputNextToTheStream() {
+    assertFalse(LEGACY.isGuaranteed(streamAndAnalysis(LEGACY)));
+    assertFalse(LIMITED.isGuaranteed(streamAndAnalysis(LIMITED)));
+    assertTrue(FULL.isGuaranteed(streamAndAnalysis(FULL)));
+  }
+
+  @Test
+  public void largeYuvOutputsNeedAHigherLevel() {
+    // A full size burst next to the preview.
+    assertFalse(LEGACY.isGuaranteed(previewAnd(LEGACY, 4000, 3000)));
+    assertFalse(LIMITED.isGuaranteed(previewAnd(LIMITED, 4000, 3000)));
+    assertTrue(FULL.isGuaranteed(previewAnd(FULL, 4000, 3000)));
+    // Up to the recording size.
+    assertFalse(LEGACY.isGuaranteed(previewAnd(LEGACY, 3840, 2160)));
+    assertTrue(LIMITED.isGuaranteed(previewAnd(LIMITED, 3840, 2160)));
+  }
+
+  @Test
+  public void recordingSessionFitsOneExtraOutputBelowFull() {
+    // Preview, recorder and still snapshot.
+    assertTrue(
+        LIMITED.isGuaranteed(
+            Arrays.asList(
+                LIMITED.stream(Type.PRIV, 1920, 1080),
+                LIMITED.stream(Type.PRIV, 3840, 2160),
+                LIMITED.stream(Type.JPEG, 3840, 2160))));
+    // Preview, recorder, proxy recorder and stream.
+    assertFalse(
+        FULL.isGuaranteed(
+            Arrays.asList(
+                FULL.stream(Type.PRIV, 1920, 1080),
+                FULL.stream(Type.PRIV, 3840, 2160),
+                FULL.stream(Type.PRIV, 640, 480),
+                FULL.stream(Type.YUV, 640, 480))));
+  }
+
+  private static List<StreamCombinations.Stream> streamAndAnalysis(
+      StreamCombinations combinations) {
+    return Arrays.asList(
+        combinations.stream(Type.PRIV, 1920, 1080),
+        combinations.stream(Type.YUV, 1280, 720),
+        combinations.stream(Type.YUV, 640, 480));
+  }
+
+  private static List<StreamCombinations.Stream> previewAnd(
+      StreamCombinations combinations, int yuvWidth, int yuvHeight) {
+    return Arrays.asList(
+        combinations.stream(Type.PRIV, 1920, 1080),
+        combinations.stream(Type.YUV, yuvWidth, yuvHeight));
+  }
+}
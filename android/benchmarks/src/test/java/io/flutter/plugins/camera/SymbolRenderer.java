@@ -0,0 +1,62 @@
+package io.flutter.plugins.camera;
+
+/** Draws a grid of modules into a luma frame, turned and mirrored, as a camera would see it. */
+final class SymbolRenderer {
+  static final int DARK = 40;
+  static final int LIGHT = 210;
+
+  final byte[] luma;
+  final int width;
+  final int height;
+
+  private SymbolRenderer(byte[] luma, int width, int height) {
+    this.luma = luma;
+    this.width = width;
+    this.height = height;
+  }
+
+  /**
+   * Renders {@code modules}, indexed by row then column, centered in a light frame large enough to
+   * hold it at any angle. The symbol is mirrored left to right first, then turned clockwise.
+   */
+  static SymbolRenderer render(
+      boolean[][] modules, double modulePixels, double degrees, boolean mirrored) {
+    int rows = modules.length;
+    int columns = modules[0].length;
+    double diagonal = Math.hypot(rows, columns) * modulePixels;
+    int size = (int) Math.ceil(diagonal) + 16;
+    byte[] luma = new byte[size * size];
+    double radians = Math.toRadians(degrees);
+    double cos = Math.cos(radians);
+    double sin = Math.sin(radians);
+    for (int y = 0; y < size; y++) {
+      for (int x = 0; x < size; x++) {
+        double dx = x + 0.5 - size / 2.0;
+        double dy = y + 0.5 - size / 2.0;
+        double u = (cos * dx + sin * dy) / modulePixels;
+        double v = (-sin * dx + cos * dy) / modulePixels;
+        if (mirrored) {
+          u = -u;
+        }
+        int column = (int) Math.floor(u + columns / 2.0);
+        int row = (int) Math.floor(v + rows / 2.0);
+        boolean dark =
+            row >= 0 && row < rows && column >= 0 && column < columns && modules[row][column];
+        luma[y * size + x] = (byte) (dark ? DARK : LIGHT);
+      }
+    }
+    return new SymbolRenderer(luma, size, size);
+  }
+
+  /** Returns {@code modules} inside a light quiet zone {@code margin} modules wide. */
+  static boolean[][] withQuietZone(boolean[][] modules, int margin) {
+    boolean[][] padded = new boolean[modules.length + 2 * margin][];
+    for (int row = 0; row < padded.length; row++) {
+      padded[row] = new boolean[modules[0].length + 2 * margin];
+      if (row >= margin && row < margin + modules.length) {
+        System.arraycopy(modules[row - margin], 0, padded[row], margin, modules[0].length);
+      }
+    }
+    return padded;
+  }
+}
@@ -0,0 +1,194 @@
+package io.flutter.plugins.camera;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Steps the image stream frame rate, analysis resolution and encoder bitrate along a ladder of
+ * {@link Level}s as the device heats up or falls behind, and back once it recovers.
+ *
+ * <p>Stream frames are rate limited to the current level and measured in windows of {@link
+ * #WINDOW_NANOS}. At the end of a window the controller steps down if the thermal status is
+ * severe, if fewer than {@link #MIN_DELIVERED_RATIO} of the requested frames arrived, or if
+ * processing a frame took more than {@link #MAX_PROCESSING_RATIO} of the frame interval. It steps
+ * back up after {@link #RECOVERY_WINDOWS} healthy windows in a row below a moderate thermal
+ * status. A level that fails again right after being stepped up to doubles the healthy windows
+ * needed next time, so a camera that simply can't sustain it, in low light for example, doesn't
+ * oscillate. All calls must be made on one thread.
+ */
+final class AdaptiveQualityController {
+  /** Reports the device's thermal status, as one of the {@code THERMAL_STATUS_} constants. */
+  interface ThermalSource {
+    int getThermalStatus();
+  }
+
+  interface Listener {
+    void onQualityChanged(int levelIndex, Level level, String reason);
+  }
+
+  /** One step of the ladder. Steps are ordered from the highest quality down. */
+  static final class Level {
+    /** The most image stream frames per second. */
+    final int streamFps;
+    /** The analysis outputs' size as a fraction of the size they were added with. */
+    final double analysisScale;
+    /** The encoder bitrate as a fraction of the full one, for recordings started at this level. */
+    final double bitRateScale;
+
+    Level(int streamFps, double analysisScale, double bitRateScale) {
+      this.streamFps = streamFps;
+      this.analysisScale = analysisScale;
+      this.bitRateScale = bitRateScale;
+    }
+
+    /** @throws IllegalArgumentException if a value is missing or out of range. */
+    static Level fromMap(Map<?, ?> map) {
+      Object streamFps = map.get("streamFps");
+      Object analysisScale = map.get("analysisScale");
+      Object bitRateScale = map.get("bitRateScale");
+      if (!(streamFps instanceof Number)
+          || !(analysisScale instanceof Number)
+          || !(bitRateScale instanceof Number)) {
+        throw new IllegalArgumentException("A quality level needs every value.");
+      }
+      Level level =
+          new Level(
+              ((Number) streamFps).intValue(),
+              ((Number) analysisScale).doubleValue(),
+              ((Number) bitRateScale).doubleValue());
+      if (level.streamFps <= 0
+          || level.analysisScale <= 0
+          || level.analysisScale > 1
+          || level.bitRateScale <= 0
+          || level.bitRateScale > 1) {
+        throw new IllegalArgumentException("A quality level value is out of range.");
+      }
+      return level;
+    }
+  }
+
+  static final List<Level> DEFAULT_LADDER =
+      Collections.unmodifiableList(
+          Arrays.asList(
+              new Level(30, 1, 1),
+              new Level(24, 0.75, 0.75),
+              new Level(15, 0.5, 0.5),
+              new Level(10, 0.5, 0.35)));
+
+  // android.os.PowerManager.THERMAL_STATUS_ values.
+  static final int THERMAL_STATUS_NONE = 0;
+  static final int THERMAL_STATUS_MODERATE = 2;
+  static final int THERMAL_STATUS_SEVERE = 3;
+
+  static final long WINDOW_NANOS = 2_000_000_000L;
+  static final double MIN_DELIVERED_RATIO = 0.8;
+  static final double MAX_PROCESSING_RATIO = 0.8;
+  static final int RECOVERY_WINDOWS = 5;
+  static final int MAX_RECOVERY_WINDOWS = 60;
+
+  private final List<Level> ladder;
+  private final ThermalSource thermalSource;
+  private final Listener listener;
+  private final FrameRateLimiter rateLimiter;
+  private int levelIndex;
+  private int healthyWindows;
+  private int recoveryWindows = RECOVERY_WINDOWS;
+  // Whether the current level was stepped up to and hasn't proven itself yet.
+  private boolean probing;
+
+  private long windowStartNanos;
+  private int windowFrames;
+  private long windowProcessingNanos;
+
+  /** @throws IllegalArgumentException if {@code ladder} is empty. */
+  AdaptiveQualityController(List<Level> ladder, ThermalSource thermalSource, Listener listener) {
+    if (ladder.isEmpty()) {
+      throw new IllegalArgumentException("The quality ladder has no levels.");
+    }
+    this.ladder = new ArrayList<>(ladder);
+    this.thermalSource = thermalSource;
+    this.listener = listener;
+    this.rateLimiter = new FrameRateLimiter(getLevel().streamFps);
+  }
+
+  Level getLevel() {
+    return ladder.get(levelIndex);
+  }
+
+  int getLevelIndex() {
+    return levelIndex;
+  }
+
+  /** Returns whether the stream frame taken at {@code timestampNanos} fits the frame rate. */
+  boolean acceptFrame(long timestampNanos) {
+    return rateLimiter.accept(timestampNanos);
+  }
+
+  /** Records an accepted frame that took {@code processingNanos} to publish. */
+  void onFrameProcessed(long timestampNanos, long processingNanos) {
+    if (windowFrames == 0) {
+      // The window starts at its first frame, so a stream that was stopped doesn't count as slow.
+      windowStartNanos = timestampNanos;
+      windowFrames = 1;
+      windowProcessingNanos = processingNanos;
+      return;
+    }
+    windowFrames++;
+    windowProcessingNanos += processingNanos;
+    long elapsedNanos = timestampNanos - windowStartNanos;
+    if (elapsedNanos >= WINDOW_NANOS) {
+      evaluate((windowFrames - 1) * 1e9 / elapsedNanos, windowProcessingNanos / windowFrames);
+      windowFrames = 0;
+    }
+  }
+
+  private void evaluate(double deliveredFps, long meanProcessingNanos) {
+    int thermalStatus = thermalSource.getThermalStatus();
+    int requestedFps = getLevel().streamFps;
+    String reason = null;
+    if (thermalStatus >= THERMAL_STATUS_SEVERE) {
+      reason = "thermal";
+    } else if (deliveredFps < MIN_DELIVERED_RATIO * requestedFps) {
+      reason = "frameDrops";
+    } else if (meanProcessingNanos > MAX_PROCESSING_RATIO * 1e9 / requestedFps) {
+      reason = "processingTime";
+    }
+    if (reason != null) {
+      if (probing) {
+        recoveryWindows = Math.min(MAX_RECOVERY_WINDOWS, recoveryWindows * 2);
+        probing = false;
+      }
+      step(1, reason);
+      return;
+    }
+
+    if (thermalStatus >= THERMAL_STATUS_MODERATE) {
+      healthyWindows = 0;
+      return;
+    }
+    healthyWindows++;
+    if (probing && healthyWindows >= RECOVERY_WINDOWS) {
+      probing = false;
+      recoveryWindows = RECOVERY_WINDOWS;
+    }
+    if (healthyWindows >= recoveryWindows && step(-1, "recovered")) {
+      probing = true;
+    }
+  }
+
+  // Returns whether the level changed.
+  private boolean step(int direction, String reason) {
+    healthyWindows = 0;
+    int index = Math.max(0, Math.min(ladder.size() - 1, levelIndex + direction));
+    if (index == levelIndex) {
+      return false;
+    }
+    levelIndex = index;
+    rateLimiter.setMaxFps(getLevel().streamFps);
+    listener.onQualityChanged(levelIndex, getLevel(), reason);
+    return true;
+  }
+}
@@ -0,0 +1,128 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.EventChannel;
+import java.util.Map;
+
+/**
+ * An extra YUV output of the capture session at its own size, for analyzers that want smaller
+ * frames than the image stream.
+ *
+ * <p>The ISP scales every output of the session, so a small analysis frame costs no CPU
+ * downscaling. Each output still receives every sensor frame; frames arriving sooner than {@code
+ * 1 / maxFps} after the last delivered one are closed before their planes are copied. Delivered
+ * frames are sent like image stream frames, plus an {@code outputId} entry, since all outputs of
+ * a camera share one event channel.
+ *
+ * <p>The output keeps its size and rate while its frame source is detached, so a suspended camera
+ * can attach a new reader on resume.
+ */
+final class AnalysisOutput implements FrameSource.Listener {
+  private final int id;
+  private final int width;
+  private final int height;
+  private final FrameRateLimiter rateLimiter;
+  private final PipelineMetrics metrics;
+  private FrameSource source;
+  private ImageStreamPublisher publisher;
+
+  /** @param maxFps the most frames per second to deliver, or 0 to deliver every frame. */
+  AnalysisOutput(int id, int width, int height, double maxFps, PipelineMetrics metrics) {
+    this.id = id;
+    this.width = width;
+    this.height = height;
+    this.rateLimiter = new FrameRateLimiter(maxFps);
+    this.metrics = metrics;
+  }
+
+  int getId() {
+    return id;
+  }
+
+  int getWidth() {
+    return width;
+  }
+
+  int getHeight() {
+    return height;
+  }
+
+  /** Returns the attached frame source, or null while detached. */
+  FrameSource getSource() {
+    return source;
+  }
+
+  /** Delivers the frames of {@code source}, which must have this output's size. */
+  void attach(FrameSource source) {
+    detach();
+    this.source = source;
+    rateLimiter.reset();
+    source.setListener(this);
+  }
+
+  /** Closes the attached frame source, if any. */
+  void detach() {
+    if (source != null) {
+      source.setListener(null);
+      source.close();
+      source = null;
+    }
+  }
+
+  /** Sets the sink of the analysis channel, or null while Dart isn't listening. */
+  void setSink(EventChannel.EventSink sink) {
+    publisher =
+        sink == null
+            ? null
+            : new ImageStreamPublisher(
+                // Analysis frames aren't converted, so nothing is sent from another thread.
+                new TaggedSink(sink, id), null, Runnable::run, metrics, ImageStreamOptions.DEFAULT);
+  }
+
+  @Override
+  public void onFrameAvailable(FrameSource source) {
+    PipelineTracer.begin(PipelineTracer.Event.IMAGE_ACQUIRE);
+    FrameSource.Frame frame = source.acquireLatestFrame();
+    PipelineTracer.end(PipelineTracer.Event.IMAGE_ACQUIRE);
+    if (frame == null) return;
+
+    try {
+      if (publisher == null) {
+        return;
+      }
+      if (!rateLimiter.accept(frame.getTimestamp())) {
+        return;
+      }
+      publisher.publish(frame);
+    } finally {
+      frame.close();
+    }
+  }
+
+  private static final class TaggedSink implements EventChannel.EventSink {
+    private final EventChannel.EventSink sink;
+    private final int id;
+
+    TaggedSink(EventChannel.EventSink sink, int id) {
+      this.sink = sink;
+      this.id = id;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void success(Object event) {
+      // The publisher only sends maps it created, so they can be tagged in place.
+      ((Map<String, Object>) event).put("outputId", id);
+      sink.success(event);
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {
+      sink.error(errorCode, errorMessage, errorDetails);
+    }
+
+    @Override
+    public void endOfStream() {
+      sink.endOfStream();
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.MethodChannel.Result;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Follows an autofocus trigger through the capture results and replies once the lens locks.
+ *
+ * <p>Results of requests submitted before the trigger still report the previous focus state, so
+ * the AF state is only looked at from the result of the trigger request on. The lock completes
+ * when the state reaches FOCUSED_LOCKED or NOT_FOCUSED_LOCKED, or after {@link #TIMEOUT_NANOS} on
+ * devices that never report a lock. Capture results must arrive on the thread that starts locks.
+ */
+final class AutoFocusStateMachine {
+  // android.hardware.camera2.CaptureResult.CONTROL_AF_STATE values.
+  static final int AF_STATE_FOCUSED_LOCKED = 4;
+  static final int AF_STATE_NOT_FOCUSED_LOCKED = 5;
+  static final long TIMEOUT_NANOS = 3_000_000_000L;
+
+  private enum State {
+    IDLE,
+    WAITING_FOR_TRIGGER,
+    SCANNING,
+  }
+
+  private final PipelineMetrics metrics;
+  private State state = State.IDLE;
+  private Result result;
+  private long startNanos;
+
+  AutoFocusStateMachine(PipelineMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Starts following a trigger that is about to be submitted, failing the lock in progress if
+   * there is one. {@code result} receives {@code focused}, {@code timedOut} and {@code
+   * convergenceMillis}, measured from this call.
+   */
+  void start(Result result) {
+    cancel("Focus was locked again before converging.");
+    this.result = result;
+    startNanos = System.nanoTime();
+    state = State.WAITING_FOR_TRIGGER;
+  }
+
+  /**
+   * Advances the state machine with one capture result.
+   *
+   * @param isTrigger whether the result's request carried CONTROL_AF_TRIGGER_START.
+   * @param afState the result's CONTROL_AF_STATE, or null if the device doesn't report it.
+   */
+  void onCaptureCompleted(boolean isTrigger, Integer afState) {
+    if (state == State.IDLE) {
+      return;
+    }
+    if (state == State.WAITING_FOR_TRIGGER && isTrigger) {
+      state = State.SCANNING;
+    }
+    if (state == State.SCANNING && afState != null) {
+      if (afState == AF_STATE_FOCUSED_LOCKED) {
+        finish(true, false);
+        return;
+      } else if (afState == AF_STATE_NOT_FOCUSED_LOCKED) {
+        finish(false, false);
+        return;
+      }
+    }
+    if (System.nanoTime() - startNanos >= TIMEOUT_NANOS) {
+      finish(false, true);
+    }
+  }
+
+  boolean isLocking() {
+    return state != State.IDLE;
+  }
+
+  /** Fails the lock in progress, for example because the session was closed. */
+  void cancel(String reason) {
+    if (state == State.IDLE) {
+      return;
+    }
+    Result pending = result;
+    reset();
+    pending.error("focusCancelled", reason, null);
+  }
+
+  private void finish(boolean focused, boolean timedOut) {
+    long convergenceNanos = System.nanoTime() - startNanos;
+    if (!timedOut) {
+      metrics.recordSince(PipelineMetrics.Stage.FOCUS_CONVERGENCE, startNanos);
+    }
+    Result pending = result;
+    reset();
+
+    Map<String, Object> reply = new HashMap<>();
+    reply.put("focused", focused);
+    reply.put("timedOut", timedOut);
+    reply.put("convergenceMillis", convergenceNanos / 1e6);
+    pending.success(reply);
+  }
+
+  private void reset() {
+    state = State.IDLE;
+    result = null;
+  }
+}
@@ -0,0 +1,69 @@
+package io.flutter.plugins.camera;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** A decoded barcode and where it is in the frame. */
+final class Barcode {
+  enum Format {
+    QR_CODE("qrCode"),
+    EAN_13("ean13"),
+    EAN_8("ean8"),
+    UPC_A("upcA"),
+    CODE_128("code128");
+
+    final String key;
+
+    Format(String key) {
+      this.key = key;
+    }
+
+    /** @throws IllegalArgumentException if no format has {@code key}. */
+    static Format fromKey(Object key) {
+      for (Format format : values()) {
+        if (format.key.equals(key)) {
+          return format;
+        }
+      }
+      throw new IllegalArgumentException("Unknown barcode format " + key + ".");
+    }
+  }
+
+  final Format format;
+  final String text;
+  /**
+   * The x and y of the symbol's corners in frame pixels, clockwise from the corner that is top
+   * left when the symbol is upright. A linear barcode spans the rows it was read on.
+   */
+  final float[] corners;
+
+  Barcode(Format format, String text, float[] corners) {
+    this.format = format;
+    this.text = text;
+    this.corners = corners;
+  }
+
+  /** Returns this barcode moved by {@code dx} and {@code dy}, from a crop to its frame. */
+  Barcode offset(float dx, float dy) {
+    float[] moved = corners.clone();
+    for (int i = 0; i < moved.length; i += 2) {
+      moved[i] += dx;
+      moved[i + 1] += dy;
+    }
+    return new Barcode(format, text, moved);
+  }
+
+  Map<String, Object> toMap() {
+    List<Double> points = new ArrayList<>();
+    for (float value : corners) {
+      points.add((double) value);
+    }
+    Map<String, Object> map = new HashMap<>();
+    map.put("format", format.key);
+    map.put("text", text);
+    map.put("corners", points);
+    return map;
+  }
+}
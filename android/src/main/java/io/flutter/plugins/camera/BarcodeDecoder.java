@@ -0,0 +1,153 @@
+package io.flutter.plugins.camera;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Binarizes a luma image and reads the barcodes of the requested formats from it.
+ *
+ * <p>Each pixel is compared against the average black point of the 5 by 5 blocks of 8 by 8 pixels
+ * around it, so shadows and gradients across the frame don't swallow bars. Blocks with little
+ * contrast take their neighbors' black point, or count as background, so flat areas don't turn
+ * into noise. The binarized image is read by a {@link QrCodeReader} and a {@link
+ * LinearBarcodeReader}. Buffers are kept between frames of the same size, so a decoder must only
+ * be used by one thread at a time.
+ */
+final class BarcodeDecoder {
+  private static final int BLOCK_SIZE_POWER = 3;
+  private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER;
+  // Blocks whose darkest and lightest pixels are closer than this have no edges to threshold.
+  private static final int MIN_DYNAMIC_RANGE = 24;
+
+  private final Set<Barcode.Format> formats;
+  private final boolean readsQrCodes;
+  private final boolean readsLinearBarcodes;
+  private int width;
+  private int height;
+  private byte[] dark;
+  private int[] blackPoints;
+  private QrCodeReader qrReader;
+  private LinearBarcodeReader linearReader;
+
+  BarcodeDecoder(Set<Barcode.Format> formats) {
+    this.formats = formats;
+    readsQrCodes = formats.contains(Barcode.Format.QR_CODE);
+    readsLinearBarcodes =
+        formats.contains(Barcode.Format.EAN_13)
+            || formats.contains(Barcode.Format.EAN_8)
+            || formats.contains(Barcode.Format.UPC_A)
+            || formats.contains(Barcode.Format.CODE_128);
+  }
+
+  /**
+   * Returns the barcodes in {@code luma}, one byte per pixel in rows of {@code width}, with corners
+   * in its pixels.
+   */
+  List<Barcode> decode(byte[] luma, int width, int height) {
+    if (width != this.width || height != this.height) {
+      this.width = width;
+      this.height = height;
+      dark = new byte[width * height];
+      blackPoints = new int[blockCount(width) * blockCount(height)];
+      qrReader = new QrCodeReader(dark, width, height);
+      linearReader = new LinearBarcodeReader(dark, width, height, formats);
+    }
+    binarize(luma);
+
+    List<Barcode> barcodes = new ArrayList<>();
+    if (readsQrCodes) {
+      Barcode qrCode = qrReader.read();
+      if (qrCode != null) {
+        barcodes.add(qrCode);
+      }
+    }
+    if (readsLinearBarcodes) {
+      barcodes.addAll(linearReader.read());
+    }
+    return barcodes;
+  }
+
+  private static int blockCount(int pixels) {
+    return (pixels + BLOCK_SIZE - 1) >> BLOCK_SIZE_POWER;
+  }
+
+  private void binarize(byte[] luma) {
+    int columns = blockCount(width);
+    int rows = blockCount(height);
+    computeBlackPoints(luma, columns, rows);
+    for (int blockRow = 0; blockRow < rows; blockRow++) {
+      int top = Math.min(blockRow << BLOCK_SIZE_POWER, height - BLOCK_SIZE);
+      int aroundRow = Math.min(Math.max(blockRow, 2), rows - 3);
+      for (int blockColumn = 0; blockColumn < columns; blockColumn++) {
+        int left = Math.min(blockColumn << BLOCK_SIZE_POWER, width - BLOCK_SIZE);
+        int aroundColumn = Math.min(Math.max(blockColumn, 2), columns - 3);
+        int sum = 0;
+        int count = 0;
+        for (int row = aroundRow - 2; row <= aroundRow + 2; row++) {
+          if (row < 0 || row >= rows) {
+            continue;
+          }
+          for (int column = aroundColumn - 2; column <= aroundColumn + 2; column++) {
+            if (column >= 0 && column < columns) {
+              sum += blackPoints[row * columns + column];
+              count++;
+            }
+          }
+        }
+        thresholdBlock(luma, Math.max(0, left), Math.max(0, top), sum / count);
+      }
+    }
+  }
+
+  private void thresholdBlock(byte[] luma, int left, int top, int threshold) {
+    int bottom = Math.min(top + BLOCK_SIZE, height);
+    int right = Math.min(left + BLOCK_SIZE, width);
+    for (int y = top; y < bottom; y++) {
+      int offset = y * width;
+      for (int x = left; x < right; x++) {
+        dark[offset + x] = (byte) ((luma[offset + x] & 0xff) <= threshold ? 1 : 0);
+      }
+    }
+  }
+
+  // Blocks at the right and bottom edges overlap their neighbors rather than being partial.
+  private void computeBlackPoints(byte[] luma, int columns, int rows) {
+    for (int blockRow = 0; blockRow < rows; blockRow++) {
+      int top = Math.max(0, Math.min(blockRow << BLOCK_SIZE_POWER, height - BLOCK_SIZE));
+      int bottom = Math.min(top + BLOCK_SIZE, height);
+      for (int blockColumn = 0; blockColumn < columns; blockColumn++) {
+        int left = Math.max(0, Math.min(blockColumn << BLOCK_SIZE_POWER, width - BLOCK_SIZE));
+        int right = Math.min(left + BLOCK_SIZE, width);
+        int sum = 0;
+        int min = 255;
+        int max = 0;
+        for (int y = top; y < bottom; y++) {
+          int offset = y * width;
+          for (int x = left; x < right; x++) {
+            int value = luma[offset + x] & 0xff;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+          }
+        }
+        int average = sum / ((bottom - top) * (right - left));
+        if (max - min <= MIN_DYNAMIC_RANGE) {
+          // A flat block is background unless it is as dark as the edges next to it.
+          average = min / 2;
+          if (blockRow > 0 && blockColumn > 0) {
+            int neighbors =
+                (blackPoints[(blockRow - 1) * columns + blockColumn]
+                        + 2 * blackPoints[blockRow * columns + blockColumn - 1]
+                        + blackPoints[(blockRow - 1) * columns + blockColumn - 1])
+                    / 4;
+            if (min < neighbors) {
+              average = neighbors;
+            }
+          }
+        }
+        blackPoints[blockRow * columns + blockColumn] = average;
+      }
+    }
+  }
+}
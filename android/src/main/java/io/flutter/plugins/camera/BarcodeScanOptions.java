@@ -0,0 +1,52 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.MethodCall;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** What startBarcodeScanning asked for: which formats to look for, and where. */
+final class BarcodeScanOptions {
+  final Set<Barcode.Format> formats;
+  /** The part of the frame to scan, as left, top, right and bottom from 0 to 1. */
+  final double[] region;
+
+  BarcodeScanOptions(Set<Barcode.Format> formats, double[] region) {
+    this.formats = formats;
+    this.region = region;
+  }
+
+  /** @throws IllegalArgumentException if an option has an unsupported value. */
+  static BarcodeScanOptions fromMethodCall(MethodCall call) {
+    List<?> formatKeys = call.argument("formats");
+    Set<Barcode.Format> formats = EnumSet.allOf(Barcode.Format.class);
+    if (formatKeys != null) {
+      if (formatKeys.isEmpty()) {
+        throw new IllegalArgumentException("At least one barcode format is needed.");
+      }
+      formats = EnumSet.noneOf(Barcode.Format.class);
+      for (Object key : formatKeys) {
+        formats.add(Barcode.Format.fromKey(key));
+      }
+    }
+
+    Map<?, ?> scanRegion = call.argument("scanRegion");
+    double[] region = {0, 0, 1, 1};
+    if (scanRegion != null) {
+      String[] keys = {"left", "top", "right", "bottom"};
+      for (int i = 0; i < keys.length; i++) {
+        Object value = scanRegion.get(keys[i]);
+        if (!(value instanceof Number)) {
+          throw new IllegalArgumentException("scanRegion needs a " + keys[i] + ".");
+        }
+        region[i] = ((Number) value).doubleValue();
+      }
+      if (region[0] < 0 || region[1] < 0 || region[2] > 1 || region[3] > 1
+          || region[0] >= region[2] || region[1] >= region[3]) {
+        throw new IllegalArgumentException("scanRegion must be a non-empty part of [0, 1].");
+      }
+    }
+    return new BarcodeScanOptions(formats, region);
+  }
+}
@@ -0,0 +1,167 @@
+package io.flutter.plugins.camera;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decodes barcodes in image stream frames with a {@link BarcodeDecoder}.
+ *
+ * <p>The scan region of the Y plane is copied on the stream's thread, and decoded on a barcode
+ * worker shared by every camera, which outlives the scanner. Only one frame is decoded at a time:
+ * frames that arrive while the worker is busy are skipped without being copied, so a slow decode
+ * lowers the attempt rate instead of queueing frames. Frames and results are on the main thread,
+ * and only frames with barcodes are reported.
+ */
+final class BarcodeScanner {
+  interface Listener {
+    /**
+     * Called with the barcodes of a frame, their corners in frame pixels.
+     *
+     * @param latencyNanos from the frame's arrival to its barcodes being decoded.
+     * @return whether the barcodes reached Dart.
+     */
+    boolean onBarcodes(
+        List<Barcode> barcodes, int width, int height, long timestamp, long latencyNanos);
+  }
+
+  // A QR code of version 1 needs 21 modules plus its quiet zone, at least a pixel each.
+  private static final int MIN_REGION_SIZE = 29;
+
+  private final BarcodeScanOptions options;
+  private final PipelineMetrics metrics;
+  private final Listener listener;
+  private final Executor worker;
+  private final Executor mainExecutor;
+  private final AtomicBoolean decoding = new AtomicBoolean();
+  // Only accessed by the worker.
+  private final BarcodeDecoder decoder;
+  // Filled on the main thread while no decode is in flight, then read by the worker.
+  private byte[] luma = new byte[0];
+  // Only accessed on the main thread.
+  private final long startNanos = System.nanoTime();
+  private long attempts;
+  private long skippedFrames;
+  private long successfulAttempts;
+  private long firstResultNanos = -1;
+  private boolean closed;
+
+  /**
+   * @param worker decodes frames one at a time, and isn't shut down by {@link #close}.
+   * @param mainExecutor runs the delivery of results on the thread frames arrive on.
+   */
+  BarcodeScanner(
+      BarcodeScanOptions options,
+      PipelineMetrics metrics,
+      Executor worker,
+      Executor mainExecutor,
+      Listener listener) {
+    this.options = options;
+    this.worker = worker;
+    this.mainExecutor = mainExecutor;
+    this.metrics = metrics;
+    this.listener = listener;
+    this.decoder = new BarcodeDecoder(options.formats);
+  }
+
+  /** Copies the scan region of {@code frame} for decoding, unless a decode is in flight. */
+  void onFrame(FrameSource.Frame frame) {
+    final long arrivalNanos = System.nanoTime();
+    if (!decoding.compareAndSet(false, true)) {
+      skippedFrames++;
+      return;
+    }
+    final int frameWidth = frame.getWidth();
+    final int frameHeight = frame.getHeight();
+    final int left = (int) (options.region[0] * frameWidth);
+    final int top = (int) (options.region[1] * frameHeight);
+    final int width = (int) (options.region[2] * frameWidth) - left;
+    final int height = (int) (options.region[3] * frameHeight) - top;
+    if (width < MIN_REGION_SIZE || height < MIN_REGION_SIZE) {
+      decoding.set(false);
+      skippedFrames++;
+      return;
+    }
+    copyRegion(frame, left, top, width, height);
+    attempts++;
+    final long timestamp = frame.getTimestamp();
+    final byte[] pixels = luma;
+    worker.execute(
+        () -> {
+          List<Barcode> barcodes;
+          try {
+            barcodes = decoder.decode(pixels, width, height);
+          } catch (RuntimeException e) {
+            // A pathological frame shouldn't stop the scanner.
+            barcodes = new ArrayList<>();
+          }
+          final List<Barcode> found = new ArrayList<>(barcodes.size());
+          for (Barcode barcode : barcodes) {
+            found.add(barcode.offset(left, top));
+          }
+          decoding.set(false);
+          mainExecutor.execute(
+              () -> deliver(found, frameWidth, frameHeight, timestamp, arrivalNanos));
+        });
+  }
+
+  private void copyRegion(FrameSource.Frame frame, int left, int top, int width, int height) {
+    if (luma.length != width * height) {
+      luma = new byte[width * height];
+    }
+    ByteBuffer yPlane = frame.getPlaneBuffer(0).duplicate();
+    int rowStride = frame.getRowStride(0);
+    int pixelStride = frame.getPixelStride(0);
+    for (int row = 0; row < height; row++) {
+      int offset = (top + row) * rowStride + left * pixelStride;
+      if (pixelStride == 1) {
+        yPlane.position(offset);
+        yPlane.get(luma, row * width, width);
+      } else {
+        for (int column = 0; column < width; column++) {
+          luma[row * width + column] = yPlane.get(offset + column * pixelStride);
+        }
+      }
+    }
+  }
+
+  private void deliver(
+      List<Barcode> barcodes, int width, int height, long timestamp, long arrivalNanos) {
+    if (closed || barcodes.isEmpty()) {
+      return;
+    }
+    long nowNanos = System.nanoTime();
+    successfulAttempts++;
+    metrics.recordSince(PipelineMetrics.Stage.BARCODE_SCAN, arrivalNanos);
+    boolean delivered =
+        listener.onBarcodes(barcodes, width, height, timestamp, nowNanos - arrivalNanos);
+    if (delivered && firstResultNanos < 0) {
+      firstResultNanos = nowNanos - startNanos;
+    }
+  }
+
+  /**
+   * Returns {@code attempts}, the frames decoded, {@code attemptsPerSecond} since scanning started,
+   * {@code skippedFrames}, those arriving while a decode was in flight, {@code
+   * successfulAttempts}, those with barcodes, and {@code firstResultMillis}, from the start to the
+   * first barcode reaching Dart, or null before one has.
+   */
+  Map<String, Object> getStats() {
+    double seconds = (System.nanoTime() - startNanos) / 1e9;
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("attempts", attempts);
+    stats.put("attemptsPerSecond", seconds > 0 ? attempts / seconds : 0.0);
+    stats.put("skippedFrames", skippedFrames);
+    stats.put("successfulAttempts", successfulAttempts);
+    stats.put("firstResultMillis", firstResultNanos < 0 ? null : firstResultNanos / 1e6);
+    return stats;
+  }
+
+  void close() {
+    closed = true;
+  }
+}
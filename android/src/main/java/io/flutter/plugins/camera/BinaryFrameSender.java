@@ -0,0 +1,111 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.BinaryMessenger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Sends image stream frames as raw messages on {@link #CHANNEL}, one per frame, so they skip the
+ * standard codec's map encoding.
+ *
+ * <p>A message is little endian: a {@value #HEADER_SIZE} byte header of version, plane count,
+ * sequence number, timestamp, format, width, height and conversion time in microseconds (-1 if
+ * the frame wasn't converted), then one {@value #PLANE_HEADER_SIZE} byte entry per plane of row
+ * stride, pixel stride and length, then the plane bytes back to back. It is written into a direct
+ * buffer that is reused for every frame; the messenger copies the message before send returns.
+ */
+final class BinaryFrameSender {
+  static final String CHANNEL = "plugins.flutter.io/camera/imageStreamFrames";
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 40;
+  static final int PLANE_HEADER_SIZE = 12;
+
+  private final BinaryMessenger messenger;
+  private ByteBuffer message = ByteBuffer.allocateDirect(0);
+  private long sequence;
+
+  BinaryFrameSender(BinaryMessenger messenger) {
+    this.messenger = messenger;
+  }
+
+  /** Numbers the next frame 0, as the first frame of a new stream. */
+  void resetSequence() {
+    sequence = 0;
+  }
+
+  /** Writes the planes of {@code frame} as the next message. */
+  void writePlanes(FrameSource.Frame frame) {
+    int planeCount = frame.getPlaneCount();
+    int payloadSize = 0;
+    for (int i = 0; i < planeCount; i++) {
+      payloadSize += frame.getPlaneBuffer(i).remaining();
+    }
+    writeHeader(
+        frame.getTimestamp(),
+        frame.getWidth(),
+        frame.getHeight(),
+        frame.getFormat(),
+        planeCount,
+        -1,
+        payloadSize);
+    for (int i = 0; i < planeCount; i++) {
+      message.putInt(frame.getRowStride(i));
+      message.putInt(frame.getPixelStride(i));
+      message.putInt(frame.getPlaneBuffer(i).remaining());
+    }
+    for (int i = 0; i < planeCount; i++) {
+      message.put(frame.getPlaneBuffer(i).duplicate());
+    }
+  }
+
+  /** Writes {@code rgb}, converted from a frame of this timestamp and size, as the next message. */
+  void writeRgb(
+      long timestamp,
+      int width,
+      int height,
+      YuvToRgbConverter.OutputFormat outputFormat,
+      byte[] rgb,
+      long conversionMicros) {
+    writeHeader(
+        timestamp,
+        width,
+        height,
+        outputFormat.androidFormat,
+        1,
+        (int) conversionMicros,
+        rgb.length);
+    message.putInt(width * outputFormat.bytesPerPixel);
+    message.putInt(outputFormat.bytesPerPixel);
+    message.putInt(rgb.length);
+    message.put(rgb);
+  }
+
+  /** Sends the message written last. */
+  void send() {
+    // The messenger sends the bytes before the buffer's position.
+    messenger.send(CHANNEL, message);
+  }
+
+  private void writeHeader(
+      long timestamp,
+      int width,
+      int height,
+      int format,
+      int planeCount,
+      int conversionMicros,
+      int payloadSize) {
+    int size = HEADER_SIZE + planeCount * PLANE_HEADER_SIZE + payloadSize;
+    if (message.capacity() < size) {
+      message = ByteBuffer.allocateDirect(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+    message.clear();
+    message.putInt(VERSION);
+    message.putInt(planeCount);
+    message.putLong(sequence++);
+    message.putLong(timestamp);
+    message.putInt(format);
+    message.putInt(width);
+    message.putInt(height);
+    message.putInt(conversionMicros);
+  }
+}
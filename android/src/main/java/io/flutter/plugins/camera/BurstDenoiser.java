@@ -0,0 +1,198 @@
+package io.flutter.plugins.camera;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.os.Handler;
+import android.os.Looper;
+import io.flutter.plugin.common.MethodChannel.Result;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Merges the frames of a burst capture into one JPEG with a {@link BurstMerger}.
+ *
+ * <p>Frames arrive on the main thread and are handed to a worker thread, shared by all cameras,
+ * which adds each one to the merger and closes it, so the image reader gets its buffer back as soon
+ * as the frame is copied. Once the last frame is in, the worker encodes the average with {@link
+ * YuvImage}. The merging itself runs on the merger's fork-join pool. One burst runs at a time.
+ *
+ * <p>A burst's buffers, {@link #workingBytes} of them, are allocated with its first frame and
+ * dropped before it replies. Results are delivered on the main thread once the worker holds none of
+ * the burst's frames, so the reader can be closed from the reply.
+ */
+final class BurstDenoiser {
+  private static final int JPEG_QUALITY = 100;
+
+  private static final class Burst {
+    final File file;
+    final int frameCount;
+    final ExifWriter exif;
+    final Result result;
+    final long startNanos;
+    // Only accessed on the main thread.
+    int received;
+    boolean replied;
+    // Lets the worker skip the rest of a burst that already failed.
+    volatile boolean failed;
+    // Only accessed on the worker.
+    BurstMerger merger;
+    byte[] nv21;
+
+    Burst(File file, int frameCount, ExifWriter exif, long startNanos, Result result) {
+      this.file = file;
+      this.frameCount = frameCount;
+      this.exif = exif;
+      this.startNanos = startNanos;
+      this.result = result;
+    }
+  }
+
+  private static final ExecutorService worker = Executors.newSingleThreadExecutor();
+
+  private final PipelineMetrics metrics;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private Burst burst;
+
+  BurstDenoiser(PipelineMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Returns about how many bytes a burst of {@code width} by {@code height} frames holds while it
+   * is merged and encoded: the merger's buffers, the NV21 image and the JPEG.
+   */
+  static long workingBytes(int width, int height) {
+    return BurstMerger.workingBytes(width, height)
+        + 2 * CameraMemoryBudget.bufferBytes(width, height, CameraMemoryBudget.FORMAT_JPEG);
+  }
+
+  /**
+   * Starts a burst that ends after {@code frameCount} frames, replacing any burst in progress.
+   *
+   * @param exif the EXIF segment written into the JPEG.
+   * @param startNanos when the burst was asked for, which the burstPicture metric counts from.
+   */
+  void start(File file, int frameCount, ExifWriter exif, long startNanos, Result result) {
+    fail("burstFailed", "A new burst was started.");
+    burst = new Burst(file, frameCount, exif, startNanos, result);
+  }
+
+  /** Adds {@code frame} to the current burst, and closes it once it has been copied. */
+  void onFrame(final FrameSource.Frame frame) {
+    final Burst burst = this.burst;
+    if (burst == null) {
+      frame.close();
+      return;
+    }
+    final boolean first = burst.received == 0;
+    final boolean last = ++burst.received == burst.frameCount;
+    if (last) {
+      this.burst = null;
+    }
+    worker.execute(() -> merge(burst, frame, first, last));
+  }
+
+  /**
+   * Fails the current burst, for example because a capture failed or the camera closed. It replies
+   * once the worker is done with the frames it already has.
+   */
+  void fail(final String code, final String reason) {
+    final Burst burst = this.burst;
+    this.burst = null;
+    if (burst != null) {
+      burst.failed = true;
+      worker.execute(() -> finish(burst, code, reason));
+    }
+  }
+
+  void close() {
+    fail("burstFailed", "The camera was closed.");
+  }
+
+  private void merge(Burst burst, FrameSource.Frame frame, boolean first, boolean last) {
+    try {
+      if (burst.failed) {
+        return;
+      }
+      if (first) {
+        burst.merger = new BurstMerger(frame.getWidth(), frame.getHeight());
+      }
+      burst.merger.addFrame(frame);
+    } catch (RuntimeException | OutOfMemoryError e) {
+      burst.failed = true;
+      finish(burst, "burstFailed", e.getMessage());
+      return;
+    } finally {
+      frame.close();
+    }
+    if (last) {
+      encode(burst);
+    }
+  }
+
+  private void encode(Burst burst) {
+    BurstMerger merger = burst.merger;
+    int width = merger.getWidth();
+    int height = merger.getHeight();
+    boolean written;
+    PipelineTracer.begin(PipelineTracer.Event.FILE_WRITE);
+    try {
+      burst.nv21 = new byte[width * height * 3 / 2];
+      merger.toNv21(burst.nv21);
+      // The average is in the NV21 image now.
+      burst.merger = null;
+      YuvImage image = new YuvImage(burst.nv21, ImageFormat.NV21, width, height, null);
+      JpegStream jpeg = new JpegStream(width * height / 2);
+      written = image.compressToJpeg(new Rect(0, 0, width, height), JPEG_QUALITY, jpeg);
+      burst.nv21 = null;
+      if (written) {
+        burst.exif.setImageSize(width, height).writeJpeg(jpeg.toByteBuffer(), burst.file);
+      }
+    } catch (IOException | OutOfMemoryError e) {
+      written = false;
+    } finally {
+      PipelineTracer.end(PipelineTracer.Event.FILE_WRITE);
+    }
+    metrics.recordSince(PipelineMetrics.Stage.BURST_PICTURE, burst.startNanos);
+    finish(burst, written ? null : "IOError", "Failed saving burst picture");
+  }
+
+  // Runs on the worker. Drops the burst's buffers and replies on the main thread.
+  private void finish(final Burst burst, final String code, final String reason) {
+    burst.merger = null;
+    burst.nv21 = null;
+    mainHandler.post(() -> reply(burst, code, reason));
+  }
+
+  // Replies with success when code is null.
+  private void reply(Burst burst, String code, String reason) {
+    if (this.burst == burst) {
+      this.burst = null;
+    }
+    if (burst.replied) {
+      return;
+    }
+    burst.replied = true;
+    if (code == null) {
+      burst.result.success(null);
+    } else {
+      burst.result.error(code, reason, null);
+    }
+  }
+
+  // Hands the JPEG to the EXIF writer without copying it.
+  private static final class JpegStream extends ByteArrayOutputStream {
+    JpegStream(int size) {
+      super(size);
+    }
+
+    ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
+}
@@ -0,0 +1,578 @@
+package io.flutter.plugins.camera;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Averages a burst of YUV_420_888 frames into one less noisy NV21 image, on a fork-join pool.
+ *
+ * <p>The first frame is the reference. Each later frame is aligned to it with a global
+ * translation, found by an exhaustive search at the coarsest level of a luma pyramid and refined
+ * at each finer level. The frame is then compared with the reference tile by tile, and tiles that
+ * differ much more than the median tile, because something moved there, are left out of the
+ * average. Averaging N frames lowers the noise by up to a factor of sqrt(N).
+ *
+ * <p>The merger holds {@link #workingBytes} of buffers, which {@link #reset} reuses for the next
+ * burst. It isn't thread safe.
+ */
+final class BurstMerger {
+  static final int MAX_FRAMES = 16;
+
+  private static final int ROWS_PER_STRIPE = 32;
+  private static final int TILE_SIZE = 64;
+  // Pixels of the coarsest level searched in each direction.
+  private static final int SEARCH_RADIUS = 4;
+  private static final int MAX_PYRAMID_LEVELS = 4;
+  // Smaller levels have too little detail to align on.
+  private static final int MIN_PYRAMID_SIZE = 64;
+  private static final ForkJoinPool pool =
+      new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+  private final int width;
+  private final int height;
+  private final int tileColumns;
+  private final int tileRows;
+  // Packed luma and interleaved VU, like NV21.
+  private final byte[] referenceY;
+  private final byte[] frameY;
+  private final byte[] frameVu;
+  // Sums of at most MAX_FRAMES bytes fit a char.
+  private final char[] sumY;
+  private final char[] sumVu;
+  // How many frames each tile sums.
+  private final byte[] tileCounts;
+  private final int[] tileDifferences;
+  private final byte[][] referencePyramid;
+  private final byte[][] framePyramid;
+  private final int[] levelWidths;
+  private final int[] levelHeights;
+  private int frameCount;
+  private int rejectedTiles;
+
+  /** Returns the bytes of the buffers a merger of {@code width} by {@code height} frames holds. */
+  static long workingBytes(int width, int height) {
+    long pixels = (long) width * height;
+    // Reference and frame luma, packed VU, the char sums, and the coarser levels of both pyramids,
+    // each less than a third of the luma.
+    return pixels + pixels + pixels / 2 + 2 * (pixels + pixels / 2) + 2 * pixels / 3;
+  }
+
+  /** @throws IllegalArgumentException if a side is odd. */
+  BurstMerger(int width, int height) {
+    if ((width & 1) != 0 || (height & 1) != 0) {
+      throw new IllegalArgumentException("Burst frames must have an even width and height.");
+    }
+    this.width = width;
+    this.height = height;
+    tileColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+    tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+    referenceY = new byte[width * height];
+    frameY = new byte[width * height];
+    frameVu = new byte[width * height / 2];
+    sumY = new char[width * height];
+    sumVu = new char[width * height / 2];
+    tileCounts = new byte[tileColumns * tileRows];
+    tileDifferences = new int[tileColumns * tileRows];
+
+    int levels = 1;
+    while (levels < MAX_PYRAMID_LEVELS
+        && Math.min(width >> levels, height >> levels) >= MIN_PYRAMID_SIZE) {
+      levels++;
+    }
+    levelWidths = new int[levels];
+    levelHeights = new int[levels];
+    referencePyramid = new byte[levels][];
+    framePyramid = new byte[levels][];
+    referencePyramid[0] = referenceY;
+    framePyramid[0] = frameY;
+    for (int level = 0; level < levels; level++) {
+      levelWidths[level] = width >> level;
+      levelHeights[level] = height >> level;
+      if (level > 0) {
+        referencePyramid[level] = new byte[levelWidths[level] * levelHeights[level]];
+        framePyramid[level] = new byte[levelWidths[level] * levelHeights[level]];
+      }
+    }
+  }
+
+  int getWidth() {
+    return width;
+  }
+
+  int getHeight() {
+    return height;
+  }
+
+  int getFrameCount() {
+    return frameCount;
+  }
+
+  /** Returns how many tiles were left out of the average since the burst started. */
+  int getRejectedTiles() {
+    return rejectedTiles;
+  }
+
+  /** Starts a new burst. */
+  void reset() {
+    frameCount = 0;
+    rejectedTiles = 0;
+  }
+
+  /**
+   * Adds {@code frame}, which must be YUV_420_888 of the merger's size, and stays open for the
+   * caller to close.
+   *
+   * @return the x and y offset of the frame from the reference, in pixels.
+   * @throws IllegalStateException if the burst already has {@link #MAX_FRAMES} frames.
+   */
+  int[] addFrame(FrameSource.Frame frame) {
+    if (frame.getWidth() != width || frame.getHeight() != height) {
+      throw new IllegalArgumentException("The frame doesn't have the size of the burst.");
+    }
+    if (frameCount == MAX_FRAMES) {
+      throw new IllegalStateException("A burst has at most " + MAX_FRAMES + " frames.");
+    }
+    if (frameCount == 0) {
+      pool.invoke(new Pack(frame, referenceY, frameVu, 0, height));
+      buildPyramid(referencePyramid);
+      pool.invoke(new Initialize(0, height));
+      Arrays.fill(tileCounts, (byte) 1);
+      frameCount = 1;
+      return new int[] {0, 0};
+    }
+
+    pool.invoke(new Pack(frame, frameY, frameVu, 0, height));
+    buildPyramid(framePyramid);
+    int[] offset = align();
+    pool.invoke(new CompareTiles(offset[0], offset[1], 0, tileRows));
+    int threshold = rejectionThreshold();
+    pool.invoke(new AccumulateTiles(offset[0], offset[1], threshold, 0, tileRows));
+    for (int difference : tileDifferences) {
+      if (difference > threshold) {
+        rejectedTiles++;
+      }
+    }
+    frameCount++;
+    return offset;
+  }
+
+  /** Writes the average of the burst to {@code nv21}, which holds width * height * 3 / 2 bytes. */
+  void toNv21(byte[] nv21) {
+    if (frameCount == 0) {
+      throw new IllegalStateException("The burst has no frames.");
+    }
+    pool.invoke(new Average(nv21, 0, height));
+  }
+
+  // Finds the offset of the frame from the reference, coarsest level first.
+  private int[] align() {
+    int coarsest = levelWidths.length - 1;
+    int dx = 0;
+    int dy = 0;
+    int radius = SEARCH_RADIUS;
+    for (int level = coarsest; level >= 0; level--) {
+      // The largest offset this level can end with, so every candidate compares the same area.
+      int margin = (SEARCH_RADIUS << (coarsest - level)) + (1 << (coarsest - level));
+      // Sampling every other pixel or so is plenty once the coarse levels found the basin.
+      int step = level == 0 ? 4 : level == 1 ? 2 : 1;
+      long best = Long.MAX_VALUE;
+      int bestX = dx;
+      int bestY = dy;
+      for (int y = dy - radius; y <= dy + radius; y++) {
+        for (int x = dx - radius; x <= dx + radius; x++) {
+          long difference = pool.invoke(new Difference(level, x, y, margin, step));
+          // Prefer the smaller offset on ties, so flat scenes stay put.
+          boolean closer = Math.abs(x) + Math.abs(y) < Math.abs(bestX) + Math.abs(bestY);
+          if (difference < best || (difference == best && closer)) {
+            best = difference;
+            bestX = x;
+            bestY = y;
+          }
+        }
+      }
+      dx = bestX;
+      dy = bestY;
+      if (level > 0) {
+        dx *= 2;
+        dy *= 2;
+        radius = 1;
+      }
+    }
+    return new int[] {dx, dy};
+  }
+
+  // Tiles differing by more than about twice the typical tile, noise included, moved. The slack
+  // of 4 levels keeps a perfectly still, noiseless burst from rejecting its faintest change.
+  private int rejectionThreshold() {
+    int[] sorted = tileDifferences.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2] * 2 + 4 * 16;
+  }
+
+  private void buildPyramid(byte[][] pyramid) {
+    for (int level = 1; level < pyramid.length; level++) {
+      pool.invoke(new Downsample(pyramid, level, 0, levelHeights[level]));
+    }
+  }
+
+  private static void readRow(ByteBuffer plane, int offset, byte[] row) {
+    plane.position(offset);
+    plane.get(row, 0, row.length);
+  }
+
+  private static int clamp(int value, int max) {
+    return Math.min(max, Math.max(0, value));
+  }
+
+  // Splits a range of rows into stripes of at most ROWS_PER_STRIPE rows.
+  private abstract static class Rows extends RecursiveAction {
+    final int startRow;
+    final int endRow;
+
+    Rows(int startRow, int endRow) {
+      this.startRow = startRow;
+      this.endRow = endRow;
+    }
+
+    abstract Rows split(int startRow, int endRow);
+
+    abstract void computeRows();
+
+    @Override
+    protected void compute() {
+      if (endRow - startRow > ROWS_PER_STRIPE) {
+        // Keep both halves on even rows so no chroma row is shared between stripes.
+        int middle = ((startRow + endRow) / 2) & ~1;
+        invokeAll(split(startRow, middle), split(middle, endRow));
+      } else {
+        computeRows();
+      }
+    }
+  }
+
+  // Copies a frame into packed luma and interleaved VU.
+  private final class Pack extends Rows {
+    private final FrameSource.Frame frame;
+    private final byte[] luma;
+    private final byte[] vu;
+
+    Pack(FrameSource.Frame frame, byte[] luma, byte[] vu, int startRow, int endRow) {
+      super(startRow, endRow);
+      this.frame = frame;
+      this.luma = luma;
+      this.vu = vu;
+    }
+
+    @Override
+    Rows split(int startRow, int endRow) {
+      return new Pack(frame, luma, vu, startRow, endRow);
+    }
+
+    @Override
+    void computeRows() {
+      int yRowStride = frame.getRowStride(0);
+      int yPixelStride = frame.getPixelStride(0);
+      int uRowStride = frame.getRowStride(1);
+      int uPixelStride = frame.getPixelStride(1);
+      int vRowStride = frame.getRowStride(2);
+      int vPixelStride = frame.getPixelStride(2);
+      int chromaWidth = width / 2;
+      ByteBuffer yPlane = frame.getPlaneBuffer(0).duplicate();
+      ByteBuffer uPlane = frame.getPlaneBuffer(1).duplicate();
+      ByteBuffer vPlane = frame.getPlaneBuffer(2).duplicate();
+      byte[] yRow = yPixelStride == 1 ? null : new byte[(width - 1) * yPixelStride + 1];
+      byte[] uRow = new byte[(chromaWidth - 1) * uPixelStride + 1];
+      byte[] vRow = new byte[(chromaWidth - 1) * vPixelStride + 1];
+
+      for (int row = startRow; row < endRow; row++) {
+        if (yRow == null) {
+          yPlane.position(row * yRowStride);
+          yPlane.get(luma, row * width, width);
+        } else {
+          readRow(yPlane, row * yRowStride, yRow);
+          for (int x = 0, out = row * width; x < width; x++, out++) {
+            luma[out] = yRow[x * yPixelStride];
+          }
+        }
+        if ((row & 1) == 0) {
+          readRow(uPlane, (row >> 1) * uRowStride, uRow);
+          readRow(vPlane, (row >> 1) * vRowStride, vRow);
+          int out = (row >> 1) * width;
+          for (int x = 0; x < chromaWidth; x++) {
+            vu[out++] = vRow[x * vPixelStride];
+            vu[out++] = uRow[x * uPixelStride];
+          }
+        }
+      }
+    }
+  }
+
+  // Halves a pyramid level with a 2x2 box filter.
+  private final class Downsample extends Rows {
+    private final byte[][] pyramid;
+    private final int level;
+
+    Downsample(byte[][] pyramid, int level, int startRow, int endRow) {
+      super(startRow, endRow);
+      this.pyramid = pyramid;
+      this.level = level;
+    }
+
+    @Override
+    Rows split(int startRow, int endRow) {
+      return new Downsample(pyramid, level, startRow, endRow);
+    }
+
+    @Override
+    void computeRows() {
+      byte[] source = pyramid[level - 1];
+      byte[] target = pyramid[level];
+      int sourceWidth = levelWidths[level - 1];
+      int targetWidth = levelWidths[level];
+      for (int row = startRow; row < endRow; row++) {
+        int top = row * 2 * sourceWidth;
+        int bottom = top + sourceWidth;
+        int out = row * targetWidth;
+        for (int x = 0; x < targetWidth; x++) {
+          int sum =
+              (source[top + 2 * x] & 0xff)
+                  + (source[top + 2 * x + 1] & 0xff)
+                  + (source[bottom + 2 * x] & 0xff)
+                  + (source[bottom + 2 * x + 1] & 0xff);
+          target[out + x] = (byte) ((sum + 2) >> 2);
+        }
+      }
+    }
+  }
+
+  // Sums the absolute luma differences at an offset, over the level minus a margin.
+  private final class Difference extends RecursiveTask<Long> {
+    private final int level;
+    private final int dx;
+    private final int dy;
+    private final int margin;
+    private final int step;
+    private final int startRow;
+    private final int endRow;
+
+    Difference(int level, int dx, int dy, int margin, int step) {
+      this(level, dx, dy, margin, step, margin, levelHeights[level] - margin);
+    }
+
+    private Difference(
+        int level, int dx, int dy, int margin, int step, int startRow, int endRow) {
+      this.level = level;
+      this.dx = dx;
+      this.dy = dy;
+      this.margin = margin;
+      this.step = step;
+      this.startRow = startRow;
+      this.endRow = endRow;
+    }
+
+    @Override
+    protected Long compute() {
+      if (endRow - startRow > ROWS_PER_STRIPE * step) {
+        int middle = (startRow + endRow) / 2;
+        Difference bottom = new Difference(level, dx, dy, margin, step, middle, endRow);
+        bottom.fork();
+        long top = new Difference(level, dx, dy, margin, step, startRow, middle).compute();
+        return top + bottom.join();
+      }
+      byte[] reference = referencePyramid[level];
+      byte[] frame = framePyramid[level];
+      int levelWidth = levelWidths[level];
+      long sum = 0;
+      // Rows start at multiples of step, so every stripe samples the same grid.
+      int firstRow = (startRow + step - 1) / step * step;
+      for (int row = firstRow; row < endRow; row += step) {
+        int referenceRow = row * levelWidth;
+        int frameRow = (row + dy) * levelWidth + dx;
+        for (int x = margin; x < levelWidth - margin; x += step) {
+          sum += Math.abs((reference[referenceRow + x] & 0xff) - (frame[frameRow + x] & 0xff));
+        }
+      }
+      return sum;
+    }
+  }
+
+  // Starts the sums with the reference frame.
+  private final class Initialize extends Rows {
+    Initialize(int startRow, int endRow) {
+      super(startRow, endRow);
+    }
+
+    @Override
+    Rows split(int startRow, int endRow) {
+      return new Initialize(startRow, endRow);
+    }
+
+    @Override
+    void computeRows() {
+      for (int i = startRow * width; i < endRow * width; i++) {
+        sumY[i] = (char) (referenceY[i] & 0xff);
+      }
+      for (int i = startRow / 2 * width; i < endRow / 2 * width; i++) {
+        sumVu[i] = (char) (frameVu[i] & 0xff);
+      }
+    }
+  }
+
+  // Base of the tile tasks, which split by rows of tiles.
+  private abstract class TileRows extends RecursiveAction {
+    final int dx;
+    final int dy;
+    final int startTileRow;
+    final int endTileRow;
+
+    TileRows(int dx, int dy, int startTileRow, int endTileRow) {
+      this.dx = dx;
+      this.dy = dy;
+      this.startTileRow = startTileRow;
+      this.endTileRow = endTileRow;
+    }
+
+    abstract TileRows split(int startTileRow, int endTileRow);
+
+    abstract void computeTile(int tileX, int tileY);
+
+    @Override
+    protected void compute() {
+      if (endTileRow - startTileRow > 1) {
+        int middle = (startTileRow + endTileRow) / 2;
+        invokeAll(split(startTileRow, middle), split(middle, endTileRow));
+      } else {
+        for (int tileX = 0; tileX < tileColumns; tileX++) {
+          computeTile(tileX, startTileRow);
+        }
+      }
+    }
+  }
+
+  // Measures how much each aligned tile differs from the reference, in 1/16 of a level.
+  private final class CompareTiles extends TileRows {
+    CompareTiles(int dx, int dy, int startTileRow, int endTileRow) {
+      super(dx, dy, startTileRow, endTileRow);
+    }
+
+    @Override
+    TileRows split(int startTileRow, int endTileRow) {
+      return new CompareTiles(dx, dy, startTileRow, endTileRow);
+    }
+
+    @Override
+    void computeTile(int tileX, int tileY) {
+      int left = tileX * TILE_SIZE;
+      int top = tileY * TILE_SIZE;
+      int right = Math.min(width, left + TILE_SIZE);
+      int bottom = Math.min(height, top + TILE_SIZE);
+      long sum = 0;
+      int samples = 0;
+      // Every other pixel in both directions is enough to tell motion from noise.
+      for (int y = top; y < bottom; y += 2) {
+        int referenceRow = y * width;
+        int frameRow = clamp(y + dy, height - 1) * width;
+        for (int x = left; x < right; x += 2) {
+          int frameValue = frameY[frameRow + clamp(x + dx, width - 1)] & 0xff;
+          sum += Math.abs((referenceY[referenceRow + x] & 0xff) - frameValue);
+          samples++;
+        }
+      }
+      tileDifferences[tileY * tileColumns + tileX] = (int) (sum * 16 / samples);
+    }
+  }
+
+  // Adds the aligned tiles that didn't move to the sums.
+  private final class AccumulateTiles extends TileRows {
+    private final int threshold;
+
+    AccumulateTiles(int dx, int dy, int threshold, int startTileRow, int endTileRow) {
+      super(dx, dy, startTileRow, endTileRow);
+      this.threshold = threshold;
+    }
+
+    @Override
+    TileRows split(int startTileRow, int endTileRow) {
+      return new AccumulateTiles(dx, dy, threshold, startTileRow, endTileRow);
+    }
+
+    @Override
+    void computeTile(int tileX, int tileY) {
+      int tile = tileY * tileColumns + tileX;
+      if (tileDifferences[tile] > threshold) {
+        return;
+      }
+      tileCounts[tile]++;
+      int left = tileX * TILE_SIZE;
+      int top = tileY * TILE_SIZE;
+      int right = Math.min(width, left + TILE_SIZE);
+      int bottom = Math.min(height, top + TILE_SIZE);
+      boolean inside = left + dx >= 0 && right + dx <= width;
+      for (int y = top; y < bottom; y++) {
+        int out = y * width;
+        int frameRow = clamp(y + dy, height - 1) * width;
+        if (inside) {
+          for (int x = left, in = frameRow + left + dx; x < right; x++, in++) {
+            sumY[out + x] += frameY[in] & 0xff;
+          }
+        } else {
+          for (int x = left; x < right; x++) {
+            sumY[out + x] += frameY[frameRow + clamp(x + dx, width - 1)] & 0xff;
+          }
+        }
+      }
+      // Chroma has half the resolution, so it moves by half the offset.
+      int chromaDx = dx >> 1;
+      int chromaDy = dy >> 1;
+      int chromaWidth = width / 2;
+      for (int y = top / 2; y < bottom / 2; y++) {
+        int out = y * width;
+        int frameRow = clamp(y + chromaDy, height / 2 - 1) * width;
+        for (int x = left / 2; x < right / 2; x++) {
+          int in = frameRow + 2 * clamp(x + chromaDx, chromaWidth - 1);
+          sumVu[out + 2 * x] += frameVu[in] & 0xff;
+          sumVu[out + 2 * x + 1] += frameVu[in + 1] & 0xff;
+        }
+      }
+    }
+  }
+
+  // Divides the sums by their tile's frame count, rounding to nearest.
+  private final class Average extends Rows {
+    private final byte[] nv21;
+
+    Average(byte[] nv21, int startRow, int endRow) {
+      super(startRow, endRow);
+      this.nv21 = nv21;
+    }
+
+    @Override
+    Rows split(int startRow, int endRow) {
+      return new Average(nv21, startRow, endRow);
+    }
+
+    @Override
+    void computeRows() {
+      int lumaSize = width * height;
+      for (int row = startRow; row < endRow; row++) {
+        int tileRow = row / TILE_SIZE * tileColumns;
+        for (int x = 0; x < width; x++) {
+          int count = tileCounts[tileRow + x / TILE_SIZE];
+          int i = row * width + x;
+          nv21[i] = (byte) ((sumY[i] + count / 2) / count);
+        }
+        if ((row & 1) == 0) {
+          // An interleaved VU row is as wide as a luma row, so x maps to the same tile.
+          for (int x = 0; x < width; x++) {
+            int count = tileCounts[tileRow + x / TILE_SIZE];
+            int i = row / 2 * width + x;
+            nv21[lumaSize + i] = (byte) ((sumVu[i] + count / 2) / count);
+          }
+        }
+      }
+    }
+  }
+}
@@ -7,37 +7,66 @@ import android.annotation.SuppressLint;
 import android.app.Activity;
 import android.content.Context;
 import android.graphics.ImageFormat;
-import android.graphics.PointF;
 import android.graphics.Rect;
 import android.graphics.SurfaceTexture;
 import android.hardware.camera2.*;
 import android.hardware.camera2.params.MeteringRectangle;
+import android.hardware.camera2.params.OutputConfiguration;
+import android.hardware.camera2.params.SessionConfiguration;
 import android.hardware.camera2.params.StreamConfigurationMap;
 import android.media.CamcorderProfile;
 import android.media.Image;
 import android.media.ImageReader;
 import android.media.MediaRecorder;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
 import android.util.Log;
 import android.util.Range;
 import android.util.Size;
 import android.view.OrientationEventListener;
 import android.view.Surface;
 import androidx.annotation.NonNull;
+import io.flutter.plugin.common.BinaryMessenger;
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodChannel.Result;
 import io.flutter.view.FlutterView;
 import io.flutter.view.TextureRegistry.SurfaceTextureEntry;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-public class Camera {
+public class Camera implements CameraBackend {
   private static final String TAG = "CAMERA";
+  // Upper bounds for the analysis output that shares the session with the video encoder.
+  private static final int MAX_RECORDING_STREAM_WIDTH = 640;
+  private static final int MAX_RECORDING_STREAM_HEIGHT = 480;
+  // Upper bounds for the preview, which is only ever shown on screen.
+  private static final int MAX_PREVIEW_WIDTH = 2560;
+  private static final int MAX_PREVIEW_HEIGHT = 1440;
+  // Upper bounds and bitrate for the low resolution proxy recorded next to the main video.
+  private static final int MAX_PROXY_VIDEO_WIDTH = 640;
+  private static final int MAX_PROXY_VIDEO_HEIGHT = 480;
+  // The main recorder's frame rate hint, which high speed video records at.
+  private static final int VIDEO_FRAME_RATE = 240;
+  private static final String PICTURE_READER = "picture";
+  private static final String RECORDING_STREAM_READER = "recordingStream";
+  private static final String VIDEO_SNAPSHOT_READER = "videoSnapshot";
+  private static final String BURST_READER = "burst";
+  private static final String BURST_MERGE = "burstMerge";
+  private static final int PROXY_VIDEO_BIT_RATE = 1000000;
+  private static final int DEFAULT_RECORDING_STREAM_MAX_FPS = 15;
+  // How many analysis outputs can be registered. Whether another one fits the session is checked
+  // against the guaranteed stream combinations; only FULL cameras have room for two.
+  private static final int MAX_ANALYSIS_OUTPUTS = 2;
   private final SurfaceTextureEntry flutterTexture;
   private final CameraManager cameraManager;
+  private final CameraMemoryBudget memoryBudget;
+  private final PowerManager powerManager;
   private final OrientationEventListener orientationEventListener;
   private final boolean isFrontFacing;
   private final int sensorOrientation;
@@ -46,25 +75,102 @@ public class Camera {
   private final boolean enableAudio;
   private final boolean slowMoMode;
   private final boolean enableMonoMode;
+  private final PipelineMetrics metrics;
+  private final StreamCombinations streamCombinations;
 
   private CameraDevice cameraDevice;
   private CameraCaptureSession cameraCaptureSession;
   private CameraConstrainedHighSpeedCaptureSession mPreviewSessionHighSpeed;
   private ImageReader pictureImageReader;
-  private ImageReader imageStreamReader;
+  private final ImageStream imageStream;
+  private ImageReaderFrameSource recordingStreamReader;
+  private ImageReaderFrameSource burstReader;
+  private Size burstSize;
+  private final BurstDenoiser burstDenoiser;
+  private final StreamSnapshotter snapshotter;
+  private final Map<Integer, AnalysisOutput> analysisOutputs = new LinkedHashMap<>();
+  private EventChannel.EventSink analysisSink;
+  private int nextAnalysisOutputId;
+  // Non-null while barcodes are scanned, which keeps the image stream reader in the session.
+  private BarcodeScanner barcodeScanner;
+  // Shared by the scanners of every camera, so neither a new scan nor a new camera starts a thread.
+  private static final ExecutorService barcodeWorker = Executors.newSingleThreadExecutor();
+  private EventChannel.EventSink barcodeSink;
+  private ImageReader videoSnapshotImageReader;
+  private Surface recordingPreviewSurface;
   private EventChannel.EventSink eventSink;
+  private FrameMetadataBatcher frameMetadataBatcher;
   private CaptureRequest.Builder captureRequestBuilder;
   private MediaRecorder mediaRecorder;
+  private MediaRecorder proxyMediaRecorder;
   private boolean recordingVideo;
+  private boolean suspended;
+  // Runs once the session being created is configured, for requests that had to add an output.
+  private Runnable pendingSessionAction;
+  private Result pendingSessionResult;
+  private double analysisScale = 1;
+  private double bitRateScale = 1;
+  private boolean videoSnapshotEnabled;
+  private int recordingStreamMaxFps = DEFAULT_RECORDING_STREAM_MAX_FPS;
   private boolean supportMonoEffect = false;
-  private boolean isFocusLocked = false;
+  private final CameraSettings.Capabilities capabilities;
+  // A CONTROL_EFFECT_MODE value.
+  private int effectMode;
+  private int exposureCompensation;
+  // The locked focus point, or null while focus is continuous.
+  private MeteringRectangle[] focusRegions;
+  private final AutoFocusStateMachine autoFocus;
+  private final ConvergenceGate convergence = new ConvergenceGate();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final Rect activeArraySize;
+  private final int[] availableAfModes;
+  private final int maxAfRegions;
+  private final int maxAeRegions;
   private CamcorderProfile recordingProfile;
   private int currentOrientation = ORIENTATION_UNKNOWN;
   private Size mPreviewSize;
   private Size mVideoSize;
+  private final Size streamSize;
+  private final Size[] yuvOutputSizes;
+  private Size recordingStreamSize;
+  private Size videoSnapshotSize;
+  private Size proxyVideoSize;
   private Range<Integer>[] availableFpsRange;
+  private long firstPreviewFrameStartNanos;
+  private final SessionTracker sessionTracker;
+  private CommandScheduler commandScheduler;
+
+  private final CameraCaptureSession.CaptureCallback previewCaptureCallback =
+      new CameraCaptureSession.CaptureCallback() {
+        @Override
+        public void onCaptureCompleted(
+            @NonNull CameraCaptureSession session,
+            @NonNull CaptureRequest request,
+            @NonNull TotalCaptureResult result) {
+          if (firstPreviewFrameStartNanos != 0) {
+            metrics.recordSince(
+                PipelineMetrics.Stage.FIRST_PREVIEW_FRAME, firstPreviewFrameStartNanos);
+            firstPreviewFrameStartNanos = 0;
+          }
+          if (frameMetadataBatcher != null) {
+            addFrameMetadata(frameMetadataBatcher, result);
+          }
+          if (autoFocus.isLocking()) {
+            Integer trigger = request.get(CaptureRequest.CONTROL_AF_TRIGGER);
+            autoFocus.onCaptureCompleted(
+                trigger != null && trigger == CaptureRequest.CONTROL_AF_TRIGGER_START,
+                result.get(CaptureResult.CONTROL_AF_STATE));
+          }
+          // Results of the previous session say nothing about the new one.
+          if (convergence.isWaiting() && session == cameraCaptureSession) {
+            convergence.onCaptureCompleted(
+                result.get(CaptureResult.CONTROL_AE_STATE),
+                result.get(CaptureResult.CONTROL_AF_STATE));
+          }
+        }
+      };
 
-  public boolean flashMode;
+  private boolean flashMode;
 
   // Mirrors camera.dart
   public enum ResolutionPreset {
@@ -83,7 +189,11 @@ public class Camera {
       final String resolutionPreset,
       final boolean enableAudio,
       final boolean enableMonoMode,
-      final boolean slowMoMode)
+      final boolean slowMoMode,
+      final StreamSizeNegotiator.Constraints sizeConstraints,
+      final long memoryBudgetBytes,
+      final BinaryMessenger messenger,
+      final PipelineMetrics metrics)
       throws CameraAccessException {
     if (activity == null) {
       throw new IllegalStateException("No activity available!");
@@ -93,8 +203,23 @@ public class Camera {
     this.enableAudio = enableAudio;
     this.slowMoMode = slowMoMode;
     this.enableMonoMode = enableMonoMode;
+    this.metrics = metrics;
+    this.snapshotter = new StreamSnapshotter(metrics);
+    this.burstDenoiser = new BurstDenoiser(metrics);
+    this.autoFocus = new AutoFocusStateMachine(metrics);
+    this.memoryBudget = new CameraMemoryBudget(memoryBudgetBytes);
+    this.sessionTracker = new SessionTracker(metrics);
+    this.imageStream =
+        new ImageStream(
+            new Camera2Device(),
+            memoryBudget,
+            new BinaryFrameSender(messenger),
+            mainHandler::post,
+            metrics,
+            this::tapImageStreamFrame);
     this.flutterTexture = flutterView.createSurfaceTexture();
     this.cameraManager = (CameraManager) activity.getSystemService(Context.CAMERA_SERVICE);
+    this.powerManager = (PowerManager) activity.getSystemService(Context.POWER_SERVICE);
     orientationEventListener =
         new OrientationEventListener(activity.getApplicationContext()) {
           @Override
@@ -124,20 +249,41 @@ public class Camera {
     //noinspection ConstantConditions
     isFrontFacing =
         characteristics.get(CameraCharacteristics.LENS_FACING) == CameraMetadata.LENS_FACING_FRONT;
+    activeArraySize = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
+    int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+    availableAfModes = afModes == null ? new int[0] : afModes;
+    Integer afRegions = characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AF);
+    maxAfRegions = afRegions == null ? 0 : afRegions;
+    Integer aeRegions = characteristics.get(CameraCharacteristics.CONTROL_MAX_REGIONS_AE);
+    maxAeRegions = aeRegions == null ? 0 : aeRegions;
+    Range<Integer> compensationRange =
+        characteristics.get(CameraCharacteristics.CONTROL_AE_COMPENSATION_RANGE);
+    Boolean flashAvailable = characteristics.get(CameraCharacteristics.FLASH_INFO_AVAILABLE);
+    capabilities =
+        new CameraSettings.Capabilities(
+            supportsAfMode(CameraMetadata.CONTROL_AF_MODE_AUTO),
+            compensationRange == null ? 0 : compensationRange.getLower(),
+            compensationRange == null ? 0 : compensationRange.getUpper(),
+            flashAvailable != null && flashAvailable,
+            effects == null ? new int[0] : effects);
+    effectMode =
+        supportMonoEffect && enableMonoMode
+            ? CameraMetadata.CONTROL_EFFECT_MODE_MONO
+            : CameraMetadata.CONTROL_EFFECT_MODE_OFF;
     ResolutionPreset preset = ResolutionPreset.valueOf(resolutionPreset);
     recordingProfile =
         CameraUtils.getBestAvailableCamcorderProfileForResolutionPreset(cameraName, preset);
-    captureSize = new Size(recordingProfile.videoFrameWidth, recordingProfile.videoFrameHeight);
 
     StreamConfigurationMap map = characteristics
             .get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
     assert map != null;
+    StreamSizeNegotiator sizeNegotiator = new StreamSizeNegotiator(sizeConstraints);
     if (slowMoMode) {
-      mVideoSize = chooseVideoSize(map.getHighSpeedVideoSizes());
+      mVideoSize = CameraSizes.chooseVideoSize(map.getHighSpeedVideoSizes());
       for (Size size : map.getHighSpeedVideoSizes()) {
         Log.d("RESOLUTION", size.toString());
       }
-      mPreviewSize = chooseOptimalSize(map.getOutputSizes(SurfaceTexture.class),
+      mPreviewSize = CameraSizes.chooseOptimalSize(map.getOutputSizes(SurfaceTexture.class),
               1920, 1080, mVideoSize);
       // FPS
       availableFpsRange = map.getHighSpeedVideoFpsRangesFor(mVideoSize);
@@ -160,55 +306,76 @@ public class Camera {
       Log.d("RANGE", "[ " + min + " , " + max + " ]");
     } else {
       try {
-        mVideoSize = chooseVideoSize(map.getHighSpeedVideoSizes());
+        mVideoSize = CameraSizes.chooseVideoSize(map.getHighSpeedVideoSizes());
         for (Size size : map.getHighSpeedVideoSizes()) {
           Log.d("RESOLUTION", size.toString());
         }
-        mPreviewSize = chooseOptimalSize(map.getOutputSizes(SurfaceTexture.class),
-                2560, 1440, new Size(2560, 1440));
+        mPreviewSize =
+            sizeNegotiator.choosePreviewSize(
+                previewSizeCandidates(map), MAX_PREVIEW_WIDTH, MAX_PREVIEW_HEIGHT);
       } catch (Exception e) {
         mPreviewSize = computeBestPreviewSize(cameraName, preset);
       }
     }
-  }
-
-  private static class CompareSizesByArea implements Comparator<Size> {
-    @Override
-    public int compare(Size lhs, Size rhs) {
-      // We cast here to ensure the multiplications won't overflow.
-      return Long.signum(
-              (long) lhs.getWidth() * lhs.getHeight() - (long) rhs.getWidth() * rhs.getHeight());
+    yuvOutputSizes = map.getOutputSizes(ImageFormat.YUV_420_888);
+    // The preset bounds the stream and stills as it did when stills were taken at its size.
+    int presetWidth = recordingProfile.videoFrameWidth;
+    int presetHeight = recordingProfile.videoFrameHeight;
+    streamSize =
+        sizeNegotiator.chooseStreamSize(
+            outputSizeCandidates(map, ImageFormat.YUV_420_888), presetWidth, presetHeight);
+    captureSize =
+        sizeNegotiator.chooseStillSize(
+            outputSizeCandidates(map, ImageFormat.JPEG), presetWidth, presetHeight);
+    recordingStreamSize =
+        CameraSizes.chooseBoundedSize(
+            map.getOutputSizes(ImageFormat.YUV_420_888),
+            MAX_RECORDING_STREAM_WIDTH,
+            MAX_RECORDING_STREAM_HEIGHT,
+            mPreviewSize);
+    Integer hardwareLevel =
+        characteristics.get(CameraCharacteristics.INFO_SUPPORTED_HARDWARE_LEVEL);
+    streamCombinations =
+        new StreamCombinations(
+            hardwareLevel == null ? StreamCombinations.LEVEL_LEGACY : hardwareLevel,
+            recordingProfile.videoFrameWidth,
+            recordingProfile.videoFrameHeight);
+    if (mVideoSize != null) {
+      // Snapshots taken during a recording are only guaranteed up to the recording size.
+      videoSnapshotSize =
+          CameraSizes.chooseOptimalSize(
+              map.getOutputSizes(ImageFormat.JPEG),
+              mVideoSize.getWidth(),
+              mVideoSize.getHeight(),
+              mVideoSize);
+      proxyVideoSize =
+          CameraSizes.chooseBoundedSize(
+              map.getOutputSizes(MediaRecorder.class),
+              MAX_PROXY_VIDEO_WIDTH,
+              MAX_PROXY_VIDEO_HEIGHT,
+              mVideoSize);
     }
   }
 
-  private Size chooseOptimalSize(Size[] choices, int width, int height, Size aspectRatio) {
-    // Collect the supported resolutions that are at least as big as the preview Surface
-    List<Size> bigEnough = new ArrayList<>();
-    int w = aspectRatio.getWidth();
-    int h = aspectRatio.getHeight();
-    for (Size option : choices) {
-      if (option.getHeight() == option.getWidth() * h / w &&
-              option.getWidth() <= width && option.getHeight() <= height) {
-        bigEnough.add(option);
-      }
-    }
-    // Pick the smallest of those, assuming we found any
-    if (bigEnough.size() > 0) {
-      return Collections.max(bigEnough, new CompareSizesByArea());
-    } else {
-      Log.e(TAG, "Couldn't find any suitable preview size");
-      return choices[0];
+  private static List<StreamSizeNegotiator.Candidate> previewSizeCandidates(
+      StreamConfigurationMap map) {
+    List<StreamSizeNegotiator.Candidate> candidates = new ArrayList<>();
+    for (Size size : map.getOutputSizes(SurfaceTexture.class)) {
+      candidates.add(
+          new StreamSizeNegotiator.Candidate(
+              size, map.getOutputMinFrameDuration(SurfaceTexture.class, size)));
     }
+    return candidates;
   }
 
-  private Size chooseVideoSize(Size[] choices) {
-    for (Size size : choices) {
-      if (size.getWidth() == 1920 && size.getHeight() <= 1080) {
-        return size;
-      }
+  private static List<StreamSizeNegotiator.Candidate> outputSizeCandidates(
+      StreamConfigurationMap map, int format) {
+    List<StreamSizeNegotiator.Candidate> candidates = new ArrayList<>();
+    for (Size size : map.getOutputSizes(format)) {
+      candidates.add(
+          new StreamSizeNegotiator.Candidate(size, map.getOutputMinFrameDuration(format, size)));
     }
-    Log.e(TAG, "Couldn't find any suitable video size");
-    return choices[choices.length - 1];
+    return candidates;
   }
 
   public void setupCameraEventChannel(EventChannel cameraEventChannel) {
@@ -226,6 +393,75 @@ public class Camera {
         });
   }
 
+  public void setupFrameMetadataEventChannel(EventChannel frameMetadataEventChannel) {
+    frameMetadataEventChannel.setStreamHandler(
+        new EventChannel.StreamHandler() {
+          @Override
+          public void onListen(Object arguments, EventChannel.EventSink sink) {
+            frameMetadataBatcher = FrameMetadataBatcher.fromListenArguments(sink, arguments);
+          }
+
+          @Override
+          public void onCancel(Object arguments) {
+            frameMetadataBatcher = null;
+          }
+        });
+  }
+
+  public void setupAnalysisEventChannel(EventChannel analysisEventChannel) {
+    analysisEventChannel.setStreamHandler(
+        new EventChannel.StreamHandler() {
+          @Override
+          public void onListen(Object arguments, EventChannel.EventSink sink) {
+            setAnalysisSink(sink);
+          }
+
+          @Override
+          public void onCancel(Object arguments) {
+            setAnalysisSink(null);
+          }
+        });
+  }
+
+  public void setupBarcodeEventChannel(EventChannel barcodeEventChannel) {
+    barcodeEventChannel.setStreamHandler(
+        new EventChannel.StreamHandler() {
+          @Override
+          public void onListen(Object arguments, EventChannel.EventSink sink) {
+            barcodeSink = sink;
+          }
+
+          @Override
+          public void onCancel(Object arguments) {
+            barcodeSink = null;
+          }
+        });
+  }
+
+  private void setAnalysisSink(EventChannel.EventSink sink) {
+    analysisSink = sink;
+    for (AnalysisOutput output : analysisOutputs.values()) {
+      output.setSink(sink);
+    }
+  }
+
+  private static void addFrameMetadata(FrameMetadataBatcher batcher, TotalCaptureResult result) {
+    Long timestamp = result.get(CaptureResult.SENSOR_TIMESTAMP);
+    Integer afState = result.get(CaptureResult.CONTROL_AF_STATE);
+    Float focusDistance = result.get(CaptureResult.LENS_FOCUS_DISTANCE);
+    Integer aeState = result.get(CaptureResult.CONTROL_AE_STATE);
+    Long exposureTime = result.get(CaptureResult.SENSOR_EXPOSURE_TIME);
+    Integer sensitivity = result.get(CaptureResult.SENSOR_SENSITIVITY);
+    batcher.add(
+        timestamp == null ? -1 : timestamp,
+        result.getFrameNumber(),
+        afState == null ? -1 : afState,
+        focusDistance == null ? Float.NaN : focusDistance,
+        aeState == null ? -1 : aeState,
+        exposureTime == null ? -1 : exposureTime,
+        sensitivity == null ? -1 : sensitivity);
+  }
+
   private void prepareMediaRecorder(String outputFilePath) throws IOException {
     if (mediaRecorder != null) {
       mediaRecorder.release();
@@ -239,9 +475,9 @@ public class Camera {
     mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
     if (enableAudio) mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
     mediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
-    mediaRecorder.setVideoEncodingBitRate(2000000000);
+    mediaRecorder.setVideoEncodingBitRate((int) (getFullVideoBitRate() * bitRateScale));
     if (enableAudio) mediaRecorder.setAudioSamplingRate(16000);
-    mediaRecorder.setVideoFrameRate(240);
+    mediaRecorder.setVideoFrameRate(VIDEO_FRAME_RATE);
     mediaRecorder.setVideoSize(mVideoSize.getWidth(), mVideoSize.getHeight());
     mediaRecorder.setOutputFile(outputFilePath);
     mediaRecorder.setOrientationHint(getMediaOrientation());
@@ -249,30 +485,129 @@ public class Camera {
     mediaRecorder.prepare();
   }
 
-  @SuppressLint("MissingPermission")
+  // The preset's camcorder profile bitrate, which is for the profile's frame rate, so high speed
+  // video gets it per frame. The encoder clamps anything above its own limit.
+  private long getFullVideoBitRate() {
+    long bitRate = recordingProfile.videoBitRate;
+    if (slowMoMode && recordingProfile.videoFrameRate > 0) {
+      bitRate = bitRate * VIDEO_FRAME_RATE / recordingProfile.videoFrameRate;
+    }
+    return Math.min(bitRate, Integer.MAX_VALUE);
+  }
+
+  private void prepareProxyMediaRecorder(String outputFilePath) throws IOException {
+    if (proxyMediaRecorder != null) {
+      proxyMediaRecorder.release();
+    }
+    proxyMediaRecorder = new MediaRecorder();
+
+    // Video only: the microphone can't be shared between two recorders on most devices.
+    proxyMediaRecorder.setVideoSource(MediaRecorder.VideoSource.SURFACE);
+    proxyMediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
+    proxyMediaRecorder.setVideoEncoder(MediaRecorder.VideoEncoder.H264);
+    proxyMediaRecorder.setVideoEncodingBitRate((int) (PROXY_VIDEO_BIT_RATE * bitRateScale));
+    proxyMediaRecorder.setVideoFrameRate(recordingProfile.videoFrameRate);
+    proxyMediaRecorder.setVideoSize(proxyVideoSize.getWidth(), proxyVideoSize.getHeight());
+    proxyMediaRecorder.setOutputFile(outputFilePath);
+    proxyMediaRecorder.setOrientationHint(getMediaOrientation());
+
+    proxyMediaRecorder.prepare();
+  }
+
+  private void startMediaRecorders() {
+    mediaRecorder.start();
+    if (proxyMediaRecorder != null) {
+      proxyMediaRecorder.start();
+    }
+  }
+
+  @Override
   public void open(@NonNull final Result result) throws CameraAccessException {
-    pictureImageReader =
-        ImageReader.newInstance(
-            captureSize.getWidth(), captureSize.getHeight(), ImageFormat.JPEG, 2);
+    openDevice(result, true);
+  }
+
+  @Override
+  public boolean isSuspended() {
+    return suspended;
+  }
 
-    // Used to steam image byte data to dart side.
-    imageStreamReader =
-        ImageReader.newInstance(
-            mPreviewSize.getWidth(), mPreviewSize.getHeight(), ImageFormat.YUV_420_888, 2);
+  // Closes the device and frees every buffer, but keeps the negotiated sizes, the characteristics
+  // and the state the session is built from, so resume needs no renegotiation.
+  @Override
+  public void suspend(@NonNull Result result) {
+    if (suspended) {
+      result.success(null);
+      return;
+    }
+    if (recordingVideo) {
+      result.error("suspendFailed", "The camera can't be suspended while recording.", null);
+      return;
+    }
+    close();
+    suspended = true;
+    orientationEventListener.disable();
+    result.success(null);
+  }
+
+  @Override
+  public void resume(@NonNull Result result) {
+    if (!suspended) {
+      result.success(null);
+      return;
+    }
+    // Stays suspended until the device is open, so a failed resume can be retried.
+    try {
+      openDevice(result, false);
+    } catch (CameraAccessException e) {
+      result.error("CameraAccess", e.getMessage(), null);
+    }
+  }
+
+  // Opens the device straight into the preview, or the image stream if it was running when the
+  // camera was suspended. Only the initial open replies with the texture.
+  @SuppressLint("MissingPermission")
+  private void openDevice(@NonNull final Result result, final boolean initial)
+      throws CameraAccessException {
+    // Readers are only allocated once their mode is used, except those the resumed mode needs.
+    try {
+      if (usesImageStream()) {
+        allocateImageStreamReader();
+      }
+      for (AnalysisOutput output : analysisOutputs.values()) {
+        attachAnalysisOutput(output);
+      }
+    } catch (CameraMemoryBudget.ExceededException e) {
+      close();
+      result.error("memoryBudgetExceeded", e.getMessage(), null);
+      return;
+    }
 
+    final long openStartNanos = System.nanoTime();
     cameraManager.openCamera(
         cameraName,
         new CameraDevice.StateCallback() {
+          // The device can still disconnect or fail after opening, when the result is answered.
+          private boolean replied;
+
           @Override
           public void onOpened(@NonNull CameraDevice device) {
+            metrics.recordSince(PipelineMetrics.Stage.CAMERA_OPEN, openStartNanos);
+            firstPreviewFrameStartNanos = openStartNanos;
             cameraDevice = device;
+            replied = true;
             try {
-              startPreview();
+              restartSession();
             } catch (CameraAccessException e) {
               result.error("CameraAccess", e.getMessage(), null);
               close();
               return;
             }
+            if (!initial) {
+              suspended = false;
+              orientationEventListener.enable();
+              result.success(null);
+              return;
+            }
             Map<String, Object> reply = new HashMap<>();
             reply.put("textureId", flutterTexture.id());
             reply.put("previewWidth", mPreviewSize.getWidth());
@@ -290,6 +625,7 @@ public class Camera {
           public void onDisconnected(@NonNull CameraDevice cameraDevice) {
             close();
             sendEvent(EventType.ERROR, "The camera was disconnected.");
+            replyWithError("The camera was disconnected.");
           }
 
           @Override
@@ -316,24 +652,154 @@ public class Camera {
                 errorDescription = "Unknown camera error";
             }
             sendEvent(EventType.ERROR, errorDescription);
+            replyWithError(errorDescription);
+          }
+
+          private void replyWithError(String description) {
+            if (!replied) {
+              replied = true;
+              result.error("CameraAccess", description, null);
+            }
           }
         },
         null);
   }
 
-  private void writeToFile(ByteBuffer buffer, File file) throws IOException {
-    try (FileOutputStream outputStream = new FileOutputStream(file)) {
-      while (0 < buffer.remaining()) {
-        outputStream.getChannel().write(buffer);
+  SurfaceTextureEntry getFlutterTexture() {
+    return flutterTexture;
+  }
+
+  // Writes a still once its image, and its capture result if EXIF is written, have arrived. They
+  // can arrive in either order.
+  private final class PictureCapture extends CameraCaptureSession.CaptureCallback
+      implements ImageReader.OnImageAvailableListener {
+    private final File file;
+    private final ExifWriter exif;
+    private final Result result;
+    private final long captureStartNanos = System.nanoTime();
+    private Image image;
+    private TotalCaptureResult captureResult;
+    private long captureTimeMillis;
+    private boolean failed;
+
+    /** @param exif the writer of the EXIF segment, or null to keep the camera's. */
+    PictureCapture(File file, ExifWriter exif, @NonNull Result result) {
+      this.file = file;
+      this.exif = exif;
+      this.result = result;
+    }
+
+    @Override
+    public void onImageAvailable(ImageReader reader) {
+      PipelineTracer.begin(PipelineTracer.Event.IMAGE_ACQUIRE);
+      image = reader.acquireLatestImage();
+      PipelineTracer.end(PipelineTracer.Event.IMAGE_ACQUIRE);
+      metrics.recordSince(PipelineMetrics.Stage.CAPTURE_TO_IMAGE, captureStartNanos);
+      writeWhenComplete();
+    }
+
+    @Override
+    public void onCaptureCompleted(
+        @NonNull CameraCaptureSession session,
+        @NonNull CaptureRequest request,
+        @NonNull TotalCaptureResult result) {
+      captureResult = result;
+      captureTimeMillis = System.currentTimeMillis();
+      writeWhenComplete();
+    }
+
+    @Override
+    public void onCaptureFailed(
+        @NonNull CameraCaptureSession session,
+        @NonNull CaptureRequest request,
+        @NonNull CaptureFailure failure) {
+      String reason;
+      switch (failure.getReason()) {
+        case CaptureFailure.REASON_ERROR:
+          reason = "An error happened in the framework";
+          break;
+        case CaptureFailure.REASON_FLUSHED:
+          reason = "The capture has failed due to an abortCaptures() call";
+          break;
+        default:
+          reason = "Unknown reason";
+      }
+      failed = true;
+      if (image != null) {
+        image.close();
+        image = null;
+      }
+      result.error("captureFailure", reason, null);
+    }
+
+    private void writeWhenComplete() {
+      if (failed && image != null) {
+        // The image of a failed capture can still arrive, but the result has been replied to.
+        image.close();
+        image = null;
+        return;
+      }
+      if (image == null || (exif != null && captureResult == null)) {
+        return;
+      }
+      try (Image image = this.image) {
+        ByteBuffer buffer = image.getPlanes()[0].getBuffer();
+        long writeStartNanos = System.nanoTime();
+        PipelineTracer.begin(PipelineTracer.Event.FILE_WRITE);
+        try {
+          if (exif == null) {
+            ImageBuffers.writeToFile(buffer, file);
+          } else {
+            exif.setCaptureSettings(
+                    captureResult.get(CaptureResult.SENSOR_EXPOSURE_TIME),
+                    captureResult.get(CaptureResult.SENSOR_SENSITIVITY),
+                    captureResult.get(CaptureResult.LENS_FOCAL_LENGTH),
+                    captureResult.get(CaptureResult.LENS_APERTURE))
+                .setCaptureTime(captureTimeMillis, TimeZone.getDefault())
+                .setImageSize(image.getWidth(), image.getHeight())
+                .writeJpeg(buffer, file);
+          }
+        } finally {
+          PipelineTracer.end(PipelineTracer.Event.FILE_WRITE);
+        }
+        metrics.recordSince(PipelineMetrics.Stage.IMAGE_TO_DISK, writeStartNanos);
+        result.success(null);
+      } catch (IOException e) {
+        result.error("IOError", "Failed saving image", null);
+      } finally {
+        this.image = null;
       }
     }
   }
 
-  SurfaceTextureEntry getFlutterTexture() {
-    return flutterTexture;
+  // Returns null without metadata, so the camera's EXIF segment is kept.
+  private static ExifWriter createExifWriter(Map<String, Object> metadata) {
+    if (metadata == null) {
+      return null;
+    }
+    ExifWriter exif =
+        new ExifWriter().setMetadata(metadata).setDevice(Build.MANUFACTURER, Build.MODEL);
+    // Fails now rather than after the capture if the metadata doesn't fit a segment.
+    exif.toApp1Segment();
+    return exif;
   }
 
-  public void takePicture(String filePath, @NonNull final Result result) {
+  @Override
+  public void takePicture(
+      String filePath, Map<String, Object> metadata, @NonNull final Result result) {
+    final ExifWriter exif;
+    try {
+      exif = createExifWriter(metadata);
+    } catch (IllegalArgumentException e) {
+      result.error("invalidMetadata", e.getMessage(), null);
+      return;
+    }
+    if (recordingVideo) {
+      // The recording session has no still capture output.
+      takeVideoSnapshot(filePath, exif, result);
+      return;
+    }
+
     final File file = new File(filePath);
 
     if (file.exists()) {
@@ -342,17 +808,53 @@ public class Camera {
       return;
     }
 
-    pictureImageReader.setOnImageAvailableListener(
-        reader -> {
-          try (Image image = reader.acquireLatestImage()) {
-            ByteBuffer buffer = image.getPlanes()[0].getBuffer();
-            writeToFile(buffer, file);
-            result.success(null);
-          } catch (IOException e) {
-            result.error("IOError", "Failed saving image", null);
-          }
-        },
-        null);
+    if (pendingSessionAction != null) {
+      result.error("captureFailed", "The camera is still adding the still capture output.", null);
+      return;
+    }
+    if (pictureImageReader == null) {
+      try {
+        checkSession("still capture", stream(StreamCombinations.Type.JPEG, captureSize));
+        int maxImages =
+            memoryBudget.reserve(
+                PICTURE_READER,
+                captureSize.getWidth(),
+                captureSize.getHeight(),
+                ImageFormat.JPEG,
+                2,
+                1);
+        pictureImageReader =
+            ImageReader.newInstance(
+                captureSize.getWidth(), captureSize.getHeight(), ImageFormat.JPEG, maxImages);
+      } catch (StreamCombinations.UnsupportedException e) {
+        result.error("streamCombinationUnsupported", e.getMessage(), null);
+        return;
+      } catch (CameraMemoryBudget.ExceededException e) {
+        result.error("memoryBudgetExceeded", e.getMessage(), null);
+        return;
+      }
+      // The first picture recreates the session with the still capture output, and waits for 3A
+      // to settle on it.
+      pendingSessionAction =
+          () -> convergence.await(() -> capturePicture(file, exif, result), result);
+      pendingSessionResult = result;
+      if (cameraDevice == null) {
+        failPendingSessionAction("The camera is closed.");
+        return;
+      }
+      try {
+        restartSession();
+      } catch (CameraAccessException e) {
+        failPendingSessionAction(e.getMessage());
+      }
+      return;
+    }
+    capturePicture(file, exif, result);
+  }
+
+  private void capturePicture(File file, ExifWriter exif, @NonNull final Result result) {
+    PictureCapture capture = new PictureCapture(file, exif, result);
+    pictureImageReader.setOnImageAvailableListener(capture, null);
 
     try {
       final CaptureRequest.Builder captureBuilder =
@@ -361,9 +863,132 @@ public class Camera {
       captureBuilder.set(CaptureRequest.JPEG_ORIENTATION, getMediaOrientation());
       captureBuilder.set(CaptureRequest.JPEG_QUALITY, (byte) 100);
 
-      if (supportMonoEffect && enableMonoMode) {
-        captureBuilder.set(CaptureRequest.CONTROL_EFFECT_MODE, CaptureRequest.CONTROL_EFFECT_MODE_MONO);
+      setUpControls(captureBuilder);
+
+      if (flashMode) {
+        captureBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_TORCH);
+      } else {
+        captureBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_OFF);
+      }
+
+      cameraCaptureSession.capture(captureBuilder.build(), capture, null);
+    } catch (CameraAccessException e) {
+      result.error("cameraAccess", e.getMessage(), null);
+    }
+  }
+
+  @Override
+  public void takeBurstPicture(String filePath, int frameCount, @NonNull final Result result) {
+    final long startNanos = System.nanoTime();
+    if (frameCount < 2 || frameCount > BurstMerger.MAX_FRAMES) {
+      result.error(
+          "burstFailed",
+          "frameCount must be between 2 and " + BurstMerger.MAX_FRAMES + ".",
+          null);
+      return;
+    }
+    if (recordingVideo || slowMoMode) {
+      result.error(
+          "burstFailed", "Bursts aren't available while recording or in slow motion.", null);
+      return;
+    }
+
+    final File file = new File(filePath);
+
+    if (file.exists()) {
+      result.error(
+          "fileExists", "File at path '" + filePath + "' already exists. Cannot overwrite.", null);
+      return;
+    }
+
+    if (pendingSessionAction != null || burstReader != null) {
+      result.error("captureFailed", "The camera is still adding or removing an output.", null);
+      return;
+    }
+    if (cameraDevice == null) {
+      result.error("burstFailed", "The camera is closed.", null);
+      return;
+    }
+    Size size = chooseBurstSize();
+    if (size == null) {
+      result.error(
+          "streamCombinationUnsupported",
+          "A "
+              + streamCombinations.getLevelName()
+              + " camera doesn't guarantee a burst output next to the current outputs.",
+          null);
+      return;
+    }
+    try {
+      // The denoiser copies each frame out right away, so a few buffers keep the burst going.
+      int maxImages =
+          memoryBudget.reserve(
+              BURST_READER, size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, 3, 2);
+      memoryBudget.reserveBytes(
+          BURST_MERGE,
+          size.getWidth(),
+          size.getHeight(),
+          BurstDenoiser.workingBytes(size.getWidth(), size.getHeight()));
+      burstReader =
+          new ImageReaderFrameSource(
+              size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, maxImages);
+      burstSize = size;
+    } catch (CameraMemoryBudget.ExceededException e) {
+      memoryBudget.release(BURST_READER);
+      result.error("memoryBudgetExceeded", e.getMessage(), null);
+      return;
+    }
+    burstReader.setListener(this::onBurstFrame);
+    // The burst output is only in the session for the burst, and 3A settles on it first.
+    final Result burstResult = detachingBurstReader(result);
+    pendingSessionAction =
+        () ->
+            convergence.await(
+                () -> captureBurst(file, frameCount, startNanos, burstResult), burstResult);
+    pendingSessionResult = burstResult;
+    try {
+      restartSession();
+    } catch (CameraAccessException e) {
+      failPendingSessionAction(e.getMessage());
+    }
+  }
+
+  // The largest YUV size up to the still size whose output fits the session. The still output is
+  // left out of the session during a burst.
+  private Size chooseBurstSize() {
+    Size[] bounds = {
+      captureSize,
+      new Size(recordingProfile.videoFrameWidth, recordingProfile.videoFrameHeight),
+      mPreviewSize
+    };
+    for (Size bound : bounds) {
+      Size size =
+          CameraSizes.chooseBoundedSize(
+              yuvOutputSizes, bound.getWidth(), bound.getHeight(), bound);
+      if (streamCombinations.isGuaranteed(
+          sessionStreams(true, stream(StreamCombinations.Type.YUV, size)))) {
+        return size;
       }
+    }
+    return null;
+  }
+
+  private void captureBurst(
+      File file, int frameCount, long startNanos, @NonNull final Result result) {
+    ExifWriter exif =
+        new ExifWriter()
+            .setDevice(Build.MANUFACTURER, Build.MODEL)
+            .setOrientation(getMediaOrientation())
+            .setCaptureTime(System.currentTimeMillis(), TimeZone.getDefault());
+    burstDenoiser.start(file, frameCount, exif, startNanos, result);
+
+    try {
+      final CaptureRequest.Builder captureBuilder =
+          cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+      captureBuilder.addTarget(burstReader.getSurface());
+
+      setUpAutoFocus(captureBuilder);
+      setUpControls(captureBuilder);
 
       if (flashMode) {
         captureBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_TORCH);
@@ -371,30 +996,145 @@ public class Camera {
         captureBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_OFF);
       }
 
-      cameraCaptureSession.capture(
-          captureBuilder.build(),
+      // Identical requests, so the frames only differ by noise and motion.
+      CaptureRequest request = captureBuilder.build();
+      List<CaptureRequest> requests = new ArrayList<>();
+      for (int i = 0; i < frameCount; i++) {
+        requests.add(request);
+      }
+      cameraCaptureSession.captureBurst(
+          requests,
           new CameraCaptureSession.CaptureCallback() {
             @Override
             public void onCaptureFailed(
                 @NonNull CameraCaptureSession session,
                 @NonNull CaptureRequest request,
                 @NonNull CaptureFailure failure) {
-              String reason;
-              switch (failure.getReason()) {
-                case CaptureFailure.REASON_ERROR:
-                  reason = "An error happened in the framework";
-                  break;
-                case CaptureFailure.REASON_FLUSHED:
-                  reason = "The capture has failed due to an abortCaptures() call";
-                  break;
-                default:
-                  reason = "Unknown reason";
-              }
-              result.error("captureFailure", reason, null);
+              burstDenoiser.fail("captureFailure", "A frame of the burst failed.");
             }
           },
           null);
+    } catch (CameraAccessException | IllegalStateException e) {
+      burstDenoiser.fail("cameraAccess", e.getMessage());
+    }
+  }
+
+  // Every frame of a burst is merged, so frames are taken oldest first.
+  private void onBurstFrame(FrameSource source) {
+    FrameSource.Frame frame = ((ImageReaderFrameSource) source).acquireNextFrame();
+    if (frame != null) {
+      burstDenoiser.onFrame(frame);
+    }
+  }
+
+  // Takes the burst output back out of the session before the burst replies, however it ends. The
+  // denoiser only replies once it holds none of the burst's frames.
+  private Result detachingBurstReader(final Result result) {
+    return new Result() {
+      @Override
+      public void success(Object value) {
+        detachBurstReader();
+        result.success(value);
+      }
+
+      @Override
+      public void error(String errorCode, String errorMessage, Object errorDetails) {
+        detachBurstReader();
+        result.error(errorCode, errorMessage, errorDetails);
+      }
+
+      @Override
+      public void notImplemented() {
+        detachBurstReader();
+        result.notImplemented();
+      }
+    };
+  }
+
+  private void detachBurstReader() {
+    if (burstReader == null) {
+      return;
+    }
+    ImageReaderFrameSource reader = burstReader;
+    burstReader = null;
+    burstSize = null;
+    memoryBudget.release(BURST_READER);
+    memoryBudget.release(BURST_MERGE);
+    try {
+      restartSession();
     } catch (CameraAccessException e) {
+      sendEvent(EventType.ERROR, e.getMessage());
+    }
+    // Closed after the session that targets it, like close() does.
+    reader.close();
+  }
+
+  private void runPendingSessionAction() {
+    Runnable action = pendingSessionAction;
+    pendingSessionAction = null;
+    pendingSessionResult = null;
+    if (action != null) {
+      action.run();
+    }
+  }
+
+  private void failPendingSessionAction(String reason) {
+    Result result = pendingSessionResult;
+    pendingSessionAction = null;
+    pendingSessionResult = null;
+    if (result != null) {
+      result.error("sessionFailed", reason, null);
+    }
+  }
+
+  @Override
+  public void takeVideoSnapshot(String filePath, @NonNull final Result result) {
+    takeVideoSnapshot(filePath, null, result);
+  }
+
+  private void takeVideoSnapshot(String filePath, ExifWriter exif, @NonNull final Result result) {
+    if (!recordingVideo || !videoSnapshotEnabled) {
+      result.error(
+          "videoSnapshotFailed",
+          "Video snapshots require a recording started with enableVideoSnapshot.",
+          null);
+      return;
+    }
+
+    final File file = new File(filePath);
+
+    if (file.exists()) {
+      result.error(
+          "fileExists", "File at path '" + filePath + "' already exists. Cannot overwrite.", null);
+      return;
+    }
+
+    PictureCapture capture = new PictureCapture(file, exif, result);
+    videoSnapshotImageReader.setOnImageAvailableListener(capture, null);
+
+    try {
+      final CaptureRequest.Builder snapshotBuilder =
+          cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_VIDEO_SNAPSHOT);
+      // The snapshot frame also goes to the preview and the encoder, so the recording has no gap.
+      snapshotBuilder.addTarget(recordingPreviewSurface);
+      snapshotBuilder.addTarget(mediaRecorder.getSurface());
+      if (proxyMediaRecorder != null) {
+        snapshotBuilder.addTarget(proxyMediaRecorder.getSurface());
+      }
+      snapshotBuilder.addTarget(videoSnapshotImageReader.getSurface());
+      snapshotBuilder.set(CaptureRequest.JPEG_ORIENTATION, getMediaOrientation());
+      snapshotBuilder.set(CaptureRequest.JPEG_QUALITY, (byte) 100);
+
+      setUpControls(snapshotBuilder);
+
+      if (flashMode) {
+        snapshotBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_TORCH);
+      } else {
+        snapshotBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_OFF);
+      }
+
+      cameraCaptureSession.capture(snapshotBuilder.build(), capture, null);
+    } catch (CameraAccessException | IllegalStateException e) {
       result.error("cameraAccess", e.getMessage(), null);
     }
   }
@@ -432,6 +1172,7 @@ public class Camera {
         new CameraCaptureSession.StateCallback() {
           @Override
           public void onConfigured(@NonNull CameraCaptureSession session) {
+            sessionTracker.end(true);
             try {
               if (cameraDevice == null) {
                 sendEvent(EventType.ERROR, "The camera was closed during configuration.");
@@ -440,9 +1181,11 @@ public class Camera {
               cameraCaptureSession = session;
               captureRequestBuilder.set(
                   CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-              captureRequestBuilder.set(CaptureRequest.CONTROL_AF_MODE, CaptureRequest.CONTROL_AF_MODE_EDOF);
+              setUpAutoFocus(captureRequestBuilder);
+              setUpControls(captureRequestBuilder);
 
-              cameraCaptureSession.setRepeatingRequest(captureRequestBuilder.build(), null, null);
+              setRepeatingRequest(cameraCaptureSession, captureRequestBuilder.build());
+              relockFocus();
               if (onSuccessCallback != null) {
                 onSuccessCallback.run();
               }
@@ -453,6 +1196,7 @@ public class Camera {
 
           @Override
           public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
+            sessionTracker.end(false);
             sendEvent(EventType.ERROR, "Failed to configure camera session.");
           }
         };
@@ -462,6 +1206,7 @@ public class Camera {
     surfaceList.add(flutterSurface);
     surfaceList.addAll(remainingSurfaces);
     // Start the session
+    sessionTracker.begin();
     cameraDevice.createCaptureSession(surfaceList, callback, null);
   }
 
@@ -471,12 +1216,45 @@ public class Camera {
     builder.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fpsRange);
     builder.set(CaptureRequest.LENS_OPTICAL_STABILIZATION_MODE, CaptureRequest.LENS_OPTICAL_STABILIZATION_MODE_ON);
 
-    if (supportMonoEffect && enableMonoMode) {
-      builder.set(CaptureRequest.CONTROL_EFFECT_MODE, CaptureRequest.CONTROL_EFFECT_MODE_MONO);
-    }
+    setUpControls(builder);
   }
 
-  private void updatePreview() {
+  @Override
+  public boolean isConfiguringSession() {
+    return sessionTracker.isConfiguring();
+  }
+
+  @Override
+  public void setSessionConfiguredListener(Runnable listener) {
+    sessionTracker.setConfiguredListener(listener);
+  }
+
+  @Override
+  public void setCommandScheduler(CommandScheduler scheduler) {
+    commandScheduler = scheduler;
+  }
+
+  private void setRepeatingRequest(CameraCaptureSession session, CaptureRequest request)
+      throws CameraAccessException {
+    PipelineTracer.begin(PipelineTracer.Event.SET_REPEATING_REQUEST);
+    try {
+      session.setRepeatingRequest(request, previewCaptureCallback, null);
+    } finally {
+      PipelineTracer.end(PipelineTracer.Event.SET_REPEATING_REQUEST);
+    }
+  }
+
+  private void setRepeatingBurst(CameraCaptureSession session, List<CaptureRequest> requests)
+      throws CameraAccessException {
+    PipelineTracer.begin(PipelineTracer.Event.SET_REPEATING_REQUEST);
+    try {
+      session.setRepeatingBurst(requests, previewCaptureCallback, null);
+    } finally {
+      PipelineTracer.end(PipelineTracer.Event.SET_REPEATING_REQUEST);
+    }
+  }
+
+  private void updatePreview() {
     if (cameraDevice == null) {
       return;
     }
@@ -487,11 +1265,15 @@ public class Camera {
         if (slowMoMode && android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.M) {
           mPreviewBuilderBurst = mPreviewSessionHighSpeed.createHighSpeedRequestList(captureRequestBuilder.build());
         }
-        mPreviewSessionHighSpeed.setRepeatingBurst(mPreviewBuilderBurst, null, null);
+        setRepeatingBurst(mPreviewSessionHighSpeed, mPreviewBuilderBurst);
       } else {
         //captureRequestBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
         try {
-          cameraCaptureSession.setRepeatingRequest(captureRequestBuilder.build(), null, null);
+          if (recordingVideo && usesImageStream() && recordingStreamReader != null) {
+            setRepeatingBurst(cameraCaptureSession, createRecordingStreamBurst());
+          } else {
+            setRepeatingRequest(cameraCaptureSession, captureRequestBuilder.build());
+          }
         } catch (Exception e) {
         }
       }
@@ -500,20 +1282,64 @@ public class Camera {
     }
   }
 
-  public void startVideoRecording(String filePath, Result result) {
+  // Only every n-th request of the burst targets the analysis output, so the sensor keeps feeding
+  // the encoder at full rate while the stream is limited to recordingStreamMaxFps.
+  private List<CaptureRequest> createRecordingStreamBurst() {
+    int frameRate = recordingProfile.videoFrameRate > 0 ? recordingProfile.videoFrameRate : 30;
+    int interval = Math.max(1, frameRate / Math.max(1, recordingStreamMaxFps));
+
+    Surface streamSurface = recordingStreamReader.getSurface();
+    captureRequestBuilder.addTarget(streamSurface);
+    CaptureRequest streamRequest = captureRequestBuilder.build();
+    captureRequestBuilder.removeTarget(streamSurface);
+    CaptureRequest recordRequest = captureRequestBuilder.build();
+
+    List<CaptureRequest> burst = new ArrayList<>(interval);
+    burst.add(streamRequest);
+    for (int i = 1; i < interval; i++) {
+      burst.add(recordRequest);
+    }
+    return burst;
+  }
+
+  @Override
+  public void startVideoRecording(
+      String filePath, String proxyFilePath, boolean enableVideoSnapshot, Result result) {
     if (new File(filePath).exists()) {
       result.error("fileExists", "File at path '" + filePath + "' already exists.", null);
       return;
     }
+    if (proxyFilePath != null && new File(proxyFilePath).exists()) {
+      result.error("fileExists", "File at path '" + proxyFilePath + "' already exists.", null);
+      return;
+    }
+    if (proxyFilePath != null && (slowMoMode || proxyVideoSize == null)) {
+      result.error(
+          "videoRecordingFailed", "Proxy recording is not available for slow motion videos.", null);
+      return;
+    }
+    try {
+      allocateRecordingReaders(enableVideoSnapshot, !slowMoMode && usesImageStream());
+    } catch (CameraMemoryBudget.ExceededException e) {
+      result.error("memoryBudgetExceeded", e.getMessage(), null);
+      return;
+    }
     try {
       closeCaptureSession();
       prepareMediaRecorder(filePath);
+      if (proxyFilePath != null) {
+        prepareProxyMediaRecorder(proxyFilePath);
+      } else if (proxyMediaRecorder != null) {
+        proxyMediaRecorder.release();
+        proxyMediaRecorder = null;
+      }
 
       recordingVideo = true;
 
       SurfaceTexture surfaceTexture = flutterTexture.surfaceTexture();
       surfaceTexture.setDefaultBufferSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
       captureRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_RECORD);
+      setUpAutoFocus(captureRequestBuilder);
 
       if (flashMode) {
         captureRequestBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_TORCH);
@@ -521,26 +1347,61 @@ public class Camera {
         captureRequestBuilder.set(CaptureRequest.FLASH_MODE, CaptureRequest.FLASH_MODE_OFF);
       }
 
-      if (supportMonoEffect && enableMonoMode) {
-        captureRequestBuilder.set(CaptureRequest.CONTROL_EFFECT_MODE, CaptureRequest.CONTROL_EFFECT_MODE_MONO);
-      }
+      setUpControls(captureRequestBuilder);
 
       List<Surface> surfaces = new ArrayList<>();
 
       Surface previewSurface = new Surface(surfaceTexture);
       surfaces.add(previewSurface);
       captureRequestBuilder.addTarget(previewSurface);
+      recordingPreviewSurface = previewSurface;
 
       Surface recorderSurface = mediaRecorder.getSurface();
       surfaces.add(recorderSurface);
       captureRequestBuilder.addTarget(recorderSurface);
 
+      if (proxyMediaRecorder != null) {
+        // Encoded from the same frames as the main recording, at a lower size and bitrate.
+        Surface proxySurface = proxyMediaRecorder.getSurface();
+        surfaces.add(proxySurface);
+        captureRequestBuilder.addTarget(proxySurface);
+      }
+
+      videoSnapshotEnabled = enableVideoSnapshot && !slowMoMode && videoSnapshotSize != null;
+      if (videoSnapshotEnabled) {
+        surfaces.add(videoSnapshotImageReader.getSurface());
+      }
+
+      // The outputs asked for must fit together. The stream only joins them if it fits as well;
+      // otherwise it pauses until the recording stops.
+      List<StreamCombinations.Stream> streams = recordingStreams();
+      if ((proxyMediaRecorder != null || videoSnapshotEnabled)
+          && !isSessionSupported(streams, surfaces)) {
+        abortRecording();
+        result.error(
+            "streamCombinationUnsupported",
+            "The camera doesn't support the recording with its proxy or snapshot output.",
+            null);
+        return;
+      }
+      if (recordingStreamReader != null) {
+        surfaces.add(recordingStreamReader.getSurface());
+        streams.add(stream(StreamCombinations.Type.YUV, recordingStreamSize));
+        if (!isSessionSupported(streams, surfaces)) {
+          Log.w(TAG, "The image stream pauses during the recording, which has no room for it.");
+          surfaces.remove(recordingStreamReader.getSurface());
+          releaseRecordingStreamReader();
+        }
+      }
+
       if (slowMoMode && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+        sessionTracker.begin();
         cameraDevice.createConstrainedHighSpeedCaptureSession (
                 surfaces,
                 new CameraCaptureSession.StateCallback() {
                   @Override
                   public void onConfigured(@NonNull CameraCaptureSession session) {
+                    sessionTracker.end(true);
                     if (cameraDevice == null) {
                       result.error("configureFailed", "Camera was closed during configuration", null);
                       return;
@@ -548,54 +1409,163 @@ public class Camera {
 
                     cameraCaptureSession = session;
                     mPreviewSessionHighSpeed = (CameraConstrainedHighSpeedCaptureSession) cameraCaptureSession;
-                    if (isFocusLocked) {
-                      lockFocus(new PointF(0f, 0f));
-                    }
                     updatePreview();
+                    relockFocus();
 
-                    mediaRecorder.start();
+                    startMediaRecorders();
                     result.success(null);
                   }
 
                   @Override
                   public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+                    sessionTracker.end(false);
                     result.error("configureFailed", "Failed to configure camera session", null);
                   }
                 },
                 null);
       } else {
-        cameraDevice.createCaptureSession(
-                surfaces,
-                new CameraCaptureSession.StateCallback() {
-                  @Override
-                  public void onConfigured(@NonNull CameraCaptureSession session) {
-                    if (cameraDevice == null) {
-                      result.error("configureFailed", "Camera was closed during configuration", null);
-                      return;
-                    }
+        createRecordingSession(surfaces, result);
+      }
+    } catch (CameraAccessException | IOException e) {
+      result.error("videoRecordingFailed", e.getMessage(), null);
+    }
+  }
 
-                    cameraCaptureSession = session;
-                    if (isFocusLocked) {
-                      lockFocus(new PointF(0f, 0f));
-                    }
-                    updatePreview();
+  // The recording session's outputs besides the image stream.
+  private List<StreamCombinations.Stream> recordingStreams() {
+    List<StreamCombinations.Stream> streams = new ArrayList<>();
+    streams.add(stream(StreamCombinations.Type.PRIV, mPreviewSize));
+    streams.add(stream(StreamCombinations.Type.PRIV, mVideoSize));
+    if (proxyMediaRecorder != null) {
+      streams.add(stream(StreamCombinations.Type.PRIV, proxyVideoSize));
+    }
+    if (videoSnapshotEnabled) {
+      streams.add(stream(StreamCombinations.Type.JPEG, videoSnapshotSize));
+    }
+    return streams;
+  }
 
-                    mediaRecorder.start();
-                    result.success(null);
-                  }
+  // Sessions outside the guaranteed combinations can still be supported by a given device, which
+  // can be asked from Android 10.
+  private boolean isSessionSupported(
+      List<StreamCombinations.Stream> streams, List<Surface> surfaces) {
+    if (streamCombinations.isGuaranteed(streams)) {
+      return true;
+    }
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+      return false;
+    }
+    List<OutputConfiguration> outputs = new ArrayList<>();
+    for (Surface surface : surfaces) {
+      outputs.add(new OutputConfiguration(surface));
+    }
+    SessionConfiguration configuration =
+        new SessionConfiguration(
+            SessionConfiguration.SESSION_REGULAR,
+            outputs,
+            mainHandler::post,
+            new CameraCaptureSession.StateCallback() {
+              @Override
+              public void onConfigured(@NonNull CameraCaptureSession session) {}
 
-                  @Override
-                  public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
-                    result.error("configureFailed", "Failed to configure camera session", null);
-                  }
-                },
-                null);
+              @Override
+              public void onConfigureFailed(@NonNull CameraCaptureSession session) {}
+            });
+    try {
+      return cameraDevice.isSessionConfigurationSupported(configuration);
+    } catch (CameraAccessException | UnsupportedOperationException | IllegalArgumentException e) {
+      // The device can't tell.
+      return false;
+    }
+  }
+
+  // If the session with the image stream fails to configure, the recording is retried without it.
+  private void createRecordingSession(final List<Surface> surfaces, final Result result)
+      throws CameraAccessException {
+    sessionTracker.begin();
+    cameraDevice.createCaptureSession(
+        surfaces,
+        new CameraCaptureSession.StateCallback() {
+          @Override
+          public void onConfigured(@NonNull CameraCaptureSession session) {
+            sessionTracker.end(true);
+            if (cameraDevice == null) {
+              result.error("configureFailed", "Camera was closed during configuration", null);
+              return;
+            }
+
+            cameraCaptureSession = session;
+            updatePreview();
+            relockFocus();
+
+            startMediaRecorders();
+            result.success(null);
+          }
+
+          @Override
+          public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
+            sessionTracker.end(false);
+            if (cameraDevice != null
+                && recordingStreamReader != null
+                && surfaces.remove(recordingStreamReader.getSurface())) {
+              Log.w(TAG, "The recording session failed with the image stream; retrying without.");
+              releaseRecordingStreamReader();
+              try {
+                createRecordingSession(surfaces, result);
+                return;
+              } catch (CameraAccessException | IllegalStateException e) {
+                // Fails the recording below.
+              }
+            }
+            abortRecording();
+            result.error("configureFailed", "Failed to configure camera session", null);
+          }
+        },
+        null);
+  }
+
+  // Undoes a recording whose session couldn't be configured, and brings the preview back.
+  private void abortRecording() {
+    recordingVideo = false;
+    videoSnapshotEnabled = false;
+    if (mediaRecorder != null) {
+      mediaRecorder.reset();
+    }
+    if (proxyMediaRecorder != null) {
+      proxyMediaRecorder.reset();
+    }
+    releaseRecordingStreamReader();
+    try {
+      restoreSessionAfterRecording();
+    } catch (CameraAccessException | IllegalStateException e) {
+      sendEvent(EventType.ERROR, e.getMessage());
+    }
+  }
+
+  // The image stream reader may be missing if the stream or scanning started during the recording.
+  private void restoreSessionAfterRecording() throws CameraAccessException {
+    if (usesImageStream()) {
+      try {
+        allocateImageStreamReader();
+      } catch (CameraMemoryBudget.ExceededException e) {
+        imageStream.stop();
+        closeBarcodeScanner();
+        sendEvent(EventType.ERROR, e.getMessage());
       }
-    } catch (CameraAccessException | IOException e) {
-      result.error("videoRecordingFailed", e.getMessage(), null);
+    }
+    restartSession();
+  }
+
+  // Only closed once the session that targets it is replaced.
+  private void releaseRecordingStreamReader() {
+    if (recordingStreamReader != null) {
+      recordingStreamReader.close();
+      recordingStreamReader = null;
+      memoryBudget.release(RECORDING_STREAM_READER);
     }
   }
 
+  @Override
   public void stopVideoRecording(@NonNull final Result result) {
     if (!recordingVideo) {
       result.success(null);
@@ -606,18 +1576,24 @@ public class Camera {
       recordingVideo = false;
       mediaRecorder.stop();
       mediaRecorder.reset();
+      if (proxyMediaRecorder != null) {
+        proxyMediaRecorder.stop();
+        proxyMediaRecorder.reset();
+      }
       if (slowMoMode) {
         mPreviewSessionHighSpeed.stopRepeating();
       } else {
         cameraCaptureSession.stopRepeating();
       }
-      startPreview();
+      restoreSessionAfterRecording();
+      releaseRecordingStreamReader();
       result.success(null);
     } catch (CameraAccessException | IllegalStateException e) {
       result.error("videoRecordingFailed", e.getMessage(), null);
     }
   }
 
+  @Override
   public void pauseVideoRecording(@NonNull final Result result) {
     if (!recordingVideo) {
       result.success(null);
@@ -627,6 +1603,9 @@ public class Camera {
     try {
       if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
         mediaRecorder.pause();
+        if (proxyMediaRecorder != null) {
+          proxyMediaRecorder.pause();
+        }
       } else {
         result.error("videoRecordingFailed", "pauseVideoRecording requires Android API +24.", null);
         return;
@@ -639,6 +1618,7 @@ public class Camera {
     result.success(null);
   }
 
+  @Override
   public void resumeVideoRecording(@NonNull final Result result) {
     if (!recordingVideo) {
       result.success(null);
@@ -648,6 +1628,9 @@ public class Camera {
     try {
       if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
         mediaRecorder.resume();
+        if (proxyMediaRecorder != null) {
+          proxyMediaRecorder.resume();
+        }
       } else {
         result.error(
             "videoRecordingFailed", "resumeVideoRecording requires Android API +24.", null);
@@ -669,10 +1652,9 @@ public class Camera {
     SurfaceTexture surfaceTexture = flutterTexture.surfaceTexture();
     surfaceTexture.setDefaultBufferSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
     captureRequestBuilder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+    setUpAutoFocus(captureRequestBuilder);
 
-    if (supportMonoEffect && enableMonoMode) {
-      captureRequestBuilder.set(CaptureRequest.CONTROL_EFFECT_MODE, CaptureRequest.CONTROL_EFFECT_MODE_MONO);
-    }
+    setUpControls(captureRequestBuilder);
 
     List<Surface> surfaces = new ArrayList<>();
 
@@ -680,174 +1662,842 @@ public class Camera {
     surfaces.add(previewSurface);
     captureRequestBuilder.addTarget(previewSurface);
 
-    surfaces.add(pictureImageReader.getSurface());
+    // A burst takes the still output's place.
+    if (burstReader != null) {
+      surfaces.add(burstReader.getSurface());
+    } else if (pictureImageReader != null) {
+      surfaces.add(pictureImageReader.getSurface());
+    }
+    addAnalysisOutputs(surfaces);
 
+    sessionTracker.begin();
     cameraDevice.createCaptureSession(
             surfaces,
             new CameraCaptureSession.StateCallback() {
 
               @Override
               public void onConfigured(@NonNull CameraCaptureSession session) {
+                sessionTracker.end(true);
                 if (cameraDevice == null) {
                   sendEvent(EventType.ERROR,"The camera was closed during configuration.");
                   return;
                 }
                 cameraCaptureSession = session;
                 updatePreview();
+                relockFocus();
+                runPendingSessionAction();
               }
 
               @Override
               public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
+                sessionTracker.end(false);
+                failPendingSessionAction("Failed to configure the camera for preview.");
                 sendEvent(EventType.ERROR,"Failed to configure the camera for preview.");
               }
             },
             null);
   }
 
-  public void startPreviewWithImageStream(EventChannel imageStreamChannel)
+  @Override
+  public boolean isRecordingHighSpeedVideo() {
+    return recordingVideo && slowMoMode;
+  }
+
+  @Override
+  public void setImageStreamSink(EventChannel.EventSink imageStreamSink) {
+    imageStream.setSink(imageStreamSink);
+  }
+
+  private void tapImageStreamFrame(FrameSource.Frame frame) {
+    if (snapshotter.hasPendingRequests()) {
+      snapshotter.onFrame(frame);
+    }
+    if (barcodeScanner != null) {
+      barcodeScanner.onFrame(frame);
+    }
+  }
+
+  @Override
+  public void setAdaptiveQuality(
+      List<AdaptiveQualityController.Level> ladder, @NonNull Result result) {
+    imageStream.setQualityController(
+        ladder == null
+            ? null
+            : new AdaptiveQualityController(
+                ladder, this::getThermalStatus, this::onQualityChanged));
+    try {
+      if (ladder == null) {
+        applyQualityLevel(1, 1);
+      } else {
+        applyQualityLevel(ladder.get(0).analysisScale, ladder.get(0).bitRateScale);
+      }
+    } catch (CameraAccessException e) {
+      result.error("CameraAccess", e.getMessage(), null);
+      return;
+    }
+    result.success(null);
+  }
+
+  private int getThermalStatus() {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+      return AdaptiveQualityController.THERMAL_STATUS_NONE;
+    }
+    return powerManager.getCurrentThermalStatus();
+  }
+
+  // Called from the image stream's frames. The rebuild is queued, so it can't close the session
+  // under a capture or focus lock in flight, or while another session is being configured.
+  private void onQualityChanged(
+      int levelIndex, AdaptiveQualityController.Level level, String reason) {
+    commandScheduler.schedule(
+        "applyQualityLevel",
+        result -> {
+          try {
+            applyQualityLevel(level.analysisScale, level.bitRateScale);
+          } catch (CameraAccessException e) {
+            sendEvent(EventType.ERROR, e.getMessage());
+          }
+          result.success(null);
+        });
+    Map<String, Object> event = new HashMap<>();
+    event.put("level", levelIndex);
+    event.put("streamFps", level.streamFps);
+    event.put("analysisScale", level.analysisScale);
+    event.put("bitRateScale", level.bitRateScale);
+    event.put("reason", reason);
+    event.put("thermalStatus", getThermalStatus());
+    sendEvent(EventType.QUALITY_CHANGED, event);
+  }
+
+  // The stream frame rate is applied by the controller itself. The bitrate can't change during a
+  // recording, so it applies to the next one.
+  private void applyQualityLevel(double analysisScale, double bitRateScale)
       throws CameraAccessException {
-    //createCaptureSession(CameraDevice.TEMPLATE_STILL_CAPTURE, imageStreamReader.getSurface());
-    closeCaptureSession();
+    this.bitRateScale = bitRateScale;
+    if (analysisScale == this.analysisScale) {
+      return;
+    }
+    this.analysisScale = analysisScale;
+    if (suspended || analysisOutputs.isEmpty()) {
+      return;
+    }
+    // The old readers can only be closed once they are no longer outputs of the session. The
+    // recording session has none.
+    if (!recordingVideo) {
+      closeCaptureSession();
+    }
+    try {
+      for (AnalysisOutput output : analysisOutputs.values()) {
+        attachAnalysisOutput(output);
+      }
+    } catch (CameraMemoryBudget.ExceededException e) {
+      // The output that didn't fit, and those after it, keep their previous readers.
+      sendEvent(EventType.ERROR, e.getMessage());
+    }
+    restartSession();
+  }
 
-    SurfaceTexture surfaceTexture = flutterTexture.surfaceTexture();
-    surfaceTexture.setDefaultBufferSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+  @Override
+  public void snapshot(String filePath, int quality, int maxSize, @NonNull Result result) {
+    // YuvImage throws on a quality outside 0 to 100.
+    if (quality < 0 || quality > 100 || maxSize < 0) {
+      result.error(
+          "snapshotFailed",
+          String.format(
+              "The quality must be 0 to 100 and maxSize not negative, not %d and %d.",
+              quality, maxSize),
+          null);
+      return;
+    }
+    if (!imageStream.isStreaming()) {
+      result.error(
+          "snapshotFailed",
+          "Snapshots are taken from the image stream, which is not running.",
+          null);
+      return;
+    }
+    final File file = new File(filePath);
+    if (file.exists()) {
+      result.error(
+          "fileExists", "File at path '" + filePath + "' already exists. Cannot overwrite.", null);
+      return;
+    }
+    snapshotter.request(file, quality, maxSize, result);
+  }
 
-    captureRequestBuilder =
-            cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+  @Override
+  public void startPreviewWithImageStream(ImageStreamOptions options)
+      throws CameraAccessException, CameraMemoryBudget.ExceededException,
+          StreamCombinations.UnsupportedException {
+    if (!recordingVideo) {
+      addImageStreamReader();
+    } else if (recordingStreamReader == null) {
+      throw new StreamCombinations.UnsupportedException(
+          "The image stream can only run during a recording that started with it.");
+    }
+    if (options.maxFpsWhileRecording != null) {
+      recordingStreamMaxFps = options.maxFpsWhileRecording;
+    }
+    imageStream.start(options);
+    if (recordingVideo) {
+      // The recording session was started with the stream output.
+      updatePreview();
+    } else {
+      createImageStreamSession();
+    }
+  }
 
-    List<Surface> surfaces = new ArrayList<>();
+  @Override
+  public void stopImageStream() throws CameraAccessException {
+    if (!imageStream.stop()) {
+      return;
+    }
+    snapshotter.cancel("The image stream was stopped.");
+    if (recordingVideo) {
+      updatePreview();
+    } else if (barcodeScanner == null) {
+      // While scanning, the stream session stays and its frames only go to the scanner.
+      startPreview();
+    }
+  }
 
-    Surface previewSurface = new Surface(surfaceTexture);
-    surfaces.add(previewSurface);
-    captureRequestBuilder.addTarget(previewSurface);
+  @Override
+  public void startBarcodeScanning(BarcodeScanOptions options)
+      throws CameraAccessException, CameraMemoryBudget.ExceededException,
+          StreamCombinations.UnsupportedException {
+    if (!recordingVideo) {
+      addImageStreamReader();
+    } else if (recordingStreamReader == null) {
+      throw new StreamCombinations.UnsupportedException(
+          "Barcodes can only be scanned during a recording that started with the image stream.");
+    }
+    boolean sessionHasStream = usesImageStream();
+    closeBarcodeScanner();
+    barcodeScanner =
+        new BarcodeScanner(options, metrics, barcodeWorker, mainHandler::post, this::sendBarcodes);
+    if (recordingVideo) {
+      // The recording session was started with the stream output.
+      updatePreview();
+    } else if (!sessionHasStream) {
+      createImageStreamSession();
+    }
+  }
 
-    surfaces.add(imageStreamReader.getSurface());
-    captureRequestBuilder.addTarget(imageStreamReader.getSurface());
+  @Override
+  public void stopBarcodeScanning() throws CameraAccessException {
+    if (barcodeScanner == null) {
+      return;
+    }
+    closeBarcodeScanner();
+    if (recordingVideo) {
+      updatePreview();
+    } else if (!imageStream.isStreaming()) {
+      startPreview();
+    }
+  }
 
-    cameraDevice.createCaptureSession(
-            surfaces,
-            new CameraCaptureSession.StateCallback() {
-              @Override
-              public void onConfigured(@NonNull CameraCaptureSession session) {
-                if (cameraDevice == null) {
-                  sendEvent(EventType.ERROR, "The camera was closed during configuration.");
-                  return;
-                }
-                try {
-                  cameraCaptureSession = session;
-                  captureRequestBuilder.set(
-                          CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-                  cameraCaptureSession.setRepeatingRequest(captureRequestBuilder.build(), null, null);
-                } catch (CameraAccessException | IllegalStateException | IllegalArgumentException e) {
-                  sendEvent(EventType.ERROR, e.getMessage());
-                }
-              }
+  @Override
+  public Map<String, Object> getBarcodeScanStats() {
+    return barcodeScanner == null ? null : barcodeScanner.getStats();
+  }
 
-              @Override
-              public void onConfigureFailed(@NonNull CameraCaptureSession cameraCaptureSession) {
-                sendEvent(EventType.ERROR, "Failed to configure the camera for streaming images.");
-              }
-            },
-            null);
+  private void closeBarcodeScanner() {
+    if (barcodeScanner != null) {
+      barcodeScanner.close();
+      barcodeScanner = null;
+    }
+  }
 
-    imageStreamChannel.setStreamHandler(
-        new EventChannel.StreamHandler() {
+  private boolean sendBarcodes(
+      List<Barcode> barcodes, int width, int height, long timestamp, long latencyNanos) {
+    if (barcodeSink == null) {
+      return false;
+    }
+    List<Map<String, Object>> maps = new ArrayList<>(barcodes.size());
+    for (Barcode barcode : barcodes) {
+      maps.add(barcode.toMap());
+    }
+    Map<String, Object> event = new HashMap<>();
+    event.put("barcodes", maps);
+    event.put("width", width);
+    event.put("height", height);
+    event.put("timestamp", timestamp);
+    event.put("latencyMicros", latencyNanos / 1000);
+    barcodeSink.success(event);
+    return true;
+  }
+
+  // The image stream reader is in the session while frames are streamed or scanned.
+  private boolean usesImageStream() {
+    return imageStream.isStreaming() || barcodeScanner != null;
+  }
+
+  @Override
+  public void addAnalysisOutput(int maxWidth, int maxHeight, double maxFps, Result result) {
+    if (analysisOutputs.size() >= MAX_ANALYSIS_OUTPUTS) {
+      result.error(
+          "analysisOutputFailed",
+          "At most " + MAX_ANALYSIS_OUTPUTS + " analysis outputs are supported.",
+          null);
+      return;
+    }
+    if (pendingSessionAction != null) {
+      result.error("analysisOutputFailed", "The camera is still adding an output.", null);
+      return;
+    }
+    Size size = CameraSizes.chooseBoundedSize(yuvOutputSizes, maxWidth, maxHeight, streamSize);
+    // Recording sessions have no analysis outputs, so the output has to fit the session after it.
+    try {
+      checkSession("analysis", stream(StreamCombinations.Type.YUV, size));
+    } catch (StreamCombinations.UnsupportedException e) {
+      result.error("streamCombinationUnsupported", e.getMessage(), null);
+      return;
+    }
+    final AnalysisOutput output =
+        new AnalysisOutput(
+            nextAnalysisOutputId++, size.getWidth(), size.getHeight(), maxFps, metrics);
+    output.setSink(analysisSink);
+    analysisOutputs.put(output.getId(), output);
+
+    final Map<String, Object> reply = new HashMap<>();
+    reply.put("outputId", output.getId());
+    reply.put("width", size.getWidth());
+    reply.put("height", size.getHeight());
+    try {
+      if (!suspended) {
+        attachAnalysisOutput(output);
+      }
+    } catch (CameraMemoryBudget.ExceededException e) {
+      analysisOutputs.remove(output.getId());
+      result.error("memoryBudgetExceeded", e.getMessage(), null);
+      return;
+    }
+    if (suspended || recordingVideo || cameraDevice == null) {
+      // The output joins the session created when the camera resumes or the recording ends.
+      result.success(reply);
+      return;
+    }
+    // Replies once the session with the output is configured. If it isn't, the output is removed
+    // and the session rebuilt without it.
+    pendingSessionAction = () -> result.success(reply);
+    pendingSessionResult =
+        new Result() {
           @Override
-          public void onListen(Object o, EventChannel.EventSink imageStreamSink) {
-            setImageStreamImageAvailableListener(imageStreamSink);
+          public void success(Object value) {
+            result.success(value);
           }
 
           @Override
-          public void onCancel(Object o) {
-            imageStreamReader.setOnImageAvailableListener(null, null);
+          public void error(String errorCode, String errorMessage, Object errorDetails) {
+            dropAnalysisOutput(output);
+            result.error(errorCode, errorMessage, errorDetails);
           }
-        });
+
+          @Override
+          public void notImplemented() {
+            dropAnalysisOutput(output);
+            result.notImplemented();
+          }
+        };
+    try {
+      restartSession();
+    } catch (CameraAccessException e) {
+      failPendingSessionAction(e.getMessage());
+    }
+  }
+
+  // Takes an output that couldn't be configured back out, and restores the session without it.
+  private void dropAnalysisOutput(AnalysisOutput output) {
+    if (analysisOutputs.remove(output.getId()) == null) {
+      return;
+    }
+    try {
+      restartSession();
+    } catch (CameraAccessException e) {
+      sendEvent(EventType.ERROR, e.getMessage());
+    } finally {
+      output.detach();
+      memoryBudget.release(analysisReaderName(output));
+    }
+  }
+
+  @Override
+  public void removeAnalysisOutput(int outputId, Result result) {
+    AnalysisOutput output = analysisOutputs.remove(outputId);
+    if (output == null) {
+      result.error("analysisOutputFailed", "No analysis output with id " + outputId + ".", null);
+      return;
+    }
+    try {
+      // The reader can only be closed once it is no longer an output of the session.
+      restartSession();
+    } catch (CameraAccessException e) {
+      result.error("CameraAccess", e.getMessage(), null);
+      return;
+    } finally {
+      output.detach();
+      memoryBudget.release(analysisReaderName(output));
+    }
+    result.success(null);
+  }
+
+  // Analysis outputs are scaled down by the adaptive quality level.
+  private void attachAnalysisOutput(AnalysisOutput output)
+      throws CameraMemoryBudget.ExceededException {
+    Size size = new Size(output.getWidth(), output.getHeight());
+    if (analysisScale < 1) {
+      size =
+          CameraSizes.chooseBoundedSize(
+              yuvOutputSizes,
+              (int) (size.getWidth() * analysisScale),
+              (int) (size.getHeight() * analysisScale),
+              size);
+    }
+    int maxImages =
+        memoryBudget.reserve(
+            analysisReaderName(output),
+            size.getWidth(),
+            size.getHeight(),
+            ImageFormat.YUV_420_888,
+            2,
+            2);
+    output.attach(
+        new ImageReaderFrameSource(
+            size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, maxImages));
+  }
+
+  private static String analysisReaderName(AnalysisOutput output) {
+    return "analysis" + output.getId();
   }
 
-  private void setImageStreamImageAvailableListener(final EventChannel.EventSink imageStreamSink) {
-    imageStreamReader.setOnImageAvailableListener(
-        reader -> {
-          Image img = reader.acquireLatestImage();
-          if (img == null) return;
+  private void addImageStreamReader()
+      throws CameraMemoryBudget.ExceededException, StreamCombinations.UnsupportedException {
+    if (!usesImageStream()) {
+      checkSession("image stream", stream(StreamCombinations.Type.YUV, streamSize));
+    }
+    allocateImageStreamReader();
+  }
 
-          List<Map<String, Object>> planes = new ArrayList<>();
-          for (Image.Plane plane : img.getPlanes()) {
-            ByteBuffer buffer = plane.getBuffer();
+  private void allocateImageStreamReader() throws CameraMemoryBudget.ExceededException {
+    imageStream.allocateOutput(streamSize.getWidth(), streamSize.getHeight());
+  }
 
-            byte[] bytes = new byte[buffer.remaining()];
-            buffer.get(bytes, 0, bytes.length);
+  private void allocateRecordingReaders(boolean enableVideoSnapshot, boolean withStream)
+      throws CameraMemoryBudget.ExceededException {
+    if (withStream && recordingStreamReader == null) {
+      int maxImages =
+          memoryBudget.reserve(
+              RECORDING_STREAM_READER,
+              recordingStreamSize.getWidth(),
+              recordingStreamSize.getHeight(),
+              ImageFormat.YUV_420_888,
+              3,
+              2);
+      recordingStreamReader =
+          new ImageReaderFrameSource(
+              recordingStreamSize.getWidth(),
+              recordingStreamSize.getHeight(),
+              ImageFormat.YUV_420_888,
+              maxImages);
+      recordingStreamReader.setListener(imageStream);
+    }
+    if (enableVideoSnapshot
+        && !slowMoMode
+        && videoSnapshotSize != null
+        && videoSnapshotImageReader == null) {
+      int maxImages =
+          memoryBudget.reserve(
+              VIDEO_SNAPSHOT_READER,
+              videoSnapshotSize.getWidth(),
+              videoSnapshotSize.getHeight(),
+              ImageFormat.JPEG,
+              2,
+              1);
+      videoSnapshotImageReader =
+          ImageReader.newInstance(
+              videoSnapshotSize.getWidth(),
+              videoSnapshotSize.getHeight(),
+              ImageFormat.JPEG,
+              maxImages);
+    }
+  }
 
-            Map<String, Object> planeBuffer = new HashMap<>();
-            planeBuffer.put("bytesPerRow", plane.getRowStride());
-            planeBuffer.put("bytesPerPixel", plane.getPixelStride());
-            planeBuffer.put("bytes", bytes);
+  @Override
+  public Map<String, Object> getMemoryUsage() {
+    return memoryBudget.toMap();
+  }
 
-            planes.add(planeBuffer);
+  // Outputs are fixed when a session is created, so changing them recreates the current one. The
+  // recording session has no room for analysis outputs; they resume when it ends.
+  private void restartSession() throws CameraAccessException {
+    if (cameraDevice == null || recordingVideo) {
+      return;
+    }
+    if (usesImageStream()) {
+      createImageStreamSession();
+    } else {
+      startPreview();
+    }
+  }
+
+  // The outputs restartSession() configures, plus {@code added}. The burst output takes the still
+  // output's place while {@code bursting}.
+  private List<StreamCombinations.Stream> sessionStreams(
+      boolean bursting, StreamCombinations.Stream... added) {
+    List<StreamCombinations.Stream> streams = new ArrayList<>();
+    streams.add(stream(StreamCombinations.Type.PRIV, mPreviewSize));
+    if (usesImageStream()) {
+      streams.add(stream(StreamCombinations.Type.YUV, streamSize));
+    }
+    if (bursting && burstSize != null) {
+      streams.add(stream(StreamCombinations.Type.YUV, burstSize));
+    } else if (!bursting && pictureImageReader != null) {
+      streams.add(stream(StreamCombinations.Type.JPEG, captureSize));
+    }
+    for (AnalysisOutput output : analysisOutputs.values()) {
+      streams.add(
+          streamCombinations.stream(
+              StreamCombinations.Type.YUV, output.getWidth(), output.getHeight()));
+    }
+    Collections.addAll(streams, added);
+    return streams;
+  }
+
+  private StreamCombinations.Stream stream(StreamCombinations.Type type, Size size) {
+    return streamCombinations.stream(type, size.getWidth(), size.getHeight());
+  }
+
+  // Outputs are only added while the session stays within the camera's guaranteed combinations.
+  private void checkSession(String output, StreamCombinations.Stream added)
+      throws StreamCombinations.UnsupportedException {
+    if (!streamCombinations.isGuaranteed(sessionStreams(burstReader != null, added))) {
+      throw new StreamCombinations.UnsupportedException(output, streamCombinations.getLevelName());
+    }
+  }
+
+  private void addAnalysisOutputs(List<Surface> surfaces) {
+    for (AnalysisOutput output : analysisOutputs.values()) {
+      Surface surface = ((ImageReaderFrameSource) output.getSource()).getSurface();
+      surfaces.add(surface);
+      captureRequestBuilder.addTarget(surface);
+    }
+  }
+
+  private void createImageStreamSession() {
+    imageStream.createSession(
+        sessionTracker,
+        new ImageStream.SessionListener() {
+          @Override
+          public void onStreaming(CaptureDevice.Session session) {
+            runPendingSessionAction();
           }
 
-          Map<String, Object> imageBuffer = new HashMap<>();
-          imageBuffer.put("width", img.getWidth());
-          imageBuffer.put("height", img.getHeight());
-          imageBuffer.put("format", img.getFormat());
-          imageBuffer.put("planes", planes);
+          @Override
+          public void onFailed(String message) {
+            failPendingSessionAction(message);
+            sendEvent(EventType.ERROR, message);
+          }
+        });
+  }
 
-          imageStreamSink.success(imageBuffer);
-          img.close();
-        },
-        null);
+  /**
+   * The Camera2 device under the image stream. Its sessions also carry the preview, the still or
+   * burst output and the analysis outputs.
+   */
+  private final class Camera2Device implements CaptureDevice {
+    @Override
+    public FrameSource createOutput(int width, int height, int format, int maxImages) {
+      return new ImageReaderFrameSource(width, height, format, maxImages);
+    }
+
+    @Override
+    public void createSession(List<FrameSource> outputs, final SessionCallback callback)
+        throws CameraAccessException {
+      closeCaptureSession();
+
+      SurfaceTexture surfaceTexture = flutterTexture.surfaceTexture();
+      surfaceTexture.setDefaultBufferSize(mPreviewSize.getWidth(), mPreviewSize.getHeight());
+
+      captureRequestBuilder =
+          cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_STILL_CAPTURE);
+      setUpAutoFocus(captureRequestBuilder);
+      setUpControls(captureRequestBuilder);
+
+      List<Surface> surfaces = new ArrayList<>();
+
+      Surface previewSurface = new Surface(surfaceTexture);
+      surfaces.add(previewSurface);
+      captureRequestBuilder.addTarget(previewSurface);
+
+      for (FrameSource output : outputs) {
+        surfaces.add(((ImageReaderFrameSource) output).getSurface());
+      }
+      // A burst takes the still output's place.
+      if (burstReader != null) {
+        surfaces.add(burstReader.getSurface());
+      } else if (pictureImageReader != null) {
+        surfaces.add(pictureImageReader.getSurface());
+      }
+      addAnalysisOutputs(surfaces);
+
+      cameraDevice.createCaptureSession(
+          surfaces,
+          new CameraCaptureSession.StateCallback() {
+            @Override
+            public void onConfigured(@NonNull CameraCaptureSession session) {
+              callback.onConfigured(new Camera2Session(session));
+            }
+
+            @Override
+            public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+              callback.onConfigureFailed();
+            }
+          },
+          null);
+    }
   }
 
-  private int clamp(int x, int min, int max) {
-    if (x < min) {
-      return min;
-    } else if (x > max) {
-      return max;
+  private final class Camera2Session implements CaptureDevice.Session {
+    private final CameraCaptureSession session;
+
+    Camera2Session(CameraCaptureSession session) {
+      this.session = session;
+    }
+
+    @Override
+    public void setRepeating(List<FrameSource> targets) throws CameraAccessException {
+      if (cameraDevice == null) {
+        throw new IllegalStateException("The camera was closed during configuration.");
+      }
+      cameraCaptureSession = session;
+      for (FrameSource target : targets) {
+        captureRequestBuilder.addTarget(((ImageReaderFrameSource) target).getSurface());
+      }
+      captureRequestBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
+      setRepeatingRequest(session, captureRequestBuilder.build());
+      relockFocus();
+    }
+
+    @Override
+    public void close() {
+      session.close();
+    }
+  }
+
+  @Override
+  public void setFlashMode(boolean flashMode) {
+    this.flashMode = flashMode;
+  }
+
+  @Override
+  public void lockFocus(double x, double y, Result result) {
+    if (!supportsAfMode(CameraMetadata.CONTROL_AF_MODE_AUTO)) {
+      result.error("focusNotSupported", "The camera has no autofocus.", null);
+      return;
+    }
+    if (cameraCaptureSession == null) {
+      result.error("focusFailed", "The camera is not running.", null);
+      return;
+    }
+    focusRegions = focusRegionsAt(x, y);
+    autoFocus.start(result);
+    try {
+      // Cancel the previous lock so the trigger starts a fresh scan on the new regions.
+      captureRequestBuilder.set(
+          CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
+      captureOnce(captureRequestBuilder.build());
+      setUpAutoFocus(captureRequestBuilder);
+      updatePreview();
+      triggerAutoFocus();
+    } catch (CameraAccessException | IllegalStateException | IllegalArgumentException e) {
+      autoFocus.cancel(e.getMessage());
+    }
+  }
+
+  @Override
+  public void unlockFocus(Result result) {
+    focusRegions = null;
+    autoFocus.cancel("Focus was unlocked before converging.");
+    if (cameraCaptureSession == null) {
+      result.success(null);
+      return;
+    }
+    try {
+      captureRequestBuilder.set(
+          CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
+      captureOnce(captureRequestBuilder.build());
+      setUpAutoFocus(captureRequestBuilder);
+      updatePreview();
+      result.success(null);
+    } catch (CameraAccessException | IllegalStateException | IllegalArgumentException e) {
+      result.error("focusFailed", e.getMessage(), null);
+    }
+  }
+
+  private MeteringRectangle[] focusRegionsAt(double x, double y) {
+    int[] region =
+        MeteringRegions.regionAt(
+            x,
+            y,
+            sensorOrientation,
+            isFrontFacing,
+            activeArraySize.width(),
+            activeArraySize.height());
+    return new MeteringRectangle[] {
+      new MeteringRectangle(
+          region[0],
+          region[1],
+          region[2] - region[0],
+          region[3] - region[1],
+          MeteringRectangle.METERING_WEIGHT_MAX)
+    };
+  }
+
+  @Override
+  public void applySettings(Map<String, Object> settings, Result result) {
+    CameraSettings batch;
+    try {
+      batch = CameraSettings.fromMap(settings, capabilities);
+    } catch (IllegalArgumentException e) {
+      result.error("invalidSettings", e.getMessage(), null);
+      return;
+    }
+    if (batch.hasFocusPoint) {
+      double[] point = batch.focusPoint;
+      focusRegions = point == null ? null : focusRegionsAt(point[0], point[1]);
+      autoFocus.cancel("The focus point was changed by applySettings.");
+    }
+    if (batch.exposureCompensation != null) {
+      exposureCompensation = batch.exposureCompensation;
+    }
+    if (batch.flash != null) {
+      flashMode = batch.flash;
+    }
+    if (batch.effect != null) {
+      effectMode = batch.effect;
+    }
+    if (cameraCaptureSession == null) {
+      // The next session is set up with the new settings.
+      result.success(null);
+      return;
+    }
+    try {
+      if (batch.hasFocusPoint) {
+        captureRequestBuilder.set(
+            CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
+        captureOnce(captureRequestBuilder.build());
+        setUpAutoFocus(captureRequestBuilder);
+      }
+      setUpControls(captureRequestBuilder);
+      if (recordingVideo) {
+        captureRequestBuilder.set(
+            CaptureRequest.FLASH_MODE,
+            flashMode ? CaptureRequest.FLASH_MODE_TORCH : CaptureRequest.FLASH_MODE_OFF);
+      }
+      // The only rebuild of the repeating request for the whole batch.
+      updatePreview();
+      if (focusRegions != null && batch.hasFocusPoint) {
+        triggerAutoFocus();
+      }
+      result.success(null);
+    } catch (CameraAccessException | IllegalStateException | IllegalArgumentException e) {
+      result.error("applySettingsFailed", e.getMessage(), null);
+    }
+  }
+
+  // Applies the effect and exposure compensation, which every request of the camera shares.
+  private void setUpControls(CaptureRequest.Builder builder) {
+    builder.set(CaptureRequest.CONTROL_EFFECT_MODE, effectMode);
+    builder.set(CaptureRequest.CONTROL_AE_EXPOSURE_COMPENSATION, exposureCompensation);
+  }
+
+  // Focus is continuous until a point is locked; the lock then uses AUTO, which holds the lens
+  // wherever the last trigger left it.
+  private void setUpAutoFocus(CaptureRequest.Builder builder) {
+    if (focusRegions != null) {
+      builder.set(CaptureRequest.CONTROL_AF_MODE, CameraMetadata.CONTROL_AF_MODE_AUTO);
+      if (maxAfRegions > 0) {
+        builder.set(CaptureRequest.CONTROL_AF_REGIONS, focusRegions);
+      }
+      if (maxAeRegions > 0) {
+        builder.set(CaptureRequest.CONTROL_AE_REGIONS, focusRegions);
+      }
     } else {
-      return x;
+      builder.set(CaptureRequest.CONTROL_AF_MODE, continuousAfMode());
+      builder.set(CaptureRequest.CONTROL_AF_REGIONS, null);
+      builder.set(CaptureRequest.CONTROL_AE_REGIONS, null);
+    }
+    builder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_IDLE);
+  }
+
+  private int continuousAfMode() {
+    int preferred =
+        recordingVideo
+            ? CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_VIDEO
+            : CameraMetadata.CONTROL_AF_MODE_CONTINUOUS_PICTURE;
+    if (supportsAfMode(preferred)) {
+      return preferred;
+    }
+    return supportsAfMode(CameraMetadata.CONTROL_AF_MODE_AUTO)
+        ? CameraMetadata.CONTROL_AF_MODE_AUTO
+        : CameraMetadata.CONTROL_AF_MODE_OFF;
+  }
+
+  private boolean supportsAfMode(int mode) {
+    for (int availableMode : availableAfModes) {
+      if (availableMode == mode) {
+        return true;
+      }
     }
+    return false;
+  }
+
+  // The trigger is sent as a single capture; left in the repeating request it would restart the
+  // scan on every frame.
+  private void triggerAutoFocus() throws CameraAccessException {
+    captureRequestBuilder.set(
+        CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_START);
+    CaptureRequest trigger = captureRequestBuilder.build();
+    captureRequestBuilder.set(
+        CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_IDLE);
+    captureOnce(trigger);
   }
 
-  public void lockFocus(PointF point) {
-    isFocusLocked = true;
-    CameraCharacteristics characteristics = null;
+  // A new session starts unlocked, so a locked point is triggered again once it is running.
+  private void relockFocus() {
+    if (focusRegions == null) {
+      return;
+    }
     try {
-      characteristics = cameraManager.getCameraCharacteristics(cameraName);
-    } catch (CameraAccessException e) {
-      e.printStackTrace();
-    }
-    Rect rect = characteristics.get(CameraCharacteristics.SENSOR_INFO_ACTIVE_ARRAY_SIZE);
-    int areaSize = 250;
-    int right = rect.right;
-    int bottom = rect.bottom;
-    int viewWidth = mPreviewSize.getWidth();
-    int viewHeight = mPreviewSize.getHeight();
-    int ll, rr;
-    Rect newRect;
-    int centerX = (int) 0;
-    int centerY = (int) 0;
-    ll = ((centerX * right) - areaSize) / viewWidth;
-    rr = ((centerY * bottom) - areaSize) / viewHeight;
-    int focusLeft = clamp(ll, 0, right);
-    int focusBottom = clamp(rr, 0, bottom);
-    newRect = new Rect(focusLeft, focusBottom, focusLeft + areaSize, focusBottom + areaSize);
-    MeteringRectangle meteringRectangle = new MeteringRectangle(newRect, 500);
-    MeteringRectangle[] meteringRectangleArr = {meteringRectangle};
-    captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
-    captureRequestBuilder.set(CaptureRequest.CONTROL_AF_REGIONS, meteringRectangleArr);
-    captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_START);
-    updatePreview();
-    Log.d(TAG, String.valueOf(point));
-  }
-
-  public void unlockFocus() {
-    isFocusLocked = false;
-    captureRequestBuilder.set(CaptureRequest.CONTROL_AF_TRIGGER, CameraMetadata.CONTROL_AF_TRIGGER_CANCEL);
-    captureRequestBuilder.set(CaptureRequest.CONTROL_MODE, CameraMetadata.CONTROL_MODE_AUTO);
-    updatePreview();
+      triggerAutoFocus();
+    } catch (CameraAccessException | IllegalStateException | IllegalArgumentException e) {
+      sendEvent(EventType.ERROR, e.getMessage());
+    }
+  }
+
+  private void captureOnce(CaptureRequest request) throws CameraAccessException {
+    if (slowMoMode && recordingVideo && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      cameraCaptureSession.captureBurst(
+          mPreviewSessionHighSpeed.createHighSpeedRequestList(request),
+          previewCaptureCallback,
+          null);
+    } else {
+      cameraCaptureSession.capture(request, previewCaptureCallback, null);
+    }
   }
 
   private void sendEvent(EventType eventType) {
-    sendEvent(eventType, null);
+    sendEvent(eventType, (String) null);
+  }
+
+  private void sendEvent(EventType eventType, Map<String, Object> values) {
+    if (eventSink != null) {
+      Map<String, Object> event = new HashMap<>(values);
+      event.put("eventType", eventType.toString().toLowerCase());
+      PipelineTracer.begin(PipelineTracer.Event.EVENT_SINK_SUCCESS);
+      eventSink.success(event);
+      PipelineTracer.end(PipelineTracer.Event.EVENT_SINK_SUCCESS);
+    }
   }
 
   private void sendEvent(EventType eventType, String description) {
@@ -858,7 +2508,9 @@ public class Camera {
       if (eventType != EventType.ERROR) {
         event.put("errorDescription", description);
       }
+      PipelineTracer.begin(PipelineTracer.Event.EVENT_SINK_SUCCESS);
       eventSink.success(event);
+      PipelineTracer.end(PipelineTracer.Event.EVENT_SINK_SUCCESS);
     }
   }
 
@@ -869,8 +2521,26 @@ public class Camera {
     }
   }
 
+  @Override
   public void close() {
     closeCaptureSession();
+    // A session still being configured never reports back once the device is closed.
+    if (isConfiguringSession()) {
+      sessionTracker.end(false);
+    }
+    // Closed before the burst is failed, so failing it doesn't restart the session.
+    if (burstReader != null) {
+      burstReader.close();
+      burstReader = null;
+    }
+    snapshotter.cancel("The camera was closed.");
+    burstDenoiser.fail("burstFailed", "The camera was closed.");
+    autoFocus.cancel("The camera was closed.");
+    convergence.cancel("The camera was closed.");
+    failPendingSessionAction("The camera was closed.");
+    if (frameMetadataBatcher != null) {
+      frameMetadataBatcher.flush();
+    }
 
     if (cameraDevice != null) {
       cameraDevice.close();
@@ -880,21 +2550,40 @@ public class Camera {
       pictureImageReader.close();
       pictureImageReader = null;
     }
-    if (imageStreamReader != null) {
-      imageStreamReader.close();
-      imageStreamReader = null;
+    imageStream.closeOutput();
+    if (recordingStreamReader != null) {
+      recordingStreamReader.close();
+      recordingStreamReader = null;
+    }
+    // Outputs stay registered, without their readers, in case the camera is resumed.
+    for (AnalysisOutput output : analysisOutputs.values()) {
+      output.detach();
+    }
+    memoryBudget.releaseAll();
+    if (videoSnapshotImageReader != null) {
+      videoSnapshotImageReader.close();
+      videoSnapshotImageReader = null;
     }
     if (mediaRecorder != null) {
       mediaRecorder.reset();
       mediaRecorder.release();
       mediaRecorder = null;
     }
+    if (proxyMediaRecorder != null) {
+      proxyMediaRecorder.reset();
+      proxyMediaRecorder.release();
+      proxyMediaRecorder = null;
+    }
   }
 
+  @Override
   public void dispose() {
     close();
+    burstDenoiser.close();
+    closeBarcodeScanner();
     flutterTexture.release();
     orientationEventListener.disable();
+    analysisOutputs.clear();
   }
 
   private int getMediaOrientation() {
@@ -908,5 +2597,6 @@ public class Camera {
   private enum EventType {
     ERROR,
     CAMERA_CLOSING,
+    QUALITY_CHANGED,
   }
 }
@@ -0,0 +1,140 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel.Result;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The camera device and capture session behind the method channel.
+ *
+ * <p>{@link Camera} implements it with Camera2. Keeping it free of Android types lets the method
+ * handling and the image stream run against a fake device on a plain JVM.
+ */
+interface CameraBackend {
+  interface Factory {
+    /** Creates the backend for an {@code initialize} call. */
+    CameraBackend create(MethodCall call, PipelineMetrics metrics) throws Exception;
+  }
+
+  /** Queues a command the camera starts itself behind the method calls. */
+  interface CommandScheduler {
+    void schedule(String method, CommandQueue.Command command);
+  }
+
+  /** Opens the device and starts the preview, replying with the texture id and preview size. */
+  void open(Result result) throws Exception;
+
+  void setFlashMode(boolean flashMode);
+
+  /**
+   * Focuses on the point ({@code x}, {@code y}) of the preview, both from 0 to 1, and replies
+   * once the lens has locked.
+   */
+  void lockFocus(double x, double y, Result result);
+
+  void unlockFocus(Result result);
+
+  /** Returns whether a capture session is being configured. */
+  boolean isConfiguringSession();
+
+  /** Sets what runs once the session being configured is configured or has failed. */
+  void setSessionConfiguredListener(Runnable listener);
+
+  /**
+   * Sets what queues the commands the camera starts itself, such as rebuilding the session for a
+   * quality change, so they wait for the calls in flight like any other command.
+   */
+  void setCommandScheduler(CommandScheduler scheduler);
+
+  /**
+   * Validates every setting of {@code settings}, as {@link CameraSettings#fromMap} reads them, then
+   * applies them together with a single rebuild of the repeating request.
+   */
+  void applySettings(Map<String, Object> settings, Result result);
+
+  /**
+   * Captures a still to {@code filePath}. With {@code metadata}, the camera's EXIF segment is
+   * replaced by one with the capture settings and the metadata, as {@link
+   * ExifWriter#setMetadata} reads it.
+   */
+  void takePicture(String filePath, Map<String, Object> metadata, Result result);
+
+  /** Captures {@code frameCount} frames and saves their aligned average as a JPEG. */
+  void takeBurstPicture(String filePath, int frameCount, Result result);
+
+  void takeVideoSnapshot(String filePath, Result result);
+
+  /**
+   * Saves the next image stream frame as a JPEG, downsampled so its longest side is at most
+   * {@code maxSize} unless that is 0.
+   */
+  void snapshot(String filePath, int quality, int maxSize, Result result);
+
+  /**
+   * Adds a YUV output of at most {@code maxWidth} by {@code maxHeight} to the session, delivering
+   * up to {@code maxFps} frames per second, or every frame if that is 0. Replies with the
+   * output's {@code outputId} and the {@code width} and {@code height} it got.
+   */
+  void addAnalysisOutput(int maxWidth, int maxHeight, double maxFps, Result result);
+
+  void removeAnalysisOutput(int outputId, Result result);
+
+  void startVideoRecording(
+      String filePath, String proxyFilePath, boolean enableVideoSnapshot, Result result);
+
+  void stopVideoRecording(Result result);
+
+  void pauseVideoRecording(Result result);
+
+  void resumeVideoRecording(Result result);
+
+  boolean isRecordingHighSpeedVideo();
+
+  /** Sets the sink streamed frames are sent to, or clears it if null. */
+  void setImageStreamSink(EventChannel.EventSink imageStreamSink);
+
+  void startPreviewWithImageStream(ImageStreamOptions options) throws Exception;
+
+  void stopImageStream() throws Exception;
+
+  /**
+   * Decodes barcodes in the image stream's frames, sending those found with their corners. The
+   * stream's session is used without frames being sent, unless the image stream is also running.
+   */
+  void startBarcodeScanning(BarcodeScanOptions options) throws Exception;
+
+  void stopBarcodeScanning() throws Exception;
+
+  /** Returns the current scan's attempts and timings, or null while not scanning. */
+  Map<String, Object> getBarcodeScanStats();
+
+  /**
+   * Adapts the stream frame rate, analysis resolution and encoder bitrate along {@code ladder} as
+   * the device heats up or drops frames, sending each change as a {@code quality_changed} event.
+   * A null ladder turns adaptation off and restores full quality.
+   */
+  void setAdaptiveQuality(List<AdaptiveQualityController.Level> ladder, Result result);
+
+  /**
+   * Closes the device and frees its buffers while keeping its configuration, so {@link #resume}
+   * reopens straight into the preview or image stream that was running.
+   */
+  void suspend(Result result);
+
+  void resume(Result result);
+
+  boolean isSuspended();
+
+  /**
+   * Returns the native buffers of the camera's image readers against its memory budget, as {@code
+   * budgetBytes}, {@code usedBytes} and per reader {@code width}, {@code height}, {@code
+   * maxImages} and {@code bytes}.
+   */
+  Map<String, Object> getMemoryUsage();
+
+  void close();
+
+  void dispose();
+}
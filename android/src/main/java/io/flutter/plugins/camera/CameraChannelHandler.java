@@ -0,0 +1,214 @@
+package io.flutter.plugins.camera;
+
+import android.graphics.SurfaceTexture;
+import android.hardware.Camera.CameraInfo;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import androidx.annotation.NonNull;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel;
+import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
+import io.flutter.plugin.common.MethodChannel.Result;
+import io.flutter.view.TextureRegistry;
+import io.flutter.view.TextureRegistry.SurfaceTextureEntry;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serves the handle based API of the {@value #CHANNEL} channel, which exposes {@link
+ * android.hardware.Camera} devices and native textures as objects Dart refers to by handle.
+ *
+ * <p>Every camera gets its own thread. The device is opened there and the camera's later calls run
+ * there in order, so a call made right after {@code Camera#open} waits for the device without
+ * blocking the platform thread. Textures are allocated on the platform thread in the meantime, so
+ * allocating the preview texture overlaps opening the device. Replies and {@code handleCallback}
+ * calls are posted back to the platform thread.
+ */
+@SuppressWarnings("deprecation")
+final class CameraChannelHandler implements MethodCallHandler {
+  static final String CHANNEL = "flutter.plugins.io/camera";
+
+  private interface DeviceAction {
+    void run(android.hardware.Camera device) throws IOException;
+  }
+
+  private final MethodChannel channel;
+  private final TextureRegistry textures;
+  private final HandleRegistry registry = new HandleRegistry();
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+  CameraChannelHandler(MethodChannel channel, TextureRegistry textures) {
+    this.channel = channel;
+    this.textures = textures;
+  }
+
+  @Override
+  public void onMethodCall(@NonNull MethodCall call, @NonNull final Result result) {
+    try {
+      switch (call.method) {
+        case "Camera#getNumberOfCameras":
+          result.success(android.hardware.Camera.getNumberOfCameras());
+          break;
+        case "Camera#getCameraInfo":
+          result.success(getCameraInfo(call.argument("cameraId")));
+          break;
+        case "Camera#open":
+          {
+            int handle = call.argument("cameraHandle");
+            DeviceCamera camera = new DeviceCamera(handle);
+            if (register(handle, camera, result)) {
+              camera.open(call.argument("cameraId"), result);
+            }
+            break;
+          }
+        case "Camera#previewTexture":
+          {
+            DeviceCamera camera = registry.get(call.argument("handle"), DeviceCamera.class);
+            Map<String, Object> texture = call.argument("nativeTexture");
+            final SurfaceTexture surfaceTexture =
+                texture == null
+                    ? null
+                    : registry
+                        .get((Integer) texture.get("handle"), SurfaceTextureEntry.class)
+                        .surfaceTexture();
+            camera.run(device -> device.setPreviewTexture(surfaceTexture), result);
+            break;
+          }
+        case "Camera#startPreview":
+          registry
+              .get(call.argument("handle"), DeviceCamera.class)
+              .run(android.hardware.Camera::startPreview, result);
+          break;
+        case "Camera#stopPreview":
+          registry
+              .get(call.argument("handle"), DeviceCamera.class)
+              .run(android.hardware.Camera::stopPreview, result);
+          break;
+        case "Camera#release":
+          registry.remove(call.argument("handle"), DeviceCamera.class).release(result);
+          break;
+        case "NativeTexture#allocate":
+          {
+            SurfaceTextureEntry texture = textures.createSurfaceTexture();
+            if (register(call.argument("textureHandle"), texture, result)) {
+              result.success(texture.id());
+            } else {
+              texture.release();
+            }
+            break;
+          }
+        case "NativeTexture#release":
+          registry.remove(call.argument("handle"), SurfaceTextureEntry.class).release();
+          result.success(null);
+          break;
+        default:
+          result.notImplemented();
+          break;
+      }
+    } catch (HandleRegistry.UnknownHandleException e) {
+      result.error("unknownHandle", e.getMessage(), null);
+    }
+  }
+
+  private boolean register(int handle, Object object, Result result) {
+    try {
+      registry.register(handle, object);
+      return true;
+    } catch (IllegalStateException e) {
+      result.error("handleInUse", e.getMessage(), null);
+      return false;
+    }
+  }
+
+  private static Map<String, Object> getCameraInfo(int cameraId) {
+    CameraInfo info = new CameraInfo();
+    android.hardware.Camera.getCameraInfo(cameraId, info);
+    Map<String, Object> map = new HashMap<>();
+    map.put("id", cameraId);
+    map.put("orientation", info.orientation);
+    // The Dart side matches the names of its Facing values.
+    map.put(
+        "facing",
+        info.facing == CameraInfo.CAMERA_FACING_FRONT ? "Facing.front" : "Facing.back");
+    return map;
+  }
+
+  private void reply(final Result result, final Object value) {
+    mainHandler.post(() -> result.success(value));
+  }
+
+  private void replyError(final Result result, final String code, final String message) {
+    mainHandler.post(() -> result.error(code, message, null));
+  }
+
+  // Owns a device and the thread that every call on it runs on.
+  private final class DeviceCamera implements android.hardware.Camera.ErrorCallback {
+    private final int handle;
+    private final HandlerThread thread;
+    private Handler handler;
+    // Only accessed on the camera's thread.
+    private android.hardware.Camera device;
+
+    DeviceCamera(int handle) {
+      this.handle = handle;
+      thread = new HandlerThread("Camera" + handle);
+    }
+
+    /** Starts the camera's thread and opens the device on it. Must be called first. */
+    void open(final int cameraId, final Result result) {
+      thread.start();
+      handler = new Handler(thread.getLooper());
+      handler.post(
+          () -> {
+            try {
+              // Opened on the camera's thread, so the device calls back on its looper.
+              device = android.hardware.Camera.open(cameraId);
+            } catch (RuntimeException e) {
+              replyError(result, "cameraOpenFailed", e.getMessage());
+              return;
+            }
+            device.setErrorCallback(this);
+            reply(result, null);
+          });
+    }
+
+    void run(final DeviceAction action, final Result result) {
+      handler.post(
+          () -> {
+            if (device == null) {
+              replyError(result, "cameraNotOpen", "The camera failed to open.");
+              return;
+            }
+            try {
+              action.run(device);
+              reply(result, null);
+            } catch (IOException | RuntimeException e) {
+              replyError(result, "cameraError", e.getMessage());
+            }
+          });
+    }
+
+    void release(final Result result) {
+      handler.post(
+          () -> {
+            if (device != null) {
+              device.release();
+              device = null;
+            }
+            reply(result, null);
+            thread.quitSafely();
+          });
+    }
+
+    @Override
+    public void onError(int error, android.hardware.Camera camera) {
+      final Map<String, Object> arguments = new HashMap<>();
+      arguments.put("handle", handle);
+      arguments.put("event", "error");
+      arguments.put("errorCode", error);
+      mainHandler.post(() -> channel.invokeMethod("handleCallback", arguments));
+    }
+  }
+}
@@ -0,0 +1,140 @@
+package io.flutter.plugins.camera;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Accounts for the native buffers of a camera's image readers, and the working memory of a burst,
+ * against a byte budget.
+ *
+ * <p>A reader asks for a preferred number of buffers and the fewest it can work with. It gets as
+ * many as fit, so a tight budget downgrades buffer counts before it refuses a reader. The preview
+ * texture and the encoders allocate their own buffers, which aren't counted.
+ */
+final class CameraMemoryBudget {
+  static final long DEFAULT_BUDGET_BYTES = 128L * 1024 * 1024;
+
+  // android.graphics.ImageFormat values.
+  static final int FORMAT_YUV_420_888 = 0x23;
+  static final int FORMAT_JPEG = 0x100;
+
+  /** Thrown when not even the fewest buffers a reader can work with fit the budget. */
+  static final class ExceededException extends Exception {
+    ExceededException(String reader, long neededBytes, long availableBytes) {
+      super(
+          String.format(
+              "The %s reader needs %d bytes but only %d of the memory budget are left.",
+              reader, neededBytes, availableBytes));
+    }
+  }
+
+  private static final class Allocation {
+    final int width;
+    final int height;
+    final int maxImages;
+    final long bytes;
+
+    Allocation(int width, int height, int maxImages, long bytes) {
+      this.width = width;
+      this.height = height;
+      this.maxImages = maxImages;
+      this.bytes = bytes;
+    }
+  }
+
+  private final long budgetBytes;
+  private final Map<String, Allocation> allocations = new LinkedHashMap<>();
+  private long usedBytes;
+
+  CameraMemoryBudget(long budgetBytes) {
+    this.budgetBytes = budgetBytes;
+  }
+
+  /**
+   * Estimates one buffer of a reader. YUV_420_888 has 12 bits per pixel. The HAL sizes JPEG
+   * buffers for the worst case compression, which is about as large.
+   */
+  static long bufferBytes(int width, int height, int format) {
+    long pixels = (long) width * height;
+    return format == FORMAT_YUV_420_888 || format == FORMAT_JPEG ? pixels * 3 / 2 : pixels * 4;
+  }
+
+  /**
+   * Reserves buffers for {@code reader}, replacing what it had reserved before. If they don't fit,
+   * the previous reservation is kept.
+   *
+   * @return the number of buffers to create the reader with, between {@code minImages} and {@code
+   *     preferredImages}.
+   * @throws ExceededException if {@code minImages} buffers don't fit.
+   */
+  int reserve(String reader, int width, int height, int format, int preferredImages, int minImages)
+      throws ExceededException {
+    Allocation previous = allocations.get(reader);
+    long bufferBytes = bufferBytes(width, height, format);
+    // The previous reservation counts as available, but is only given up once the new one fits.
+    long availableBytes = budgetBytes - usedBytes + (previous == null ? 0 : previous.bytes);
+    int maxImages = (int) Math.min(preferredImages, availableBytes / bufferBytes);
+    if (maxImages < minImages) {
+      throw new ExceededException(reader, minImages * bufferBytes, availableBytes);
+    }
+    release(reader);
+    Allocation allocation = new Allocation(width, height, maxImages, maxImages * bufferBytes);
+    allocations.put(reader, allocation);
+    usedBytes += allocation.bytes;
+    return maxImages;
+  }
+
+  /**
+   * Reserves {@code bytes} of working memory for {@code owner}, which processes frames of {@code
+   * width} by {@code height}, replacing what it had reserved before. If they don't fit, the
+   * previous reservation is kept.
+   *
+   * @throws ExceededException if {@code bytes} don't fit.
+   */
+  void reserveBytes(String owner, int width, int height, long bytes) throws ExceededException {
+    Allocation previous = allocations.get(owner);
+    long availableBytes = budgetBytes - usedBytes + (previous == null ? 0 : previous.bytes);
+    if (bytes > availableBytes) {
+      throw new ExceededException(owner, bytes, availableBytes);
+    }
+    release(owner);
+    allocations.put(owner, new Allocation(width, height, 1, bytes));
+    usedBytes += bytes;
+  }
+
+  void release(String reader) {
+    Allocation allocation = allocations.remove(reader);
+    if (allocation != null) {
+      usedBytes -= allocation.bytes;
+    }
+  }
+
+  void releaseAll() {
+    allocations.clear();
+    usedBytes = 0;
+  }
+
+  long getUsedBytes() {
+    return usedBytes;
+  }
+
+  /** Returns the budget, the bytes in use and the size, buffers and bytes of every reader. */
+  Map<String, Object> toMap() {
+    Map<String, Object> readers = new LinkedHashMap<>();
+    for (Map.Entry<String, Allocation> entry : allocations.entrySet()) {
+      Allocation allocation = entry.getValue();
+      Map<String, Object> reader = new HashMap<>();
+      reader.put("width", allocation.width);
+      reader.put("height", allocation.height);
+      reader.put("maxImages", allocation.maxImages);
+      reader.put("bytes", allocation.bytes);
+      readers.put(entry.getKey(), reader);
+    }
+    Map<String, Object> usage = new HashMap<>();
+    usage.put("budgetBytes", budgetBytes);
+    usage.put("usedBytes", usedBytes);
+    usage.put("readers", readers);
+    return usage;
+  }
+}
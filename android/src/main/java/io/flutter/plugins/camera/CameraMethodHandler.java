@@ -0,0 +1,447 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.EventChannel;
+import io.flutter.plugin.common.MethodCall;
+import io.flutter.plugin.common.MethodChannel.Result;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Serves the method calls that operate on the camera created by {@code initialize}.
+ *
+ * <p>Registration, permissions and camera enumeration stay in {@link CameraPlugin}; everything
+ * here only talks to a {@link CameraBackend}, so it can be driven against a fake device. Calls
+ * that operate the camera go through a {@link CommandQueue}, so rapid calls don't rebuild the
+ * session on top of each other and superseded ones never reach the device.
+ */
+final class CameraMethodHandler {
+  interface ExceptionHandler {
+    void handleException(Exception exception, Result result);
+  }
+
+  // Methods that need the open device, so they fail while the camera is suspended.
+  private static final Set<String> DEVICE_METHODS =
+      new HashSet<>(
+          Arrays.asList(
+              "lockFocus",
+              "unlockFocus",
+              "takePicture",
+              "takeBurstPicture",
+              "takeVideoSnapshot",
+              "snapshot",
+              "prepareForVideoRecording",
+              "startVideoRecording",
+              "stopVideoRecording",
+              "pauseVideoRecording",
+              "resumeVideoRecording",
+              "startImageStream",
+              "stopImageStream",
+              "startBarcodeScanning",
+              "stopBarcodeScanning"));
+
+  // Methods that change the camera's state, so they run one at a time.
+  private static final Set<String> QUEUED_METHODS = new HashSet<>(DEVICE_METHODS);
+
+  private static final Map<String, CommandQueue.Coalescing> COALESCING = new HashMap<>();
+
+  // Nobody waits for the commands the camera queues itself; they report failures as camera events.
+  private static final Result UNANSWERED =
+      new Result() {
+        @Override
+        public void success(Object result) {}
+
+        @Override
+        public void error(String errorCode, String errorMessage, Object errorDetails) {}
+
+        @Override
+        public void notImplemented() {}
+      };
+
+  static {
+    QUEUED_METHODS.addAll(
+        Arrays.asList(
+            "suspend",
+            "resume",
+            "applySettings",
+            "addAnalysisOutput",
+            "removeAnalysisOutput",
+            "setAdaptiveQuality"));
+
+    // A lock never gets to report on its point once a newer one replaces it. Waiting for the lens
+    // doesn't hold up other commands once the trigger is submitted.
+    CommandQueue.Coalescing focus =
+        CommandQueue.Coalescing.supersedes("lockFocus", "unlockFocus")
+            .failingWhenSuperseded()
+            .detached();
+    COALESCING.put("lockFocus", focus);
+    COALESCING.put("unlockFocus", focus);
+    COALESCING.put(
+        "startImageStream", CommandQueue.Coalescing.supersedes("startImageStream"));
+    COALESCING.put(
+        "stopImageStream",
+        CommandQueue.Coalescing.supersedes("startImageStream", "stopImageStream"));
+    COALESCING.put(
+        "startBarcodeScanning", CommandQueue.Coalescing.supersedes("startBarcodeScanning"));
+    COALESCING.put(
+        "stopBarcodeScanning",
+        CommandQueue.Coalescing.supersedes("startBarcodeScanning", "stopBarcodeScanning"));
+    // A newer quality level, or a new ladder, overwrites the one waiting to be applied.
+    COALESCING.put(
+        "setAdaptiveQuality",
+        CommandQueue.Coalescing.supersedes("setAdaptiveQuality", "applyQualityLevel"));
+    COALESCING.put(
+        "applyQualityLevel", CommandQueue.Coalescing.supersedes("applyQualityLevel"));
+  }
+
+  private final CameraBackend.Factory backendFactory;
+  private final PipelineMetrics metrics;
+  private final ExceptionHandler exceptionHandler;
+  private final CommandQueue commands;
+  private CameraBackend camera;
+  private EventChannel.EventSink imageStreamSink;
+
+  /**
+   * @param executor runs queued commands later on the thread method calls arrive on.
+   * @param timer fails stuck commands on the thread method calls arrive on.
+   */
+  CameraMethodHandler(
+      CameraBackend.Factory backendFactory,
+      PipelineMetrics metrics,
+      ExceptionHandler exceptionHandler,
+      Executor executor,
+      CommandQueue.Timer timer) {
+    this.backendFactory = backendFactory;
+    this.metrics = metrics;
+    this.exceptionHandler = exceptionHandler;
+    this.commands =
+        new CommandQueue(
+            executor, timer, () -> camera != null && camera.isConfiguringSession());
+  }
+
+  void closeCamera() {
+    commands.clear("The camera was closed.");
+    if (camera != null) {
+      camera.close();
+    }
+  }
+
+  void initialize(MethodCall call, Result result) {
+    try {
+      camera = backendFactory.create(call, metrics);
+      camera.setImageStreamSink(imageStreamSink);
+      camera.setSessionConfiguredListener(commands::runNextLater);
+      camera.setCommandScheduler(
+          (method, command) ->
+              commands.enqueue(method, COALESCING.get(method), command, UNANSWERED));
+      camera.open(result);
+    } catch (Exception e) {
+      exceptionHandler.handleException(e, result);
+    }
+  }
+
+  /** Called when Dart starts or cancels listening to the image stream. */
+  void setImageStreamSink(EventChannel.EventSink imageStreamSink) {
+    this.imageStreamSink = imageStreamSink;
+    if (camera != null) {
+      camera.setImageStreamSink(imageStreamSink);
+    }
+  }
+
+  /** Returns false if {@code call} is not a camera method. */
+  boolean onMethodCall(final MethodCall call, Result result) {
+    switch (call.method) {
+      case "getMemoryUsage":
+      {
+        if (camera == null) {
+          notInitialized(call, result);
+          break;
+        }
+        result.success(camera.getMemoryUsage());
+        break;
+      }
+      case "getCommandQueueStats":
+      {
+        result.success(commands.toMap());
+        break;
+      }
+      case "getBarcodeScanStats":
+      {
+        if (camera == null) {
+          notInitialized(call, result);
+          break;
+        }
+        result.success(camera.getBarcodeScanStats());
+        break;
+      }
+      case "getMetrics":
+      {
+        result.success(metrics.toMap());
+        break;
+      }
+      case "resetMetrics":
+      {
+        metrics.reset();
+        result.success(null);
+        break;
+      }
+      case "startTrace":
+      {
+        PipelineTracer.startTrace();
+        result.success(null);
+        break;
+      }
+      case "stopTrace":
+      {
+        try {
+          result.success(PipelineTracer.stopTrace(new File((String) call.argument("path"))));
+        } catch (IOException e) {
+          result.error("IOError", "Failed writing the trace", null);
+        }
+        break;
+      }
+      case "dispose":
+      {
+        commands.clear("The camera was disposed.");
+        if (camera != null) {
+          camera.dispose();
+        }
+        result.success(null);
+        break;
+      }
+      default:
+        if (!QUEUED_METHODS.contains(call.method)) {
+          return false;
+        }
+        CommandQueue.Coalescing coalescing = COALESCING.get(call.method);
+        commands.enqueue(
+            call.method,
+            coalescing == null ? CommandQueue.Coalescing.NONE : coalescing,
+            commandResult -> runCommand(call, commandResult),
+            result);
+        break;
+    }
+    return true;
+  }
+
+  private static void notInitialized(MethodCall call, Result result) {
+    result.error("cameraNotInitialized", call.method + " was called before initialize.", null);
+  }
+
+  private void runCommand(MethodCall call, Result result) {
+    if (camera != null && camera.isSuspended() && DEVICE_METHODS.contains(call.method)) {
+      result.error("cameraSuspended", call.method + " was called while suspended.", null);
+      return;
+    }
+    switch (call.method) {
+      case "suspend":
+      {
+        camera.suspend(result);
+        break;
+      }
+      case "resume":
+      {
+        camera.resume(result);
+        break;
+      }
+      case "lockFocus":
+      {
+        double dx = call.argument("dx");
+        double dy = call.argument("dy");
+        camera.lockFocus(dx, dy, result);
+        break;
+      }
+      case "unlockFocus":
+      {
+        camera.unlockFocus(result);
+        break;
+      }
+      case "applySettings":
+      {
+        camera.applySettings(call.argument("settings"), result);
+        break;
+      }
+      case "takePicture":
+      {
+        camera.setFlashMode(call.argument("flash"));
+        camera.takePicture(call.argument("path"), call.argument("metadata"), result);
+        break;
+      }
+      case "takeBurstPicture":
+      {
+        camera.takeBurstPicture(call.argument("path"), call.argument("frameCount"), result);
+        break;
+      }
+      case "takeVideoSnapshot":
+      {
+        camera.takeVideoSnapshot(call.argument("path"), result);
+        break;
+      }
+      case "snapshot":
+      {
+        Integer quality = call.argument("quality");
+        Integer maxSize = call.argument("maxSize");
+        camera.snapshot(
+            call.argument("path"),
+            quality == null ? 90 : quality,
+            maxSize == null ? 0 : maxSize,
+            result);
+        break;
+      }
+      case "addAnalysisOutput":
+      {
+        Number maxFps = call.argument("maxFps");
+        camera.addAnalysisOutput(
+            call.argument("maxWidth"),
+            call.argument("maxHeight"),
+            maxFps == null ? 0 : maxFps.doubleValue(),
+            result);
+        break;
+      }
+      case "removeAnalysisOutput":
+      {
+        camera.removeAnalysisOutput(call.argument("outputId"), result);
+        break;
+      }
+      case "prepareForVideoRecording":
+      {
+        // This optimization is not required for Android.
+        result.success(null);
+        break;
+      }
+      case "startVideoRecording":
+      {
+        camera.setFlashMode(call.argument("flash"));
+        Boolean enableVideoSnapshot = call.argument("enableVideoSnapshot");
+        camera.startVideoRecording(
+                call.argument("filePath"),
+                call.argument("proxyFilePath"),
+                Boolean.TRUE.equals(enableVideoSnapshot),
+                result);
+        break;
+      }
+      case "stopVideoRecording":
+      {
+        camera.stopVideoRecording(result);
+        break;
+      }
+      case "pauseVideoRecording":
+      {
+        camera.pauseVideoRecording(result);
+        break;
+      }
+      case "resumeVideoRecording":
+      {
+        camera.resumeVideoRecording(result);
+        break;
+      }
+      case "startImageStream":
+      {
+        if (camera.isRecordingHighSpeedVideo()) {
+          result.error(
+                  "imageStreamFailed",
+                  "Images cannot be streamed while a slow motion video is being recorded.",
+                  null);
+          break;
+        }
+        ImageStreamOptions options;
+        try {
+          options = ImageStreamOptions.fromMethodCall(call);
+        } catch (IllegalArgumentException e) {
+          result.error("imageStreamFailed", e.getMessage(), null);
+          break;
+        }
+        try {
+          camera.startPreviewWithImageStream(options);
+          result.success(null);
+        } catch (CameraMemoryBudget.ExceededException e) {
+          result.error("memoryBudgetExceeded", e.getMessage(), null);
+        } catch (StreamCombinations.UnsupportedException e) {
+          result.error("streamCombinationUnsupported", e.getMessage(), null);
+        } catch (Exception e) {
+          exceptionHandler.handleException(e, result);
+        }
+        break;
+      }
+      case "stopImageStream":
+      {
+        try {
+          camera.stopImageStream();
+          result.success(null);
+        } catch (Exception e) {
+          exceptionHandler.handleException(e, result);
+        }
+        break;
+      }
+      case "startBarcodeScanning":
+      {
+        if (camera.isRecordingHighSpeedVideo()) {
+          result.error(
+                  "barcodeScanFailed",
+                  "Barcodes cannot be scanned while a slow motion video is being recorded.",
+                  null);
+          break;
+        }
+        BarcodeScanOptions options;
+        try {
+          options = BarcodeScanOptions.fromMethodCall(call);
+        } catch (IllegalArgumentException e) {
+          result.error("barcodeScanFailed", e.getMessage(), null);
+          break;
+        }
+        try {
+          camera.startBarcodeScanning(options);
+          result.success(null);
+        } catch (CameraMemoryBudget.ExceededException e) {
+          result.error("memoryBudgetExceeded", e.getMessage(), null);
+        } catch (StreamCombinations.UnsupportedException e) {
+          result.error("streamCombinationUnsupported", e.getMessage(), null);
+        } catch (Exception e) {
+          exceptionHandler.handleException(e, result);
+        }
+        break;
+      }
+      case "stopBarcodeScanning":
+      {
+        try {
+          camera.stopBarcodeScanning();
+          result.success(null);
+        } catch (Exception e) {
+          exceptionHandler.handleException(e, result);
+        }
+        break;
+      }
+      case "setAdaptiveQuality":
+      {
+        List<?> ladderArgument = call.argument("ladder");
+        List<AdaptiveQualityController.Level> ladder = null;
+        try {
+          if (ladderArgument != null) {
+            ladder = new ArrayList<>();
+            for (Object level : ladderArgument) {
+              ladder.add(AdaptiveQualityController.Level.fromMap((Map<?, ?>) level));
+            }
+            if (ladder.isEmpty()) {
+              ladder = AdaptiveQualityController.DEFAULT_LADDER;
+            }
+          }
+        } catch (IllegalArgumentException e) {
+          result.error("adaptiveQualityFailed", e.getMessage(), null);
+          break;
+        }
+        camera.setAdaptiveQuality(ladder, result);
+        break;
+      }
+      default:
+        result.notImplemented();
+        break;
+    }
+  }
+}
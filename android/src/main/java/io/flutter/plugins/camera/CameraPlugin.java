@@ -4,9 +4,10 @@
 
 package io.flutter.plugins.camera;
 
-import android.graphics.PointF;
 import android.hardware.camera2.CameraAccessException;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import androidx.annotation.NonNull;
 import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
@@ -21,17 +22,44 @@ public class CameraPlugin implements MethodCallHandler {
   private final CameraPermissions cameraPermissions = new CameraPermissions();
   private final FlutterView view;
   private final Registrar registrar;
-  private final EventChannel imageStreamChannel;
-  private Camera camera;
+  private final CameraMethodHandler methodHandler;
 
   private CameraPlugin(Registrar registrar) {
     this.registrar = registrar;
     this.view = registrar.view();
-    this.imageStreamChannel =
+    // Camera2 calls back on the main looper, so queued commands run there too.
+    Handler mainHandler = new Handler(Looper.getMainLooper());
+    this.methodHandler =
+            new CameraMethodHandler(
+                    this::createCamera,
+                    new PipelineMetrics(),
+                    this::handleException,
+                    mainHandler::post,
+                    mainHandler::postDelayed);
+
+    EventChannel imageStreamChannel =
             new EventChannel(registrar.messenger(), "plugins.flutter.io/camera/imageStream");
+    imageStreamChannel.setStreamHandler(
+            new EventChannel.StreamHandler() {
+              @Override
+              public void onListen(Object arguments, EventChannel.EventSink imageStreamSink) {
+                methodHandler.setImageStreamSink(imageStreamSink);
+              }
+
+              @Override
+              public void onCancel(Object arguments) {
+                methodHandler.setImageStreamSink(null);
+              }
+            });
   }
 
   public static void registerWith(Registrar registrar) {
+    // The handle based API wraps android.hardware.Camera, which doesn't need Camera2.
+    final MethodChannel handleChannel =
+            new MethodChannel(registrar.messenger(), CameraChannelHandler.CHANNEL);
+    handleChannel.setMethodCallHandler(
+            new CameraChannelHandler(handleChannel, registrar.textures()));
+
     if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
       // When a background flutter view tries to register the plugin, the registrar has no activity.
       // We stop the registration process as this plugin is foreground only. Also, if the sdk is
@@ -45,13 +73,29 @@ public class CameraPlugin implements MethodCallHandler {
     channel.setMethodCallHandler(new io.flutter.plugins.camera.CameraPlugin(registrar));
   }
 
-  private void instantiateCamera(MethodCall call, Result result) throws CameraAccessException {
+  private CameraBackend createCamera(MethodCall call, PipelineMetrics metrics)
+          throws CameraAccessException {
     String cameraName = call.argument("cameraName");
     String resolutionPreset = call.argument("resolutionPreset");
     boolean enableAudio = call.argument("enableAudio");
     boolean enableMonoMode = call.argument("enableMonoMode");
     boolean slowMoMode = call.argument("slowMo");
-    camera = new Camera(registrar.activity(), view, cameraName, resolutionPreset, enableAudio, enableMonoMode, slowMoMode);
+    Number memoryBudgetBytes = call.argument("memoryBudgetBytes");
+    Camera camera =
+        new Camera(
+            registrar.activity(),
+            view,
+            cameraName,
+            resolutionPreset,
+            enableAudio,
+            enableMonoMode,
+            slowMoMode,
+            StreamSizeNegotiator.Constraints.fromMethodCall(call),
+            memoryBudgetBytes == null
+                ? CameraMemoryBudget.DEFAULT_BUDGET_BYTES
+                : memoryBudgetBytes.longValue(),
+            registrar.messenger(),
+            metrics);
 
     EventChannel cameraEventChannel =
             new EventChannel(
@@ -59,7 +103,24 @@ public class CameraPlugin implements MethodCallHandler {
                     "flutter.io/cameraPlugin/cameraEvents" + camera.getFlutterTexture().id());
     camera.setupCameraEventChannel(cameraEventChannel);
 
-    camera.open(result);
+    EventChannel frameMetadataEventChannel =
+            new EventChannel(
+                    registrar.messenger(),
+                    "flutter.io/cameraPlugin/frameMetadata" + camera.getFlutterTexture().id());
+    camera.setupFrameMetadataEventChannel(frameMetadataEventChannel);
+
+    EventChannel analysisEventChannel =
+            new EventChannel(
+                    registrar.messenger(),
+                    "flutter.io/cameraPlugin/analysis" + camera.getFlutterTexture().id());
+    camera.setupAnalysisEventChannel(analysisEventChannel);
+
+    EventChannel barcodeEventChannel =
+            new EventChannel(
+                    registrar.messenger(),
+                    "flutter.io/cameraPlugin/barcodes" + camera.getFlutterTexture().id());
+    camera.setupBarcodeEventChannel(barcodeEventChannel);
+    return camera;
   }
 
   @Override
@@ -74,19 +135,13 @@ public class CameraPlugin implements MethodCallHandler {
         break;
       case "initialize":
       {
-        if (camera != null) {
-          camera.close();
-        }
+        methodHandler.closeCamera();
         cameraPermissions.requestPermissions(
                 registrar,
                 call.argument("enableAudio"),
                 (String errCode, String errDesc) -> {
                   if (errCode == null) {
-                    try {
-                      instantiateCamera(call, result);
-                    } catch (Exception e) {
-                      handleException(e, result);
-                    }
+                    methodHandler.initialize(call, result);
                   } else {
                     result.error(errCode, errDesc, null);
                   }
@@ -94,82 +149,10 @@ public class CameraPlugin implements MethodCallHandler {
 
         break;
       }
-      case "lockFocus":
-      {
-        double dx = (double) call.argument("dx");
-        double dy = (double) call.argument("dy");
-        PointF point = new PointF((float)dx, (float)dy);
-        camera.lockFocus(point);
-        break;
-      }
-      case "unlockFocus":
-      {
-        camera.unlockFocus();
-        break;
-      }
-      case "takePicture":
-      {
-        camera.flashMode = call.argument("flash");
-        camera.takePicture(call.argument("path"), result);
-        break;
-      }
-      case "prepareForVideoRecording":
-      {
-        // This optimization is not required for Android.
-        result.success(null);
-        break;
-      }
-      case "startVideoRecording":
-      {
-        camera.flashMode = call.argument("flash");
-        camera.startVideoRecording(call.argument("filePath"), result);
-        break;
-      }
-      case "stopVideoRecording":
-      {
-        camera.stopVideoRecording(result);
-        break;
-      }
-      case "pauseVideoRecording":
-      {
-        camera.pauseVideoRecording(result);
-        break;
-      }
-      case "resumeVideoRecording":
-      {
-        camera.resumeVideoRecording(result);
-        break;
-      }
-      case "startImageStream":
-      {
-        try {
-          camera.startPreviewWithImageStream(imageStreamChannel);
-          result.success(null);
-        } catch (Exception e) {
-          handleException(e, result);
-        }
-        break;
-      }
-      case "stopImageStream":
-      {
-        try {
-          camera.startPreview();
-          result.success(null);
-        } catch (Exception e) {
-          handleException(e, result);
-        }
-        break;
-      }
-      case "dispose":
-      {
-        if (camera != null) {
-          camera.dispose();
-        }
-        result.success(null);
-        break;
-      }
       default:
-        result.notImplemented();
+        if (!methodHandler.onMethodCall(call, result)) {
+          result.notImplemented();
+        }
         break;
     }
   }
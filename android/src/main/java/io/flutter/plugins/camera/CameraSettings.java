@@ -0,0 +1,149 @@
+package io.flutter.plugins.camera;
+
+import java.util.Map;
+
+/**
+ * A batch of capture settings from one {@code applySettings} call.
+ *
+ * <p>Every key is checked against the camera's {@link Capabilities} before the camera applies any
+ * of them, so a batch applies completely or not at all. Keys left out keep their current value. A
+ * {@code focusPoint} of null returns to continuous autofocus.
+ */
+final class CameraSettings {
+  // android.hardware.camera2.CameraMetadata.CONTROL_EFFECT_MODE_ values are the indexes.
+  private static final String[] EFFECT_NAMES = {
+    "none", "mono", "negative", "solarize", "sepia", "posterize", "whiteboard", "blackboard", "aqua"
+  };
+
+  /** What a camera supports, from its characteristics. */
+  static final class Capabilities {
+    final boolean autoFocus;
+    final int minExposureCompensation;
+    final int maxExposureCompensation;
+    final boolean flash;
+    final int[] effects;
+
+    Capabilities(
+        boolean autoFocus,
+        int minExposureCompensation,
+        int maxExposureCompensation,
+        boolean flash,
+        int[] effects) {
+      this.autoFocus = autoFocus;
+      this.minExposureCompensation = minExposureCompensation;
+      this.maxExposureCompensation = maxExposureCompensation;
+      this.flash = flash;
+      this.effects = effects;
+    }
+
+    private boolean supportsEffect(int effect) {
+      for (int available : effects) {
+        if (available == effect) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+  /** Whether the batch sets the focus point, which may be set to null. */
+  final boolean hasFocusPoint;
+  /** The point to lock focus and exposure on, as x and y from 0 to 1 on the preview. */
+  final double[] focusPoint;
+  /** Exposure compensation in the camera's steps, or null to keep it. */
+  final Integer exposureCompensation;
+  /** Whether the torch lights captures and recordings, or null to keep it. */
+  final Boolean flash;
+  /** A CONTROL_EFFECT_MODE value, or null to keep it. */
+  final Integer effect;
+
+  private CameraSettings(
+      boolean hasFocusPoint,
+      double[] focusPoint,
+      Integer exposureCompensation,
+      Boolean flash,
+      Integer effect) {
+    this.hasFocusPoint = hasFocusPoint;
+    this.focusPoint = focusPoint;
+    this.exposureCompensation = exposureCompensation;
+    this.flash = flash;
+    this.effect = effect;
+  }
+
+  /** @throws IllegalArgumentException if a key is unknown, or its value invalid or unsupported. */
+  static CameraSettings fromMap(Map<String, Object> map, Capabilities capabilities) {
+    boolean hasFocusPoint = false;
+    double[] focusPoint = null;
+    Integer exposureCompensation = null;
+    Boolean flash = null;
+    Integer effect = null;
+    for (Map.Entry<String, Object> entry : map.entrySet()) {
+      Object value = entry.getValue();
+      switch (entry.getKey()) {
+        case "focusPoint":
+          hasFocusPoint = true;
+          if (value != null) {
+            if (!capabilities.autoFocus) {
+              throw new IllegalArgumentException("The camera has no autofocus.");
+            }
+            focusPoint = parsePoint(value);
+          }
+          break;
+        case "exposureCompensation":
+          if (!(value instanceof Integer)) {
+            throw new IllegalArgumentException("exposureCompensation must be an int.");
+          }
+          exposureCompensation = (Integer) value;
+          if (exposureCompensation < capabilities.minExposureCompensation
+              || exposureCompensation > capabilities.maxExposureCompensation) {
+            throw new IllegalArgumentException(
+                String.format(
+                    "exposureCompensation must be between %d and %d.",
+                    capabilities.minExposureCompensation, capabilities.maxExposureCompensation));
+          }
+          break;
+        case "flash":
+          if (!(value instanceof Boolean)) {
+            throw new IllegalArgumentException("flash must be a bool.");
+          }
+          flash = (Boolean) value;
+          if (flash && !capabilities.flash) {
+            throw new IllegalArgumentException("The camera has no flash.");
+          }
+          break;
+        case "effect":
+          effect = parseEffect(value);
+          if (!capabilities.supportsEffect(effect)) {
+            throw new IllegalArgumentException("The camera doesn't support " + value + ".");
+          }
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown setting " + entry.getKey() + ".");
+      }
+    }
+    return new CameraSettings(hasFocusPoint, focusPoint, exposureCompensation, flash, effect);
+  }
+
+  private static double[] parsePoint(Object value) {
+    if (value instanceof Map) {
+      Object x = ((Map<?, ?>) value).get("x");
+      Object y = ((Map<?, ?>) value).get("y");
+      if (x instanceof Number && y instanceof Number) {
+        double[] point = {((Number) x).doubleValue(), ((Number) y).doubleValue()};
+        if (point[0] >= 0 && point[0] <= 1 && point[1] >= 0 && point[1] <= 1) {
+          return point;
+        }
+      }
+    }
+    throw new IllegalArgumentException("focusPoint must have an x and a y between 0 and 1.");
+  }
+
+  private static int parseEffect(Object value) {
+    for (int i = 0; i < EFFECT_NAMES.length; i++) {
+      if (EFFECT_NAMES[i].equals(value)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Unknown effect " + value + ".");
+  }
+}
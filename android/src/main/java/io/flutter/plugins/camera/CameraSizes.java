@@ -0,0 +1,73 @@
+package io.flutter.plugins.camera;
+
+import android.util.Log;
+import android.util.Size;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/** Picks output sizes from the sizes a camera supports. */
+final class CameraSizes {
+  private static final String TAG = "CAMERA";
+
+  private CameraSizes() {}
+
+  static class CompareSizesByArea implements Comparator<Size> {
+    @Override
+    public int compare(Size lhs, Size rhs) {
+      // We cast here to ensure the multiplications won't overflow.
+      return Long.signum(
+          (long) lhs.getWidth() * lhs.getHeight() - (long) rhs.getWidth() * rhs.getHeight());
+    }
+  }
+
+  static Size chooseOptimalSize(Size[] choices, int width, int height, Size aspectRatio) {
+    // Collect the supported resolutions that are at least as big as the preview Surface
+    List<Size> bigEnough = new ArrayList<>();
+    int w = aspectRatio.getWidth();
+    int h = aspectRatio.getHeight();
+    for (Size option : choices) {
+      if (option.getHeight() == option.getWidth() * h / w &&
+              option.getWidth() <= width && option.getHeight() <= height) {
+        bigEnough.add(option);
+      }
+    }
+    // Pick the smallest of those, assuming we found any
+    if (bigEnough.size() > 0) {
+      return Collections.max(bigEnough, new CompareSizesByArea());
+    } else {
+      Log.e(TAG, "Couldn't find any suitable preview size");
+      return choices[0];
+    }
+  }
+
+  static Size chooseBoundedSize(Size[] choices, int maxWidth, int maxHeight, Size aspectRatio) {
+    // Prefer the largest size with the given aspect ratio that fits the bounds, otherwise
+    // fall back to the smallest size available so the encoder keeps most of the bandwidth.
+    List<Size> fitting = new ArrayList<>();
+    for (Size option : choices) {
+      if (option.getWidth() <= maxWidth
+          && option.getHeight() <= maxHeight
+          && (long) option.getWidth() * aspectRatio.getHeight()
+              == (long) option.getHeight() * aspectRatio.getWidth()) {
+        fitting.add(option);
+      }
+    }
+    if (fitting.size() > 0) {
+      return Collections.max(fitting, new CompareSizesByArea());
+    }
+    return Collections.min(Arrays.asList(choices), new CompareSizesByArea());
+  }
+
+  static Size chooseVideoSize(Size[] choices) {
+    for (Size size : choices) {
+      if (size.getWidth() == 1920 && size.getHeight() <= 1080) {
+        return size;
+      }
+    }
+    Log.e(TAG, "Couldn't find any suitable video size");
+    return choices[choices.length - 1];
+  }
+}
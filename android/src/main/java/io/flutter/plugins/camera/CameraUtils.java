@@ -14,7 +14,6 @@ import io.flutter.plugins.camera.Camera.ResolutionPreset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -38,7 +37,7 @@ public final class CameraUtils {
     // For still image captures, we use the largest available size.
     return Collections.max(
         Arrays.asList(streamConfigurationMap.getOutputSizes(ImageFormat.JPEG)),
-        new CompareSizesByArea());
+        new CameraSizes.CompareSizesByArea());
   }
 
   public static List<Map<String, Object>> getAvailableCameras(Activity activity)
@@ -109,13 +108,4 @@ public final class CameraUtils {
         }
     }
   }
-
-  private static class CompareSizesByArea implements Comparator<Size> {
-    @Override
-    public int compare(Size lhs, Size rhs) {
-      // We cast here to ensure the multiplications won't overflow.
-      return Long.signum(
-          (long) lhs.getWidth() * lhs.getHeight() - (long) rhs.getWidth() * rhs.getHeight());
-    }
-  }
 }
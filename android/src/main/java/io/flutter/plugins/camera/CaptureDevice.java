@@ -0,0 +1,33 @@
+package io.flutter.plugins.camera;
+
+import java.util.List;
+
+/**
+ * The camera device under an {@link ImageStream}: it creates the outputs frames arrive in and
+ * configures the sessions that fill them.
+ *
+ * <p>{@link Camera} implements it with Camera2, adding its preview, still and analysis outputs to
+ * every session. The replay harness implements it with recorded frames on a plain JVM.
+ */
+interface CaptureDevice {
+  /** A configured capture session. */
+  interface Session {
+    /** Starts the repeating request, filling the preview and {@code targets}. */
+    void setRepeating(List<FrameSource> targets) throws Exception;
+
+    void close();
+  }
+
+  /** Called on the device's thread once a session is configured or has failed. */
+  interface SessionCallback {
+    void onConfigured(Session session);
+
+    void onConfigureFailed();
+  }
+
+  /** Creates an output of {@code maxImages} buffers that sessions can be configured with. */
+  FrameSource createOutput(int width, int height, int format, int maxImages);
+
+  /** Configures a session with {@code outputs} and the device's own outputs. */
+  void createSession(List<FrameSource> outputs, SessionCallback callback) throws Exception;
+}
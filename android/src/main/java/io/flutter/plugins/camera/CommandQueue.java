@@ -0,0 +1,253 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.MethodChannel.Result;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs camera commands one at a time, so a command never starts while the previous one is still
+ * waiting for the camera.
+ *
+ * <p>A command is done once it replies. The next one also waits while the {@link Gate} is busy,
+ * for example while a capture session is being configured, since a command arriving then would
+ * rebuild the session again on top of it. Commands wait in order, and a new command replaces the
+ * waiting commands at the end of the queue that it {@link Coalescing#supersedes}, such as an
+ * older focus point or a stream start followed by a stop. Only the end of the queue is looked at,
+ * so no command moves past another one. Replaced commands are replied to right away.
+ *
+ * <p>A {@link Coalescing#detached} command gives up its slot once it has run, and replies later,
+ * like a focus lock that waits for the lens after submitting its trigger. A newer command that
+ * supersedes it replaces it even then. A command that hasn't replied {@link #TIMEOUT_MILLIS} after
+ * it started fails, so a lost callback can't stall the queue. Everything, including the executor
+ * and the timer, runs on one thread.
+ */
+final class CommandQueue {
+  interface Command {
+    void run(Result result);
+  }
+
+  /** Tells whether the camera is in the middle of something the next command must wait for. */
+  interface Gate {
+    boolean isBusy();
+  }
+
+  /** Runs a task on the queue's thread after a delay. */
+  interface Timer {
+    void schedule(Runnable task, long delayMillis);
+  }
+
+  static final long TIMEOUT_MILLIS = 10_000;
+
+  /** How a command combines with the commands waiting before it. */
+  static final class Coalescing {
+    static final Coalescing NONE = new Coalescing(Collections.emptySet(), false, false);
+
+    /** The methods of the waiting commands this one replaces. */
+    final Set<String> supersedes;
+    /**
+     * Whether this command fails when it is superseded, because its reply describes an outcome
+     * that will never happen. Otherwise it succeeds, since the newer command overwrites its effect.
+     */
+    final boolean failWhenSuperseded;
+    /** Whether the next command may run once this one has run, before it replies. */
+    final boolean detached;
+
+    private Coalescing(Set<String> supersedes, boolean failWhenSuperseded, boolean detached) {
+      this.supersedes = supersedes;
+      this.failWhenSuperseded = failWhenSuperseded;
+      this.detached = detached;
+    }
+
+    static Coalescing supersedes(String... methods) {
+      return new Coalescing(new HashSet<>(Arrays.asList(methods)), false, false);
+    }
+
+    Coalescing failingWhenSuperseded() {
+      return new Coalescing(supersedes, true, detached);
+    }
+
+    Coalescing detached() {
+      return new Coalescing(supersedes, failWhenSuperseded, true);
+    }
+  }
+
+  private final class Entry implements Result {
+    final String method;
+    final Coalescing coalescing;
+    final Command command;
+    final Result result;
+    private boolean replied;
+
+    Entry(String method, Coalescing coalescing, Command command, Result result) {
+      this.method = method;
+      this.coalescing = coalescing;
+      this.command = command;
+      this.result = result;
+    }
+
+    @Override
+    public void success(Object value) {
+      if (finish()) {
+        result.success(value);
+      }
+    }
+
+    @Override
+    public void error(String errorCode, String errorMessage, Object errorDetails) {
+      if (finish()) {
+        result.error(errorCode, errorMessage, errorDetails);
+      }
+    }
+
+    @Override
+    public void notImplemented() {
+      if (finish()) {
+        result.notImplemented();
+      }
+    }
+
+    private boolean finish() {
+      if (replied) {
+        return false;
+      }
+      replied = true;
+      detached.remove(this);
+      if (running == this) {
+        running = null;
+        // Posted, so the next command doesn't run inside the callback that replied.
+        runNextLater();
+      }
+      return true;
+    }
+  }
+
+  private final Executor executor;
+  private final Timer timer;
+  private final Gate gate;
+  private final Deque<Entry> waiting = new ArrayDeque<>();
+  private Entry running;
+  // Commands that have run and given up their slot, but haven't replied yet.
+  private final Set<Entry> detached = new LinkedHashSet<>();
+  private int maxDepth;
+  private long executed;
+  private long superseded;
+  private long timedOut;
+  private final Map<String, Long> supersededByMethod = new HashMap<>();
+
+  /**
+   * @param executor runs queued commands later on the queue's thread.
+   * @param timer fails commands that haven't replied in time, on the queue's thread.
+   */
+  CommandQueue(Executor executor, Timer timer, Gate gate) {
+    this.executor = executor;
+    this.timer = timer;
+    this.gate = gate;
+  }
+
+  /** Queues {@code command}, which replies to {@code result} once it is done. */
+  void enqueue(String method, Coalescing coalescing, Command command, Result result) {
+    Entry entry = new Entry(method, coalescing, command, result);
+    while (!waiting.isEmpty() && coalescing.supersedes.contains(waiting.peekLast().method)) {
+      supersede(waiting.removeLast(), method);
+    }
+    if (waiting.isEmpty()) {
+      // Nothing sits between the new command and the ones still waiting for the camera.
+      for (Entry started : new ArrayList<>(detached)) {
+        if (coalescing.supersedes.contains(started.method)) {
+          supersede(started, method);
+        }
+      }
+    }
+    waiting.addLast(entry);
+    maxDepth = Math.max(maxDepth, waiting.size());
+    runNext();
+  }
+
+  private void supersede(Entry entry, String method) {
+    superseded++;
+    Long count = supersededByMethod.get(entry.method);
+    supersededByMethod.put(entry.method, count == null ? 1 : count + 1);
+    if (entry.coalescing.failWhenSuperseded) {
+      entry.error("commandSuperseded", entry.method + " was superseded by " + method + ".", null);
+    } else {
+      entry.success(null);
+    }
+  }
+
+  /** Runs the next command if nothing is running and the gate is open. */
+  void runNext() {
+    if (running != null || waiting.isEmpty() || gate.isBusy()) {
+      return;
+    }
+    Entry entry = waiting.removeFirst();
+    running = entry;
+    executed++;
+    timer.schedule(
+        () -> {
+          if (!entry.replied) {
+            timedOut++;
+            entry.error(
+                "commandTimedOut",
+                entry.method + " didn't finish within " + TIMEOUT_MILLIS + " ms.",
+                null);
+          }
+        },
+        TIMEOUT_MILLIS);
+    try {
+      entry.command.run(entry);
+    } catch (RuntimeException e) {
+      // Replying lets the queue move on instead of waiting for a command that died.
+      entry.error("commandFailed", e.getMessage(), null);
+    }
+    if (running == entry && entry.coalescing.detached) {
+      running = null;
+      detached.add(entry);
+      runNextLater();
+    }
+  }
+
+  /** Runs the next command later, for example once the gate has opened. */
+  void runNextLater() {
+    executor.execute(this::runNext);
+  }
+
+  /**
+   * Fails the waiting commands, for example because the camera was closed. Commands that have
+   * started still reply, but no longer hold up the commands queued after this call.
+   */
+  void clear(String reason) {
+    running = null;
+    detached.clear();
+    while (!waiting.isEmpty()) {
+      waiting.removeFirst().error("cameraClosed", reason, null);
+    }
+  }
+
+  /** Returns the queue depth and how many commands ran and were superseded. */
+  Map<String, Object> toMap() {
+    Map<String, Object> stats = new HashMap<>();
+    stats.put("depth", waiting.size());
+    stats.put("maxDepth", maxDepth);
+    stats.put("running", running == null ? null : running.method);
+    List<String> detachedMethods = new ArrayList<>();
+    for (Entry entry : detached) {
+      detachedMethods.add(entry.method);
+    }
+    stats.put("detached", detachedMethods);
+    stats.put("executed", executed);
+    stats.put("superseded", superseded);
+    stats.put("timedOut", timedOut);
+    stats.put("supersededByMethod", new HashMap<>(supersededByMethod));
+    return stats;
+  }
+}
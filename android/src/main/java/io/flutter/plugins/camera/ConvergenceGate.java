@@ -0,0 +1,81 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.MethodChannel.Result;
+
+/**
+ * Holds a capture back until auto exposure and autofocus have settled on the repeating request.
+ *
+ * <p>A session that was just configured starts its 3A routines over, so a capture submitted right
+ * away is exposed and focused for whatever the first frames saw. The gate runs its action on the
+ * first repeating result where AE has converged, locked or wants the flash and AF isn't scanning,
+ * or after {@link #TIMEOUT_NANOS} on devices that never get there. Capture results must arrive on
+ * the thread that calls {@link #await}.
+ */
+final class ConvergenceGate {
+  // android.hardware.camera2.CaptureResult.CONTROL_AE_STATE values.
+  static final int AE_STATE_CONVERGED = 2;
+  static final int AE_STATE_LOCKED = 3;
+  static final int AE_STATE_FLASH_REQUIRED = 4;
+  // android.hardware.camera2.CaptureResult.CONTROL_AF_STATE values.
+  static final int AF_STATE_PASSIVE_SCAN = 1;
+  static final int AF_STATE_ACTIVE_SCAN = 3;
+  static final long TIMEOUT_NANOS = 1_000_000_000L;
+
+  private Runnable action;
+  private Result result;
+  private long startNanos;
+
+  /**
+   * Runs {@code action} once 3A has settled, failing the capture already waiting if there is one.
+   * {@code result} is failed instead if the wait is cancelled.
+   */
+  void await(Runnable action, Result result) {
+    cancel("Another capture was started before the camera settled.");
+    this.action = action;
+    this.result = result;
+    startNanos = System.nanoTime();
+  }
+
+  boolean isWaiting() {
+    return action != null;
+  }
+
+  /**
+   * Advances the gate with one result of the repeating request.
+   *
+   * @param aeState the result's CONTROL_AE_STATE, or null if the device doesn't report it.
+   * @param afState the result's CONTROL_AF_STATE, or null if the device doesn't report it.
+   */
+  void onCaptureCompleted(Integer aeState, Integer afState) {
+    if (action == null) {
+      return;
+    }
+    boolean aeSettled =
+        aeState == null
+            || aeState == AE_STATE_CONVERGED
+            || aeState == AE_STATE_LOCKED
+            || aeState == AE_STATE_FLASH_REQUIRED;
+    boolean afSettled =
+        afState == null || (afState != AF_STATE_PASSIVE_SCAN && afState != AF_STATE_ACTIVE_SCAN);
+    if ((aeSettled && afSettled) || System.nanoTime() - startNanos >= TIMEOUT_NANOS) {
+      Runnable pending = action;
+      reset();
+      pending.run();
+    }
+  }
+
+  /** Fails the waiting capture, for example because the camera was closed. */
+  void cancel(String reason) {
+    if (action == null) {
+      return;
+    }
+    Result pending = result;
+    reset();
+    pending.error("captureFailed", reason, null);
+  }
+
+  private void reset() {
+    action = null;
+    result = null;
+  }
+}
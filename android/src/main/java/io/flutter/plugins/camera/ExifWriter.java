@@ -0,0 +1,472 @@
+package io.flutter.plugins.camera;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+
+/**
+ * Builds an APP1 EXIF segment and splices it into a JPEG while the JPEG is written, without
+ * decoding or copying the compressed data.
+ *
+ * <p>The segment replaces any EXIF segment the camera wrote, keeping only its orientation, so the
+ * camera's thumbnail is dropped. It goes right after the start of image marker, followed by the
+ * JPEG's other segments in their original order, and is written with one gathering write.
+ */
+final class ExifWriter {
+  // TIFF field types.
+  private static final short TYPE_BYTE = 1;
+  private static final short TYPE_ASCII = 2;
+  private static final short TYPE_SHORT = 3;
+  private static final short TYPE_LONG = 4;
+  private static final short TYPE_RATIONAL = 5;
+  private static final short TYPE_UNDEFINED = 7;
+
+  private static final int TAG_IMAGE_DESCRIPTION = 0x010e;
+  private static final int TAG_MAKE = 0x010f;
+  private static final int TAG_MODEL = 0x0110;
+  private static final int TAG_ORIENTATION = 0x0112;
+  private static final int TAG_SOFTWARE = 0x0131;
+  private static final int TAG_DATE_TIME = 0x0132;
+  private static final int TAG_ARTIST = 0x013b;
+  private static final int TAG_COPYRIGHT = 0x8298;
+  private static final int TAG_EXIF_IFD = 0x8769;
+  private static final int TAG_GPS_IFD = 0x8825;
+
+  private static final int TAG_EXPOSURE_TIME = 0x829a;
+  private static final int TAG_F_NUMBER = 0x829d;
+  private static final int TAG_ISO = 0x8827;
+  private static final int TAG_EXIF_VERSION = 0x9000;
+  private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+  private static final int TAG_OFFSET_TIME_ORIGINAL = 0x9011;
+  private static final int TAG_FOCAL_LENGTH = 0x920a;
+  private static final int TAG_USER_COMMENT = 0x9286;
+  private static final int TAG_SUB_SEC_TIME_ORIGINAL = 0x9291;
+  private static final int TAG_PIXEL_X_DIMENSION = 0xa002;
+  private static final int TAG_PIXEL_Y_DIMENSION = 0xa003;
+
+  private static final int TAG_GPS_VERSION = 0x0000;
+  private static final int TAG_GPS_LATITUDE_REF = 0x0001;
+  private static final int TAG_GPS_LATITUDE = 0x0002;
+  private static final int TAG_GPS_LONGITUDE_REF = 0x0003;
+  private static final int TAG_GPS_LONGITUDE = 0x0004;
+  private static final int TAG_GPS_ALTITUDE_REF = 0x0005;
+  private static final int TAG_GPS_ALTITUDE = 0x0006;
+
+  // IFD0 tags the writer sets itself, which the app's tags can't replace.
+  private static final Set<Integer> MANAGED_TAGS =
+      new HashSet<>(
+          Arrays.asList(
+              TAG_MAKE, TAG_MODEL, TAG_ORIENTATION, TAG_DATE_TIME, TAG_EXIF_IFD, TAG_GPS_IFD));
+
+  private static final byte[] EXIF_HEADER = {'E', 'x', 'i', 'f', 0, 0};
+  private static final byte[] ASCII_COMMENT_PREFIX = {'A', 'S', 'C', 'I', 'I', 0, 0, 0};
+  private static final int TIFF_HEADER_SIZE = 8;
+  private static final int MAX_SEGMENT_LENGTH = 0xffff;
+
+  private static final class Entry {
+    final short type;
+    final int count;
+    final byte[] value;
+
+    Entry(short type, int count, byte[] value) {
+      this.type = type;
+      this.count = count;
+      this.value = value;
+    }
+  }
+
+  // Entries of an IFD have to be sorted by tag.
+  private final TreeMap<Integer, Entry> ifd0 = new TreeMap<>();
+  private final TreeMap<Integer, Entry> exifIfd = new TreeMap<>();
+  private final TreeMap<Integer, Entry> gpsIfd = new TreeMap<>();
+
+  ExifWriter() {
+    putUndefined(exifIfd, TAG_EXIF_VERSION, "0231".getBytes(StandardCharsets.US_ASCII));
+  }
+
+  /**
+   * Adds the app's metadata: {@code latitude}, {@code longitude} and {@code altitude} in degrees
+   * and meters, the strings {@code description}, {@code artist}, {@code copyright}, {@code
+   * software} and {@code userComment}, and {@code tags}, a map of further IFD0 tag numbers to
+   * ASCII values. The named entries take precedence over {@code tags}, which can't set the make,
+   * model, orientation, date or IFD pointers the writer manages.
+   *
+   * @throws IllegalArgumentException if a value has the wrong type or is out of range.
+   */
+  ExifWriter setMetadata(Map<?, ?> metadata) {
+    Object tags = metadata.get("tags");
+    if (tags != null) {
+      if (!(tags instanceof Map)) {
+        throw new IllegalArgumentException("tags must map tag numbers to strings.");
+      }
+      for (Map.Entry<?, ?> tag : ((Map<?, ?>) tags).entrySet()) {
+        if (!(tag.getKey() instanceof Integer) || !(tag.getValue() instanceof String)) {
+          throw new IllegalArgumentException("tags must map tag numbers to strings.");
+        }
+        int number = (Integer) tag.getKey();
+        if (number < 0 || number > 0xffff || MANAGED_TAGS.contains(number)) {
+          throw new IllegalArgumentException("Tag " + number + " can't be set.");
+        }
+        putAscii(ifd0, number, (String) tag.getValue());
+      }
+    }
+    putAscii(ifd0, TAG_IMAGE_DESCRIPTION, string(metadata, "description"));
+    putAscii(ifd0, TAG_ARTIST, string(metadata, "artist"));
+    putAscii(ifd0, TAG_COPYRIGHT, string(metadata, "copyright"));
+    putAscii(ifd0, TAG_SOFTWARE, string(metadata, "software"));
+    String userComment = string(metadata, "userComment");
+    if (userComment != null) {
+      byte[] comment = userComment.getBytes(StandardCharsets.US_ASCII);
+      byte[] value = new byte[ASCII_COMMENT_PREFIX.length + comment.length];
+      System.arraycopy(ASCII_COMMENT_PREFIX, 0, value, 0, ASCII_COMMENT_PREFIX.length);
+      System.arraycopy(comment, 0, value, ASCII_COMMENT_PREFIX.length, comment.length);
+      putUndefined(exifIfd, TAG_USER_COMMENT, value);
+    }
+
+    Double latitude = number(metadata, "latitude", -90, 90);
+    Double longitude = number(metadata, "longitude", -180, 180);
+    if ((latitude == null) != (longitude == null)) {
+      throw new IllegalArgumentException("latitude and longitude have to be given together.");
+    }
+    if (latitude != null) {
+      putBytes(gpsIfd, TAG_GPS_VERSION, new byte[] {2, 3, 0, 0});
+      putAscii(gpsIfd, TAG_GPS_LATITUDE_REF, latitude < 0 ? "S" : "N");
+      putRationals(gpsIfd, TAG_GPS_LATITUDE, degreesMinutesSeconds(Math.abs(latitude)));
+      putAscii(gpsIfd, TAG_GPS_LONGITUDE_REF, longitude < 0 ? "W" : "E");
+      putRationals(gpsIfd, TAG_GPS_LONGITUDE, degreesMinutesSeconds(Math.abs(longitude)));
+      Double altitude = number(metadata, "altitude", -1e6, 1e6);
+      if (altitude != null) {
+        putBytes(gpsIfd, TAG_GPS_ALTITUDE_REF, new byte[] {(byte) (altitude < 0 ? 1 : 0)});
+        putRationals(gpsIfd, TAG_GPS_ALTITUDE, Math.round(Math.abs(altitude) * 100), 100);
+      }
+    }
+    return this;
+  }
+
+  ExifWriter setDevice(String make, String model) {
+    putAscii(ifd0, TAG_MAKE, make);
+    putAscii(ifd0, TAG_MODEL, model);
+    return this;
+  }
+
+  /** Adds the settings a capture result reported; null values are left out. */
+  ExifWriter setCaptureSettings(
+      Long exposureTimeNanos, Integer sensitivity, Float focalLengthMillimeters, Float aperture) {
+    if (exposureTimeNanos != null) {
+      // Microseconds keep a 32 bit numerator for exposures up to an hour.
+      putRationals(exifIfd, TAG_EXPOSURE_TIME, exposureTimeNanos / 1000, 1_000_000);
+    }
+    if (sensitivity != null) {
+      putShort(exifIfd, TAG_ISO, Math.min(0xffff, sensitivity));
+    }
+    if (focalLengthMillimeters != null) {
+      putRationals(exifIfd, TAG_FOCAL_LENGTH, Math.round(focalLengthMillimeters * 1000), 1000);
+    }
+    if (aperture != null) {
+      putRationals(exifIfd, TAG_F_NUMBER, Math.round(aperture * 100), 100);
+    }
+    return this;
+  }
+
+  ExifWriter setCaptureTime(long millis, TimeZone timeZone) {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy:MM:dd HH:mm:ss", Locale.US);
+    format.setTimeZone(timeZone);
+    String dateTime = format.format(new Date(millis));
+    putAscii(ifd0, TAG_DATE_TIME, dateTime);
+    putAscii(exifIfd, TAG_DATE_TIME_ORIGINAL, dateTime);
+    putAscii(exifIfd, TAG_SUB_SEC_TIME_ORIGINAL, String.format(Locale.US, "%03d", millis % 1000));
+    int offsetMinutes = timeZone.getOffset(millis) / 60000;
+    putAscii(
+        exifIfd,
+        TAG_OFFSET_TIME_ORIGINAL,
+        String.format(
+            Locale.US,
+            "%c%02d:%02d",
+            offsetMinutes < 0 ? '-' : '+',
+            Math.abs(offsetMinutes) / 60,
+            Math.abs(offsetMinutes) % 60));
+    return this;
+  }
+
+  /**
+   * Sets the orientation from the clockwise rotation in degrees that shows the image upright, for
+   * JPEGs that weren't encoded by the camera.
+   */
+  ExifWriter setOrientation(int degrees) {
+    switch ((degrees % 360 + 360) % 360) {
+      case 90:
+        putShort(ifd0, TAG_ORIENTATION, 6);
+        break;
+      case 180:
+        putShort(ifd0, TAG_ORIENTATION, 3);
+        break;
+      case 270:
+        putShort(ifd0, TAG_ORIENTATION, 8);
+        break;
+      default:
+        putShort(ifd0, TAG_ORIENTATION, 1);
+        break;
+    }
+    return this;
+  }
+
+  ExifWriter setImageSize(int width, int height) {
+    putLong(exifIfd, TAG_PIXEL_X_DIMENSION, width);
+    putLong(exifIfd, TAG_PIXEL_Y_DIMENSION, height);
+    return this;
+  }
+
+  /** Returns the APP1 segment, from its marker on. */
+  byte[] toApp1Segment() {
+    TreeMap<Integer, Entry> ifd0 = new TreeMap<>(this.ifd0);
+    // Placeholders, so the IFD sizes are final before the pointers are known.
+    if (!exifIfd.isEmpty()) {
+      ifd0.put(TAG_EXIF_IFD, new Entry(TYPE_LONG, 1, new byte[4]));
+    }
+    if (!gpsIfd.isEmpty()) {
+      ifd0.put(TAG_GPS_IFD, new Entry(TYPE_LONG, 1, new byte[4]));
+    }
+    int exifOffset = TIFF_HEADER_SIZE + ifdSize(ifd0);
+    int gpsOffset = exifOffset + (exifIfd.isEmpty() ? 0 : ifdSize(exifIfd));
+    int tiffSize = gpsOffset + (gpsIfd.isEmpty() ? 0 : ifdSize(gpsIfd));
+    if (!exifIfd.isEmpty()) {
+      ifd0.put(TAG_EXIF_IFD, new Entry(TYPE_LONG, 1, bigEndianInt(exifOffset)));
+    }
+    if (!gpsIfd.isEmpty()) {
+      ifd0.put(TAG_GPS_IFD, new Entry(TYPE_LONG, 1, bigEndianInt(gpsOffset)));
+    }
+
+    int length = 2 + EXIF_HEADER.length + tiffSize;
+    if (length > MAX_SEGMENT_LENGTH) {
+      throw new IllegalArgumentException("The EXIF metadata doesn't fit a JPEG segment.");
+    }
+    ByteBuffer segment = ByteBuffer.allocate(2 + length).order(ByteOrder.BIG_ENDIAN);
+    segment.put((byte) 0xff).put((byte) 0xe1).putShort((short) length).put(EXIF_HEADER);
+    int tiffStart = segment.position();
+    segment.put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(TIFF_HEADER_SIZE);
+    writeIfd(segment, tiffStart, ifd0);
+    if (!exifIfd.isEmpty()) {
+      writeIfd(segment, tiffStart, exifIfd);
+    }
+    if (!gpsIfd.isEmpty()) {
+      writeIfd(segment, tiffStart, gpsIfd);
+    }
+    return segment.array();
+  }
+
+  /**
+   * Writes {@code jpeg}, from its position to its limit, to {@code file} with this segment in
+   * place of its EXIF segment. The buffer's position is left unchanged.
+   */
+  void writeJpeg(ByteBuffer jpeg, File file) throws IOException {
+    ByteBuffer data = jpeg.duplicate().order(ByteOrder.BIG_ENDIAN);
+    int start = data.position();
+    int end = data.limit();
+    if (end - start < 4 || (data.getShort(start) & 0xffff) != 0xffd8) {
+      throw new IOException("The capture is not a JPEG.");
+    }
+
+    List<ByteBuffer> kept = new ArrayList<>();
+    int offset = start + 2;
+    // Application segments come first; the first other marker starts the image data.
+    while (offset + 4 <= end && (data.get(offset) & 0xff) == 0xff) {
+      int marker = data.get(offset + 1) & 0xff;
+      if (marker < 0xe0 || marker > 0xef) {
+        break;
+      }
+      int segmentEnd = offset + 2 + (data.getShort(offset + 2) & 0xffff);
+      if (segmentEnd > end) {
+        break;
+      }
+      if (marker == 0xe1 && isExifSegment(data, offset)) {
+        if (!ifd0.containsKey(TAG_ORIENTATION)) {
+          int orientation = readOrientation(data, offset + 4 + EXIF_HEADER.length, segmentEnd);
+          if (orientation > 0) {
+            putShort(ifd0, TAG_ORIENTATION, orientation);
+          }
+        }
+      } else {
+        kept.add(slice(data, offset, segmentEnd));
+      }
+      offset = segmentEnd;
+    }
+
+    List<ByteBuffer> parts = new ArrayList<>();
+    parts.add(slice(data, start, start + 2));
+    parts.add(ByteBuffer.wrap(toApp1Segment()));
+    parts.addAll(kept);
+    parts.add(slice(data, offset, end));
+    ByteBuffer[] buffers = parts.toArray(new ByteBuffer[0]);
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      FileChannel channel = outputStream.getChannel();
+      while (buffers[buffers.length - 1].hasRemaining()) {
+        channel.write(buffers);
+      }
+    }
+  }
+
+  private static boolean isExifSegment(ByteBuffer data, int offset) {
+    if (offset + 4 + EXIF_HEADER.length > data.limit()) {
+      return false;
+    }
+    for (int i = 0; i < EXIF_HEADER.length; i++) {
+      if (data.get(offset + 4 + i) != EXIF_HEADER[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Returns the IFD0 orientation of the TIFF structure in [tiffStart, tiffEnd), or 0 if it has
+  // none or is malformed.
+  private static int readOrientation(ByteBuffer data, int tiffStart, int tiffEnd) {
+    if (tiffStart + TIFF_HEADER_SIZE > tiffEnd) {
+      return 0;
+    }
+    ByteBuffer tiff = data.duplicate();
+    tiff.order(tiff.get(tiffStart) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+    long ifdOffset = tiff.getInt(tiffStart + 4) & 0xffffffffL;
+    if (ifdOffset < TIFF_HEADER_SIZE || tiffStart + ifdOffset + 2 > tiffEnd) {
+      return 0;
+    }
+    int ifd = (int) (tiffStart + ifdOffset);
+    int count = tiff.getShort(ifd) & 0xffff;
+    for (int i = 0; i < count; i++) {
+      int entry = ifd + 2 + i * 12;
+      if (entry + 12 > tiffEnd) {
+        return 0;
+      }
+      if ((tiff.getShort(entry) & 0xffff) == TAG_ORIENTATION
+          && tiff.getShort(entry + 2) == TYPE_SHORT) {
+        return tiff.getShort(entry + 8) & 0xffff;
+      }
+    }
+    return 0;
+  }
+
+  private static ByteBuffer slice(ByteBuffer data, int from, int to) {
+    ByteBuffer slice = data.duplicate();
+    slice.limit(to);
+    slice.position(from);
+    return slice;
+  }
+
+  private static int ifdSize(TreeMap<Integer, Entry> ifd) {
+    int size = 2 + ifd.size() * 12 + 4;
+    for (Entry entry : ifd.values()) {
+      if (entry.value.length > 4) {
+        size += (entry.value.length + 1) & ~1;
+      }
+    }
+    return size;
+  }
+
+  // Writes the IFD at the segment's position, followed by the values that don't fit an entry.
+  private static void writeIfd(ByteBuffer segment, int tiffStart, TreeMap<Integer, Entry> ifd) {
+    int ifdStart = segment.position();
+    int dataOffset = ifdStart - tiffStart + 2 + ifd.size() * 12 + 4;
+    ByteBuffer values = segment.duplicate();
+    values.position(tiffStart + dataOffset);
+
+    segment.putShort((short) ifd.size());
+    for (Map.Entry<Integer, Entry> item : ifd.entrySet()) {
+      Entry entry = item.getValue();
+      segment.putShort((short) (int) item.getKey()).putShort(entry.type).putInt(entry.count);
+      if (entry.value.length <= 4) {
+        segment.put(entry.value);
+        for (int i = entry.value.length; i < 4; i++) {
+          segment.put((byte) 0);
+        }
+      } else {
+        segment.putInt(values.position() - tiffStart);
+        values.put(entry.value);
+        if ((entry.value.length & 1) == 1) {
+          values.put((byte) 0);
+        }
+      }
+    }
+    segment.putInt(0);
+    segment.position(values.position());
+  }
+
+  private static String string(Map<?, ?> metadata, String key) {
+    Object value = metadata.get(key);
+    if (value != null && !(value instanceof String)) {
+      throw new IllegalArgumentException(key + " must be a string.");
+    }
+    return (String) value;
+  }
+
+  private static Double number(Map<?, ?> metadata, String key, double min, double max) {
+    Object value = metadata.get(key);
+    if (value == null) {
+      return null;
+    }
+    if (!(value instanceof Number)
+        || ((Number) value).doubleValue() < min
+        || ((Number) value).doubleValue() > max) {
+      throw new IllegalArgumentException(key + " must be a number from " + min + " to " + max);
+    }
+    return ((Number) value).doubleValue();
+  }
+
+  private static long[] degreesMinutesSeconds(double degrees) {
+    long tenThousandthSeconds = Math.round(degrees * 3600 * 10000);
+    long seconds = tenThousandthSeconds / 10000;
+    return new long[] {
+      seconds / 3600, 1, seconds / 60 % 60, 1, tenThousandthSeconds % (60 * 10000), 10000
+    };
+  }
+
+  private static byte[] bigEndianInt(int value) {
+    return ByteBuffer.allocate(4).putInt(value).array();
+  }
+
+  private static void putAscii(TreeMap<Integer, Entry> ifd, int tag, String value) {
+    if (value == null) {
+      return;
+    }
+    byte[] bytes = (value + '\0').getBytes(StandardCharsets.US_ASCII);
+    ifd.put(tag, new Entry(TYPE_ASCII, bytes.length, bytes));
+  }
+
+  private static void putBytes(TreeMap<Integer, Entry> ifd, int tag, byte[] value) {
+    ifd.put(tag, new Entry(TYPE_BYTE, value.length, value));
+  }
+
+  private static void putUndefined(TreeMap<Integer, Entry> ifd, int tag, byte[] value) {
+    ifd.put(tag, new Entry(TYPE_UNDEFINED, value.length, value));
+  }
+
+  private static void putShort(TreeMap<Integer, Entry> ifd, int tag, int value) {
+    ifd.put(tag, new Entry(TYPE_SHORT, 1, ByteBuffer.allocate(2).putShort((short) value).array()));
+  }
+
+  private static void putLong(TreeMap<Integer, Entry> ifd, int tag, int value) {
+    ifd.put(tag, new Entry(TYPE_LONG, 1, bigEndianInt(value)));
+  }
+
+  // Takes numerator and denominator pairs.
+  private static void putRationals(TreeMap<Integer, Entry> ifd, int tag, long... values) {
+    ByteBuffer bytes = ByteBuffer.allocate(values.length * 4);
+    for (long value : values) {
+      bytes.putInt((int) value);
+    }
+    ifd.put(tag, new Entry(TYPE_RATIONAL, values.length / 2, bytes.array()));
+  }
+}
@@ -0,0 +1,117 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.EventChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Collects per-frame capture metadata into primitive columns and sends them as one event per
+ * batch, so high frame rates don't cost one platform message per frame.
+ *
+ * <p>A batch is sent once it holds {@code maxBatchSize} frames or its first frame is {@code
+ * maxLatencyNanos} old, checked as frames are added. Each event maps a column name to a typed
+ * array that the standard codec turns into a typed data list on the Dart side, plus a {@code
+ * count} entry.
+ *
+ * <p>Not thread safe: frames must be added on the thread that delivers the sink's events.
+ */
+final class FrameMetadataBatcher {
+  static final int DEFAULT_MAX_BATCH_SIZE = 60;
+  static final long DEFAULT_MAX_LATENCY_NANOS = 100_000_000L;
+
+  private final EventChannel.EventSink sink;
+  private final int maxBatchSize;
+  private final long maxLatencyNanos;
+  private final long[] timestamps;
+  private final long[] frameNumbers;
+  private final int[] afStates;
+  private final double[] focusDistances;
+  private final int[] aeStates;
+  private final long[] exposureTimes;
+  private final int[] sensitivities;
+  private int count;
+  private long batchStartNanos;
+
+  FrameMetadataBatcher(EventChannel.EventSink sink, int maxBatchSize, long maxLatencyNanos) {
+    this.sink = sink;
+    this.maxBatchSize = maxBatchSize;
+    this.maxLatencyNanos = maxLatencyNanos;
+    timestamps = new long[maxBatchSize];
+    frameNumbers = new long[maxBatchSize];
+    afStates = new int[maxBatchSize];
+    focusDistances = new double[maxBatchSize];
+    aeStates = new int[maxBatchSize];
+    exposureTimes = new long[maxBatchSize];
+    sensitivities = new int[maxBatchSize];
+  }
+
+  /**
+   * Creates a batcher configured by the arguments Dart passed when it started listening: {@code
+   * maxBatchSize} and {@code maxLatencyMs}, both optional.
+   */
+  static FrameMetadataBatcher fromListenArguments(EventChannel.EventSink sink, Object arguments) {
+    int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    long maxLatencyNanos = DEFAULT_MAX_LATENCY_NANOS;
+    if (arguments instanceof Map) {
+      Map<?, ?> map = (Map<?, ?>) arguments;
+      if (map.get("maxBatchSize") instanceof Integer) {
+        maxBatchSize = Math.max(1, (Integer) map.get("maxBatchSize"));
+      }
+      if (map.get("maxLatencyMs") instanceof Integer) {
+        maxLatencyNanos = Math.max(0, (Integer) map.get("maxLatencyMs")) * 1_000_000L;
+      }
+    }
+    return new FrameMetadataBatcher(sink, maxBatchSize, maxLatencyNanos);
+  }
+
+  /**
+   * Adds one frame. Values the device doesn't report are passed as -1, or NaN for the focus
+   * distance.
+   */
+  void add(
+      long timestampNanos,
+      long frameNumber,
+      int afState,
+      float focusDistanceDiopters,
+      int aeState,
+      long exposureTimeNanos,
+      int sensitivity) {
+    long now = System.nanoTime();
+    if (count == 0) {
+      batchStartNanos = now;
+    }
+    timestamps[count] = timestampNanos;
+    frameNumbers[count] = frameNumber;
+    afStates[count] = afState;
+    focusDistances[count] = focusDistanceDiopters;
+    aeStates[count] = aeState;
+    exposureTimes[count] = exposureTimeNanos;
+    sensitivities[count] = sensitivity;
+    count++;
+
+    if (count == maxBatchSize || now - batchStartNanos >= maxLatencyNanos) {
+      flush();
+    }
+  }
+
+  /** Sends the frames added since the last batch, if any. */
+  void flush() {
+    if (count == 0) {
+      return;
+    }
+    Map<String, Object> batch = new HashMap<>();
+    batch.put("count", count);
+    batch.put("timestamp", Arrays.copyOf(timestamps, count));
+    batch.put("frameNumber", Arrays.copyOf(frameNumbers, count));
+    batch.put("afState", Arrays.copyOf(afStates, count));
+    batch.put("focusDistance", Arrays.copyOf(focusDistances, count));
+    batch.put("aeState", Arrays.copyOf(aeStates, count));
+    batch.put("exposureTime", Arrays.copyOf(exposureTimes, count));
+    batch.put("sensitivity", Arrays.copyOf(sensitivities, count));
+    count = 0;
+    PipelineTracer.begin(PipelineTracer.Event.EVENT_SINK_SUCCESS);
+    sink.success(batch);
+    PipelineTracer.end(PipelineTracer.Event.EVENT_SINK_SUCCESS);
+  }
+}
@@ -0,0 +1,37 @@
+package io.flutter.plugins.camera;
+
+/**
+ * Passes frames at most at a given rate, judged by their timestamps. Frame timestamps jitter, so a
+ * frame slightly early for the rate is still passed.
+ */
+final class FrameRateLimiter {
+  private static final double RATE_TOLERANCE = 0.1;
+
+  private long minIntervalNanos;
+  private long lastTimestamp;
+  private boolean hasPassed;
+
+  /** @param maxFps the most frames per second to pass, or 0 to pass every frame. */
+  FrameRateLimiter(double maxFps) {
+    setMaxFps(maxFps);
+  }
+
+  void setMaxFps(double maxFps) {
+    minIntervalNanos = maxFps > 0 ? (long) ((1 - RATE_TOLERANCE) * 1e9 / maxFps) : 0;
+  }
+
+  /** Returns whether a frame taken at {@code timestampNanos} fits the rate, counting it if so. */
+  boolean accept(long timestampNanos) {
+    if (hasPassed && timestampNanos - lastTimestamp < minIntervalNanos) {
+      return false;
+    }
+    hasPassed = true;
+    lastTimestamp = timestampNanos;
+    return true;
+  }
+
+  /** Forgets the last frame passed, so the next one passes. */
+  void reset() {
+    hasPassed = false;
+  }
+}
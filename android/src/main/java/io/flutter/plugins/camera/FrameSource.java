@@ -0,0 +1,48 @@
+package io.flutter.plugins.camera;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A source of YUV frames, such as an {@code ImageReader} attached to the capture session or a
+ * recorded frame sequence replayed on a plain JVM.
+ *
+ * <p>Like an {@code ImageReader}, a source only keeps a few frames: frames that are not acquired
+ * before newer ones arrive are dropped.
+ */
+interface FrameSource {
+  /** A single frame. Its plane buffers are only valid until {@link #close()} is called. */
+  interface Frame extends AutoCloseable {
+    int getWidth();
+
+    int getHeight();
+
+    /** An {@code android.graphics.ImageFormat} constant. */
+    int getFormat();
+
+    /** Capture time in nanoseconds. */
+    long getTimestamp();
+
+    int getPlaneCount();
+
+    ByteBuffer getPlaneBuffer(int plane);
+
+    int getRowStride(int plane);
+
+    int getPixelStride(int plane);
+
+    @Override
+    void close();
+  }
+
+  interface Listener {
+    void onFrameAvailable(FrameSource source);
+  }
+
+  /** Returns the newest frame, dropping any older ones, or null if there is none. */
+  Frame acquireLatestFrame();
+
+  /** Sets the listener called when a new frame is available, or clears it if null. */
+  void setListener(Listener listener);
+
+  void close();
+}
@@ -0,0 +1,117 @@
+package io.flutter.plugins.camera;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Exposure and focus statistics of the Y plane, computed in a single pass over every {@code
+ * sampleStep}th pixel of every {@code sampleStep}th row.
+ *
+ * <p>Besides the 256-bin luma histogram and mean, it reports the ratio of samples clipped to
+ * black or white and the variance of the 4-neighbour Laplacian of the subsampled plane, a common
+ * sharpness measure that rises as edges get crisper. All arrays are reused across frames.
+ */
+final class FrameStatistics {
+  static final int DEFAULT_SAMPLE_STEP = 2;
+  // Sensor black level and highlight roll-off keep clipped pixels from being exactly 0 or 255.
+  private static final int CLIPPED_LOW = 2;
+  private static final int CLIPPED_HIGH = 253;
+
+  private final int sampleStep;
+  private final int[] histogram = new int[256];
+  private int[] previousRow = new int[0];
+  private int[] currentRow = new int[0];
+  private int[] nextRow = new int[0];
+  private byte[] rowBytes = new byte[0];
+
+  FrameStatistics(int sampleStep) {
+    this.sampleStep = Math.max(1, sampleStep);
+  }
+
+  /**
+   * Computes the statistics of {@code frame}. The histogram in the returned map is reused by the
+   * next call, so the map has to be sent before then.
+   */
+  Map<String, Object> compute(FrameSource.Frame frame) {
+    ByteBuffer yPlane = frame.getPlaneBuffer(0).duplicate();
+    int rowStride = frame.getRowStride(0);
+    int pixelStride = frame.getPixelStride(0);
+    int columns = (frame.getWidth() + sampleStep - 1) / sampleStep;
+    int rows = (frame.getHeight() + sampleStep - 1) / sampleStep;
+    if (currentRow.length != columns) {
+      previousRow = new int[columns];
+      currentRow = new int[columns];
+      nextRow = new int[columns];
+      rowBytes = new byte[(columns - 1) * sampleStep * pixelStride + 1];
+    }
+    for (int i = 0; i < histogram.length; i++) {
+      histogram[i] = 0;
+    }
+
+    long sum = 0;
+    int clippedLow = 0;
+    int clippedHigh = 0;
+    long laplacianSum = 0;
+    long laplacianSquaredSum = 0;
+    int laplacianCount = 0;
+
+    readRow(yPlane, 0, rowStride, pixelStride, currentRow);
+    for (int row = 0; row < rows; row++) {
+      boolean hasNext = row + 1 < rows;
+      if (hasNext) {
+        readRow(yPlane, (row + 1) * sampleStep, rowStride, pixelStride, nextRow);
+      }
+      for (int column = 0; column < columns; column++) {
+        int luma = currentRow[column];
+        histogram[luma]++;
+        sum += luma;
+        if (luma <= CLIPPED_LOW) {
+          clippedLow++;
+        } else if (luma >= CLIPPED_HIGH) {
+          clippedHigh++;
+        }
+        if (row > 0 && hasNext && column > 0 && column < columns - 1) {
+          int laplacian =
+              4 * luma
+                  - currentRow[column - 1]
+                  - currentRow[column + 1]
+                  - previousRow[column]
+                  - nextRow[column];
+          laplacianSum += laplacian;
+          laplacianSquaredSum += laplacian * laplacian;
+          laplacianCount++;
+        }
+      }
+      int[] recycled = previousRow;
+      previousRow = currentRow;
+      currentRow = nextRow;
+      nextRow = recycled;
+    }
+
+    int sampleCount = rows * columns;
+    double sharpness = 0;
+    if (laplacianCount > 0) {
+      double mean = (double) laplacianSum / laplacianCount;
+      sharpness = (double) laplacianSquaredSum / laplacianCount - mean * mean;
+    }
+
+    Map<String, Object> statistics = new HashMap<>();
+    statistics.put("histogram", histogram);
+    statistics.put("sampleCount", sampleCount);
+    statistics.put("mean", (double) sum / sampleCount);
+    statistics.put("clippedLowRatio", (double) clippedLow / sampleCount);
+    statistics.put("clippedHighRatio", (double) clippedHigh / sampleCount);
+    statistics.put("sharpness", sharpness);
+    return statistics;
+  }
+
+  private void readRow(ByteBuffer yPlane, int y, int rowStride, int pixelStride, int[] row) {
+    yPlane.position(y * rowStride);
+    yPlane.get(rowBytes, 0, Math.min(rowBytes.length, yPlane.remaining()));
+    int step = sampleStep * pixelStride;
+    for (int column = 0; column < row.length; column++) {
+      row[column] = rowBytes[column * step] & 0xff;
+    }
+  }
+}
@@ -0,0 +1,43 @@
+package io.flutter.plugins.camera;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Maps the handles Dart assigns to its objects to the native objects behind them.
+ *
+ * <p>Handles are registered as soon as Dart creates an object, before the object has finished
+ * setting up on its own thread, so lookups and removals may happen on any thread.
+ */
+final class HandleRegistry {
+  /** Thrown when a handle isn't registered or refers to an object of another type. */
+  static final class UnknownHandleException extends Exception {
+    UnknownHandleException(int handle, Class<?> type) {
+      super(String.format("No %s is registered for handle %d.", type.getSimpleName(), handle));
+    }
+  }
+
+  private final ConcurrentMap<Integer, Object> objects = new ConcurrentHashMap<>();
+
+  /** @throws IllegalStateException if {@code handle} is already registered. */
+  void register(int handle, Object object) {
+    if (objects.putIfAbsent(handle, object) != null) {
+      throw new IllegalStateException("Handle " + handle + " is already registered.");
+    }
+  }
+
+  <T> T get(int handle, Class<T> type) throws UnknownHandleException {
+    Object object = objects.get(handle);
+    if (!type.isInstance(object)) {
+      throw new UnknownHandleException(handle, type);
+    }
+    return type.cast(object);
+  }
+
+  /** Unregisters {@code handle} and returns its object. */
+  <T> T remove(int handle, Class<T> type) throws UnknownHandleException {
+    T object = get(handle, type);
+    objects.remove(handle, object);
+    return object;
+  }
+}
@@ -0,0 +1,109 @@
+package io.flutter.plugins.camera;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/** Copies and writes image plane buffers without depending on the Android framework. */
+final class ImageBuffers {
+  private ImageBuffers() {}
+
+  /** Copies the remaining bytes of a plane, advancing its position to the limit. */
+  static byte[] copyPlane(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes, 0, bytes.length);
+    return bytes;
+  }
+
+  /**
+   * Packs the planes of a YUV_420_888 image into {@code out} as NV21 (the Y plane followed by
+   * interleaved V and U samples), honoring arbitrary row and pixel strides.
+   *
+   * <p>{@code out} must hold at least {@code width * height * 3 / 2} bytes.
+   */
+  static void packNv21(
+      ByteBuffer yPlane,
+      int yRowStride,
+      ByteBuffer uPlane,
+      ByteBuffer vPlane,
+      int uvRowStride,
+      int uvPixelStride,
+      int width,
+      int height,
+      byte[] out) {
+    int offset = 0;
+    ByteBuffer y = yPlane.duplicate();
+    if (yRowStride == width) {
+      y.position(0);
+      y.get(out, 0, width * height);
+      offset = width * height;
+    } else {
+      for (int row = 0; row < height; row++) {
+        y.position(row * yRowStride);
+        y.get(out, offset, width);
+        offset += width;
+      }
+    }
+
+    int chromaWidth = width / 2;
+    int chromaHeight = height / 2;
+    for (int row = 0; row < chromaHeight; row++) {
+      int rowStart = row * uvRowStride;
+      for (int col = 0; col < chromaWidth; col++) {
+        int index = rowStart + col * uvPixelStride;
+        out[offset++] = vPlane.get(index);
+        out[offset++] = uPlane.get(index);
+      }
+    }
+  }
+
+  /**
+   * Like {@link #packNv21}, but keeps only every {@code step}th pixel of every {@code step}th row,
+   * producing an even sized image of {@link #downsampledSize}{@code (width, step)} by {@link
+   * #downsampledSize}{@code (height, step)}.
+   */
+  static void packNv21Downsampled(
+      ByteBuffer yPlane,
+      int yRowStride,
+      ByteBuffer uPlane,
+      ByteBuffer vPlane,
+      int uvRowStride,
+      int uvPixelStride,
+      int width,
+      int height,
+      int step,
+      byte[] out) {
+    int outWidth = downsampledSize(width, step);
+    int outHeight = downsampledSize(height, step);
+    int offset = 0;
+    for (int row = 0; row < outHeight; row++) {
+      int rowStart = row * step * yRowStride;
+      for (int col = 0; col < outWidth; col++) {
+        out[offset++] = yPlane.get(rowStart + col * step);
+      }
+    }
+
+    for (int row = 0; row < outHeight / 2; row++) {
+      int rowStart = row * step * uvRowStride;
+      for (int col = 0; col < outWidth / 2; col++) {
+        int index = rowStart + col * step * uvPixelStride;
+        out[offset++] = vPlane.get(index);
+        out[offset++] = uPlane.get(index);
+      }
+    }
+  }
+
+  /** The even output dimension of {@link #packNv21Downsampled} for an input dimension. */
+  static int downsampledSize(int size, int step) {
+    return (size / step) & ~1;
+  }
+
+  static void writeToFile(ByteBuffer buffer, File file) throws IOException {
+    try (FileOutputStream outputStream = new FileOutputStream(file)) {
+      while (0 < buffer.remaining()) {
+        outputStream.getChannel().write(buffer);
+      }
+    }
+  }
+}
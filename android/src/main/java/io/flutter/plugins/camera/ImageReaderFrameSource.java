@@ -0,0 +1,101 @@
+package io.flutter.plugins.camera;
+
+import android.media.Image;
+import android.media.ImageReader;
+import android.view.Surface;
+import java.nio.ByteBuffer;
+
+/** A {@link FrameSource} backed by an {@link ImageReader} that is an output of the session. */
+final class ImageReaderFrameSource implements FrameSource {
+  private final ImageReader imageReader;
+
+  ImageReaderFrameSource(int width, int height, int format, int maxImages) {
+    imageReader = ImageReader.newInstance(width, height, format, maxImages);
+  }
+
+  Surface getSurface() {
+    return imageReader.getSurface();
+  }
+
+  @Override
+  public Frame acquireLatestFrame() {
+    Image image = imageReader.acquireLatestImage();
+    return image == null ? null : new ImageFrame(image);
+  }
+
+  /** Returns the oldest frame, or null if there is none, for outputs that need every frame. */
+  Frame acquireNextFrame() {
+    Image image = imageReader.acquireNextImage();
+    return image == null ? null : new ImageFrame(image);
+  }
+
+  @Override
+  public void setListener(final Listener listener) {
+    if (listener == null) {
+      imageReader.setOnImageAvailableListener(null, null);
+    } else {
+      imageReader.setOnImageAvailableListener(
+          reader -> listener.onFrameAvailable(ImageReaderFrameSource.this), null);
+    }
+  }
+
+  @Override
+  public void close() {
+    imageReader.close();
+  }
+
+  private static final class ImageFrame implements Frame {
+    private final Image image;
+    private final Image.Plane[] planes;
+
+    ImageFrame(Image image) {
+      this.image = image;
+      this.planes = image.getPlanes();
+    }
+
+    @Override
+    public int getWidth() {
+      return image.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+      return image.getHeight();
+    }
+
+    @Override
+    public int getFormat() {
+      return image.getFormat();
+    }
+
+    @Override
+    public long getTimestamp() {
+      return image.getTimestamp();
+    }
+
+    @Override
+    public int getPlaneCount() {
+      return planes.length;
+    }
+
+    @Override
+    public ByteBuffer getPlaneBuffer(int plane) {
+      return planes[plane].getBuffer();
+    }
+
+    @Override
+    public int getRowStride(int plane) {
+      return planes[plane].getRowStride();
+    }
+
+    @Override
+    public int getPixelStride(int plane) {
+      return planes[plane].getPixelStride();
+    }
+
+    @Override
+    public void close() {
+      image.close();
+    }
+  }
+}
@@ -0,0 +1,192 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.EventChannel;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * The image stream of a camera: its output, the session that fills it, and the frames sent to
+ * Dart, paced by adaptive quality.
+ *
+ * <p>It only talks to the camera through a {@link CaptureDevice}, so {@link Camera} runs it on
+ * Camera2 and the replay harness runs the same code on recorded frames.
+ */
+final class ImageStream implements FrameSource.Listener {
+  private static final String READER = "imageStream";
+
+  /** Sees every frame of the output before it is published, whether streaming or not. */
+  interface FrameTap {
+    void onFrame(FrameSource.Frame frame);
+  }
+
+  /** Told how a session created by {@link #createSession} turned out. */
+  interface SessionListener {
+    /** The session is configured and repeating into the output. */
+    void onStreaming(CaptureDevice.Session session);
+
+    void onFailed(String message);
+  }
+
+  private final CaptureDevice device;
+  private final CameraMemoryBudget memoryBudget;
+  private final BinaryFrameSender binaryFrameSender;
+  private final Executor mainExecutor;
+  private final PipelineMetrics metrics;
+  private final FrameTap tap;
+  private FrameSource output;
+  private EventChannel.EventSink sink;
+  private ImageStreamOptions options = ImageStreamOptions.DEFAULT;
+  private volatile ImageStreamPublisher publisher;
+  private volatile boolean streaming;
+  private volatile AdaptiveQualityController qualityController;
+
+  /**
+   * @param mainExecutor runs sends of converted frames on the thread frames arrive on.
+   * @param tap sees frames before they are published, or null.
+   */
+  ImageStream(
+      CaptureDevice device,
+      CameraMemoryBudget memoryBudget,
+      BinaryFrameSender binaryFrameSender,
+      Executor mainExecutor,
+      PipelineMetrics metrics,
+      FrameTap tap) {
+    this.device = device;
+    this.memoryBudget = memoryBudget;
+    this.binaryFrameSender = binaryFrameSender;
+    this.mainExecutor = mainExecutor;
+    this.metrics = metrics;
+    this.tap = tap;
+  }
+
+  /**
+   * Creates the output if there is none. A third buffer lets the camera fill one while a frame is
+   * processed and another waits.
+   */
+  void allocateOutput(int width, int height) throws CameraMemoryBudget.ExceededException {
+    if (output != null) {
+      return;
+    }
+    int maxImages =
+        memoryBudget.reserve(READER, width, height, CameraMemoryBudget.FORMAT_YUV_420_888, 3, 2);
+    output = device.createOutput(width, height, CameraMemoryBudget.FORMAT_YUV_420_888, maxImages);
+    output.setListener(this);
+  }
+
+  /** Returns the output, or null if it isn't allocated. */
+  FrameSource getOutput() {
+    return output;
+  }
+
+  void closeOutput() {
+    if (output != null) {
+      output.close();
+      output = null;
+    }
+  }
+
+  /**
+   * Configures a session with the output and starts its repeating request, telling {@code
+   * listener} how it went, even if the device fails right away. {@code tracker} covers the
+   * configuration.
+   */
+  void createSession(SessionTracker tracker, final SessionListener listener) {
+    final List<FrameSource> outputs = Collections.singletonList(output);
+    tracker.begin();
+    try {
+      device.createSession(
+          outputs,
+          new CaptureDevice.SessionCallback() {
+            @Override
+            public void onConfigured(CaptureDevice.Session session) {
+              tracker.end(true);
+              try {
+                session.setRepeating(outputs);
+              } catch (Exception e) {
+                listener.onFailed(e.getMessage());
+                return;
+              }
+              listener.onStreaming(session);
+            }
+
+            @Override
+            public void onConfigureFailed() {
+              tracker.end(false);
+              listener.onFailed("Failed to configure the camera for streaming images.");
+            }
+          });
+    } catch (Exception e) {
+      tracker.end(false);
+      listener.onFailed(e.getMessage());
+    }
+  }
+
+  /** Sets the sink streamed frames are sent to, or clears it if null. */
+  void setSink(EventChannel.EventSink sink) {
+    this.sink = sink;
+    publisher =
+        sink == null
+            ? null
+            : new ImageStreamPublisher(sink, binaryFrameSender, mainExecutor, metrics, options);
+  }
+
+  /** Starts sending the output's frames as {@code options} sets up. */
+  void start(ImageStreamOptions options) {
+    this.options = options;
+    // A new publisher, so the stream starts with a fresh motion background.
+    setSink(sink);
+    binaryFrameSender.resetSequence();
+    streaming = true;
+  }
+
+  /** Stops sending frames, returning whether they were being sent. */
+  boolean stop() {
+    if (!streaming) {
+      return false;
+    }
+    streaming = false;
+    return true;
+  }
+
+  boolean isStreaming() {
+    return streaming;
+  }
+
+  /** Paces the stream with {@code controller}, or sends every frame if it is null. */
+  void setQualityController(AdaptiveQualityController controller) {
+    qualityController = controller;
+  }
+
+  // Only outputs targeted by the current session produce frames.
+  @Override
+  public void onFrameAvailable(FrameSource source) {
+    PipelineTracer.begin(PipelineTracer.Event.IMAGE_ACQUIRE);
+    FrameSource.Frame frame = source.acquireLatestFrame();
+    PipelineTracer.end(PipelineTracer.Event.IMAGE_ACQUIRE);
+    if (frame == null) return;
+
+    try {
+      if (tap != null) {
+        tap.onFrame(frame);
+      }
+      ImageStreamPublisher publisher = this.publisher;
+      if (!streaming || publisher == null) {
+        return;
+      }
+      AdaptiveQualityController controller = qualityController;
+      if (controller == null) {
+        publisher.publish(frame);
+        return;
+      }
+      if (!controller.acceptFrame(frame.getTimestamp())) {
+        return;
+      }
+      long publishStartNanos = System.nanoTime();
+      publisher.publish(frame);
+      controller.onFrameProcessed(frame.getTimestamp(), System.nanoTime() - publishStartNanos);
+    } finally {
+      frame.close();
+    }
+  }
+}
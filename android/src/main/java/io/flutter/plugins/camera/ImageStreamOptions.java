@@ -0,0 +1,70 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.MethodCall;
+import java.util.Map;
+
+/** What startImageStream asked for: how frames are processed before they are sent. */
+final class ImageStreamOptions {
+  static final ImageStreamOptions DEFAULT = new ImageStreamOptions(null, null, null, null, false);
+
+  /** The frame rate limit while recording, or null to keep the current one. */
+  final Integer maxFpsWhileRecording;
+  /** The RGB format frames are converted to, or null to send the YUV planes. */
+  final YuvToRgbConverter.OutputFormat outputFormat;
+  /** Only forward frames while there is motion, or null to forward every frame. */
+  final MotionDetector.Settings motionGate;
+  /** Send only {@link FrameStatistics} sampled at this step instead of frames, if not null. */
+  final Integer statisticsSampleStep;
+  /** Send frames through {@link BinaryFrameSender} instead of the event channel. */
+  final boolean binaryTransport;
+
+  ImageStreamOptions(
+      Integer maxFpsWhileRecording,
+      YuvToRgbConverter.OutputFormat outputFormat,
+      MotionDetector.Settings motionGate,
+      Integer statisticsSampleStep,
+      boolean binaryTransport) {
+    this.maxFpsWhileRecording = maxFpsWhileRecording;
+    this.outputFormat = outputFormat;
+    this.motionGate = motionGate;
+    this.statisticsSampleStep = statisticsSampleStep;
+    this.binaryTransport = binaryTransport;
+  }
+
+  /** @throws IllegalArgumentException if an option has an unsupported value. */
+  static ImageStreamOptions fromMethodCall(MethodCall call) {
+    YuvToRgbConverter.OutputFormat outputFormat;
+    String format = call.argument("outputFormat");
+    if (format == null || format.equals("yuv420")) {
+      outputFormat = null;
+    } else if (format.equals("rgba8888")) {
+      outputFormat = YuvToRgbConverter.OutputFormat.RGBA_8888;
+    } else if (format.equals("rgb565")) {
+      outputFormat = YuvToRgbConverter.OutputFormat.RGB_565;
+    } else {
+      throw new IllegalArgumentException("Unsupported output format " + format);
+    }
+
+    String transport = call.argument("transport");
+    if (transport != null && !transport.equals("binary") && !transport.equals("eventChannel")) {
+      throw new IllegalArgumentException("Unsupported transport " + transport);
+    }
+
+    Map<?, ?> motionGate = call.argument("motionGate");
+    Map<?, ?> statistics = call.argument("statistics");
+    Integer statisticsSampleStep = null;
+    if (statistics != null) {
+      Object sampleStep = statistics.get("sampleStep");
+      statisticsSampleStep =
+          sampleStep instanceof Integer
+              ? (Integer) sampleStep
+              : FrameStatistics.DEFAULT_SAMPLE_STEP;
+    }
+    return new ImageStreamOptions(
+        call.argument("maxFpsWhileRecording"),
+        outputFormat,
+        motionGate == null ? null : MotionDetector.Settings.fromMap(motionGate),
+        statisticsSampleStep,
+        "binary".equals(transport));
+  }
+}
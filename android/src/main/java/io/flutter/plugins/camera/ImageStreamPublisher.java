@@ -0,0 +1,240 @@
+package io.flutter.plugins.camera;
+
+import io.flutter.plugin.common.EventChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Copies frames of a {@link FrameSource} into platform messages for the image stream, as set up
+ * by the stream's {@link ImageStreamOptions}.
+ *
+ * <p>Frames are converted to RGB first if an output format was requested. The conversion runs on
+ * the converter's pool, and the converted frame is sent from {@code mainExecutor}; frames that
+ * arrive while one is converting are skipped, except for their motion entry. With a motion gate,
+ * frames are only sent while there is motion, plus the first one after it ends, each carrying a
+ * {@code motion} entry; in events only mode that entry is sent without the frame. In statistics
+ * mode only the {@link FrameStatistics} of each frame are sent.
+ *
+ * <p>With the binary transport, frames go through a {@link BinaryFrameSender} and the event
+ * channel only carries the motion entry, as an event of its own sent just before its frame.
+ */
+final class ImageStreamPublisher implements FrameSource.Listener {
+  private final EventChannel.EventSink imageStreamSink;
+  private final PipelineMetrics metrics;
+  private final YuvToRgbConverter converter;
+  private final MotionDetector motionDetector;
+  private final FrameStatistics statistics;
+  private final BinaryFrameSender binaryFrames;
+  private final Executor mainExecutor;
+
+  /**
+   * @param binaryFrames the sender for the binary transport, or null if it isn't available.
+   * @param mainExecutor runs sends of converted frames on the thread frames arrive on.
+   */
+  ImageStreamPublisher(
+      EventChannel.EventSink imageStreamSink,
+      BinaryFrameSender binaryFrames,
+      Executor mainExecutor,
+      PipelineMetrics metrics,
+      ImageStreamOptions options) {
+    this.imageStreamSink = imageStreamSink;
+    this.mainExecutor = mainExecutor;
+    this.binaryFrames = options.binaryTransport ? binaryFrames : null;
+    this.metrics = metrics;
+    this.converter =
+        options.outputFormat == null ? null : new YuvToRgbConverter(options.outputFormat);
+    this.motionDetector =
+        options.motionGate == null ? null : new MotionDetector(options.motionGate);
+    this.statistics =
+        options.statisticsSampleStep == null
+            ? null
+            : new FrameStatistics(options.statisticsSampleStep);
+  }
+
+  @Override
+  public void onFrameAvailable(FrameSource source) {
+    PipelineTracer.begin(PipelineTracer.Event.IMAGE_ACQUIRE);
+    FrameSource.Frame frame = source.acquireLatestFrame();
+    PipelineTracer.end(PipelineTracer.Event.IMAGE_ACQUIRE);
+    if (frame == null) return;
+
+    try {
+      publish(frame);
+    } finally {
+      frame.close();
+    }
+  }
+
+  /** Sends {@code frame}, which stays open for the caller to close. */
+  void publish(FrameSource.Frame frame) {
+    if (statistics != null) {
+      Map<String, Object> statisticsEvent = createImageBuffer(frame, frame.getFormat(), null, null);
+      statisticsEvent.put("statistics", statistics.compute(frame));
+      send(statisticsEvent);
+      return;
+    }
+
+    Map<String, Object> motion = null;
+    if (motionDetector != null) {
+      boolean wasInMotion = motionDetector.isInMotion();
+      if (!motionDetector.analyze(frame) && !wasInMotion) {
+        return;
+      }
+      motion = createMotion();
+      if (motionDetector.getSettings().eventsOnly) {
+        send(createImageBuffer(frame, frame.getFormat(), null, motion));
+        return;
+      }
+    }
+
+    if (binaryFrames != null) {
+      if (motion != null) {
+        send(createImageBuffer(frame, frame.getFormat(), null, motion));
+      }
+      publishBinary(frame);
+    } else if (converter == null) {
+      publishPlanes(frame, motion);
+    } else {
+      publishRgb(frame, motion);
+    }
+  }
+
+  private Map<String, Object> createMotion() {
+    Map<String, Object> motion = new HashMap<>();
+    motion.put("active", motionDetector.isInMotion());
+    motion.put("changedRatio", motionDetector.getChangedRatio());
+    motion.put("boxes", motionDetector.copyBoxes());
+    return motion;
+  }
+
+  private void publishPlanes(FrameSource.Frame frame, Map<String, Object> motion) {
+    long copyStartNanos = System.nanoTime();
+    PipelineTracer.begin(PipelineTracer.Event.PLANE_COPY);
+    List<Map<String, Object>> planes = new ArrayList<>();
+    for (int i = 0; i < frame.getPlaneCount(); i++) {
+      byte[] bytes = ImageBuffers.copyPlane(frame.getPlaneBuffer(i));
+
+      Map<String, Object> planeBuffer = new HashMap<>();
+      planeBuffer.put("bytesPerRow", frame.getRowStride(i));
+      planeBuffer.put("bytesPerPixel", frame.getPixelStride(i));
+      planeBuffer.put("bytes", bytes);
+
+      planes.add(planeBuffer);
+    }
+
+    Map<String, Object> imageBuffer =
+        createImageBuffer(frame, frame.getFormat(), planes, motion);
+    PipelineTracer.end(PipelineTracer.Event.PLANE_COPY);
+    metrics.recordSince(PipelineMetrics.Stage.STREAM_FRAME_COPY, copyStartNanos);
+
+    send(imageBuffer);
+  }
+
+  private void publishRgb(FrameSource.Frame frame, Map<String, Object> motion) {
+    final YuvToRgbConverter.OutputFormat outputFormat = converter.getOutputFormat();
+    final Map<String, Object> imageBuffer =
+        createImageBuffer(frame, outputFormat.androidFormat, null, motion);
+    final int bytesPerRow = frame.getWidth() * outputFormat.bytesPerPixel;
+    final long convertStartNanos = System.nanoTime();
+    boolean converting =
+        converter.convertAsync(
+            frame,
+            (bytes, conversionNanos) -> {
+              metrics.recordSince(PipelineMetrics.Stage.STREAM_FRAME_CONVERT, convertStartNanos);
+              mainExecutor.execute(
+                  () -> {
+                    Map<String, Object> planeBuffer = new HashMap<>();
+                    planeBuffer.put("bytesPerRow", bytesPerRow);
+                    planeBuffer.put("bytesPerPixel", outputFormat.bytesPerPixel);
+                    planeBuffer.put("bytes", bytes);
+                    imageBuffer.put("planes", Collections.singletonList(planeBuffer));
+                    imageBuffer.put("conversionMicros", conversionNanos / 1000);
+
+                    // The message is encoded by the time success returns, so the array can be
+                    // reused.
+                    send(imageBuffer);
+                    converter.release(bytes);
+                  });
+            });
+    if (!converting && motion != null) {
+      // Without planes, the event only carries the motion entry.
+      send(imageBuffer);
+    }
+  }
+
+  private void publishBinary(FrameSource.Frame frame) {
+    if (converter != null) {
+      publishBinaryRgb(frame);
+      return;
+    }
+    long copyStartNanos = System.nanoTime();
+    PipelineTracer.begin(PipelineTracer.Event.PLANE_COPY);
+    binaryFrames.writePlanes(frame);
+    PipelineTracer.end(PipelineTracer.Event.PLANE_COPY);
+    metrics.recordSince(PipelineMetrics.Stage.STREAM_FRAME_COPY, copyStartNanos);
+    sendBinary();
+  }
+
+  private void publishBinaryRgb(FrameSource.Frame frame) {
+    final long timestamp = frame.getTimestamp();
+    final int width = frame.getWidth();
+    final int height = frame.getHeight();
+    final long convertStartNanos = System.nanoTime();
+    converter.convertAsync(
+        frame,
+        (bytes, conversionNanos) -> {
+          metrics.recordSince(PipelineMetrics.Stage.STREAM_FRAME_CONVERT, convertStartNanos);
+          mainExecutor.execute(
+              () -> {
+                binaryFrames.writeRgb(
+                    timestamp,
+                    width,
+                    height,
+                    converter.getOutputFormat(),
+                    bytes,
+                    conversionNanos / 1000);
+                converter.release(bytes);
+                sendBinary();
+              });
+        });
+  }
+
+  private void sendBinary() {
+    long sendStartNanos = System.nanoTime();
+    PipelineTracer.begin(PipelineTracer.Event.EVENT_SINK_SUCCESS);
+    binaryFrames.send();
+    PipelineTracer.end(PipelineTracer.Event.EVENT_SINK_SUCCESS);
+    metrics.recordSince(PipelineMetrics.Stage.STREAM_FRAME_SEND, sendStartNanos);
+  }
+
+  private static Map<String, Object> createImageBuffer(
+      FrameSource.Frame frame,
+      int format,
+      List<Map<String, Object>> planes,
+      Map<String, Object> motion) {
+    Map<String, Object> imageBuffer = new HashMap<>();
+    imageBuffer.put("width", frame.getWidth());
+    imageBuffer.put("height", frame.getHeight());
+    imageBuffer.put("format", format);
+    imageBuffer.put("timestamp", frame.getTimestamp());
+    if (planes != null) {
+      imageBuffer.put("planes", planes);
+    }
+    if (motion != null) {
+      imageBuffer.put("motion", motion);
+    }
+    return imageBuffer;
+  }
+
+  private void send(Map<String, Object> imageBuffer) {
+    long sendStartNanos = System.nanoTime();
+    PipelineTracer.begin(PipelineTracer.Event.EVENT_SINK_SUCCESS);
+    imageStreamSink.success(imageBuffer);
+    PipelineTracer.end(PipelineTracer.Event.EVENT_SINK_SUCCESS);
+    metrics.recordSince(PipelineMetrics.Stage.STREAM_FRAME_SEND, sendStartNanos);
+  }
+}
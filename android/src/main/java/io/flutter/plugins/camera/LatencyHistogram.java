@@ -0,0 +1,101 @@
+package io.flutter.plugins.camera;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with fixed log-linear buckets.
+ *
+ * <p>Values are recorded in microseconds. Every power of two is split into four linear buckets,
+ * so reported percentiles are within 25% of the recorded value. Recording never allocates and
+ * can be done from any thread.
+ */
+final class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 2;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  // Anything slower than ~71 minutes goes into the last bucket.
+  private static final long MAX_TRACKABLE_MICROS = (1L << 32) - 1;
+  private static final int BUCKET_COUNT = bucketIndex(MAX_TRACKABLE_MICROS) + 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  void recordNanos(long nanos) {
+    recordMicros(nanos / 1000);
+  }
+
+  void recordMicros(long micros) {
+    if (micros < 0) {
+      micros = 0;
+    }
+    counts.incrementAndGet(bucketIndex(Math.min(micros, MAX_TRACKABLE_MICROS)));
+    totalMicros.addAndGet(micros);
+    long max = maxMicros.get();
+    while (micros > max && !maxMicros.compareAndSet(max, micros)) {
+      max = maxMicros.get();
+    }
+  }
+
+  void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      counts.set(i, 0);
+    }
+    totalMicros.set(0);
+    maxMicros.set(0);
+  }
+
+  /** Returns the count, mean, max and the 50th, 90th and 99th percentiles in microseconds. */
+  Map<String, Object> toMap() {
+    long[] snapshot = new long[BUCKET_COUNT];
+    long count = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      snapshot[i] = counts.get(i);
+      count += snapshot[i];
+    }
+
+    Map<String, Object> map = new HashMap<>();
+    map.put("count", count);
+    map.put("meanMicros", count == 0 ? 0.0 : (double) totalMicros.get() / count);
+    map.put("p50Micros", percentile(snapshot, count, 0.50));
+    map.put("p90Micros", percentile(snapshot, count, 0.90));
+    map.put("p99Micros", percentile(snapshot, count, 0.99));
+    map.put("maxMicros", maxMicros.get());
+    return map;
+  }
+
+  private static long percentile(long[] snapshot, long count, double percentile) {
+    if (count == 0) {
+      return 0;
+    }
+    long target = Math.max(1, (long) Math.ceil(percentile * count));
+    long seen = 0;
+    for (int i = 0; i < snapshot.length; i++) {
+      seen += snapshot[i];
+      if (seen >= target) {
+        return bucketUpperBound(i);
+      }
+    }
+    return bucketUpperBound(snapshot.length - 1);
+  }
+
+  static int bucketIndex(long micros) {
+    if (micros < SUB_BUCKETS) {
+      return (int) micros;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    int subBucket = (int) ((micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long bucketUpperBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = index / SUB_BUCKETS - 1;
+    long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+    return lower + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,559 @@
+package io.flutter.plugins.camera;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Finds and decodes EAN-13, UPC-A, EAN-8 and Code 128 barcodes in a binarized image.
+ *
+ * <p>Evenly spaced rows and columns are turned into runs of dark and light pixels and read in both
+ * directions, so barcodes are found upright, upside down or turned a quarter either way. A run
+ * matches a bar or space of a pattern when its share of the pattern's width is close to the
+ * pattern's, which tolerates blur and scale. A barcode is reported once two lines agree on it,
+ * since a single line can occasionally pass the checksum with a misread digit.
+ */
+final class LinearBarcodeReader {
+  // Rows and columns read across each dimension of the image.
+  private static final int LINES = 32;
+  private static final int MIN_LINES = 2;
+
+  // The widths of the runs of each EAN digit on the left, starting with a space, in modules. The
+  // right half uses the same widths starting with a bar, and the even parity left digits the
+  // reversed widths.
+  private static final int[][] EAN_DIGITS = {
+    {3, 2, 1, 1},
+    {2, 2, 2, 1},
+    {2, 1, 2, 2},
+    {1, 4, 1, 1},
+    {1, 1, 3, 2},
+    {1, 2, 3, 1},
+    {1, 1, 1, 4},
+    {1, 3, 1, 2},
+    {1, 2, 1, 3},
+    {3, 1, 1, 2}
+  };
+  // The parities of the six left digits of an EAN-13, a bit set for even, give its first digit.
+  private static final int[] EAN_FIRST_DIGIT_PARITIES = {
+    0x00, 0x0b, 0x0d, 0x0e, 0x13, 0x19, 0x1c, 0x15, 0x16, 0x1a
+  };
+  private static final int[] EAN_GUARD = {1, 1, 1};
+  private static final int[] EAN_MIDDLE_GUARD = {1, 1, 1, 1, 1};
+  private static final float EAN_MAX_AVERAGE_VARIANCE = 0.48f;
+  private static final float EAN_MAX_VARIANCE = 0.7f;
+
+  // The widths of the six runs of each Code 128 symbol, starting with a bar. The stop symbol,
+  // 106, has a seventh run, a bar two modules wide.
+  private static final int[][] CODE_128_PATTERNS = {
+    {2, 1, 2, 2, 2, 2}, {2, 2, 2, 1, 2, 2}, {2, 2, 2, 2, 2, 1}, {1, 2, 1, 2, 2, 3},
+    {1, 2, 1, 3, 2, 2}, {1, 3, 1, 2, 2, 2}, {1, 2, 2, 2, 1, 3}, {1, 2, 2, 3, 1, 2},
+    {1, 3, 2, 2, 1, 2}, {2, 2, 1, 2, 1, 3}, {2, 2, 1, 3, 1, 2}, {2, 3, 1, 2, 1, 2},
+    {1, 1, 2, 2, 3, 2}, {1, 2, 2, 1, 3, 2}, {1, 2, 2, 2, 3, 1}, {1, 1, 3, 2, 2, 2},
+    {1, 2, 3, 1, 2, 2}, {1, 2, 3, 2, 2, 1}, {2, 2, 3, 2, 1, 1}, {2, 2, 1, 1, 3, 2},
+    {2, 2, 1, 2, 3, 1}, {2, 1, 3, 2, 1, 2}, {2, 2, 3, 1, 1, 2}, {3, 1, 2, 1, 3, 1},
+    {3, 1, 1, 2, 2, 2}, {3, 2, 1, 1, 2, 2}, {3, 2, 1, 2, 2, 1}, {3, 1, 2, 2, 1, 2},
+    {3, 2, 2, 1, 1, 2}, {3, 2, 2, 2, 1, 1}, {2, 1, 2, 1, 2, 3}, {2, 1, 2, 3, 2, 1},
+    {2, 3, 2, 1, 2, 1}, {1, 1, 1, 3, 2, 3}, {1, 3, 1, 1, 2, 3}, {1, 3, 1, 3, 2, 1},
+    {1, 1, 2, 3, 1, 3}, {1, 3, 2, 1, 1, 3}, {1, 3, 2, 3, 1, 1}, {2, 1, 1, 3, 1, 3},
+    {2, 3, 1, 1, 1, 3}, {2, 3, 1, 3, 1, 1}, {1, 1, 2, 1, 3, 3}, {1, 1, 2, 3, 3, 1},
+    {1, 3, 2, 1, 3, 1}, {1, 1, 3, 1, 2, 3}, {1, 1, 3, 3, 2, 1}, {1, 3, 3, 1, 2, 1},
+    {3, 1, 3, 1, 2, 1}, {2, 1, 1, 3, 3, 1}, {2, 3, 1, 1, 3, 1}, {2, 1, 3, 1, 1, 3},
+    {2, 1, 3, 3, 1, 1}, {2, 1, 3, 1, 3, 1}, {3, 1, 1, 1, 2, 3}, {3, 1, 1, 3, 2, 1},
+    {3, 3, 1, 1, 2, 1}, {3, 1, 2, 1, 1, 3}, {3, 1, 2, 3, 1, 1}, {3, 3, 2, 1, 1, 1},
+    {3, 1, 4, 1, 1, 1}, {2, 2, 1, 4, 1, 1}, {4, 3, 1, 1, 1, 1}, {1, 1, 1, 2, 2, 4},
+    {1, 1, 1, 4, 2, 2}, {1, 2, 1, 1, 2, 4}, {1, 2, 1, 4, 2, 1}, {1, 4, 1, 1, 2, 2},
+    {1, 4, 1, 2, 2, 1}, {1, 1, 2, 2, 1, 4}, {1, 1, 2, 4, 1, 2}, {1, 2, 2, 1, 1, 4},
+    {1, 2, 2, 4, 1, 1}, {1, 4, 2, 1, 1, 2}, {1, 4, 2, 2, 1, 1}, {2, 4, 1, 2, 1, 1},
+    {2, 2, 1, 1, 1, 4}, {4, 1, 3, 1, 1, 1}, {2, 4, 1, 1, 1, 2}, {1, 3, 4, 1, 1, 1},
+    {1, 1, 1, 2, 4, 2}, {1, 2, 1, 1, 4, 2}, {1, 2, 1, 2, 4, 1}, {1, 1, 4, 2, 1, 2},
+    {1, 2, 4, 1, 1, 2}, {1, 2, 4, 2, 1, 1}, {4, 1, 1, 2, 1, 2}, {4, 2, 1, 1, 1, 2},
+    {4, 2, 1, 2, 1, 1}, {2, 1, 2, 1, 4, 1}, {2, 1, 4, 1, 2, 1}, {4, 1, 2, 1, 2, 1},
+    {1, 1, 1, 1, 4, 3}, {1, 1, 1, 3, 4, 1}, {1, 3, 1, 1, 4, 1}, {1, 1, 4, 1, 1, 3},
+    {1, 1, 4, 3, 1, 1}, {4, 1, 1, 1, 1, 3}, {4, 1, 1, 3, 1, 1}, {1, 1, 3, 1, 4, 1},
+    {1, 1, 4, 1, 3, 1}, {3, 1, 1, 1, 4, 1}, {4, 1, 1, 1, 3, 1}, {2, 1, 1, 4, 1, 2},
+    {2, 1, 1, 2, 1, 4}, {2, 1, 1, 2, 3, 2}, {2, 3, 3, 1, 1, 1}
+  };
+  private static final int CODE_SHIFT = 98;
+  private static final int CODE_C = 99;
+  private static final int CODE_B = 100;
+  private static final int CODE_A = 101;
+  private static final int FNC_1 = 102;
+  private static final int START_A = 103;
+  private static final int START_B = 104;
+  private static final int START_C = 105;
+  private static final int STOP = 106;
+  private static final float CODE_128_MAX_AVERAGE_VARIANCE = 0.25f;
+  private static final float CODE_128_MAX_VARIANCE = 0.7f;
+  private static final char GROUP_SEPARATOR = '\u001d';
+
+  /** A barcode read on one line, between two runs. */
+  private static final class LineResult {
+    final Barcode.Format format;
+    final String text;
+    final int firstRun;
+    final int lastRun;
+
+    LineResult(Barcode.Format format, String text, int firstRun, int lastRun) {
+      this.format = format;
+      this.text = text;
+      this.firstRun = firstRun;
+      this.lastRun = lastRun;
+    }
+  }
+
+  /** The lines that read the same barcode the same way round. */
+  private static final class Sighting {
+    final Barcode.Format format;
+    final String text;
+    final boolean rows;
+    final boolean forward;
+    int lines;
+    int firstLine;
+    float firstStart;
+    float firstEnd;
+    int lastLine;
+    float lastStart;
+    float lastEnd;
+
+    Sighting(Barcode.Format format, String text, boolean rows, boolean forward) {
+      this.format = format;
+      this.text = text;
+      this.rows = rows;
+      this.forward = forward;
+    }
+  }
+
+  private final byte[] dark;
+  private final int width;
+  private final int height;
+  private final Set<Barcode.Format> formats;
+  // Run lengths and where each run starts along the line, in reading order.
+  private final int[] runs;
+  private final int[] runStarts;
+  private final int[] reversedRuns;
+  private final int[] reversedStarts;
+
+  /** @param dark the image, one byte per pixel, nonzero where the pixel is dark. */
+  LinearBarcodeReader(byte[] dark, int width, int height, Set<Barcode.Format> formats) {
+    this.dark = dark;
+    this.width = width;
+    this.height = height;
+    this.formats = formats;
+    int length = Math.max(width, height) + 1;
+    runs = new int[length];
+    runStarts = new int[length];
+    reversedRuns = new int[length];
+    reversedStarts = new int[length];
+  }
+
+  /** Returns the barcodes read on at least two lines. */
+  List<Barcode> read() {
+    Map<String, Sighting> sightings = new LinkedHashMap<>();
+    for (int i = 0; i < 2 * LINES; i++) {
+      boolean rows = i < LINES;
+      int count = rows ? height : width;
+      // Centered, so a barcode in the middle of the image is crossed by as many lines as fit.
+      int line = (int) ((i % LINES + 0.5f) * count / LINES);
+      readLine(rows, line, sightings);
+    }
+    List<Barcode> barcodes = new ArrayList<>();
+    for (Sighting sighting : sightings.values()) {
+      if (sighting.lines >= MIN_LINES) {
+        barcodes.add(toBarcode(sighting));
+      }
+    }
+    return barcodes;
+  }
+
+  private void readLine(boolean rows, int line, Map<String, Sighting> sightings) {
+    int length = rows ? width : height;
+    int count = 0;
+    boolean firstDark = isDark(rows, line, 0);
+    boolean current = firstDark;
+    int start = 0;
+    for (int position = 1; position <= length; position++) {
+      if (position == length || isDark(rows, line, position) != current) {
+        runs[count] = position - start;
+        runStarts[count] = start;
+        count++;
+        start = position;
+        current = !current;
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      reversedRuns[i] = runs[count - 1 - i];
+      reversedStarts[i] = length - runStarts[count - 1 - i] - runs[count - 1 - i];
+    }
+    // Run i is dark when i has the parity of the first dark run.
+    int firstDarkRun = firstDark ? 0 : 1;
+    int reversedFirstDarkRun = (count - 1 - firstDarkRun) & 1;
+    for (int direction = 0; direction < 2; direction++) {
+      boolean forward = direction == 0;
+      int[] lineRuns = forward ? runs : reversedRuns;
+      int[] starts = forward ? runStarts : reversedStarts;
+      List<LineResult> results =
+          decodeRuns(lineRuns, count, forward ? firstDarkRun : reversedFirstDarkRun);
+      for (LineResult result : results) {
+        // Positions in reading order; along the line for the forward direction.
+        int readStart = starts[result.firstRun];
+        int readEnd = starts[result.lastRun] + lineRuns[result.lastRun];
+        float startAlong = forward ? readStart : length - readStart;
+        float endAlong = forward ? readEnd : length - readEnd;
+        String key = rows + " " + forward + " " + result.format.key + " " + result.text;
+        Sighting sighting = sightings.get(key);
+        if (sighting == null) {
+          sighting = new Sighting(result.format, result.text, rows, forward);
+          sighting.firstLine = line;
+          sighting.firstStart = startAlong;
+          sighting.firstEnd = endAlong;
+          sightings.put(key, sighting);
+        }
+        sighting.lines++;
+        sighting.lastLine = line;
+        sighting.lastStart = startAlong;
+        sighting.lastEnd = endAlong;
+      }
+    }
+  }
+
+  private boolean isDark(boolean rows, int line, int position) {
+    return (rows ? dark[line * width + position] : dark[position * width + line]) != 0;
+  }
+
+  /**
+   * Spans the first and last lines a barcode was read on. Lines are read top to bottom and left to
+   * right, and the top of an upright barcode is towards the first row; it is towards the last
+   * column when the barcode reads downwards, and flips when it reads the other way.
+   */
+  private static Barcode toBarcode(Sighting sighting) {
+    boolean rows = sighting.rows;
+    boolean topIsFirst = rows == sighting.forward;
+    int top = topIsFirst ? sighting.firstLine : sighting.lastLine;
+    int bottom = topIsFirst ? sighting.lastLine : sighting.firstLine;
+    float topStart = topIsFirst ? sighting.firstStart : sighting.lastStart;
+    float topEnd = topIsFirst ? sighting.firstEnd : sighting.lastEnd;
+    float bottomStart = topIsFirst ? sighting.lastStart : sighting.firstStart;
+    float bottomEnd = topIsFirst ? sighting.lastEnd : sighting.firstEnd;
+    // Lines are sampled through pixel centers.
+    float[] alongAcross = {
+      topStart, top + 0.5f, topEnd, top + 0.5f, bottomEnd, bottom + 0.5f, bottomStart, bottom + 0.5f
+    };
+    float[] corners = new float[8];
+    for (int i = 0; i < 8; i += 2) {
+      corners[i] = rows ? alongAcross[i] : alongAcross[i + 1];
+      corners[i + 1] = rows ? alongAcross[i + 1] : alongAcross[i];
+    }
+    return new Barcode(sighting.format, sighting.text, corners);
+  }
+
+  // Returns what the line reads, starting at each dark run after a light run long enough to be a
+  // quiet zone.
+  private List<LineResult> decodeRuns(int[] lineRuns, int count, int firstDarkRun) {
+    List<LineResult> results = new ArrayList<>(1);
+    boolean ean = formats.contains(Barcode.Format.EAN_13)
+        || formats.contains(Barcode.Format.UPC_A)
+        || formats.contains(Barcode.Format.EAN_8);
+    boolean code128 = formats.contains(Barcode.Format.CODE_128);
+    for (int i = firstDarkRun == 0 ? 2 : 1; i < count; i += 2) {
+      LineResult result = null;
+      if (ean) {
+        result = decodeEan(lineRuns, count, i);
+      }
+      if (result == null && code128) {
+        result = decodeCode128(lineRuns, count, i);
+      }
+      if (result != null) {
+        results.add(result);
+        // Both patterns end with a bar, so the loop goes on at the next bar.
+        i = result.lastRun;
+      }
+    }
+    return results;
+  }
+
+  private static float patternMatchVariance(
+      int[] lineRuns, int first, int[] pattern, float maxVariance) {
+    int total = 0;
+    int patternLength = 0;
+    for (int i = 0; i < pattern.length; i++) {
+      total += lineRuns[first + i];
+      patternLength += pattern[i];
+    }
+    if (total < patternLength) {
+      // Less than a pixel per module.
+      return Float.POSITIVE_INFINITY;
+    }
+    float moduleWidth = (float) total / patternLength;
+    float maxRunVariance = maxVariance * moduleWidth;
+    float totalVariance = 0;
+    for (int i = 0; i < pattern.length; i++) {
+      float variance = Math.abs(lineRuns[first + i] - pattern[i] * moduleWidth);
+      if (variance > maxRunVariance) {
+        return Float.POSITIVE_INFINITY;
+      }
+      totalVariance += variance;
+    }
+    return totalVariance / total;
+  }
+
+  private static int sum(int[] lineRuns, int first, int count) {
+    int total = 0;
+    for (int i = first; i < first + count; i++) {
+      total += lineRuns[i];
+    }
+    return total;
+  }
+
+  private static boolean matchesGuard(int[] lineRuns, int first, int[] guard) {
+    return patternMatchVariance(lineRuns, first, guard, EAN_MAX_VARIANCE)
+        < EAN_MAX_AVERAGE_VARIANCE;
+  }
+
+  // EAN and UPC
+
+  private LineResult decodeEan(int[] lineRuns, int count, int start) {
+    // The quiet zone before the start guard is at least as wide as the guard.
+    if (start + 3 > count
+        || lineRuns[start - 1] < sum(lineRuns, start, 3)
+        || !matchesGuard(lineRuns, start, EAN_GUARD)) {
+      return null;
+    }
+    if (formats.contains(Barcode.Format.EAN_13) || formats.contains(Barcode.Format.UPC_A)) {
+      LineResult result = decodeEan(lineRuns, count, start, 6);
+      if (result != null) {
+        return result;
+      }
+    }
+    if (formats.contains(Barcode.Format.EAN_8)) {
+      return decodeEan(lineRuns, count, start, 4);
+    }
+    return null;
+  }
+
+  // Reads the digits after the start guard, sideDigits on each side of the middle guard.
+  private LineResult decodeEan(int[] lineRuns, int count, int start, int sideDigits) {
+    int end = start + 3 + 8 * sideDigits + 5 + 3;
+    if (end >= count) {
+      return null;
+    }
+    StringBuilder digits = new StringBuilder(13);
+    int parities = 0;
+    int run = start + 3;
+    for (int i = 0; i < sideDigits; i++, run += 4) {
+      int digit = matchEanDigit(lineRuns, run, sideDigits == 6);
+      if (digit < 0) {
+        return null;
+      }
+      if (digit >= 10) {
+        parities |= 1 << (sideDigits - 1 - i);
+      }
+      digits.append((char) ('0' + digit % 10));
+    }
+    if (!matchesGuard(lineRuns, run, EAN_MIDDLE_GUARD)) {
+      return null;
+    }
+    run += 5;
+    for (int i = 0; i < sideDigits; i++, run += 4) {
+      int digit = matchEanDigit(lineRuns, run, false);
+      if (digit < 0) {
+        return null;
+      }
+      digits.append((char) ('0' + digit));
+    }
+    // The quiet zone after the end guard is at least as wide as the guard.
+    if (!matchesGuard(lineRuns, run, EAN_GUARD) || lineRuns[end] < sum(lineRuns, run, 3)) {
+      return null;
+    }
+
+    Barcode.Format format = Barcode.Format.EAN_8;
+    if (sideDigits == 6) {
+      int firstDigit = -1;
+      for (int digit = 0; digit < 10; digit++) {
+        if (EAN_FIRST_DIGIT_PARITIES[digit] == parities) {
+          firstDigit = digit;
+        }
+      }
+      if (firstDigit < 0) {
+        return null;
+      }
+      digits.insert(0, (char) ('0' + firstDigit));
+      format = Barcode.Format.EAN_13;
+    } else if (parities != 0) {
+      return null;
+    }
+    if (!hasValidCheckDigit(digits)) {
+      return null;
+    }
+    String text = digits.toString();
+    // A UPC-A is an EAN-13 whose first digit is 0.
+    if (format == Barcode.Format.EAN_13
+        && text.charAt(0) == '0'
+        && formats.contains(Barcode.Format.UPC_A)) {
+      format = Barcode.Format.UPC_A;
+      text = text.substring(1);
+    } else if (!formats.contains(format)) {
+      return null;
+    }
+    return new LineResult(format, text, start, end - 1);
+  }
+
+  // Returns the best matching digit, plus 10 if it has even parity, or -1.
+  private static int matchEanDigit(int[] lineRuns, int first, boolean allowEven) {
+    float bestVariance = EAN_MAX_AVERAGE_VARIANCE;
+    int best = -1;
+    for (int digit = 0; digit < 10; digit++) {
+      int[] widths = EAN_DIGITS[digit];
+      float variance = patternMatchVariance(lineRuns, first, widths, EAN_MAX_VARIANCE);
+      if (variance < bestVariance) {
+        bestVariance = variance;
+        best = digit;
+      }
+      if (allowEven) {
+        int[] reversed = {widths[3], widths[2], widths[1], widths[0]};
+        variance = patternMatchVariance(lineRuns, first, reversed, EAN_MAX_VARIANCE);
+        if (variance < bestVariance) {
+          bestVariance = variance;
+          best = digit + 10;
+        }
+      }
+    }
+    return best;
+  }
+
+  // Weights the digits before the check digit 3 and 1 alternately, from the right.
+  private static boolean hasValidCheckDigit(CharSequence digits) {
+    int length = digits.length();
+    int sum = 0;
+    for (int i = length - 2, weight = 3; i >= 0; i--, weight = 4 - weight) {
+      sum += weight * (digits.charAt(i) - '0');
+    }
+    return (10 - sum % 10) % 10 == digits.charAt(length - 1) - '0';
+  }
+
+  // Code 128
+
+  private LineResult decodeCode128(int[] lineRuns, int count, int start) {
+    if (start + 6 > count) {
+      return null;
+    }
+    int startCode = matchCode128(lineRuns, start, START_A, START_C);
+    // The quiet zone is at least ten modules, about the width of the start symbol.
+    if (startCode < 0 || lineRuns[start - 1] < sum(lineRuns, start, 6) * 10 / 11) {
+      return null;
+    }
+    List<Integer> codes = new ArrayList<>();
+    codes.add(startCode);
+    int run = start + 6;
+    while (true) {
+      if (run + 7 > count) {
+        return null;
+      }
+      int code = matchCode128(lineRuns, run, 0, STOP);
+      if (code < 0) {
+        return null;
+      }
+      if (code == STOP) {
+        break;
+      }
+      codes.add(code);
+      run += 6;
+    }
+    // The stop symbol's final bar is two modules wide, and a quiet zone follows it.
+    float moduleWidth = sum(lineRuns, run, 6) / 11f;
+    if (Math.abs(lineRuns[run + 6] - 2 * moduleWidth) > moduleWidth
+        || run + 7 >= count
+        || lineRuns[run + 7] < 10 * moduleWidth) {
+      return null;
+    }
+    // The start symbol, at least one data symbol and the check symbol.
+    if (codes.size() < 3) {
+      return null;
+    }
+    int checksum = startCode;
+    for (int i = 1; i < codes.size() - 1; i++) {
+      checksum += i * codes.get(i);
+    }
+    if (checksum % 103 != codes.get(codes.size() - 1)) {
+      return null;
+    }
+    String text = decodeCode128Text(codes);
+    return text == null ? null : new LineResult(Barcode.Format.CODE_128, text, start, run + 6);
+  }
+
+  private static int matchCode128(int[] lineRuns, int first, int fromCode, int toCode) {
+    float bestVariance = CODE_128_MAX_AVERAGE_VARIANCE;
+    int best = -1;
+    for (int code = fromCode; code <= toCode; code++) {
+      float variance =
+          patternMatchVariance(lineRuns, first, CODE_128_PATTERNS[code], CODE_128_MAX_VARIANCE);
+      if (variance < bestVariance) {
+        bestVariance = variance;
+        best = code;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Turns the symbols between the start and check symbols into text, following the code set
+   * switches and shifts. FNC1 after the first position becomes a group separator, as in GS1 data;
+   * FNC4 adds 128 to the next character, or to all of them until the next pair of FNC4s.
+   */
+  private static String decodeCode128Text(List<Integer> codes) {
+    StringBuilder text = new StringBuilder();
+    // Code sets are named after their start symbols.
+    int codeSet = codes.get(0);
+    boolean shifted = false;
+    boolean upperNext = false;
+    boolean upperLatched = false;
+    for (int i = 1; i < codes.size() - 1; i++) {
+      int code = codes.get(i);
+      int set = codeSet;
+      if (shifted) {
+        set = codeSet == START_A ? START_B : START_A;
+        shifted = false;
+      }
+      if (code >= START_A) {
+        return null;
+      }
+      if (code == FNC_1) {
+        if (i > 1) {
+          text.append(GROUP_SEPARATOR);
+        }
+      } else if (set == START_C) {
+        if (code == CODE_A) {
+          codeSet = START_A;
+        } else if (code == CODE_B) {
+          codeSet = START_B;
+        } else {
+          text.append((char) ('0' + code / 10)).append((char) ('0' + code % 10));
+        }
+      } else if (code < 96) {
+        int character = set == START_A && code >= 64 ? code - 64 : code + ' ';
+        if (upperNext != upperLatched) {
+          character += 128;
+        }
+        upperNext = false;
+        text.append((char) character);
+      } else if (code == CODE_SHIFT) {
+        shifted = true;
+      } else if (code == CODE_C) {
+        codeSet = START_C;
+      } else if (code == (set == START_A ? CODE_A : CODE_B)) {
+        // FNC4; two in a row latch the upper half.
+        if (upperNext) {
+          upperLatched = !upperLatched;
+          upperNext = false;
+        } else {
+          upperNext = true;
+        }
+      } else if (code == CODE_A || code == CODE_B) {
+        codeSet = code == CODE_A ? START_A : START_B;
+      }
+      // FNC2 and FNC3 carry no text.
+    }
+    return text.toString();
+  }
+}
@@ -0,0 +1,68 @@
+package io.flutter.plugins.camera;
+
+/**
+ * Maps points on the preview to metering regions on the sensor.
+ *
+ * <p>The preview shows the sensor image rotated clockwise by the sensor orientation, and mirrored
+ * for front cameras, so a point on it is unmirrored and rotated back before being scaled to the
+ * active array. Regions are in active array coordinates, where (0, 0) is the top-left active
+ * pixel, as metering rectangles expect.
+ */
+final class MeteringRegions {
+  // Side of the region as a fraction of the shorter side of the active array.
+  static final double REGION_SIZE = 0.1;
+
+  private MeteringRegions() {}
+
+  /**
+   * Returns the square region around {@code (x, y)} as left, top, right, bottom, clamped to the
+   * active array.
+   *
+   * @param x horizontal position on the upright preview, from 0 (left) to 1 (right).
+   * @param y vertical position on the upright preview, from 0 (top) to 1 (bottom).
+   * @param sensorOrientation the clockwise rotation from the sensor to the upright preview.
+   * @param mirrored whether the preview is mirrored, as it is for front cameras.
+   */
+  static int[] regionAt(
+      double x,
+      double y,
+      int sensorOrientation,
+      boolean mirrored,
+      int activeArrayWidth,
+      int activeArrayHeight) {
+    x = Math.min(1, Math.max(0, x));
+    y = Math.min(1, Math.max(0, y));
+    if (mirrored) {
+      x = 1 - x;
+    }
+    double sensorX;
+    double sensorY;
+    switch ((sensorOrientation % 360 + 360) % 360) {
+      case 90:
+        sensorX = y;
+        sensorY = 1 - x;
+        break;
+      case 180:
+        sensorX = 1 - x;
+        sensorY = 1 - y;
+        break;
+      case 270:
+        sensorX = 1 - y;
+        sensorY = x;
+        break;
+      default:
+        sensorX = x;
+        sensorY = y;
+        break;
+    }
+
+    int size =
+        Math.max(1, (int) (Math.min(activeArrayWidth, activeArrayHeight) * REGION_SIZE));
+    int left = (int) Math.round(sensorX * activeArrayWidth) - size / 2;
+    int top = (int) Math.round(sensorY * activeArrayHeight) - size / 2;
+    // Shift rather than crop at the edges so the region keeps its size.
+    left = Math.min(activeArrayWidth - size, Math.max(0, left));
+    top = Math.min(activeArrayHeight - size, Math.max(0, top));
+    return new int[] {left, top, left + size, top + size};
+  }
+}
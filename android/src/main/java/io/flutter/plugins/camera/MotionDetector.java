@@ -0,0 +1,249 @@
+package io.flutter.plugins.camera;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Detects motion by comparing a coarse grid of luma averages against a running background model.
+ *
+ * <p>Each frame, every cell of the grid is averaged from a few samples of the Y plane and marked
+ * changed if it differs from the background by more than a threshold. Motion starts when the
+ * ratio of changed cells reaches {@link Settings#startRatio} and ends once it stays below {@link
+ * Settings#stopRatio} for {@link Settings#holdFrames} consecutive frames. Changed cells are grouped
+ * into bounding boxes by 4-connectivity. All state is preallocated, so analysis doesn't allocate.
+ */
+final class MotionDetector {
+  static final class Settings {
+    final int gridColumns;
+    final int gridRows;
+    final int cellThreshold;
+    final double startRatio;
+    final double stopRatio;
+    final int holdFrames;
+    final double backgroundAdaptRate;
+    final boolean eventsOnly;
+
+    Settings(
+        int gridColumns,
+        int gridRows,
+        int cellThreshold,
+        double startRatio,
+        double stopRatio,
+        int holdFrames,
+        double backgroundAdaptRate,
+        boolean eventsOnly) {
+      this.gridColumns = gridColumns;
+      this.gridRows = gridRows;
+      this.cellThreshold = cellThreshold;
+      this.startRatio = startRatio;
+      this.stopRatio = stopRatio;
+      this.holdFrames = holdFrames;
+      this.backgroundAdaptRate = backgroundAdaptRate;
+      this.eventsOnly = eventsOnly;
+    }
+
+    /**
+     * Reads the settings Dart sent as the {@code motionGate} argument of startImageStream.
+     *
+     * @throws IllegalArgumentException if the grid has no cells.
+     */
+    static Settings fromMap(Map<?, ?> map) {
+      int gridColumns = intValue(map, "gridColumns", 32);
+      int gridRows = intValue(map, "gridRows", 24);
+      if (gridColumns < 1 || gridRows < 1) {
+        throw new IllegalArgumentException(
+            "The motion grid needs at least one column and row, got "
+                + gridColumns
+                + "x"
+                + gridRows
+                + ".");
+      }
+      return new Settings(
+          gridColumns,
+          gridRows,
+          intValue(map, "cellThreshold", 15),
+          doubleValue(map, "startRatio", 0.02),
+          doubleValue(map, "stopRatio", 0.005),
+          intValue(map, "holdFrames", 15),
+          doubleValue(map, "backgroundAdaptRate", 0.05),
+          Boolean.TRUE.equals(map.get("eventsOnly")));
+    }
+
+    private static int intValue(Map<?, ?> map, String key, int defaultValue) {
+      Object value = map.get(key);
+      return value instanceof Number ? ((Number) value).intValue() : defaultValue;
+    }
+
+    private static double doubleValue(Map<?, ?> map, String key, double defaultValue) {
+      Object value = map.get(key);
+      return value instanceof Number ? ((Number) value).doubleValue() : defaultValue;
+    }
+  }
+
+  // Samples per cell along each axis.
+  private static final int SAMPLES_PER_AXIS = 4;
+
+  private final Settings settings;
+  private final int cellCount;
+  private final float[] background;
+  private final int[] cellLuma;
+  private final boolean[] changed;
+  private final int[] labels;
+  private final int[] floodStack;
+  // left, top, right, bottom per box, normalized to the frame.
+  private final double[] boxes;
+  private int boxCount;
+  private double changedRatio;
+  private boolean hasBackground;
+  private boolean inMotion;
+  private int quietFrames;
+
+  MotionDetector(Settings settings) {
+    this.settings = settings;
+    cellCount = settings.gridColumns * settings.gridRows;
+    background = new float[cellCount];
+    cellLuma = new int[cellCount];
+    changed = new boolean[cellCount];
+    labels = new int[cellCount];
+    floodStack = new int[cellCount];
+    boxes = new double[cellCount * 4];
+  }
+
+  Settings getSettings() {
+    return settings;
+  }
+
+  /** Analyzes the Y plane of {@code frame} and returns whether the scene is in motion. */
+  boolean analyze(FrameSource.Frame frame) {
+    sampleGrid(frame);
+
+    int changedCells = 0;
+    float adaptRate = (float) settings.backgroundAdaptRate;
+    for (int i = 0; i < cellCount; i++) {
+      if (!hasBackground) {
+        background[i] = cellLuma[i];
+      }
+      changed[i] = Math.abs(cellLuma[i] - background[i]) > settings.cellThreshold;
+      if (changed[i]) {
+        changedCells++;
+      }
+      background[i] += adaptRate * (cellLuma[i] - background[i]);
+    }
+    hasBackground = true;
+    changedRatio = (double) changedCells / cellCount;
+
+    if (changedRatio >= settings.startRatio) {
+      inMotion = true;
+      quietFrames = 0;
+    } else if (inMotion && changedRatio < settings.stopRatio) {
+      quietFrames++;
+      if (quietFrames >= settings.holdFrames) {
+        inMotion = false;
+      }
+    } else {
+      // A ratio between the two thresholds isn't quiet, so the hold starts over.
+      quietFrames = 0;
+    }
+
+    findBoxes();
+    return inMotion;
+  }
+
+  boolean isInMotion() {
+    return inMotion;
+  }
+
+  double getChangedRatio() {
+    return changedRatio;
+  }
+  /** Returns the last analyzed frame's bounding boxes as left, top, right, bottom in [0, 1]. */
+  /** Returns the bounding boxes of the last analyzed frame as left, top, right, bottom in [0, 1]. */
+  double[] copyBoxes() {
+    double[] copy = new double[boxCount * 4];
+    System.arraycopy(boxes, 0, copy, 0, copy.length);
+    return copy;
+  }
+
+  private void sampleGrid(FrameSource.Frame frame) {
+    ByteBuffer yPlane = frame.getPlaneBuffer(0);
+    int rowStride = frame.getRowStride(0);
+    int pixelStride = frame.getPixelStride(0);
+    int width = frame.getWidth();
+    int height = frame.getHeight();
+    int columns = settings.gridColumns;
+    int rows = settings.gridRows;
+
+    for (int cellRow = 0; cellRow < rows; cellRow++) {
+      int top = cellRow * height / rows;
+      int cellHeight = (cellRow + 1) * height / rows - top;
+      for (int cellColumn = 0; cellColumn < columns; cellColumn++) {
+        int left = cellColumn * width / columns;
+        int cellWidth = (cellColumn + 1) * width / columns - left;
+        int sum = 0;
+        for (int sy = 0; sy < SAMPLES_PER_AXIS; sy++) {
+          int rowStart = (top + (2 * sy + 1) * cellHeight / (2 * SAMPLES_PER_AXIS)) * rowStride;
+          for (int sx = 0; sx < SAMPLES_PER_AXIS; sx++) {
+            int x = left + (2 * sx + 1) * cellWidth / (2 * SAMPLES_PER_AXIS);
+            sum += yPlane.get(rowStart + x * pixelStride) & 0xff;
+          }
+        }
+        cellLuma[cellRow * columns + cellColumn] = sum / (SAMPLES_PER_AXIS * SAMPLES_PER_AXIS);
+      }
+    }
+  }
+
+  private void findBoxes() {
+    int columns = settings.gridColumns;
+    int rows = settings.gridRows;
+    for (int i = 0; i < cellCount; i++) {
+      labels[i] = 0;
+    }
+
+    boxCount = 0;
+    for (int start = 0; start < cellCount; start++) {
+      if (!changed[start] || labels[start] != 0) {
+        continue;
+      }
+      int label = boxCount + 1;
+      int minColumn = columns;
+      int minRow = rows;
+      int maxColumn = -1;
+      int maxRow = -1;
+      int stackSize = 0;
+      floodStack[stackSize++] = start;
+      labels[start] = label;
+      while (stackSize > 0) {
+        int cell = floodStack[--stackSize];
+        int column = cell % columns;
+        int row = cell / columns;
+        minColumn = Math.min(minColumn, column);
+        maxColumn = Math.max(maxColumn, column);
+        minRow = Math.min(minRow, row);
+        maxRow = Math.max(maxRow, row);
+        // Each cell is labelled before it is pushed, so the stack never exceeds the cell count.
+        if (column > 0 && changed[cell - 1] && labels[cell - 1] == 0) {
+          labels[cell - 1] = label;
+          floodStack[stackSize++] = cell - 1;
+        }
+        if (column < columns - 1 && changed[cell + 1] && labels[cell + 1] == 0) {
+          labels[cell + 1] = label;
+          floodStack[stackSize++] = cell + 1;
+        }
+        if (row > 0 && changed[cell - columns] && labels[cell - columns] == 0) {
+          labels[cell - columns] = label;
+          floodStack[stackSize++] = cell - columns;
+        }
+        if (row < rows - 1 && changed[cell + columns] && labels[cell + columns] == 0) {
+          labels[cell + columns] = label;
+          floodStack[stackSize++] = cell + columns;
+        }
+      }
+      int offset = boxCount * 4;
+      boxes[offset] = (double) minColumn / columns;
+      boxes[offset + 1] = (double) minRow / rows;
+      boxes[offset + 2] = (double) (maxColumn + 1) / columns;
+      boxes[offset + 3] = (double) (maxRow + 1) / rows;
+      boxCount++;
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package io.flutter.plugins.camera;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** Latency histograms for each stage of the camera pipeline, reported through getMetrics. */
+final class PipelineMetrics {
+  enum Stage {
+    // From openCamera to CameraDevice.StateCallback#onOpened.
+    CAMERA_OPEN("cameraOpen"),
+    // From createCaptureSession to CameraCaptureSession.StateCallback#onConfigured.
+    SESSION_CONFIGURATION("sessionConfiguration"),
+    // From openCamera to the first completed preview capture.
+    FIRST_PREVIEW_FRAME("firstPreviewFrame"),
+    // From the still capture request to its image being available.
+    CAPTURE_TO_IMAGE("captureToImage"),
+    // Writing a captured image to its file.
+    IMAGE_TO_DISK("imageToDisk"),
+    // Copying the planes of a streamed frame.
+    STREAM_FRAME_COPY("streamFrameCopy"),
+    // Converting a streamed frame to RGB when the stream asks for it.
+    STREAM_FRAME_CONVERT("streamFrameConvert"),
+    // Handing a streamed frame to the event channel.
+    STREAM_FRAME_SEND("streamFrameSend"),
+    // From a snapshot request to its JPEG being written.
+    STREAM_SNAPSHOT("streamSnapshot"),
+    // From lockFocus to the AF state locking.
+    FOCUS_CONVERGENCE("focusConvergence"),
+    // From a burst's capture request to its merged JPEG being written.
+    BURST_PICTURE("burstPicture"),
+    // From a frame reaching the barcode scanner to its barcodes being decoded.
+    BARCODE_SCAN("barcodeScan");
+
+    final String key;
+
+    Stage(String key) {
+      this.key = key;
+    }
+  }
+
+  private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+
+  PipelineMetrics() {
+    for (int i = 0; i < histograms.length; i++) {
+      histograms[i] = new LatencyHistogram();
+    }
+  }
+
+  /** Records the time elapsed since {@code startNanos}, a {@link System#nanoTime()} value. */
+  void recordSince(Stage stage, long startNanos) {
+    histograms[stage.ordinal()].recordNanos(System.nanoTime() - startNanos);
+  }
+
+  void reset() {
+    for (LatencyHistogram histogram : histograms) {
+      histogram.reset();
+    }
+  }
+
+  Map<String, Object> toMap() {
+    Map<String, Object> map = new HashMap<>();
+    for (Stage stage : Stage.values()) {
+      map.put(stage.key, histograms[stage.ordinal()].toMap());
+    }
+    return map;
+  }
+}
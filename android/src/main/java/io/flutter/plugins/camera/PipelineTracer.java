@@ -0,0 +1,208 @@
+package io.flutter.plugins.camera;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opt-in timeline of camera pipeline events, exported in the Chrome trace event format.
+ *
+ * <p>While no trace is running, recording an event costs a single volatile read. While tracing,
+ * events go into a buffer owned by the recording thread, allocated the first time that thread
+ * records anything, so recording only locks or allocates for a thread's first event of a trace.
+ * Events past a buffer's capacity are counted and dropped. Stopping a trace unregisters the
+ * buffers, so those of threads that have since exited can be collected.
+ *
+ * <p>Timestamps are {@link System#nanoTime()}, which is the monotonic clock Flutter's timeline
+ * uses, so a trace can be loaded next to a timeline exported from DevTools.
+ */
+final class PipelineTracer {
+  enum Event {
+    SESSION_CREATION("createCaptureSession"),
+    SET_REPEATING_REQUEST("setRepeatingRequest"),
+    IMAGE_ACQUIRE("acquireImage"),
+    PLANE_COPY("copyPlanes"),
+    RGB_CONVERSION("convertToRgb"),
+    EVENT_SINK_SUCCESS("EventSink.success"),
+    FILE_WRITE("writeToFile");
+
+    final String traceName;
+
+    Event(String traceName) {
+      this.traceName = traceName;
+    }
+  }
+
+  private static final int EVENTS_PER_THREAD = 16384;
+  private static final byte PHASE_BEGIN = 'B';
+  private static final byte PHASE_END = 'E';
+  private static final byte PHASE_COMPLETE = 'X';
+
+  private static volatile boolean enabled;
+  // Bumped by every startTrace so each thread discards events from the previous trace lazily.
+  private static volatile int generation;
+  // The buffers that recorded events in the current trace.
+  private static final Set<ThreadBuffer> buffers =
+      Collections.newSetFromMap(new ConcurrentHashMap<ThreadBuffer, Boolean>());
+  private static final ThreadLocal<ThreadBuffer> threadBuffer =
+      new ThreadLocal<ThreadBuffer>() {
+        @Override
+        protected ThreadBuffer initialValue() {
+          return new ThreadBuffer(Thread.currentThread());
+        }
+      };
+
+  private PipelineTracer() {}
+
+  static boolean isTracing() {
+    return enabled;
+  }
+
+  static synchronized void startTrace() {
+    generation++;
+    enabled = true;
+  }
+
+  /**
+   * Stops tracing and writes the recorded events to {@code file}.
+   *
+   * @return the number of events written and the number that did not fit the thread buffers.
+   */
+  static synchronized Map<String, Object> stopTrace(File file) throws IOException {
+    enabled = false;
+    int traceGeneration = generation;
+    long written = 0;
+    long dropped = 0;
+    int pid = android.os.Process.myPid();
+
+    try (Writer writer =
+        new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8")))) {
+      writer.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+      boolean first = true;
+      for (ThreadBuffer buffer : buffers) {
+        int count = buffer.count;
+        if (count == 0 || buffer.generation != traceGeneration) {
+          continue;
+        }
+        writer.write(first ? "\n" : ",\n");
+        first = false;
+        writer.write(
+            String.format(
+                Locale.US,
+                "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":%d,\"tid\":%d,"
+                    + "\"args\":{\"name\":\"%s\"}}",
+                pid, buffer.tid, escape(buffer.threadName)));
+        for (int i = 0; i < count; i++) {
+          writer.write(",\n");
+          buffer.writeEvent(writer, i, pid);
+        }
+        written += count;
+        dropped += buffer.dropped;
+      }
+      writer.write("\n]}\n");
+    } finally {
+      buffers.clear();
+    }
+
+    Map<String, Object> summary = new HashMap<>();
+    summary.put("events", written);
+    summary.put("droppedEvents", dropped);
+    return summary;
+  }
+
+  static void begin(Event event) {
+    if (enabled) {
+      threadBuffer.get().record(PHASE_BEGIN, event, System.nanoTime(), 0);
+    }
+  }
+
+  static void end(Event event) {
+    if (enabled) {
+      threadBuffer.get().record(PHASE_END, event, System.nanoTime(), 0);
+    }
+  }
+
+  /** Records an event from {@code startNanos}, possibly on another thread, until now. */
+  static void complete(Event event, long startNanos) {
+    if (enabled) {
+      long duration = System.nanoTime() - startNanos;
+      threadBuffer.get().record(PHASE_COMPLETE, event, startNanos, duration);
+    }
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"");
+  }
+
+  /** Events recorded by a single thread. Only that thread writes to it. */
+  private static final class ThreadBuffer {
+    final long tid;
+    final String threadName;
+    final byte[] phases = new byte[EVENTS_PER_THREAD];
+    final byte[] events = new byte[EVENTS_PER_THREAD];
+    final long[] timestamps = new long[EVENTS_PER_THREAD];
+    final long[] durations = new long[EVENTS_PER_THREAD];
+    int generation;
+    int dropped;
+    // Written after the event it counts, so stopTrace sees complete events.
+    volatile int count;
+
+    ThreadBuffer(Thread thread) {
+      tid = thread.getId();
+      threadName = thread.getName();
+    }
+
+    void record(byte phase, Event event, long timestamp, long duration) {
+      int currentGeneration = PipelineTracer.generation;
+      if (generation != currentGeneration) {
+        generation = currentGeneration;
+        dropped = 0;
+        count = 0;
+        buffers.add(this);
+      }
+      int index = count;
+      if (index == EVENTS_PER_THREAD) {
+        dropped++;
+        return;
+      }
+      phases[index] = phase;
+      events[index] = (byte) event.ordinal();
+      timestamps[index] = timestamp;
+      durations[index] = duration;
+      count = index + 1;
+    }
+
+    void writeEvent(Writer writer, int index, int pid) throws IOException {
+      writer.write("{\"name\":\"");
+      writer.write(Event.values()[events[index]].traceName);
+      writer.write("\",\"cat\":\"camera\",\"ph\":\"");
+      writer.write((char) phases[index]);
+      writer.write("\",\"ts\":");
+      writer.write(formatMicros(timestamps[index]));
+      if (phases[index] == PHASE_COMPLETE) {
+        writer.write(",\"dur\":");
+        writer.write(formatMicros(durations[index]));
+      }
+      writer.write(",\"pid\":");
+      writer.write(Integer.toString(pid));
+      writer.write(",\"tid\":");
+      writer.write(Long.toString(tid));
+      writer.write("}");
+    }
+
+    private static String formatMicros(long nanos) {
+      return nanos / 1000 + "." + String.format(Locale.US, "%03d", nanos % 1000);
+    }
+  }
+}
@@ -0,0 +1,1286 @@
+package io.flutter.plugins.camera;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds and decodes a QR code, of any version and error correction level, in a binarized image.
+ *
+ * <p>Rows are scanned for the 1:1:3:1:1 runs of the three finder patterns, which are confirmed
+ * vertically and horizontally. The best triangle of finder patterns gives the symbol's size and,
+ * with the alignment pattern near the fourth corner, a perspective transform from modules to
+ * pixels. Each module is sampled once, then the format and version information, the interleaved
+ * Reed-Solomon blocks and the data segments are decoded as ISO/IEC 18004 lays them out. A symbol
+ * that doesn't decode is sampled again transposed, in case it is mirrored. Numeric, alphanumeric,
+ * byte and kanji segments are supported; byte segments are read as UTF-8 unless they aren't valid
+ * UTF-8 or an ECI says otherwise, in which case they are read as ISO-8859-1.
+ */
+final class QrCodeReader {
+  // Finder patterns further apart than this many modules belong to a version above 40.
+  private static final int MAX_MODULES = 177;
+  private static final int FORMAT_MASK = 0x5412;
+  private static final String ALPHANUMERIC = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+  private static final Charset SHIFT_JIS = Charset.forName("Shift_JIS");
+
+  // Per version and level L, M, Q, H: check codewords per block, then pairs of block count and
+  // data codewords per block.
+  private static final int[][][] EC_BLOCKS = {
+    {{7, 1, 19}, {10, 1, 16}, {13, 1, 13}, {17, 1, 9}},
+    {{10, 1, 34}, {16, 1, 28}, {22, 1, 22}, {28, 1, 16}},
+    {{15, 1, 55}, {26, 1, 44}, {18, 2, 17}, {22, 2, 13}},
+    {{20, 1, 80}, {18, 2, 32}, {26, 2, 24}, {16, 4, 9}},
+    {{26, 1, 108}, {24, 2, 43}, {18, 2, 15, 2, 16}, {22, 2, 11, 2, 12}},
+    {{18, 2, 68}, {16, 4, 27}, {24, 4, 19}, {28, 4, 15}},
+    {{20, 2, 78}, {18, 4, 31}, {18, 2, 14, 4, 15}, {26, 4, 13, 1, 14}},
+    {{24, 2, 97}, {22, 2, 38, 2, 39}, {22, 4, 18, 2, 19}, {26, 4, 14, 2, 15}},
+    {{30, 2, 116}, {22, 3, 36, 2, 37}, {20, 4, 16, 4, 17}, {24, 4, 12, 4, 13}},
+    {{18, 2, 68, 2, 69}, {26, 4, 43, 1, 44}, {24, 6, 19, 2, 20}, {28, 6, 15, 2, 16}},
+    {{20, 4, 81}, {30, 1, 50, 4, 51}, {28, 4, 22, 4, 23}, {24, 3, 12, 8, 13}},
+    {{24, 2, 92, 2, 93}, {22, 6, 36, 2, 37}, {26, 4, 20, 6, 21}, {28, 7, 14, 4, 15}},
+    {{26, 4, 107}, {22, 8, 37, 1, 38}, {24, 8, 20, 4, 21}, {22, 12, 11, 4, 12}},
+    {{30, 3, 115, 1, 116}, {24, 4, 40, 5, 41}, {20, 11, 16, 5, 17}, {24, 11, 12, 5, 13}},
+    {{22, 5, 87, 1, 88}, {24, 5, 41, 5, 42}, {30, 5, 24, 7, 25}, {24, 11, 12, 7, 13}},
+    {{24, 5, 98, 1, 99}, {28, 7, 45, 3, 46}, {24, 15, 19, 2, 20}, {30, 3, 15, 13, 16}},
+    {{28, 1, 107, 5, 108}, {28, 10, 46, 1, 47}, {28, 1, 22, 15, 23}, {28, 2, 14, 17, 15}},
+    {{30, 5, 120, 1, 121}, {26, 9, 43, 4, 44}, {28, 17, 22, 1, 23}, {28, 2, 14, 19, 15}},
+    {{28, 3, 113, 4, 114}, {26, 3, 44, 11, 45}, {26, 17, 21, 4, 22}, {26, 9, 13, 16, 14}},
+    {{28, 3, 107, 5, 108}, {26, 3, 41, 13, 42}, {30, 15, 24, 5, 25}, {28, 15, 15, 10, 16}},
+    {{28, 4, 116, 4, 117}, {26, 17, 42}, {28, 17, 22, 6, 23}, {30, 19, 16, 6, 17}},
+    {{28, 2, 111, 7, 112}, {28, 17, 46}, {30, 7, 24, 16, 25}, {24, 34, 13}},
+    {{30, 4, 121, 5, 122}, {28, 4, 47, 14, 48}, {30, 11, 24, 14, 25}, {30, 16, 15, 14, 16}},
+    {{30, 6, 117, 4, 118}, {28, 6, 45, 14, 46}, {30, 11, 24, 16, 25}, {30, 30, 16, 2, 17}},
+    {{26, 8, 106, 4, 107}, {28, 8, 47, 13, 48}, {30, 7, 24, 22, 25}, {30, 22, 15, 13, 16}},
+    {{28, 10, 114, 2, 115}, {28, 19, 46, 4, 47}, {28, 28, 22, 6, 23}, {30, 33, 16, 4, 17}},
+    {{30, 8, 122, 4, 123}, {28, 22, 45, 3, 46}, {30, 8, 23, 26, 24}, {30, 12, 15, 28, 16}},
+    {{30, 3, 117, 10, 118}, {28, 3, 45, 23, 46}, {30, 4, 24, 31, 25}, {30, 11, 15, 31, 16}},
+    {{30, 7, 116, 7, 117}, {28, 21, 45, 7, 46}, {30, 1, 23, 37, 24}, {30, 19, 15, 26, 16}},
+    {{30, 5, 115, 10, 116}, {28, 19, 47, 10, 48}, {30, 15, 24, 25, 25}, {30, 23, 15, 25, 16}},
+    {{30, 13, 115, 3, 116}, {28, 2, 46, 29, 47}, {30, 42, 24, 1, 25}, {30, 23, 15, 28, 16}},
+    {{30, 17, 115}, {28, 10, 46, 23, 47}, {30, 10, 24, 35, 25}, {30, 19, 15, 35, 16}},
+    {{30, 17, 115, 1, 116}, {28, 14, 46, 21, 47}, {30, 29, 24, 19, 25}, {30, 11, 15, 46, 16}},
+    {{30, 13, 115, 6, 116}, {28, 14, 46, 23, 47}, {30, 44, 24, 7, 25}, {30, 59, 16, 1, 17}},
+    {{30, 12, 121, 7, 122}, {28, 12, 47, 26, 48}, {30, 39, 24, 14, 25}, {30, 22, 15, 41, 16}},
+    {{30, 6, 121, 14, 122}, {28, 6, 47, 34, 48}, {30, 46, 24, 10, 25}, {30, 2, 15, 64, 16}},
+    {{30, 17, 122, 4, 123}, {28, 29, 46, 14, 47}, {30, 49, 24, 10, 25}, {30, 24, 15, 46, 16}},
+    {{30, 4, 122, 18, 123}, {28, 13, 46, 32, 47}, {30, 48, 24, 14, 25}, {30, 42, 15, 32, 16}},
+    {{30, 20, 117, 4, 118}, {28, 40, 47, 7, 48}, {30, 43, 24, 22, 25}, {30, 10, 15, 67, 16}},
+    {{30, 19, 118, 6, 119}, {28, 18, 47, 31, 48}, {30, 34, 24, 34, 25}, {30, 20, 15, 61, 16}},
+  };
+  // The format information's two level bits, indexed by level L, M, Q, H.
+  private static final int[] LEVEL_BITS = {1, 0, 3, 2};
+
+  private static final class FinderPattern {
+    float x;
+    float y;
+    float moduleSize;
+    int count = 1;
+
+    FinderPattern(float x, float y, float moduleSize) {
+      this.x = x;
+      this.y = y;
+      this.moduleSize = moduleSize;
+    }
+  }
+
+  /** Thrown when a candidate symbol turns out not to decode. */
+  private static final class FormatException extends Exception {
+    FormatException(String message) {
+      super(message);
+    }
+  }
+
+  private final byte[] dark;
+  private final int width;
+  private final int height;
+  private final int[] counts = new int[5];
+
+  /** @param dark the image, one byte per pixel, nonzero where the pixel is dark. */
+  QrCodeReader(byte[] dark, int width, int height) {
+    this.dark = dark;
+    this.width = width;
+    this.height = height;
+  }
+
+  /** Returns the QR code in the image, or null if none was found or it didn't decode. */
+  Barcode read() {
+    List<FinderPattern> patterns = findFinderPatterns();
+    FinderPattern[] best = selectBestPatterns(patterns);
+    if (best == null) {
+      return null;
+    }
+    FinderPattern bottomLeft = best[0];
+    FinderPattern topLeft = best[1];
+    FinderPattern topRight = best[2];
+    float moduleSize =
+        (estimateModuleSize(topLeft, topRight) + estimateModuleSize(topLeft, bottomLeft)) / 2;
+    if (!(moduleSize >= 1)) {
+      return null;
+    }
+    int dimension = estimateDimension(topLeft, topRight, bottomLeft, moduleSize);
+    // The estimate can be a version or two off for large symbols, where the timing pattern is
+    // usually still readable; version information rules out a wrong size.
+    int counted = countTimingDimension(topLeft, topRight, bottomLeft, dimension);
+    int[] dimensions = {counted, dimension, dimension + 4, dimension - 4};
+    // A mirrored symbol, seen from behind or in a mirror, has its finder patterns the other way
+    // around, so it reads as the transpose of the upright one.
+    for (boolean mirrored : new boolean[] {false, true}) {
+      for (int i = 0; i < dimensions.length; i++) {
+        int candidate = dimensions[i];
+        if (candidate < 21 || candidate > MAX_MODULES || (candidate & 3) != 1
+            || (i > 0 && candidate == counted)) {
+          continue;
+        }
+        try {
+          return mirrored
+              ? decodeAt(topLeft, bottomLeft, topRight, moduleSize, candidate, true)
+              : decodeAt(topLeft, topRight, bottomLeft, moduleSize, candidate, false);
+        } catch (FormatException e) {
+          // Try the next size.
+        }
+      }
+    }
+    return null;
+  }
+
+  private Barcode decodeAt(
+      FinderPattern topLeft,
+      FinderPattern topRight,
+      FinderPattern bottomLeft,
+      float moduleSize,
+      int dimension,
+      boolean mirrored)
+      throws FormatException {
+    // With the alignment pattern the transform follows perspective, but a wrong alignment
+    // pattern is worse than none.
+    float[] alignment = findAlignmentPattern(topLeft, topRight, bottomLeft, moduleSize, dimension);
+    double[] transform;
+    String text;
+    try {
+      transform = createTransform(topLeft, topRight, bottomLeft, alignment, dimension);
+      text = decodeTransformed(transform, dimension);
+    } catch (FormatException e) {
+      if (alignment == null) {
+        throw e;
+      }
+      transform = createTransform(topLeft, topRight, bottomLeft, null, dimension);
+      text = decodeTransformed(transform, dimension);
+    }
+
+    float[] corners = new float[8];
+    // Transposed, the symbol's corners run the other way around the modules.
+    double[][] moduleCorners =
+        mirrored
+            ? new double[][] {{0, 0}, {0, dimension}, {dimension, dimension}, {dimension, 0}}
+            : new double[][] {{0, 0}, {dimension, 0}, {dimension, dimension}, {0, dimension}};
+    for (int i = 0; i < 4; i++) {
+      double[] point = apply(transform, moduleCorners[i][0], moduleCorners[i][1]);
+      corners[2 * i] = (float) point[0];
+      corners[2 * i + 1] = (float) point[1];
+    }
+    return new Barcode(Barcode.Format.QR_CODE, text, corners);
+  }
+
+  private String decodeTransformed(double[] transform, int dimension) throws FormatException {
+    boolean[] modules = sample(transform, dimension);
+    int version = (dimension - 17) / 4;
+    if (version >= 7 && readVersion(modules, dimension) != version) {
+      throw new FormatException("The version information doesn't match the size.");
+    }
+    return decodeModules(modules, dimension, version);
+  }
+
+  private boolean isDark(int x, int y) {
+    return dark[y * width + x] != 0;
+  }
+
+  // Finder patterns
+
+  private List<FinderPattern> findFinderPatterns() {
+    List<FinderPattern> patterns = new ArrayList<>();
+    // Skipping rows keeps the scan fast while still crossing the smallest finder pattern thrice.
+    int skip = Math.max(3, 3 * height / (4 * MAX_MODULES));
+    for (int y = skip - 1; y < height; y += skip) {
+      clearCounts();
+      int state = 0;
+      int rowStart = y * width;
+      for (int x = 0; x < width; x++) {
+        if (dark[rowStart + x] != 0) {
+          if ((state & 1) == 1) {
+            state++;
+          }
+          counts[state]++;
+        } else if ((state & 1) == 0) {
+          if (state == 4) {
+            if (isFinderRatio(counts) && handlePossibleCenter(patterns, x, y)) {
+              clearCounts();
+              state = 0;
+            } else {
+              shiftCounts();
+              state = 3;
+            }
+          } else {
+            counts[++state]++;
+          }
+        } else {
+          counts[state]++;
+        }
+      }
+      if (state == 4 && isFinderRatio(counts)) {
+        handlePossibleCenter(patterns, width, y);
+      }
+    }
+    return patterns;
+  }
+
+  private void clearCounts() {
+    for (int i = 0; i < 5; i++) {
+      counts[i] = 0;
+    }
+  }
+
+  // Drops the first black and white runs, so the last black run can start a new pattern.
+  private void shiftCounts() {
+    counts[0] = counts[2];
+    counts[1] = counts[3];
+    counts[2] = counts[4];
+    counts[3] = 1;
+    counts[4] = 0;
+  }
+
+  private static boolean isFinderRatio(int[] runs) {
+    int total = 0;
+    for (int run : runs) {
+      if (run == 0) {
+        return false;
+      }
+      total += run;
+    }
+    if (total < 7) {
+      return false;
+    }
+    float moduleSize = total / 7f;
+    float maxVariance = moduleSize / 2;
+    return Math.abs(moduleSize - runs[0]) < maxVariance
+        && Math.abs(moduleSize - runs[1]) < maxVariance
+        && Math.abs(3 * moduleSize - runs[2]) < 3 * maxVariance
+        && Math.abs(moduleSize - runs[3]) < maxVariance
+        && Math.abs(moduleSize - runs[4]) < maxVariance;
+  }
+
+  private static float centerFromEnd(int[] runs, int end) {
+    return end - runs[4] - runs[3] - runs[2] / 2f;
+  }
+
+  // Confirms a row crossing with a vertical and a horizontal one, then records the pattern.
+  private boolean handlePossibleCenter(List<FinderPattern> patterns, int endX, int y) {
+    int total = counts[0] + counts[1] + counts[2] + counts[3] + counts[4];
+    float centerX = centerFromEnd(counts, endX);
+    float centerY = crossCheck((int) centerX, y, 0, 1, counts[2], total);
+    if (Float.isNaN(centerY)) {
+      return false;
+    }
+    centerX = crossCheck((int) centerX, (int) centerY, 1, 0, counts[2], total);
+    if (Float.isNaN(centerX)) {
+      return false;
+    }
+    float moduleSize = total / 7f;
+    for (FinderPattern pattern : patterns) {
+      if (Math.abs(centerX - pattern.x) <= moduleSize
+          && Math.abs(centerY - pattern.y) <= moduleSize
+          && Math.abs(moduleSize - pattern.moduleSize) <= Math.max(1, pattern.moduleSize)) {
+        int count = pattern.count + 1;
+        pattern.x = (pattern.count * pattern.x + centerX) / count;
+        pattern.y = (pattern.count * pattern.y + centerY) / count;
+        pattern.moduleSize = (pattern.count * pattern.moduleSize + moduleSize) / count;
+        pattern.count = count;
+        return true;
+      }
+    }
+    patterns.add(new FinderPattern(centerX, centerY, moduleSize));
+    return true;
+  }
+
+  /**
+   * Counts the five runs through (x, y) along (dx, dy) and returns the center of the middle run
+   * along that axis, or NaN if the runs don't look like a finder pattern of about the same size.
+   */
+  private float crossCheck(int x, int y, int dx, int dy, int maxCount, int originalTotal) {
+    int[] runs = new int[5];
+    // Back over the center and the first two runs, then forward over the rest.
+    runs[2] = runLength(x, y, -dx, -dy, 0, true, Integer.MAX_VALUE);
+    runs[1] = runLength(x, y, -dx, -dy, runs[2], false, maxCount);
+    runs[0] = runLength(x, y, -dx, -dy, runs[2] + runs[1], true, maxCount);
+    if (runs[1] == 0 || runs[1] > maxCount || runs[0] == 0 || runs[0] > maxCount) {
+      return Float.NaN;
+    }
+    int forward = runLength(x, y, dx, dy, 1, true, Integer.MAX_VALUE);
+    runs[2] += forward;
+    runs[3] = runLength(x, y, dx, dy, 1 + forward, false, maxCount);
+    runs[4] = runLength(x, y, dx, dy, 1 + forward + runs[3], true, maxCount);
+    if (runs[3] == 0 || runs[3] > maxCount || runs[4] == 0 || runs[4] > maxCount) {
+      return Float.NaN;
+    }
+    int i = 1 + forward + runs[3] + runs[4];
+    int total = runs[0] + runs[1] + runs[2] + runs[3] + runs[4];
+    if (5 * Math.abs(total - originalTotal) >= 2 * originalTotal || !isFinderRatio(runs)) {
+      return Float.NaN;
+    }
+    int end = (dx == 1 ? x : y) + i;
+    return centerFromEnd(runs, end);
+  }
+
+  // Counts pixels of one color from step first along (dx, dy), stopping past maxCount.
+  private int runLength(int x, int y, int dx, int dy, int first, boolean darkRun, int maxCount) {
+    int count = 0;
+    for (int i = first; count <= maxCount; i++, count++) {
+      int pixelX = x + i * dx;
+      int pixelY = y + i * dy;
+      if (!inside(pixelX, pixelY) || isDark(pixelX, pixelY) != darkRun) {
+        break;
+      }
+    }
+    return count;
+  }
+
+  private boolean inside(int x, int y) {
+    return x >= 0 && y >= 0 && x < width && y < height;
+  }
+
+  /**
+   * Picks the three patterns that best form the corners of a symbol, and returns them as bottom
+   * left, top left and top right, or null if no three patterns fit.
+   */
+  private static FinderPattern[] selectBestPatterns(List<FinderPattern> patterns) {
+    if (patterns.size() < 3) {
+      return null;
+    }
+    // Patterns crossed by several rows are more likely real; a few are enough to choose from.
+    List<FinderPattern> candidates = new ArrayList<>(patterns);
+    Collections.sort(candidates, (a, b) -> b.count - a.count);
+    if (candidates.size() > 8) {
+      candidates = candidates.subList(0, 8);
+    }
+    FinderPattern[] best = null;
+    double bestScore = Double.MAX_VALUE;
+    int size = candidates.size();
+    for (int i = 0; i < size; i++) {
+      for (int j = i + 1; j < size; j++) {
+        for (int k = j + 1; k < size; k++) {
+          FinderPattern[] triple =
+              orderPatterns(candidates.get(i), candidates.get(j), candidates.get(k));
+          double score = scoreTriple(triple);
+          if (score < bestScore) {
+            bestScore = score;
+            best = triple;
+          }
+        }
+      }
+    }
+    return best;
+  }
+
+  // Orders three patterns as bottom left, top left and top right.
+  private static FinderPattern[] orderPatterns(
+      FinderPattern a, FinderPattern b, FinderPattern c) {
+    double ab = distance(a, b);
+    double bc = distance(b, c);
+    double ac = distance(a, c);
+    FinderPattern corner;
+    FinderPattern first;
+    FinderPattern second;
+    // The top left pattern is opposite the longest side.
+    if (bc >= ab && bc >= ac) {
+      corner = a;
+      first = b;
+      second = c;
+    } else if (ac >= ab && ac >= bc) {
+      corner = b;
+      first = a;
+      second = c;
+    } else {
+      corner = c;
+      first = a;
+      second = b;
+    }
+    // In image coordinates, y pointing down, top right to top left to bottom left turns clockwise.
+    float cross =
+        (second.x - corner.x) * (first.y - corner.y) - (second.y - corner.y) * (first.x - corner.x);
+    if (cross < 0) {
+      FinderPattern swap = first;
+      first = second;
+      second = swap;
+    }
+    return new FinderPattern[] {first, corner, second};
+  }
+
+  // Lower is better; a right isosceles triangle of equally sized patterns scores 0.
+  private static double scoreTriple(FinderPattern[] triple) {
+    FinderPattern bottomLeft = triple[0];
+    FinderPattern topLeft = triple[1];
+    FinderPattern topRight = triple[2];
+    float minSize =
+        Math.min(bottomLeft.moduleSize, Math.min(topLeft.moduleSize, topRight.moduleSize));
+    float maxSize =
+        Math.max(bottomLeft.moduleSize, Math.max(topLeft.moduleSize, topRight.moduleSize));
+    if (maxSize > 1.5f * minSize) {
+      return Double.MAX_VALUE;
+    }
+    double top = distance(topLeft, topRight);
+    double left = distance(topLeft, bottomLeft);
+    double diagonal = distance(bottomLeft, topRight);
+    double legs = (top + left) / 2;
+    // Version 1 has 14 modules between finder pattern centers, but module sizes measured along
+    // rows are up to a factor of the square root of 2 too large when the symbol is rotated.
+    if (legs < 9 * minSize || legs > MAX_MODULES * maxSize) {
+      return Double.MAX_VALUE;
+    }
+    double legMismatch = Math.abs(top - left) / legs;
+    double angleMismatch = Math.abs(diagonal * diagonal - top * top - left * left) / (legs * legs);
+    if (legMismatch > 0.3 || angleMismatch > 0.4) {
+      return Double.MAX_VALUE;
+    }
+    double sizeMismatch = (maxSize - minSize) / maxSize;
+    return legMismatch + angleMismatch + sizeMismatch;
+  }
+
+  private static double distance(FinderPattern a, FinderPattern b) {
+    return Math.hypot(a.x - b.x, a.y - b.y);
+  }
+
+  // Module size from the width of the two patterns along the line through their centers.
+  private float estimateModuleSize(FinderPattern from, FinderPattern to) {
+    float a = runWidthBothWays((int) from.x, (int) from.y, (int) to.x, (int) to.y);
+    float b = runWidthBothWays((int) to.x, (int) to.y, (int) from.x, (int) from.y);
+    if (Float.isNaN(a)) {
+      return b / 7;
+    }
+    if (Float.isNaN(b)) {
+      return a / 7;
+    }
+    return (a + b) / 14;
+  }
+
+  // The width of the pattern at (fromX, fromY) along the line towards (toX, toY).
+  private float runWidthBothWays(int fromX, int fromY, int toX, int toY) {
+    float result = runWidth(fromX, fromY, toX, toY);
+    // The same line in the other direction, clipped to the image.
+    float scale = 1;
+    int otherX = fromX - (toX - fromX);
+    if (otherX < 0) {
+      scale = fromX / (float) (fromX - otherX);
+      otherX = 0;
+    } else if (otherX >= width) {
+      scale = (width - 1 - fromX) / (float) (otherX - fromX);
+      otherX = width - 1;
+    }
+    int otherY = (int) (fromY - (toY - fromY) * scale);
+    scale = 1;
+    if (otherY < 0) {
+      scale = fromY / (float) (fromY - otherY);
+      otherY = 0;
+    } else if (otherY >= height) {
+      scale = (height - 1 - fromY) / (float) (otherY - fromY);
+      otherY = height - 1;
+    }
+    otherX = (int) (fromX + (otherX - fromX) * scale);
+    result += runWidth(fromX, fromY, otherX, otherY);
+    // The center pixel was counted twice.
+    return result - 1;
+  }
+
+  // Walks from the center of a pattern through its dark, light and dark rings, with Bresenham's
+  // algorithm, and returns the distance to where the outer dark ring ends.
+  private float runWidth(int fromX, int fromY, int toX, int toY) {
+    boolean steep = Math.abs(toY - fromY) > Math.abs(toX - fromX);
+    if (steep) {
+      int swap = fromX;
+      fromX = fromY;
+      fromY = swap;
+      swap = toX;
+      toX = toY;
+      toY = swap;
+    }
+    int dx = Math.abs(toX - fromX);
+    int dy = Math.abs(toY - fromY);
+    int error = -dx / 2;
+    int xStep = fromX < toX ? 1 : -1;
+    int yStep = fromY < toY ? 1 : -1;
+    int state = 0;
+    int xLimit = toX + xStep;
+    for (int x = fromX, y = fromY; x != xLimit; x += xStep) {
+      int realX = steep ? y : x;
+      int realY = steep ? x : y;
+      if (!inside(realX, realY)) {
+        break;
+      }
+      // Dark rings end at a light pixel, the light ring at a dark one.
+      if ((state == 1) == isDark(realX, realY)) {
+        if (state == 2) {
+          return (float) Math.hypot(x - fromX, y - fromY);
+        }
+        state++;
+      }
+      error += dy;
+      if (error > 0) {
+        if (y == toY) {
+          break;
+        }
+        y += yStep;
+        error -= dx;
+      }
+    }
+    if (state == 2) {
+      return (float) Math.hypot(toX + xStep - fromX, toY - fromY);
+    }
+    return Float.NaN;
+  }
+
+  // Returns the symbol's size in modules, rounded to a valid size.
+  private static int estimateDimension(
+      FinderPattern topLeft, FinderPattern topRight, FinderPattern bottomLeft, float moduleSize) {
+    int top = Math.round((float) distance(topLeft, topRight) / moduleSize);
+    int left = Math.round((float) distance(topLeft, bottomLeft) / moduleSize);
+    int dimension = (top + left) / 2 + 7;
+    switch (dimension & 3) {
+      case 0:
+        return dimension + 1;
+      case 2:
+        return dimension - 1;
+      case 3:
+        return dimension + 2;
+      default:
+        return dimension;
+    }
+  }
+
+  /**
+   * Counts the color changes along the timing pattern, which runs between the top finder patterns
+   * three modules below their centers, and returns the size they imply, or -1.
+   */
+  private int countTimingDimension(
+      FinderPattern topLeft, FinderPattern topRight, FinderPattern bottomLeft, int dimension) {
+    float offsetX = (bottomLeft.x - topLeft.x) * 3 / (dimension - 7);
+    float offsetY = (bottomLeft.y - topLeft.y) * 3 / (dimension - 7);
+    float fromX = topLeft.x + offsetX;
+    float fromY = topLeft.y + offsetY;
+    float dx = topRight.x - topLeft.x;
+    float dy = topRight.y - topLeft.y;
+    int steps = (int) Math.max(Math.abs(dx), Math.abs(dy));
+    if (steps == 0) {
+      return -1;
+    }
+    int transitions = 0;
+    boolean previous = true;
+    for (int i = 0; i <= steps; i++) {
+      int x = (int) (fromX + dx * i / steps);
+      int y = (int) (fromY + dy * i / steps);
+      if (!inside(x, y)) {
+        return -1;
+      }
+      boolean current = isDark(x, y);
+      if (current != previous) {
+        transitions++;
+        previous = current;
+      }
+    }
+    // The row is dark across both finder patterns and alternates from module 7 to dimension - 8.
+    return transitions + 13;
+  }
+
+  // Sampling
+
+  /**
+   * Maps module coordinates to pixels through the finder pattern centers and the bottom right
+   * alignment pattern's center, or the fourth corner of their parallelogram if it is null.
+   */
+  private static double[] createTransform(
+      FinderPattern topLeft,
+      FinderPattern topRight,
+      FinderPattern bottomLeft,
+      float[] alignment,
+      int dimension) {
+    float bottomRightX = topRight.x - topLeft.x + bottomLeft.x;
+    float bottomRightY = topRight.y - topLeft.y + bottomLeft.y;
+    float sourceBottomRight = dimension - 3.5f;
+    if (alignment != null) {
+      bottomRightX = alignment[0];
+      bottomRightY = alignment[1];
+      sourceBottomRight = dimension - 6.5f;
+    }
+    float far = dimension - 3.5f;
+    double[] fromSquareToModules =
+        squareToQuadrilateral(3.5, 3.5, far, 3.5, sourceBottomRight, sourceBottomRight, 3.5, far);
+    double[] fromSquareToImage =
+        squareToQuadrilateral(
+            topLeft.x,
+            topLeft.y,
+            topRight.x,
+            topRight.y,
+            bottomRightX,
+            bottomRightY,
+            bottomLeft.x,
+            bottomLeft.y);
+    return multiply(fromSquareToImage, adjugate(fromSquareToModules));
+  }
+
+  /**
+   * Returns the center of the bottom right alignment pattern, or null if the symbol has none or it
+   * wasn't found. Candidates are dark runs about a module long between light ones, in widening
+   * squares around where the finder patterns put the pattern, and the first one whose 5 by 5
+   * modules match the pattern wins.
+   */
+  private float[] findAlignmentPattern(
+      FinderPattern topLeft,
+      FinderPattern topRight,
+      FinderPattern bottomLeft,
+      float moduleSize,
+      int dimension) {
+    if (dimension <= 21) {
+      return null;
+    }
+    // One module along each of the symbol's axes, in pixels.
+    float[] axes = {
+      (topRight.x - topLeft.x) / (dimension - 7),
+      (topRight.y - topLeft.y) / (dimension - 7),
+      (bottomLeft.x - topLeft.x) / (dimension - 7),
+      (bottomLeft.y - topLeft.y) / (dimension - 7)
+    };
+    // The alignment pattern is 3 modules in from the finder pattern centers.
+    float toCenter = dimension - 10;
+    int estimateX = (int) (topLeft.x + toCenter * (axes[0] + axes[2]));
+    int estimateY = (int) (topLeft.y + toCenter * (axes[1] + axes[3]));
+    for (int allowance = 4; allowance <= 16; allowance <<= 1) {
+      float[] alignment = findAlignmentPattern(estimateX, estimateY, moduleSize, allowance, axes);
+      if (alignment != null) {
+        return alignment;
+      }
+    }
+    return null;
+  }
+
+  private float[] findAlignmentPattern(
+      int estimateX, int estimateY, float moduleSize, int allowance, float[] axes) {
+    int radius = (int) (allowance * moduleSize);
+    int left = Math.max(0, estimateX - radius);
+    int right = Math.min(width - 1, estimateX + radius);
+    int top = Math.max(0, estimateY - radius);
+    int bottom = Math.min(height - 1, estimateY + radius);
+    if (right - left < 3 * moduleSize || bottom - top < 3 * moduleSize) {
+      return null;
+    }
+    float[] best = null;
+    float bestDistance = Float.MAX_VALUE;
+    for (int y = top; y <= bottom; y++) {
+      int x = left;
+      while (x <= right) {
+        int lightStart = x;
+        while (x <= right && !isDark(x, y)) {
+          x++;
+        }
+        int darkStart = x;
+        while (x <= right && isDark(x, y)) {
+          x++;
+        }
+        int lightEnd = x;
+        while (lightEnd <= right && !isDark(lightEnd, y)) {
+          lightEnd++;
+        }
+        if (lightEnd > right
+            || !isAboutOneModule(darkStart - lightStart, moduleSize)
+            || !isAboutOneModule(x - darkStart, moduleSize)
+            || !isAboutOneModule(lightEnd - x, moduleSize)) {
+          continue;
+        }
+        float centerX = darkStart + (x - darkStart) / 2f;
+        float centerY = crossCheckAlignment((int) centerX, y, moduleSize);
+        if (Float.isNaN(centerY) || !matchesAlignmentPattern(centerX, centerY, axes)) {
+          continue;
+        }
+        float distance = Math.abs(centerX - estimateX) + Math.abs(centerY - estimateY);
+        if (distance < bestDistance) {
+          bestDistance = distance;
+          best = new float[] {centerX, centerY};
+        }
+      }
+    }
+    return best;
+  }
+
+  // Rows and columns cross rotated modules diagonally, up to the square root of 2 wider.
+  private static boolean isAboutOneModule(int run, float moduleSize) {
+    return run > moduleSize / 2 && run < moduleSize * 1.75f;
+  }
+
+  // Returns the center of the dark run through (x, y) vertically, or NaN if it isn't about a
+  // module long between light runs about as long.
+  private float crossCheckAlignment(int x, int y, float moduleSize) {
+    int maxCount = (int) (2 * moduleSize);
+    int up = y;
+    while (up >= 0 && isDark(x, up) && y - up <= maxCount) {
+      up--;
+    }
+    int lightAbove = 0;
+    while (up - lightAbove >= 0 && !isDark(x, up - lightAbove) && lightAbove <= maxCount) {
+      lightAbove++;
+    }
+    int down = y;
+    while (down < height && isDark(x, down) && down - y <= maxCount) {
+      down++;
+    }
+    int lightBelow = 0;
+    while (down + lightBelow < height && !isDark(x, down + lightBelow) && lightBelow <= maxCount) {
+      lightBelow++;
+    }
+    if (isAboutOneModule(down - up - 1, moduleSize)
+        && isAboutOneModule(lightAbove, moduleSize)
+        && isAboutOneModule(lightBelow, moduleSize)) {
+      return (up + 1 + down) / 2f;
+    }
+    return Float.NaN;
+  }
+
+  // Samples the 5 by 5 modules around (x, y), which are dark except for the ring around the
+  // center, and allows two of them to differ.
+  private boolean matchesAlignmentPattern(float x, float y, float[] axes) {
+    int mismatches = 0;
+    for (int row = -2; row <= 2; row++) {
+      for (int column = -2; column <= 2; column++) {
+        int pixelX = (int) (x + column * axes[0] + row * axes[2]);
+        int pixelY = (int) (y + column * axes[1] + row * axes[3]);
+        boolean expected = Math.max(Math.abs(row), Math.abs(column)) != 1;
+        if (!inside(pixelX, pixelY) || isDark(pixelX, pixelY) != expected) {
+          if (++mismatches > 2) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  private boolean[] sample(double[] transform, int dimension) throws FormatException {
+    boolean[] modules = new boolean[dimension * dimension];
+    for (int y = 0; y < dimension; y++) {
+      for (int x = 0; x < dimension; x++) {
+        double[] point = apply(transform, x + 0.5, y + 0.5);
+        int pixelX = (int) point[0];
+        int pixelY = (int) point[1];
+        // A module a pixel outside is rounding; further out, the transform is wrong.
+        if (pixelX < -1 || pixelY < -1 || pixelX > width || pixelY > height) {
+          throw new FormatException("The symbol extends past the image.");
+        }
+        pixelX = Math.min(width - 1, Math.max(0, pixelX));
+        pixelY = Math.min(height - 1, Math.max(0, pixelY));
+        modules[y * dimension + x] = isDark(pixelX, pixelY);
+      }
+    }
+    return modules;
+  }
+
+  // Perspective transforms are 3x3 matrices, row major, mapping (x, y, 1) column vectors.
+
+  // Maps the unit square's (0, 0), (1, 0), (1, 1) and (0, 1) to the four points.
+  private static double[] squareToQuadrilateral(
+      double x0, double y0, double x1, double y1, double x2, double y2, double x3, double y3) {
+    double dx3 = x0 - x1 + x2 - x3;
+    double dy3 = y0 - y1 + y2 - y3;
+    if (dx3 == 0 && dy3 == 0) {
+      return new double[] {x1 - x0, x3 - x0, x0, y1 - y0, y3 - y0, y0, 0, 0, 1};
+    }
+    double dx1 = x1 - x2;
+    double dx2 = x3 - x2;
+    double dy1 = y1 - y2;
+    double dy2 = y3 - y2;
+    double denominator = dx1 * dy2 - dx2 * dy1;
+    double g = (dx3 * dy2 - dx2 * dy3) / denominator;
+    double h = (dx1 * dy3 - dx3 * dy1) / denominator;
+    return new double[] {
+      x1 - x0 + g * x1, x3 - x0 + h * x3, x0, y1 - y0 + g * y1, y3 - y0 + h * y3, y0, g, h, 1
+    };
+  }
+
+  // The inverse up to scale, which is all a projective transform needs.
+  private static double[] adjugate(double[] m) {
+    return new double[] {
+      m[4] * m[8] - m[5] * m[7],
+      m[2] * m[7] - m[1] * m[8],
+      m[1] * m[5] - m[2] * m[4],
+      m[5] * m[6] - m[3] * m[8],
+      m[0] * m[8] - m[2] * m[6],
+      m[2] * m[3] - m[0] * m[5],
+      m[3] * m[7] - m[4] * m[6],
+      m[1] * m[6] - m[0] * m[7],
+      m[0] * m[4] - m[1] * m[3]
+    };
+  }
+
+  private static double[] multiply(double[] a, double[] b) {
+    double[] product = new double[9];
+    for (int row = 0; row < 3; row++) {
+      for (int column = 0; column < 3; column++) {
+        product[row * 3 + column] =
+            a[row * 3] * b[column]
+                + a[row * 3 + 1] * b[3 + column]
+                + a[row * 3 + 2] * b[6 + column];
+      }
+    }
+    return product;
+  }
+
+  private static double[] apply(double[] m, double x, double y) {
+    double w = m[6] * x + m[7] * y + m[8];
+    return new double[] {(m[0] * x + m[1] * y + m[2]) / w, (m[3] * x + m[4] * y + m[5]) / w};
+  }
+
+  // Symbol structure
+
+  private static boolean module(boolean[] modules, int dimension, int x, int y) {
+    return modules[y * dimension + x];
+  }
+
+  private static int readVersion(boolean[] modules, int dimension) throws FormatException {
+    // Next to the top right finder pattern, and transposed next to the bottom left one.
+    int topRight = 0;
+    int bottomLeft = 0;
+    for (int j = 5; j >= 0; j--) {
+      for (int i = dimension - 9; i >= dimension - 11; i--) {
+        topRight = (topRight << 1) | (module(modules, dimension, i, j) ? 1 : 0);
+        bottomLeft = (bottomLeft << 1) | (module(modules, dimension, j, i) ? 1 : 0);
+      }
+    }
+    int bestVersion = -1;
+    int bestDistance = Integer.MAX_VALUE;
+    for (int version = 7; version <= 40; version++) {
+      int code = versionCode(version);
+      int distance =
+          Math.min(Integer.bitCount(code ^ topRight), Integer.bitCount(code ^ bottomLeft));
+      if (distance < bestDistance) {
+        bestDistance = distance;
+        bestVersion = version;
+      }
+    }
+    // The BCH(18, 6) code corrects up to 3 bit errors.
+    if (bestDistance > 3) {
+      throw new FormatException("Unreadable version information.");
+    }
+    return bestVersion;
+  }
+
+  private static int versionCode(int version) {
+    return (version << 12) | bchRemainder(version << 12, 0x1f25, 12);
+  }
+
+  private static int formatCode(int data) {
+    return ((data << 10) | bchRemainder(data << 10, 0x537, 10)) ^ FORMAT_MASK;
+  }
+
+  private static int bchRemainder(int value, int generator, int degree) {
+    for (int bit = 31; bit >= degree; bit--) {
+      if ((value & (1 << bit)) != 0) {
+        value ^= generator << (bit - degree);
+      }
+    }
+    return value;
+  }
+
+  // Returns the 5 format bits: the level bits, then the mask.
+  private static int readFormat(boolean[] modules, int dimension) throws FormatException {
+    int first = 0;
+    for (int i = 0; i <= 5; i++) {
+      first = (first << 1) | (module(modules, dimension, i, 8) ? 1 : 0);
+    }
+    first = (first << 1) | (module(modules, dimension, 7, 8) ? 1 : 0);
+    first = (first << 1) | (module(modules, dimension, 8, 8) ? 1 : 0);
+    first = (first << 1) | (module(modules, dimension, 8, 7) ? 1 : 0);
+    for (int j = 5; j >= 0; j--) {
+      first = (first << 1) | (module(modules, dimension, 8, j) ? 1 : 0);
+    }
+    int second = 0;
+    for (int j = dimension - 1; j >= dimension - 7; j--) {
+      second = (second << 1) | (module(modules, dimension, 8, j) ? 1 : 0);
+    }
+    for (int i = dimension - 8; i < dimension; i++) {
+      second = (second << 1) | (module(modules, dimension, i, 8) ? 1 : 0);
+    }
+    int bestData = -1;
+    int bestDistance = Integer.MAX_VALUE;
+    for (int data = 0; data < 32; data++) {
+      int code = formatCode(data);
+      int distance = Math.min(Integer.bitCount(code ^ first), Integer.bitCount(code ^ second));
+      if (distance < bestDistance) {
+        bestDistance = distance;
+        bestData = data;
+      }
+    }
+    if (bestDistance > 3) {
+      throw new FormatException("Unreadable format information.");
+    }
+    return bestData;
+  }
+
+  private static int[] alignmentPositions(int version) {
+    if (version == 1) {
+      return new int[0];
+    }
+    int count = version / 7 + 2;
+    int step = version == 32 ? 26 : (version * 4 + count * 2 + 1) / (count * 2 - 2) * 2;
+    int[] positions = new int[count];
+    positions[0] = 6;
+    for (int i = count - 1, position = version * 4 + 10; i >= 1; i--, position -= step) {
+      positions[i] = position;
+    }
+    return positions;
+  }
+
+  // Marks the finder, timing, alignment, format and version modules, which hold no data.
+  private static boolean[] functionModules(int dimension, int version) {
+    boolean[] function = new boolean[dimension * dimension];
+    markRegion(function, dimension, 0, 0, 9, 9);
+    markRegion(function, dimension, dimension - 8, 0, 8, 9);
+    markRegion(function, dimension, 0, dimension - 8, 9, 8);
+    int[] positions = alignmentPositions(version);
+    int last = positions.length - 1;
+    for (int i = 0; i < positions.length; i++) {
+      for (int j = 0; j < positions.length; j++) {
+        // Alignment patterns would overlap the finder patterns at three corners.
+        if ((i == 0 && j == 0) || (i == 0 && j == last) || (i == last && j == 0)) {
+          continue;
+        }
+        markRegion(function, dimension, positions[i] - 2, positions[j] - 2, 5, 5);
+      }
+    }
+    markRegion(function, dimension, 6, 9, 1, dimension - 17);
+    markRegion(function, dimension, 9, 6, dimension - 17, 1);
+    if (version >= 7) {
+      markRegion(function, dimension, dimension - 11, 0, 3, 6);
+      markRegion(function, dimension, 0, dimension - 11, 6, 3);
+    }
+    return function;
+  }
+
+  private static void markRegion(
+      boolean[] function, int dimension, int left, int top, int regionWidth, int regionHeight) {
+    for (int y = top; y < top + regionHeight; y++) {
+      for (int x = left; x < left + regionWidth; x++) {
+        function[y * dimension + x] = true;
+      }
+    }
+  }
+
+  private static boolean isMasked(int mask, int y, int x) {
+    switch (mask) {
+      case 0:
+        return ((y + x) & 1) == 0;
+      case 1:
+        return (y & 1) == 0;
+      case 2:
+        return x % 3 == 0;
+      case 3:
+        return (y + x) % 3 == 0;
+      case 4:
+        return ((y / 2 + x / 3) & 1) == 0;
+      case 5:
+        return (y * x) % 2 + (y * x) % 3 == 0;
+      case 6:
+        return (((y * x) % 2 + (y * x) % 3) & 1) == 0;
+      default:
+        return (((y + x) % 2 + (y * x) % 3) & 1) == 0;
+    }
+  }
+
+  private static String decodeModules(boolean[] modules, int dimension, int version)
+      throws FormatException {
+    int format = readFormat(modules, dimension);
+    int levelBits = format >> 3;
+    int mask = format & 7;
+    int level = 0;
+    while (LEVEL_BITS[level] != levelBits) {
+      level++;
+    }
+
+    // Codewords run in pairs of columns from the right, alternately upwards and downwards,
+    // skipping the vertical timing pattern.
+    boolean[] function = functionModules(dimension, version);
+    int[] raw = new int[countCodewords(function)];
+    int rawOffset = 0;
+    int bits = 0;
+    int current = 0;
+    boolean upwards = true;
+    for (int column = dimension - 1; column > 0; column -= 2) {
+      if (column == 6) {
+        column--;
+      }
+      for (int count = 0; count < dimension; count++) {
+        int y = upwards ? dimension - 1 - count : count;
+        for (int offset = 0; offset < 2; offset++) {
+          int x = column - offset;
+          if (function[y * dimension + x]) {
+            continue;
+          }
+          boolean bit = module(modules, dimension, x, y) ^ isMasked(mask, y, x);
+          current = (current << 1) | (bit ? 1 : 0);
+          if (++bits == 8) {
+            if (rawOffset < raw.length) {
+              raw[rawOffset++] = current;
+            }
+            bits = 0;
+            current = 0;
+          }
+        }
+      }
+      upwards = !upwards;
+    }
+    return decodeSegments(correctBlocks(raw, EC_BLOCKS[version - 1][level]), version);
+  }
+
+  private static int countCodewords(boolean[] function) {
+    int dataModules = 0;
+    for (boolean isFunction : function) {
+      if (!isFunction) {
+        dataModules++;
+      }
+    }
+    // Leftover modules don't make up a whole codeword.
+    return dataModules / 8;
+  }
+
+  // Deinterleaves the blocks, corrects each one and returns their data codewords in order.
+  private static byte[] correctBlocks(int[] raw, int[] layout) throws FormatException {
+    int checkCount = layout[0];
+    int blockCount = 0;
+    int totalData = 0;
+    for (int i = 1; i < layout.length; i += 2) {
+      blockCount += layout[i];
+      totalData += layout[i] * layout[i + 1];
+    }
+    if (totalData + blockCount * checkCount != raw.length) {
+      throw new FormatException("The block layout doesn't fit the symbol.");
+    }
+    int[] dataCounts = new int[blockCount];
+    for (int i = 1, block = 0; i < layout.length; i += 2) {
+      for (int j = 0; j < layout[i]; j++) {
+        dataCounts[block++] = layout[i + 1];
+      }
+    }
+    int shortest = dataCounts[0];
+    int[][] blocks = new int[blockCount][];
+    for (int block = 0; block < blockCount; block++) {
+      blocks[block] = new int[dataCounts[block] + checkCount];
+    }
+    // Data codewords are interleaved first, longer blocks adding one at the end, then the checks.
+    int offset = 0;
+    for (int i = 0; i < shortest; i++) {
+      for (int block = 0; block < blockCount; block++) {
+        blocks[block][i] = raw[offset++];
+      }
+    }
+    for (int block = 0; block < blockCount; block++) {
+      if (dataCounts[block] > shortest) {
+        blocks[block][shortest] = raw[offset++];
+      }
+    }
+    for (int i = 0; i < checkCount; i++) {
+      for (int block = 0; block < blockCount; block++) {
+        blocks[block][dataCounts[block] + i] = raw[offset++];
+      }
+    }
+
+    byte[] data = new byte[totalData];
+    int dataOffset = 0;
+    for (int block = 0; block < blockCount; block++) {
+      try {
+        ReedSolomonDecoder.decode(blocks[block], checkCount);
+      } catch (ReedSolomonDecoder.DecodeException e) {
+        throw new FormatException(e.getMessage());
+      }
+      for (int i = 0; i < dataCounts[block]; i++) {
+        data[dataOffset++] = (byte) blocks[block][i];
+      }
+    }
+    return data;
+  }
+
+  // Data segments
+
+  private static final class BitReader {
+    private final byte[] bytes;
+    private int position;
+
+    BitReader(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    int available() {
+      return bytes.length * 8 - position;
+    }
+
+    int read(int count) throws FormatException {
+      if (count > available()) {
+        throw new FormatException("The data ends inside a segment.");
+      }
+      int value = 0;
+      for (int i = 0; i < count; i++, position++) {
+        value = (value << 1) | ((bytes[position >> 3] >> (7 - (position & 7))) & 1);
+      }
+      return value;
+    }
+  }
+
+  private static String decodeSegments(byte[] data, int version) throws FormatException {
+    BitReader reader = new BitReader(data);
+    StringBuilder text = new StringBuilder();
+    // Character count lengths grow at versions 10 and 27.
+    int sizeClass = version <= 9 ? 0 : version <= 26 ? 1 : 2;
+    Charset charset = null;
+    while (reader.available() >= 4) {
+      int mode = reader.read(4);
+      switch (mode) {
+        case 0x0:
+          // The terminator.
+          return text.toString();
+        case 0x1:
+          decodeNumeric(reader, reader.read(new int[] {10, 12, 14}[sizeClass]), text);
+          break;
+        case 0x2:
+          decodeAlphanumeric(reader, reader.read(new int[] {9, 11, 13}[sizeClass]), text);
+          break;
+        case 0x4:
+          {
+            byte[] bytes = new byte[reader.read(new int[] {8, 16, 16}[sizeClass])];
+            for (int i = 0; i < bytes.length; i++) {
+              bytes[i] = (byte) reader.read(8);
+            }
+            text.append(decodeBytes(bytes, charset));
+            break;
+          }
+        case 0x8:
+          decodeKanji(reader, reader.read(new int[] {8, 10, 12}[sizeClass]), text);
+          break;
+        case 0x7:
+          charset = readEci(reader);
+          break;
+        case 0x3:
+          // Structured append: the symbol's position in the sequence and the parity.
+          reader.read(16);
+          break;
+        case 0x5:
+          // FNC1 in the first position only marks GS1 data.
+          break;
+        case 0x9:
+          // FNC1 in the second position is followed by the application indicator.
+          reader.read(8);
+          break;
+        default:
+          throw new FormatException("Unknown segment mode " + mode + ".");
+      }
+    }
+    return text.toString();
+  }
+
+  private static void decodeNumeric(BitReader reader, int count, StringBuilder text)
+      throws FormatException {
+    while (count >= 3) {
+      int value = reader.read(10);
+      if (value >= 1000) {
+        throw new FormatException("Invalid numeric group.");
+      }
+      text.append((char) ('0' + value / 100)).append((char) ('0' + value / 10 % 10));
+      text.append((char) ('0' + value % 10));
+      count -= 3;
+    }
+    if (count == 2) {
+      int value = reader.read(7);
+      if (value >= 100) {
+        throw new FormatException("Invalid numeric group.");
+      }
+      text.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    } else if (count == 1) {
+      int value = reader.read(4);
+      if (value >= 10) {
+        throw new FormatException("Invalid numeric group.");
+      }
+      text.append((char) ('0' + value));
+    }
+  }
+
+  private static void decodeAlphanumeric(BitReader reader, int count, StringBuilder text)
+      throws FormatException {
+    while (count >= 2) {
+      int value = reader.read(11);
+      if (value >= 45 * 45) {
+        throw new FormatException("Invalid alphanumeric pair.");
+      }
+      text.append(ALPHANUMERIC.charAt(value / 45)).append(ALPHANUMERIC.charAt(value % 45));
+      count -= 2;
+    }
+    if (count == 1) {
+      int value = reader.read(6);
+      if (value >= 45) {
+        throw new FormatException("Invalid alphanumeric character.");
+      }
+      text.append(ALPHANUMERIC.charAt(value));
+    }
+  }
+
+  // Each kanji is 13 bits of its Shift JIS code, offset to close the gap between its two ranges.
+  private static void decodeKanji(BitReader reader, int count, StringBuilder text)
+      throws FormatException {
+    byte[] bytes = new byte[count * 2];
+    for (int i = 0; i < count; i++) {
+      int value = reader.read(13);
+      int assembled = (value / 0xc0) << 8 | (value % 0xc0);
+      assembled += assembled < 0x1f00 ? 0x8140 : 0xc140;
+      bytes[2 * i] = (byte) (assembled >> 8);
+      bytes[2 * i + 1] = (byte) assembled;
+    }
+    text.append(new String(bytes, SHIFT_JIS));
+  }
+
+  // Returns the charset of an ECI designator, or null to keep guessing.
+  private static Charset readEci(BitReader reader) throws FormatException {
+    int first = reader.read(8);
+    int value;
+    if ((first & 0x80) == 0) {
+      value = first;
+    } else if ((first & 0xc0) == 0x80) {
+      value = ((first & 0x3f) << 8) | reader.read(8);
+    } else if ((first & 0xe0) == 0xc0) {
+      value = ((first & 0x1f) << 16) | reader.read(16);
+    } else {
+      throw new FormatException("Invalid ECI designator.");
+    }
+    switch (value) {
+      case 1:
+      case 3:
+        return StandardCharsets.ISO_8859_1;
+      case 20:
+        return SHIFT_JIS;
+      case 26:
+        return StandardCharsets.UTF_8;
+      default:
+        return null;
+    }
+  }
+
+  private static String decodeBytes(byte[] bytes, Charset charset) {
+    if (charset != null) {
+      return new String(bytes, charset);
+    }
+    try {
+      return StandardCharsets.UTF_8
+          .newDecoder()
+          .onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT)
+          .decode(ByteBuffer.wrap(bytes))
+          .toString();
+    } catch (CharacterCodingException e) {
+      return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+  }
+}
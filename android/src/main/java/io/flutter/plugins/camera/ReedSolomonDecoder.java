@@ -0,0 +1,167 @@
+package io.flutter.plugins.camera;
+
+/**
+ * Corrects errors in QR code blocks, which are Reed-Solomon codes over GF(256) with the field
+ * polynomial x^8 + x^4 + x^3 + x^2 + 1 and generator roots starting at alpha^0.
+ *
+ * <p>The error locator comes from Berlekamp-Massey, the error positions from a Chien search and
+ * their values from Forney's formula. A block with n check codewords is corrected when it has at
+ * most n / 2 errors.
+ */
+final class ReedSolomonDecoder {
+  /** Thrown when a block has more errors than its check codewords can correct. */
+  static final class DecodeException extends Exception {
+    DecodeException(String message) {
+      super(message);
+    }
+  }
+
+  private static final int FIELD_POLYNOMIAL = 0x11d;
+  private static final int[] EXP = new int[512];
+  private static final int[] LOG = new int[256];
+
+  static {
+    int value = 1;
+    for (int i = 0; i < 255; i++) {
+      EXP[i] = value;
+      LOG[value] = i;
+      value <<= 1;
+      if (value >= 256) {
+        value ^= FIELD_POLYNOMIAL;
+      }
+    }
+    // Doubled, so products of two logarithms need no modulo.
+    for (int i = 255; i < EXP.length; i++) {
+      EXP[i] = EXP[i - 255];
+    }
+  }
+
+  private ReedSolomonDecoder() {}
+
+  /**
+   * Corrects {@code codewords}, data followed by {@code checkCount} check codewords, in place.
+   *
+   * @return the number of corrected codewords.
+   */
+  static int decode(int[] codewords, int checkCount) throws DecodeException {
+    int n = codewords.length;
+    int[] syndromes = new int[checkCount];
+    boolean clean = true;
+    for (int i = 0; i < checkCount; i++) {
+      // Horner's rule at alpha^i; the first codeword has the highest degree.
+      int value = 0;
+      for (int codeword : codewords) {
+        value = multiply(value, EXP[i]) ^ codeword;
+      }
+      syndromes[i] = value;
+      clean &= value == 0;
+    }
+    if (clean) {
+      return 0;
+    }
+
+    int[] locator = findErrorLocator(syndromes);
+    int errorCount = locator.length - 1;
+    if (errorCount * 2 > checkCount) {
+      throw new DecodeException("Too many errors.");
+    }
+    // The evaluator is S(x) * locator(x) mod x^checkCount; both are stored lowest degree first.
+    int[] evaluator = new int[checkCount];
+    for (int i = 0; i < checkCount; i++) {
+      int value = 0;
+      for (int j = 0; j <= Math.min(i, errorCount); j++) {
+        value ^= multiply(locator[j], syndromes[i - j]);
+      }
+      evaluator[i] = value;
+    }
+
+    int found = 0;
+    for (int position = 0; position < n; position++) {
+      // The codeword at position has the degree n - 1 - position, so it is located by X.
+      int logX = (n - 1 - position) % 255;
+      int inverseX = EXP[(255 - logX) % 255];
+      if (evaluate(locator, inverseX) != 0) {
+        continue;
+      }
+      // The formal derivative keeps the odd terms, each shifted down by one degree.
+      int derivative = 0;
+      for (int j = 1; j <= errorCount; j += 2) {
+        derivative ^= multiply(locator[j], power(inverseX, j - 1));
+      }
+      if (derivative == 0) {
+        throw new DecodeException("The error locator has a repeated root.");
+      }
+      int magnitude = multiply(EXP[logX], divide(evaluate(evaluator, inverseX), derivative));
+      codewords[position] ^= magnitude;
+      found++;
+    }
+    if (found != errorCount) {
+      throw new DecodeException("The errors couldn't be located.");
+    }
+    return found;
+  }
+
+  // Berlekamp-Massey; returns the error locator polynomial, lowest degree first.
+  private static int[] findErrorLocator(int[] syndromes) {
+    int[] locator = new int[syndromes.length + 1];
+    int[] previous = new int[syndromes.length + 1];
+    locator[0] = 1;
+    previous[0] = 1;
+    int length = 0;
+    int shift = 1;
+    int previousDiscrepancy = 1;
+    for (int i = 0; i < syndromes.length; i++) {
+      int discrepancy = syndromes[i];
+      for (int j = 1; j <= length; j++) {
+        discrepancy ^= multiply(locator[j], syndromes[i - j]);
+      }
+      if (discrepancy == 0) {
+        shift++;
+        continue;
+      }
+      int scale = divide(discrepancy, previousDiscrepancy);
+      if (2 * length <= i) {
+        int[] old = locator.clone();
+        subtractShifted(locator, previous, scale, shift);
+        length = i + 1 - length;
+        previous = old;
+        previousDiscrepancy = discrepancy;
+        shift = 1;
+      } else {
+        subtractShifted(locator, previous, scale, shift);
+        shift++;
+      }
+    }
+    int[] trimmed = new int[length + 1];
+    System.arraycopy(locator, 0, trimmed, 0, length + 1);
+    return trimmed;
+  }
+
+  // target -= scale * x^shift * source
+  private static void subtractShifted(int[] target, int[] source, int scale, int shift) {
+    for (int j = 0; j + shift < target.length; j++) {
+      target[j + shift] ^= multiply(scale, source[j]);
+    }
+  }
+
+  // Evaluates a polynomial stored lowest degree first.
+  private static int evaluate(int[] polynomial, int x) {
+    int value = 0;
+    for (int i = polynomial.length - 1; i >= 0; i--) {
+      value = multiply(value, x) ^ polynomial[i];
+    }
+    return value;
+  }
+
+  private static int multiply(int a, int b) {
+    return a == 0 || b == 0 ? 0 : EXP[LOG[a] + LOG[b]];
+  }
+
+  private static int divide(int a, int b) {
+    return a == 0 ? 0 : EXP[LOG[a] + 255 - LOG[b]];
+  }
+
+  private static int power(int a, int exponent) {
+    return exponent == 0 ? 1 : a == 0 ? 0 : EXP[LOG[a] * exponent % 255];
+  }
+}
@@ -0,0 +1,40 @@
+package io.flutter.plugins.camera;
+
+/**
+ * Tracks the capture session being configured, which the command queue waits for, and records
+ * how long configuring it took.
+ */
+final class SessionTracker {
+  private final PipelineMetrics metrics;
+  private long startNanos;
+  private Runnable configuredListener;
+
+  SessionTracker(PipelineMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  void begin() {
+    startNanos = System.nanoTime();
+  }
+
+  /** Ends the configuration, which failed unless {@code configured}, and runs the listener. */
+  void end(boolean configured) {
+    if (configured) {
+      metrics.recordSince(PipelineMetrics.Stage.SESSION_CONFIGURATION, startNanos);
+      PipelineTracer.complete(PipelineTracer.Event.SESSION_CREATION, startNanos);
+    }
+    startNanos = 0;
+    if (configuredListener != null) {
+      configuredListener.run();
+    }
+  }
+
+  boolean isConfiguring() {
+    return startNanos != 0;
+  }
+
+  /** Sets what runs once the session being configured is configured or has failed. */
+  void setConfiguredListener(Runnable listener) {
+    configuredListener = listener;
+  }
+}
@@ -0,0 +1,214 @@
+package io.flutter.plugins.camera;
+
+import java.util.List;
+
+/**
+ * The output combinations a camera must support at its hardware level, from the tables of
+ * CameraDevice.createCaptureSession.
+ *
+ * <p>Sessions outside these tables may still configure on a given device, but can also fail
+ * configuration or drop frames, so the plugin only builds sessions that fit them. LEVEL_3 cameras
+ * are held to the FULL table and EXTERNAL ones to the LIMITED table.
+ */
+final class StreamCombinations {
+  // android.hardware.camera2.CameraMetadata.INFO_SUPPORTED_HARDWARE_LEVEL_* values.
+  static final int LEVEL_LIMITED = 0;
+  static final int LEVEL_FULL = 1;
+  static final int LEVEL_LEGACY = 2;
+  static final int LEVEL_3 = 3;
+  static final int LEVEL_EXTERNAL = 4;
+
+  private static final int VGA_PIXELS = 640 * 480;
+  private static final int PREVIEW_PIXELS = 1920 * 1080;
+
+  /** Thrown when an output would take a session outside the camera's guaranteed combinations. */
+  static final class UnsupportedException extends Exception {
+    UnsupportedException(String output, String level) {
+      super(
+          String.format(
+              "A %s camera doesn't guarantee the session with the %s output added. Remove another"
+                  + " output first.",
+              level, output));
+    }
+
+    UnsupportedException(String message) {
+      super(message);
+    }
+  }
+
+  enum Type {
+    PRIV,
+    YUV,
+    JPEG
+  }
+
+  /** The size classes of the tables, smallest first. */
+  enum SizeClass {
+    VGA,
+    PREVIEW,
+    RECORD,
+    MAXIMUM
+  }
+
+  /** An output of a session, or a slot of a combination. */
+  static final class Stream {
+    final Type type;
+    final SizeClass size;
+
+    Stream(Type type, SizeClass size) {
+      this.type = type;
+      this.size = size;
+    }
+
+    // A smaller output fits a slot of a larger class.
+    boolean fits(Stream slot) {
+      return type == slot.type && size.compareTo(slot.size) <= 0;
+    }
+  }
+
+  private static final Stream[][] LEGACY = {
+    {slot(Type.PRIV, SizeClass.MAXIMUM)},
+    {slot(Type.JPEG, SizeClass.MAXIMUM)},
+    {slot(Type.YUV, SizeClass.MAXIMUM)},
+    {slot(Type.PRIV, SizeClass.PREVIEW), slot(Type.JPEG, SizeClass.MAXIMUM)},
+    {slot(Type.YUV, SizeClass.PREVIEW), slot(Type.JPEG, SizeClass.MAXIMUM)},
+    {slot(Type.PRIV, SizeClass.PREVIEW), slot(Type.PRIV, SizeClass.PREVIEW)},
+    {slot(Type.PRIV, SizeClass.PREVIEW), slot(Type.YUV, SizeClass.PREVIEW)},
+    {
+      slot(Type.PRIV, SizeClass.PREVIEW),
+      slot(Type.YUV, SizeClass.PREVIEW),
+      slot(Type.JPEG, SizeClass.MAXIMUM)
+    },
+  };
+
+  private static final Stream[][] LIMITED = {
+    {slot(Type.PRIV, SizeClass.PREVIEW), slot(Type.PRIV, SizeClass.RECORD)},
+    {slot(Type.PRIV, SizeClass.PREVIEW), slot(Type.YUV, SizeClass.RECORD)},
+    {slot(Type.YUV, SizeClass.PREVIEW), slot(Type.YUV, SizeClass.RECORD)},
+    {
+      slot(Type.PRIV, SizeClass.PREVIEW),
+      slot(Type.PRIV, SizeClass.RECORD),
+      slot(Type.JPEG, SizeClass.RECORD)
+    },
+    {
+      slot(Type.PRIV, SizeClass.PREVIEW),
+      slot(Type.YUV, SizeClass.RECORD),
+      slot(Type.JPEG, SizeClass.RECORD)
+    },
+    {
+      slot(Type.YUV, SizeClass.PREVIEW),
+      slot(Type.YUV, SizeClass.PREVIEW),
+      slot(Type.JPEG, SizeClass.MAXIMUM)
+    },
+  };
+
+  private static final Stream[][] FULL = {
+    {slot(Type.PRIV, SizeClass.PREVIEW), slot(Type.PRIV, SizeClass.MAXIMUM)},
+    {slot(Type.PRIV, SizeClass.PREVIEW), slot(Type.YUV, SizeClass.MAXIMUM)},
+    {slot(Type.YUV, SizeClass.PREVIEW), slot(Type.YUV, SizeClass.MAXIMUM)},
+    {
+      slot(Type.PRIV, SizeClass.PREVIEW),
+      slot(Type.PRIV, SizeClass.PREVIEW),
+      slot(Type.JPEG, SizeClass.MAXIMUM)
+    },
+    {
+      slot(Type.YUV, SizeClass.VGA),
+      slot(Type.PRIV, SizeClass.PREVIEW),
+      slot(Type.YUV, SizeClass.MAXIMUM)
+    },
+    {
+      slot(Type.YUV, SizeClass.VGA),
+      slot(Type.YUV, SizeClass.PREVIEW),
+      slot(Type.YUV, SizeClass.MAXIMUM)
+    },
+  };
+
+  private static final Stream[][][] TABLES = {LEGACY, LIMITED, FULL};
+  private static final String[] TABLE_NAMES = {"LEGACY", "LIMITED", "FULL"};
+
+  // Each level supports its own table and those of the levels below it.
+  private final int tableCount;
+  private final long recordPixels;
+
+  /**
+   * @param hardwareLevel the camera's INFO_SUPPORTED_HARDWARE_LEVEL.
+   * @param recordWidth the width of the largest recording size, which bounds the RECORD class.
+   * @param recordHeight the height of the largest recording size.
+   */
+  StreamCombinations(int hardwareLevel, int recordWidth, int recordHeight) {
+    switch (hardwareLevel) {
+      case LEVEL_FULL:
+      case LEVEL_3:
+        tableCount = 3;
+        break;
+      case LEVEL_LIMITED:
+      case LEVEL_EXTERNAL:
+        tableCount = 2;
+        break;
+      default:
+        tableCount = 1;
+    }
+    recordPixels = Math.max((long) recordWidth * recordHeight, PREVIEW_PIXELS);
+  }
+
+  /** Returns the name of the table the camera is held to. */
+  String getLevelName() {
+    return TABLE_NAMES[tableCount - 1];
+  }
+
+  /** Returns an output of {@code type} and size, classified by its pixel count. */
+  Stream stream(Type type, int width, int height) {
+    long pixels = (long) width * height;
+    SizeClass size;
+    if (pixels <= VGA_PIXELS) {
+      size = SizeClass.VGA;
+    } else if (pixels <= PREVIEW_PIXELS) {
+      size = SizeClass.PREVIEW;
+    } else if (pixels <= recordPixels) {
+      size = SizeClass.RECORD;
+    } else {
+      size = SizeClass.MAXIMUM;
+    }
+    return new Stream(type, size);
+  }
+
+  /** Returns whether every output of {@code streams} fills its own slot of one combination. */
+  boolean isGuaranteed(List<Stream> streams) {
+    for (int table = 0; table < tableCount; table++) {
+      if (fitsAny(TABLES[table], streams)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean fitsAny(Stream[][] combinations, List<Stream> streams) {
+    for (Stream[] slots : combinations) {
+      if (slots.length >= streams.size() && assign(streams, 0, slots, new boolean[slots.length])) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Tries every slot for each stream in turn; combinations have at most three slots.
+  private static boolean assign(List<Stream> streams, int index, Stream[] slots, boolean[] used) {
+    if (index == streams.size()) {
+      return true;
+    }
+    for (int i = 0; i < slots.length; i++) {
+      if (!used[i] && streams.get(index).fits(slots[i])) {
+        used[i] = true;
+        if (assign(streams, index + 1, slots, used)) {
+          return true;
+        }
+        used[i] = false;
+      }
+    }
+    return false;
+  }
+
+  private static Stream slot(Type type, SizeClass size) {
+    return new Stream(type, size);
+  }
+}
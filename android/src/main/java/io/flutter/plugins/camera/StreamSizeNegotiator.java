@@ -0,0 +1,177 @@
+package io.flutter.plugins.camera;
+
+import android.util.Size;
+import io.flutter.plugin.common.MethodCall;
+import java.util.List;
+
+/**
+ * Chooses the preview, image stream and still sizes from what the device supports, given the
+ * frame rate the stream has to sustain, a budget of bytes per second for the stream and an aspect
+ * ratio.
+ *
+ * <p>Each output is chosen on its own from its candidates. A candidate is preferred, in order, if
+ * its minimum frame duration sustains the frame rate, if it fits the output's bounds, usually
+ * those of the resolution preset, and its byte budget, and if it is closer to the aspect ratio;
+ * among equals the largest wins. If nothing sustains the rate the fastest candidate is used, so
+ * the stream degrades rather than stalls.
+ */
+final class StreamSizeNegotiator {
+  /** An output size and the minimum frame duration the device reports for it. */
+  static final class Candidate {
+    final Size size;
+    final long minFrameDurationNanos;
+
+    Candidate(Size size, long minFrameDurationNanos) {
+      this.size = size;
+      this.minFrameDurationNanos = minFrameDurationNanos;
+    }
+
+    double maxFps() {
+      return minFrameDurationNanos > 0 ? 1e9 / minFrameDurationNanos : Double.MAX_VALUE;
+    }
+  }
+
+  /** What initialize asked of the outputs. */
+  static final class Constraints {
+    static final Constraints DEFAULT =
+        new Constraints(30, 1920L * 1080 * 3 / 2 * 30, 16.0 / 9.0);
+
+    /** The frame rate every output has to sustain. */
+    final double targetFps;
+    /** The most image stream bytes per second, at 1.5 bytes per YUV_420_888 pixel. */
+    final long maxStreamBytesPerSecond;
+    /** Width over height in sensor orientation, so at least 1. */
+    final double aspectRatio;
+
+    Constraints(double targetFps, long maxStreamBytesPerSecond, double aspectRatio) {
+      this.targetFps = targetFps;
+      this.maxStreamBytesPerSecond = maxStreamBytesPerSecond;
+      this.aspectRatio = aspectRatio >= 1 ? aspectRatio : 1 / aspectRatio;
+    }
+
+    /**
+     * Reads the optional {@code streamFps}, {@code maxStreamBytesPerSecond} and {@code
+     * aspectRatio} arguments, which may be given in either orientation.
+     */
+    static Constraints fromMethodCall(MethodCall call) {
+      Number fps = call.argument("streamFps");
+      Number budget = call.argument("maxStreamBytesPerSecond");
+      Number aspectRatio = call.argument("aspectRatio");
+      return new Constraints(
+          fps != null && fps.doubleValue() > 0 ? fps.doubleValue() : DEFAULT.targetFps,
+          budget != null && budget.longValue() > 0
+              ? budget.longValue()
+              : DEFAULT.maxStreamBytesPerSecond,
+          aspectRatio != null && aspectRatio.doubleValue() > 0
+              ? aspectRatio.doubleValue()
+              : DEFAULT.aspectRatio);
+    }
+  }
+
+  // Aspect ratios this close count as equal, which absorbs sizes rounded to multiples of 16.
+  private static final double ASPECT_TOLERANCE = 0.01;
+  // android.graphics.ImageFormat.YUV_420_888 has 12 bits per pixel.
+  private static final double STREAM_BYTES_PER_PIXEL = 1.5;
+
+  private final Constraints constraints;
+
+  StreamSizeNegotiator(Constraints constraints) {
+    this.constraints = constraints;
+  }
+
+  /** Chooses the preview size, bounded by {@code maxWidth} by {@code maxHeight}. */
+  Size choosePreviewSize(List<Candidate> candidates, int maxWidth, int maxHeight) {
+    return choose(candidates, maxWidth, maxHeight, Long.MAX_VALUE, 0);
+  }
+
+  /**
+   * Chooses the image stream size, bounded by {@code maxWidth} by {@code maxHeight}, which also
+   * has to fit the byte budget.
+   */
+  Size chooseStreamSize(List<Candidate> candidates, int maxWidth, int maxHeight) {
+    return choose(
+        candidates,
+        maxWidth,
+        maxHeight,
+        constraints.maxStreamBytesPerSecond,
+        STREAM_BYTES_PER_PIXEL);
+  }
+
+  /**
+   * Chooses the still size, bounded by {@code maxWidth} by {@code maxHeight}. Still captures share
+   * the frame with the repeating outputs, so they too have to sustain the frame rate to keep the
+   * preview from stuttering.
+   */
+  Size chooseStillSize(List<Candidate> candidates, int maxWidth, int maxHeight) {
+    return choose(candidates, maxWidth, maxHeight, Long.MAX_VALUE, 0);
+  }
+
+  private Size choose(
+      List<Candidate> candidates,
+      int maxWidth,
+      int maxHeight,
+      long maxBytesPerSecond,
+      double bytesPerPixel) {
+    if (candidates.isEmpty()) {
+      throw new IllegalArgumentException("No output sizes to choose from.");
+    }
+    Candidate best = null;
+    for (Candidate candidate : candidates) {
+      if (best == null
+          || compare(candidate, best, maxWidth, maxHeight, maxBytesPerSecond, bytesPerPixel) > 0) {
+        best = candidate;
+      }
+    }
+    return best.size;
+  }
+
+  // Returns a positive number if a is the better choice.
+  private int compare(
+      Candidate a,
+      Candidate b,
+      int maxWidth,
+      int maxHeight,
+      long maxBytesPerSecond,
+      double bytesPerPixel) {
+    boolean aSustains = a.maxFps() >= constraints.targetFps;
+    boolean bSustains = b.maxFps() >= constraints.targetFps;
+    if (aSustains != bSustains) {
+      return aSustains ? 1 : -1;
+    }
+    if (!aSustains && a.maxFps() != b.maxFps()) {
+      return Double.compare(a.maxFps(), b.maxFps());
+    }
+
+    boolean aFits = fits(a.size, maxWidth, maxHeight, maxBytesPerSecond, bytesPerPixel);
+    boolean bFits = fits(b.size, maxWidth, maxHeight, maxBytesPerSecond, bytesPerPixel);
+    if (aFits != bFits) {
+      return aFits ? 1 : -1;
+    }
+
+    double aAspectError = aspectError(a.size);
+    double bAspectError = aspectError(b.size);
+    if (aAspectError != bAspectError) {
+      return Double.compare(bAspectError, aAspectError);
+    }
+
+    // Past the bounds or the budget, the smallest size is the one that overshoots least.
+    int byArea = new CameraSizes.CompareSizesByArea().compare(a.size, b.size);
+    return aFits ? byArea : -byArea;
+  }
+
+  private boolean fits(
+      Size size, int maxWidth, int maxHeight, long maxBytesPerSecond, double bytesPerPixel) {
+    double bytesPerSecond =
+        (double) size.getWidth() * size.getHeight() * bytesPerPixel * constraints.targetFps;
+    return size.getWidth() <= maxWidth
+        && size.getHeight() <= maxHeight
+        && bytesPerSecond <= maxBytesPerSecond;
+  }
+
+  private double aspectError(Size size) {
+    double error =
+        Math.abs((double) size.getWidth() / size.getHeight() - constraints.aspectRatio)
+            / constraints.aspectRatio;
+    return error <= ASPECT_TOLERANCE ? 0 : error;
+  }
+}
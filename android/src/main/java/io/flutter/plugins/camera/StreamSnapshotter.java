@@ -0,0 +1,128 @@
+package io.flutter.plugins.camera;
+
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.graphics.YuvImage;
+import android.os.Handler;
+import android.os.Looper;
+import io.flutter.plugin.common.MethodChannel.Result;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Saves JPEGs of image stream frames without a still capture request.
+ *
+ * <p>Requests are served by the next frame the stream delivers, so they complete about one frame
+ * time plus the encoding later. The frame is packed to NV21 on the stream's thread, optionally
+ * downsampled, and encoded with {@link YuvImage} on a worker thread shared by every camera, so
+ * reinitializing the camera doesn't leave threads behind. Requests and frames must arrive on the
+ * main thread, which is also where results are delivered.
+ */
+final class StreamSnapshotter {
+  private static final class Request {
+    final File file;
+    final int quality;
+    final int maxSize;
+    final long startNanos;
+    final Result result;
+
+    Request(File file, int quality, int maxSize, Result result) {
+      this.file = file;
+      this.quality = quality;
+      this.maxSize = maxSize;
+      this.startNanos = System.nanoTime();
+      this.result = result;
+    }
+  }
+
+  private static final ExecutorService encoder = Executors.newSingleThreadExecutor();
+
+  private final PipelineMetrics metrics;
+  private final Handler mainHandler = new Handler(Looper.getMainLooper());
+  private final List<Request> pendingRequests = new ArrayList<>();
+
+  StreamSnapshotter(PipelineMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  /**
+   * Saves the next frame to {@code file}.
+   *
+   * @param maxSize the longest side of the JPEG, or 0 to keep the stream resolution.
+   */
+  void request(File file, int quality, int maxSize, Result result) {
+    pendingRequests.add(new Request(file, quality, maxSize, result));
+  }
+
+  boolean hasPendingRequests() {
+    return !pendingRequests.isEmpty();
+  }
+
+  /** Serves the pending requests with {@code frame}, which stays open for the caller to close. */
+  void onFrame(FrameSource.Frame frame) {
+    for (final Request request : pendingRequests) {
+      int width = frame.getWidth();
+      int height = frame.getHeight();
+      int step = 1;
+      if (request.maxSize > 0) {
+        while (Math.max(width, height) / step > request.maxSize) {
+          step++;
+        }
+      }
+      final int outWidth = ImageBuffers.downsampledSize(width, step);
+      final int outHeight = ImageBuffers.downsampledSize(height, step);
+      final byte[] nv21 = new byte[outWidth * outHeight * 3 / 2];
+      ImageBuffers.packNv21Downsampled(
+          frame.getPlaneBuffer(0),
+          frame.getRowStride(0),
+          frame.getPlaneBuffer(1),
+          frame.getPlaneBuffer(2),
+          frame.getRowStride(1),
+          frame.getPixelStride(1),
+          width,
+          height,
+          step,
+          nv21);
+      encoder.execute(() -> encode(request, nv21, outWidth, outHeight));
+    }
+    pendingRequests.clear();
+  }
+
+  /** Fails the pending requests, for example because the stream stopped. */
+  void cancel(String reason) {
+    for (Request request : pendingRequests) {
+      request.result.error("snapshotFailed", reason, null);
+    }
+    pendingRequests.clear();
+  }
+
+  private void encode(final Request request, byte[] nv21, int width, int height) {
+    YuvImage image = new YuvImage(nv21, ImageFormat.NV21, width, height, null);
+    boolean written;
+    PipelineTracer.begin(PipelineTracer.Event.FILE_WRITE);
+    try (FileOutputStream outputStream = new FileOutputStream(request.file)) {
+      written = image.compressToJpeg(new Rect(0, 0, width, height), request.quality, outputStream);
+    } catch (IOException | RuntimeException e) {
+      // Every failure has to answer the request.
+      written = false;
+    } finally {
+      PipelineTracer.end(PipelineTracer.Event.FILE_WRITE);
+    }
+    metrics.recordSince(PipelineMetrics.Stage.STREAM_SNAPSHOT, request.startNanos);
+
+    final boolean succeeded = written;
+    mainHandler.post(
+        () -> {
+          if (succeeded) {
+            request.result.success(null);
+          } else {
+            request.result.error("IOError", "Failed saving snapshot", null);
+          }
+        });
+  }
+}
@@ -0,0 +1,208 @@
+package io.flutter.plugins.camera;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Converts YUV_420_888 frames to RGBA_8888 or RGB_565 on a fork-join pool, split into stripes of
+ * rows.
+ *
+ * <p>The planes are first copied into arrays that are reused for every frame, so the frame can be
+ * closed right away and the stripes read heap memory instead of direct buffers. {@link
+ * #convertAsync} converts one frame at a time without blocking the calling thread.
+ *
+ * <p>Any row and pixel stride is supported, so planar, semi-planar and padded layouts all work.
+ * Colors use the full range BT.601 matrix of JFIF, which is what Camera2 produces. Output arrays
+ * come from a small pool and should be handed back with {@link #release(byte[])} once sent.
+ */
+final class YuvToRgbConverter {
+  /** Receives a frame converted by {@link #convertAsync}, on a thread of the pool. */
+  interface Callback {
+    void onConverted(byte[] rgb, long conversionNanos);
+  }
+
+  enum OutputFormat {
+    // android.graphics.PixelFormat.RGBA_8888
+    RGBA_8888(4, 1),
+    // android.graphics.ImageFormat.RGB_565, little endian like an Android RGB_565 bitmap.
+    RGB_565(2, 4);
+
+    final int bytesPerPixel;
+    final int androidFormat;
+
+    OutputFormat(int bytesPerPixel, int androidFormat) {
+      this.bytesPerPixel = bytesPerPixel;
+      this.androidFormat = androidFormat;
+    }
+  }
+
+  // Small enough to spread a 480p frame over 8 cores, large enough to amortize task overhead.
+  private static final int ROWS_PER_STRIPE = 32;
+  private static final int POOLED_BUFFERS = 3;
+  private static final ForkJoinPool pool =
+      new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+  private final OutputFormat outputFormat;
+  private final ArrayDeque<byte[]> freeBuffers = new ArrayDeque<>();
+  private final AtomicBoolean converting = new AtomicBoolean();
+  // The planes of the frame being converted.
+  private final byte[][] planes = new byte[3][];
+  private final int[] rowStrides = new int[3];
+  private final int[] pixelStrides = new int[3];
+  private int width;
+  private int height;
+
+  YuvToRgbConverter(OutputFormat outputFormat) {
+    this.outputFormat = outputFormat;
+  }
+
+  OutputFormat getOutputFormat() {
+    return outputFormat;
+  }
+
+  /**
+   * Converts {@code frame}, which must be YUV_420_888, into a pooled array, blocking until it is
+   * done. Must not be called while a {@link #convertAsync} conversion is running.
+   */
+  byte[] convert(FrameSource.Frame frame) {
+    copyPlanes(frame);
+    return convertPlanes();
+  }
+
+  /**
+   * Copies the planes of {@code frame}, which must be YUV_420_888, and converts them into a pooled
+   * array on the pool. The frame can be closed once this returns.
+   *
+   * @return false, without touching the frame, while the previous frame is still converting.
+   */
+  boolean convertAsync(FrameSource.Frame frame, final Callback callback) {
+    if (!converting.compareAndSet(false, true)) {
+      return false;
+    }
+    copyPlanes(frame);
+    pool.execute(
+        () -> {
+          try {
+            long startNanos = System.nanoTime();
+            PipelineTracer.begin(PipelineTracer.Event.RGB_CONVERSION);
+            byte[] rgb = convertPlanes();
+            PipelineTracer.end(PipelineTracer.Event.RGB_CONVERSION);
+            callback.onConverted(rgb, System.nanoTime() - startNanos);
+          } finally {
+            converting.set(false);
+          }
+        });
+    return true;
+  }
+
+  private void copyPlanes(FrameSource.Frame frame) {
+    width = frame.getWidth();
+    height = frame.getHeight();
+    for (int i = 0; i < 3; i++) {
+      ByteBuffer plane = frame.getPlaneBuffer(i).duplicate();
+      plane.rewind();
+      if (planes[i] == null || planes[i].length != plane.remaining()) {
+        planes[i] = new byte[plane.remaining()];
+      }
+      plane.get(planes[i]);
+      rowStrides[i] = frame.getRowStride(i);
+      pixelStrides[i] = frame.getPixelStride(i);
+    }
+  }
+
+  private byte[] convertPlanes() {
+    byte[] output = acquire(width * height * outputFormat.bytesPerPixel);
+    pool.invoke(new Stripe(output, 0, height));
+    return output;
+  }
+
+  /** Returns an array from {@link #convert} to the pool. */
+  synchronized void release(byte[] buffer) {
+    if (freeBuffers.size() < POOLED_BUFFERS) {
+      freeBuffers.push(buffer);
+    }
+  }
+
+  private synchronized byte[] acquire(int size) {
+    while (!freeBuffers.isEmpty()) {
+      byte[] buffer = freeBuffers.pop();
+      if (buffer.length == size) {
+        return buffer;
+      }
+    }
+    return new byte[size];
+  }
+
+  private final class Stripe extends RecursiveAction {
+    private final byte[] output;
+    private final int startRow;
+    private final int endRow;
+
+    Stripe(byte[] output, int startRow, int endRow) {
+      this.output = output;
+      this.startRow = startRow;
+      this.endRow = endRow;
+    }
+
+    @Override
+    protected void compute() {
+      if (endRow - startRow > ROWS_PER_STRIPE) {
+        // Keep both halves on even rows so no chroma row is shared between stripes.
+        int middle = ((startRow + endRow) / 2) & ~1;
+        invokeAll(new Stripe(output, startRow, middle), new Stripe(output, middle, endRow));
+      } else {
+        convertRows();
+      }
+    }
+
+    private void convertRows() {
+      byte[] yPlane = planes[0];
+      byte[] uPlane = planes[1];
+      byte[] vPlane = planes[2];
+      int yRowStride = rowStrides[0];
+      int yPixelStride = pixelStrides[0];
+      int uRowStride = rowStrides[1];
+      int uPixelStride = pixelStrides[1];
+      int vRowStride = rowStrides[2];
+      int vPixelStride = pixelStrides[2];
+      boolean rgba = outputFormat == OutputFormat.RGBA_8888;
+
+      int out = startRow * width * outputFormat.bytesPerPixel;
+      for (int row = startRow; row < endRow; row++) {
+        int yRow = row * yRowStride;
+        int uRow = (row >> 1) * uRowStride;
+        int vRow = (row >> 1) * vRowStride;
+        for (int x = 0; x < width; x++) {
+          int chroma = (x >> 1);
+          int u = (uPlane[uRow + chroma * uPixelStride] & 0xff) - 128;
+          int v = (vPlane[vRow + chroma * vPixelStride] & 0xff) - 128;
+          // 16.16 fixed point: 1.402, 0.344136, 0.714136 and 1.772.
+          int y16 = ((yPlane[yRow + x * yPixelStride] & 0xff) << 16) + (1 << 15);
+          int r = clamp((y16 + 91881 * v) >> 16);
+          int g = clamp((y16 - 22554 * u - 46802 * v) >> 16);
+          int b = clamp((y16 + 116130 * u) >> 16);
+          if (rgba) {
+            output[out] = (byte) r;
+            output[out + 1] = (byte) g;
+            output[out + 2] = (byte) b;
+            output[out + 3] = (byte) 0xff;
+            out += 4;
+          } else {
+            int pixel = ((r >> 3) << 11) | ((g >> 2) << 5) | (b >> 3);
+            output[out] = (byte) pixel;
+            output[out + 1] = (byte) (pixel >> 8);
+            out += 2;
+          }
+        }
+      }
+    }
+  }
+
+  private static int clamp(int value) {
+    // Math.min and max compile to conditional moves, unlike a ternary on unpredictable values.
+    return Math.min(255, Math.max(0, value));
+  }
+}
@@ -0,0 +1,17 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+part of 'camera.dart';
+
+/// A YUV output of the capture session with its own size and frame rate,
+/// added by [CameraController.addAnalysisOutput].
+class AnalysisOutput {
+  AnalysisOutput._(this.id, this.size);
+
+  final int id;
+
+  /// The size the camera delivers, in sensor orientation like
+  /// [CameraValue.previewSize].
+  final Size size;
+}
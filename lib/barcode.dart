@@ -0,0 +1,90 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+part of 'camera.dart';
+
+/// The symbologies [CameraController.startBarcodeScanning] can decode.
+enum BarcodeFormat { qrCode, ean13, ean8, upcA, code128 }
+
+/// A barcode decoded from an image stream frame.
+class Barcode {
+  Barcode._fromPlatformData(Map<dynamic, dynamic> data)
+      : format = BarcodeFormat.values.firstWhere(
+            (BarcodeFormat format) => describeEnum(format) == data['format']),
+        text = data['text'],
+        corners = _toOffsets(List<double>.from(data['corners']));
+
+  static List<Offset> _toOffsets(List<double> points) {
+    final List<Offset> offsets = <Offset>[];
+    for (int i = 0; i + 1 < points.length; i += 2) {
+      offsets.add(Offset(points[i], points[i + 1]));
+    }
+    return List<Offset>.unmodifiable(offsets);
+  }
+
+  final BarcodeFormat format;
+
+  /// The decoded payload. A QR code's byte segments are read as UTF-8, or as
+  /// ISO-8859-1 if they aren't valid UTF-8.
+  final String text;
+
+  /// The corners of the symbol in frame pixels, clockwise from the corner
+  /// that is top left when the symbol is upright. A linear barcode spans the
+  /// rows it was read on.
+  final List<Offset> corners;
+}
+
+/// The barcodes decoded from one frame.
+class BarcodeScan {
+  BarcodeScan._fromPlatformData(Map<dynamic, dynamic> data)
+      : barcodes = List<dynamic>.from(data['barcodes'])
+            .map((dynamic barcode) => Barcode._fromPlatformData(barcode))
+            .toList(),
+        frameSize =
+            Size(data['width'].toDouble(), data['height'].toDouble()),
+        timestamp = data['timestamp'],
+        latency = Duration(microseconds: data['latencyMicros']);
+
+  final List<Barcode> barcodes;
+
+  /// The size of the frame, in sensor orientation.
+  final Size frameSize;
+
+  /// The sensor timestamp of the frame, in nanoseconds.
+  final int timestamp;
+
+  /// From the frame reaching the scanner to its barcodes being decoded.
+  final Duration latency;
+}
+
+/// The attempts of the current barcode scan, see
+/// [CameraController.getBarcodeScanStats].
+class BarcodeScanStats {
+  BarcodeScanStats._fromPlatformData(Map<dynamic, dynamic> data)
+      : attempts = data['attempts'],
+        attemptsPerSecond = data['attemptsPerSecond'],
+        skippedFrames = data['skippedFrames'],
+        successfulAttempts = data['successfulAttempts'],
+        firstResult = data['firstResultMillis'] == null
+            ? null
+            : Duration(
+                microseconds: (data['firstResultMillis'] * 1000).round());
+
+  /// The frames decoded.
+  final int attempts;
+
+  /// [attempts] per second since scanning started.
+  final double attemptsPerSecond;
+
+  /// The frames that arrived while a decode was in flight, and weren't
+  /// decoded.
+  final int skippedFrames;
+
+  /// The [attempts] that found barcodes.
+  final int successfulAttempts;
+
+  /// From scanning starting to the first barcode, or null before one is
+  /// found.
+  final Duration firstResult;
+}
@@ -9,7 +9,17 @@ import 'package:flutter/foundation.dart';
 import 'package:flutter/services.dart';
 import 'package:flutter/widgets.dart';
 
+part 'analysis_output.dart';
+part 'barcode.dart';
 part 'camera_image.dart';
+part 'command_queue_stats.dart';
+part 'focus.dart';
+part 'frame_metadata.dart';
+part 'image_statistics.dart';
+part 'memory_usage.dart';
+part 'motion.dart';
+part 'quality.dart';
+part 'settings.dart';
 
 final MethodChannel _channel = const MethodChannel('plugins.flutter.io/camera');
 
@@ -40,6 +50,16 @@ enum ResolutionPreset {
 
 typedef onLatestImageAvailable = Function(CameraImage image);
 
+/// Signature for a callback receiving [ImageStatistics] of streamed frames.
+typedef onImageStatisticsAvailable = Function(ImageStatistics statistics);
+
+/// Signature for a callback receiving the updates of a [MotionGate] that only
+/// sends events.
+typedef onMotionDetected = Function(Motion motion);
+
+/// Signature for a callback receiving the barcodes found in a frame.
+typedef onBarcodesDetected = Function(BarcodeScan scan);
+
 /// Returns the resolution preset as a String.
 String serializeResolutionPreset(ResolutionPreset resolutionPreset) {
   switch (resolutionPreset) {
@@ -90,6 +110,68 @@ Future<List<CameraDescription>> availableCameras() async {
   }
 }
 
+/// Completes with latency statistics for each stage of the camera pipeline.
+///
+/// The result maps a stage name (for example `cameraOpen`,
+/// `sessionConfiguration`, `firstPreviewFrame`, `captureToImage`,
+/// `imageToDisk`, `streamFrameCopy`, `streamFrameConvert`, `streamFrameSend`,
+/// `streamSnapshot`, `focusConvergence`, `burstPicture` or `barcodeScan`) to
+/// its `count`, `meanMicros`, `p50Micros`, `p90Micros`, `p99Micros` and
+/// `maxMicros`.
+/// Statistics are kept across camera instances until [resetCameraMetrics] is
+/// called.
+///
+/// This is only available on Android.
+Future<Map<String, Map<String, num>>> getCameraMetrics() async {
+  try {
+    final Map<String, dynamic> metrics =
+        await _channel.invokeMapMethod<String, dynamic>('getMetrics');
+    return metrics.map((String stage, dynamic stats) =>
+        MapEntry<String, Map<String, num>>(
+            stage, Map<String, num>.from(stats)));
+  } on PlatformException catch (e) {
+    throw CameraException(e.code, e.message);
+  }
+}
+
+/// Clears the statistics returned by [getCameraMetrics].
+Future<void> resetCameraMetrics() async {
+  try {
+    await _channel.invokeMethod<void>('resetMetrics');
+  } on PlatformException catch (e) {
+    throw CameraException(e.code, e.message);
+  }
+}
+
+/// Starts recording a timeline of camera pipeline events.
+///
+/// Session creation, repeating request updates, image acquisition, plane
+/// copies, event channel sends and file writes are recorded until
+/// [stopCameraTrace] is called. Tracing is off by default.
+///
+/// This is only available on Android.
+Future<void> startCameraTrace() async {
+  try {
+    await _channel.invokeMethod<void>('startTrace');
+  } on PlatformException catch (e) {
+    throw CameraException(e.code, e.message);
+  }
+}
+
+/// Stops tracing and writes the events to [path] in the Chrome trace event
+/// format, which can be loaded next to a Flutter timeline.
+///
+/// Completes with the number of `events` written and the number of
+/// `droppedEvents` that did not fit the trace buffers.
+Future<Map<String, int>> stopCameraTrace(String path) async {
+  try {
+    return await _channel.invokeMapMethod<String, int>(
+        'stopTrace', <String, dynamic>{'path': path});
+  } on PlatformException catch (e) {
+    throw CameraException(e.code, e.message);
+  }
+}
+
 class CameraDescription {
   CameraDescription({this.name, this.lensDirection, this.sensorOrientation});
 
@@ -157,6 +239,7 @@ class CameraValue {
     this.isRecordingVideo,
     this.isTakingPicture,
     this.isStreamingImages,
+    this.isSuspended,
     bool isRecordingPaused,
   }) : _isRecordingPaused = isRecordingPaused;
 
@@ -166,6 +249,7 @@ class CameraValue {
           isRecordingVideo: false,
           isTakingPicture: false,
           isStreamingImages: false,
+          isSuspended: false,
           isRecordingPaused: false,
         );
 
@@ -181,6 +265,9 @@ class CameraValue {
   /// True when images from the camera are being streamed.
   final bool isStreamingImages;
 
+  /// True between [CameraController.suspend] and [CameraController.resume].
+  final bool isSuspended;
+
   final bool _isRecordingPaused;
 
   /// True when camera [isRecordingVideo] and recording is paused.
@@ -205,6 +292,7 @@ class CameraValue {
     bool isRecordingVideo,
     bool isTakingPicture,
     bool isStreamingImages,
+    bool isSuspended,
     String errorDescription,
     Size previewSize,
     bool isRecordingPaused,
@@ -216,6 +304,7 @@ class CameraValue {
       isRecordingVideo: isRecordingVideo ?? this.isRecordingVideo,
       isTakingPicture: isTakingPicture ?? this.isTakingPicture,
       isStreamingImages: isStreamingImages ?? this.isStreamingImages,
+      isSuspended: isSuspended ?? this.isSuspended,
       isRecordingPaused: isRecordingPaused ?? _isRecordingPaused,
     );
   }
@@ -228,7 +317,8 @@ class CameraValue {
         'isInitialized: $isInitialized, '
         'errorDescription: $errorDescription, '
         'previewSize: $previewSize, '
-        'isStreamingImages: $isStreamingImages)';
+        'isStreamingImages: $isStreamingImages, '
+        'isSuspended: $isSuspended)';
   }
 }
 
@@ -252,16 +342,46 @@ class CameraController extends ValueNotifier<CameraValue> {
   /// Whether to include audio when recording a video.
   final bool enableAudio;
 
+  static const String _imageStreamFramesChannel =
+      'plugins.flutter.io/camera/imageStreamFrames';
+
   int _textureId;
+  bool _isSlowMo = false;
   bool _isDisposed = false;
   StreamSubscription<dynamic> _eventSubscription;
   StreamSubscription<dynamic> _imageStreamSubscription;
+  StreamSubscription<dynamic> _analysisSubscription;
+  StreamSubscription<dynamic> _barcodeSubscription;
+  final StreamController<QualityChange> _qualityChanges =
+      StreamController<QualityChange>.broadcast();
+  final Map<int, onLatestImageAvailable> _analysisCallbacks =
+      <int, onLatestImageAvailable>{};
   Completer<void> _creatingCompleter;
 
   /// Initializes the camera on the device.
   ///
+  /// The preview, image stream and still sizes are chosen so each output
+  /// sustains [streamFps] frames per second, preferring sizes close to
+  /// [aspectRatio] (either orientation). The image stream is also kept under
+  /// [maxStreamBytesPerSecond] of YUV data. Each defaults to 30 fps, 1080p at
+  /// 30 fps and 16:9 respectively. The image stream and stills are at most the
+  /// video size of the [resolutionPreset].
+  ///
+  /// The camera's image readers are allocated the first time their mode is
+  /// used, and their buffers are kept under [memoryBudgetBytes], 128 MiB by
+  /// default. A tight budget gives readers fewer buffers, and fails the
+  /// method that needed one with `memoryBudgetExceeded` when even the fewest
+  /// don't fit. See [getMemoryUsage].
+  ///
   /// Throws a [CameraException] if the initialization fails.
-  Future<void> initialize(bool isSlowMo, {bool enableMonoMode = false}) async {
+  Future<void> initialize(
+    bool isSlowMo, {
+    bool enableMonoMode = false,
+    double streamFps,
+    int maxStreamBytesPerSecond,
+    double aspectRatio,
+    int memoryBudgetBytes,
+  }) async {
     if (_isDisposed) {
       return Future<void>.value();
     }
@@ -275,10 +395,15 @@ class CameraController extends ValueNotifier<CameraValue> {
           'resolutionPreset': serializeResolutionPreset(resolutionPreset),
           'enableAudio': enableAudio,
           'slowMo': isSlowMo,
-          'enableMonoMode': enableMonoMode
+          'enableMonoMode': enableMonoMode,
+          'streamFps': streamFps,
+          'maxStreamBytesPerSecond': maxStreamBytesPerSecond,
+          'aspectRatio': aspectRatio,
+          'memoryBudgetBytes': memoryBudgetBytes,
         },
       );
       _textureId = reply['textureId'];
+      _isSlowMo = isSlowMo;
       value = value.copyWith(
         isInitialized: true,
         previewSize: Size(
@@ -297,6 +422,30 @@ class CameraController extends ValueNotifier<CameraValue> {
     return _creatingCompleter.future;
   }
 
+  /// Per-frame focus, exposure and timestamp metadata of the preview.
+  ///
+  /// Frames are delivered in batches of at most [maxBatchSize], and a batch
+  /// is sent once its first frame is [maxLatencyMs] old, so high frame rates
+  /// cost one platform message per batch instead of one per frame.
+  ///
+  /// This is only available on Android.
+  Stream<FrameMetadataBatch> frameMetadataStream({
+    int maxBatchSize = 60,
+    int maxLatencyMs = 100,
+  }) {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController',
+        'frameMetadataStream was called on uninitialized CameraController.',
+      );
+    }
+    return EventChannel('flutter.io/cameraPlugin/frameMetadata$_textureId')
+        .receiveBroadcastStream(<String, dynamic>{
+      'maxBatchSize': maxBatchSize,
+      'maxLatencyMs': maxLatencyMs,
+    }).map((dynamic data) => FrameMetadataBatch._fromPlatformData(data));
+  }
+
   /// Prepare the capture session for video recording.
   ///
   /// Use of this method is optional, but it may be called for performance
@@ -328,6 +477,9 @@ class CameraController extends ValueNotifier<CameraValue> {
       case 'cameraClosing':
         value = value.copyWith(isRecordingVideo: false);
         break;
+      case 'quality_changed':
+        _qualityChanges.add(QualityChange._fromPlatformData(map));
+        break;
     }
   }
 
@@ -339,8 +491,27 @@ class CameraController extends ValueNotifier<CameraValue> {
   /// If a file already exists at the provided path an error will be thrown.
   /// The file can be read as this function returns.
   ///
-  /// Throws a [CameraException] if the capture fails.
-  Future<void> takePicture(String path, bool flashMode) async {
+  /// With [metadata], the image's EXIF data is replaced by the capture
+  /// settings, the capture time and the device, plus these optional entries:
+  ///
+  ///  * `latitude`, `longitude` and `altitude`: the GPS position, in degrees
+  ///    and meters.
+  ///  * `description`, `artist`, `copyright`, `software` and `userComment`.
+  ///  * `tags`: other ASCII tags of the image, keyed by their EXIF tag number.
+  ///    The make, model, orientation and date tags are set by the camera and
+  ///    fail the capture with `invalidMetadata` if given.
+  ///
+  /// The EXIF data is written together with the image in a single pass, so
+  /// adding it costs no extra decoding or file rewrite. The camera's
+  /// orientation tag is kept, its thumbnail is dropped.
+  ///
+  /// Throws a [CameraException] if the capture fails, or with the code
+  /// `invalidMetadata` if an entry of [metadata] has a wrong type or range.
+  Future<void> takePicture(
+    String path,
+    bool flashMode, {
+    Map<String, dynamic> metadata,
+  }) async {
     if (!value.isInitialized || _isDisposed) {
       throw CameraException(
         'Uninitialized CameraController.',
@@ -357,7 +528,100 @@ class CameraController extends ValueNotifier<CameraValue> {
       value = value.copyWith(isTakingPicture: true);
       await _channel.invokeMethod<void>(
         'takePicture',
-        <String, dynamic>{'textureId': _textureId, 'path': path, 'flash': flashMode},
+        <String, dynamic>{
+          'textureId': _textureId,
+          'path': path,
+          'flash': flashMode,
+          'metadata': metadata,
+        },
+      );
+      value = value.copyWith(isTakingPicture: false);
+    } on PlatformException catch (e) {
+      value = value.copyWith(isTakingPicture: false);
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  /// Captures a burst of [frameCount] frames, merges them into one image with
+  /// less noise and saves it as a JPEG to [path].
+  ///
+  /// Each frame is aligned to the first one before it is averaged in, and
+  /// parts of a frame where something moved are left out, so handheld bursts
+  /// stay sharp. The merge runs on all cores and the encoding on a worker
+  /// thread. [frameCount] must be between 2 and 16; more frames lower the noise
+  /// further but take longer to capture.
+  ///
+  /// Bursts use the largest YUV size up to the still capture size that the
+  /// camera guarantees next to its other outputs, falling back to the
+  /// recording and then the preview size, and aren't available while
+  /// recording video. The burst output is only added to the
+  /// camera session for the burst, so the preview pauses briefly while the
+  /// session is reconfigured before and after it.
+  ///
+  /// Throws a [CameraException] if the capture fails, or with the code
+  /// `memoryBudgetExceeded` if the burst's buffers and merge memory don't fit
+  /// the camera's memory budget.
+  Future<void> takeBurstPicture(String path, {int frameCount = 8}) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController.',
+        'takeBurstPicture was called on uninitialized CameraController',
+      );
+    }
+    if (value.isTakingPicture) {
+      throw CameraException(
+        'Previous capture has not returned yet.',
+        'takeBurstPicture was called before the previous capture returned.',
+      );
+    }
+    try {
+      value = value.copyWith(isTakingPicture: true);
+      await _channel.invokeMethod<void>(
+        'takeBurstPicture',
+        <String, dynamic>{
+          'textureId': _textureId,
+          'path': path,
+          'frameCount': frameCount,
+        },
+      );
+      value = value.copyWith(isTakingPicture: false);
+    } on PlatformException catch (e) {
+      value = value.copyWith(isTakingPicture: false);
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  /// Captures a still image during a video recording and saves it to [path].
+  ///
+  /// The recording must have been started with `enableVideoSnapshot: true`.
+  /// The still is taken from the recording session, so the video keeps
+  /// recording without dropped frames. Its size is limited to the video size.
+  ///
+  /// Throws a [CameraException] if the capture fails.
+  Future<void> takeVideoSnapshot(String path) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController.',
+        'takeVideoSnapshot was called on uninitialized CameraController',
+      );
+    }
+    if (!value.isRecordingVideo) {
+      throw CameraException(
+        'No video is recording',
+        'takeVideoSnapshot was called when no video is recording.',
+      );
+    }
+    if (value.isTakingPicture) {
+      throw CameraException(
+        'Previous capture has not returned yet.',
+        'takeVideoSnapshot was called before the previous capture returned.',
+      );
+    }
+    try {
+      value = value.copyWith(isTakingPicture: true);
+      await _channel.invokeMethod<void>(
+        'takeVideoSnapshot',
+        <String, dynamic>{'textureId': _textureId, 'path': path},
       );
       value = value.copyWith(isTakingPicture: false);
     } on PlatformException catch (e) {
@@ -366,6 +630,47 @@ class CameraController extends ValueNotifier<CameraValue> {
     }
   }
 
+  /// Saves the next image stream frame as a JPEG at [path].
+  ///
+  /// Unlike [takePicture], this doesn't issue a capture request: the frame is
+  /// taken from the running image stream and encoded in the background, so it
+  /// completes in about one frame time plus the encoding. The JPEG has the
+  /// stream resolution, downsampled so its longest side is at most [maxSize]
+  /// if given, and is not rotated to the device orientation.
+  ///
+  /// This is only available on Android, while images are being streamed.
+  ///
+  /// Throws a [CameraException] if the snapshot fails, with the code
+  /// `snapshotFailed` if [quality] isn't between 0 and 100 or [maxSize] is
+  /// negative.
+  Future<void> snapshot(String path, {int quality = 90, int maxSize}) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController.',
+        'snapshot was called on uninitialized CameraController',
+      );
+    }
+    if (!value.isStreamingImages) {
+      throw CameraException(
+        'No camera is streaming images',
+        'snapshot was called when no camera is streaming images.',
+      );
+    }
+    try {
+      await _channel.invokeMethod<void>(
+        'snapshot',
+        <String, dynamic>{
+          'textureId': _textureId,
+          'path': path,
+          'quality': quality,
+          'maxSize': maxSize,
+        },
+      );
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
   /// Start streaming images from platform camera.
   ///
   /// Settings for capturing images on iOS and Android is set to always use the
@@ -376,17 +681,94 @@ class CameraController extends ValueNotifier<CameraValue> {
   /// have significant frame rate drops for [CameraPreview] on lower end
   /// devices.
   ///
-  /// Throws a [CameraException] if image streaming or video recording has
-  /// already started.
+  /// On Android, images can keep streaming while a (non slow motion) video is
+  /// being recorded. The frames then come from a separate low resolution
+  /// output that is limited to [maxFpsWhileRecording] frames per second, so
+  /// the analysis does not take throughput away from the video encoder. That
+  /// output is only added to recordings started while images are streamed,
+  /// and only if the camera supports it next to the recording's other
+  /// outputs; otherwise the stream pauses until the recording stops.
+  ///
+  /// On Android, [outputFormat] can be [ImageFormatGroup.rgba8888] or
+  /// [ImageFormatGroup.rgb565] to have each frame converted on the platform
+  /// side, across all cores, instead of in Dart. Such images have a single
+  /// plane and report the time the conversion took in
+  /// [CameraImage.conversionMicros].
+  ///
+  /// On Android, a [motionGate] makes the platform analyze every frame and only
+  /// send the ones with motion, each with its [CameraImage.motion]. With
+  /// [MotionGate.eventsOnly], [onMotion] receives the motion updates instead
+  /// and no frames are sent.
+  ///
+  /// On Android, [binaryTransport] sends each frame as a single binary message
+  /// instead of an encoded map, which saves a copy and the per-field encoding
+  /// on both sides. The planes of such images are views on that message and
+  /// [CameraImage.sequenceNumber] is set. Motion updates then only reach
+  /// [onMotion], not [CameraImage.motion].
+  ///
+  /// Throws a [CameraException] if image streaming has already started, or if
+  /// video recording has started and streaming during recording is not
+  /// supported.
   // TODO(bmparr): Add settings for resolution and fps.
-  Future<void> startImageStream(onLatestImageAvailable onAvailable) async {
+  Future<void> startImageStream(
+    onLatestImageAvailable onAvailable, {
+    int maxFpsWhileRecording = 15,
+    ImageFormatGroup outputFormat = ImageFormatGroup.yuv420,
+    MotionGate motionGate,
+    onMotionDetected onMotion,
+    bool binaryTransport = false,
+  }) {
+    return _startImageStream(
+      onAvailable,
+      maxFpsWhileRecording: maxFpsWhileRecording,
+      outputFormat: outputFormat,
+      motionGate: motionGate,
+      binaryTransport: binaryTransport,
+      onMotion: onMotion,
+    );
+  }
+
+  /// Start streaming only exposure and focus statistics of each frame.
+  ///
+  /// Instead of the frames, [onStatistics] receives a luma histogram, the
+  /// mean luma, the ratio of clipped samples and a sharpness measure computed
+  /// on the platform side from every [sampleStep]th pixel of every
+  /// [sampleStep]th row, about a kilobyte per frame. Stop it with
+  /// [stopImageStream].
+  ///
+  /// This is only available on Android.
+  ///
+  /// Throws a [CameraException] like [startImageStream].
+  Future<void> startImageStatisticsStream(
+    onImageStatisticsAvailable onStatistics, {
+    int sampleStep = 2,
+    int maxFpsWhileRecording = 15,
+  }) {
+    return _startImageStream(
+      null,
+      maxFpsWhileRecording: maxFpsWhileRecording,
+      statistics: <String, dynamic>{'sampleStep': sampleStep},
+      onStatistics: onStatistics,
+    );
+  }
+
+  Future<void> _startImageStream(
+    onLatestImageAvailable onAvailable, {
+    int maxFpsWhileRecording,
+    ImageFormatGroup outputFormat = ImageFormatGroup.yuv420,
+    MotionGate motionGate,
+    onMotionDetected onMotion,
+    Map<String, dynamic> statistics,
+    onImageStatisticsAvailable onStatistics,
+    bool binaryTransport = false,
+  }) async {
     if (!value.isInitialized || _isDisposed) {
       throw CameraException(
         'Uninitialized CameraController',
         'startImageStream was called on uninitialized CameraController.',
       );
     }
-    if (value.isRecordingVideo) {
+    if (value.isRecordingVideo && !_canStreamWhileRecording) {
       throw CameraException(
         'A video recording is already started.',
         'startImageStream was called while a video is being recorded.',
@@ -400,17 +782,40 @@ class CameraController extends ValueNotifier<CameraValue> {
     }
 
     try {
-      await _channel.invokeMethod<void>('startImageStream');
+      await _channel.invokeMethod<void>(
+        'startImageStream',
+        <String, dynamic>{
+          'maxFpsWhileRecording': maxFpsWhileRecording,
+          'outputFormat': describeEnum(outputFormat),
+          'motionGate': motionGate?._toPlatformData(),
+          'statistics': statistics,
+          'transport': binaryTransport ? 'binary' : 'eventChannel',
+        },
+      );
       value = value.copyWith(isStreamingImages: true);
     } on PlatformException catch (e) {
       throw CameraException(e.code, e.message);
     }
+    if (binaryTransport) {
+      defaultBinaryMessenger.setMessageHandler(_imageStreamFramesChannel,
+          (ByteData data) async {
+        onAvailable(CameraImage._fromBinary(data));
+        return null;
+      });
+    }
     const EventChannel cameraEventChannel =
         EventChannel('plugins.flutter.io/camera/imageStream');
     _imageStreamSubscription =
         cameraEventChannel.receiveBroadcastStream().listen(
       (dynamic imageData) {
-        onAvailable(CameraImage._fromPlatformData(imageData));
+        if (imageData['planes'] != null) {
+          onAvailable(CameraImage._fromPlatformData(imageData));
+        } else if (imageData['statistics'] != null) {
+          onStatistics(ImageStatistics._fromPlatformData(imageData));
+        } else if (onMotion != null) {
+          onMotion(Motion._fromPlatformData(
+              imageData['motion'], imageData['timestamp']));
+        }
       },
     );
   }
@@ -418,7 +823,7 @@ class CameraController extends ValueNotifier<CameraValue> {
   /// Stop streaming images from platform camera.
   ///
   /// Throws a [CameraException] if image streaming was not started or video
-  /// recording was started.
+  /// recording was started and streaming during recording is not supported.
   Future<void> stopImageStream() async {
     if (!value.isInitialized || _isDisposed) {
       throw CameraException(
@@ -426,7 +831,7 @@ class CameraController extends ValueNotifier<CameraValue> {
         'stopImageStream was called on uninitialized CameraController.',
       );
     }
-    if (value.isRecordingVideo) {
+    if (value.isRecordingVideo && !_canStreamWhileRecording) {
       throw CameraException(
         'A video recording is already started.',
         'stopImageStream was called while a video is being recorded.',
@@ -448,6 +853,196 @@ class CameraController extends ValueNotifier<CameraValue> {
 
     _imageStreamSubscription.cancel();
     _imageStreamSubscription = null;
+    defaultBinaryMessenger.setMessageHandler(_imageStreamFramesChannel, null);
+  }
+
+  /// Decodes barcodes of [formats], or of every [BarcodeFormat] if null, in
+  /// the frames of the image stream.
+  ///
+  /// Frames are decoded on the device, one at a time: frames arriving while
+  /// one is decoded are skipped, so [onDetected] is only called with frames
+  /// that have barcodes, and frames never cross the platform channel. Only
+  /// [scanRegion] of the frame is decoded, as fractions of its width and
+  /// height in sensor orientation, if not null. The image stream's session is
+  /// started if it isn't running, and stays while either is running. Up to one
+  /// QR code and any number of linear barcodes are found per frame.
+  ///
+  /// This is only available on Android.
+  ///
+  /// Throws a [CameraException] if scanning can't be started.
+  Future<void> startBarcodeScanning(
+    onBarcodesDetected onDetected, {
+    List<BarcodeFormat> formats,
+    Rect scanRegion,
+  }) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController',
+        'startBarcodeScanning was called on uninitialized CameraController.',
+      );
+    }
+
+    // Listening first, so the scanner has somewhere to send the first frame's
+    // barcodes by the time it starts.
+    await _barcodeSubscription?.cancel();
+    _barcodeSubscription =
+        EventChannel('flutter.io/cameraPlugin/barcodes$_textureId')
+            .receiveBroadcastStream()
+            .listen((dynamic data) {
+      onDetected(BarcodeScan._fromPlatformData(data));
+    });
+    try {
+      await _channel.invokeMethod<void>(
+        'startBarcodeScanning',
+        <String, dynamic>{
+          'formats': formats?.map(describeEnum)?.toList(),
+          'scanRegion': scanRegion == null
+              ? null
+              : <String, double>{
+                  'left': scanRegion.left,
+                  'top': scanRegion.top,
+                  'right': scanRegion.right,
+                  'bottom': scanRegion.bottom,
+                },
+        },
+      );
+    } on PlatformException catch (e) {
+      await _barcodeSubscription?.cancel();
+      _barcodeSubscription = null;
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  /// Stops decoding barcodes started by [startBarcodeScanning].
+  Future<void> stopBarcodeScanning() async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController',
+        'stopBarcodeScanning was called on uninitialized CameraController.',
+      );
+    }
+
+    await _barcodeSubscription?.cancel();
+    _barcodeSubscription = null;
+    try {
+      await _channel.invokeMethod<void>('stopBarcodeScanning');
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  /// Reports the decode attempts of the current barcode scan, or null while
+  /// not scanning. Scan latencies are in [getCameraMetrics] as `barcodeScan`.
+  ///
+  /// This is only available on Android.
+  Future<BarcodeScanStats> getBarcodeScanStats() async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController',
+        'getBarcodeScanStats was called on uninitialized CameraController',
+      );
+    }
+    try {
+      final Map<dynamic, dynamic> stats = await _channel.invokeMethod(
+        'getBarcodeScanStats',
+        <String, dynamic>{'textureId': _textureId},
+      );
+      return stats == null ? null : BarcodeScanStats._fromPlatformData(stats);
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  /// Adds a YUV output to the capture session for an analyzer that wants
+  /// frames of a different size than the image stream.
+  ///
+  /// The output gets the largest supported size within [maxSize] with the
+  /// stream's aspect ratio, in sensor orientation. The camera's image
+  /// processor does the scaling, which is far cheaper than downscaling on the
+  /// CPU. [onAvailable] receives at most [maxFps] frames per second, or every
+  /// frame if [maxFps] is 0. Adding or removing an output recreates the
+  /// capture session, so the preview pauses briefly. Outputs don't deliver
+  /// frames while a video is recording, and at most two can be added.
+  ///
+  /// Outputs are only added while the session stays within the stream
+  /// combinations the camera guarantees for its hardware level. Below FULL
+  /// that leaves room for one output next to the preview and a still
+  /// capture, and none next to the image stream. The same check applies to
+  /// the image stream, still captures and bursts, whichever is added last.
+  ///
+  /// This is only available on Android.
+  ///
+  /// Throws a [CameraException] if the output can't be added, with the code
+  /// `streamCombinationUnsupported` if it doesn't fit the session, or
+  /// `sessionFailed` if the session with it couldn't be configured.
+  Future<AnalysisOutput> addAnalysisOutput(
+    Size maxSize,
+    onLatestImageAvailable onAvailable, {
+    double maxFps = 0,
+  }) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController',
+        'addAnalysisOutput was called on uninitialized CameraController.',
+      );
+    }
+
+    Map<dynamic, dynamic> reply;
+    try {
+      reply = await _channel.invokeMethod(
+        'addAnalysisOutput',
+        <String, dynamic>{
+          'maxWidth': maxSize.width.toInt(),
+          'maxHeight': maxSize.height.toInt(),
+          'maxFps': maxFps,
+        },
+      );
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+    final int outputId = reply['outputId'];
+    _analysisCallbacks[outputId] = onAvailable;
+    // All outputs share one channel; frames are routed by their output id.
+    _analysisSubscription ??=
+        EventChannel('flutter.io/cameraPlugin/analysis$_textureId')
+            .receiveBroadcastStream()
+            .listen((dynamic imageData) {
+      final onLatestImageAvailable callback =
+          _analysisCallbacks[imageData['outputId']];
+      if (callback != null) {
+        callback(CameraImage._fromPlatformData(imageData));
+      }
+    });
+    return AnalysisOutput._(
+      outputId,
+      Size(reply['width'].toDouble(), reply['height'].toDouble()),
+    );
+  }
+
+  /// Removes an output added by [addAnalysisOutput].
+  ///
+  /// Throws a [CameraException] if the output was already removed.
+  Future<void> removeAnalysisOutput(AnalysisOutput output) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController',
+        'removeAnalysisOutput was called on uninitialized CameraController.',
+      );
+    }
+
+    _analysisCallbacks.remove(output.id);
+    if (_analysisCallbacks.isEmpty) {
+      await _analysisSubscription?.cancel();
+      _analysisSubscription = null;
+    }
+    try {
+      await _channel.invokeMethod<void>(
+        'removeAnalysisOutput',
+        <String, dynamic>{'outputId': output.id},
+      );
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
   }
 
   /// Start a video recording and save the file to [path].
@@ -459,8 +1054,25 @@ class CameraController extends ValueNotifier<CameraValue> {
   /// If a file already exists at the provided path an error will be thrown.
   /// The file can be read as soon as [stopVideoRecording] returns.
   ///
-  /// Throws a [CameraException] if the capture fails.
-  Future<void> startVideoRecording(String filePath, bool flashMode) async {
+  /// Set [enableVideoSnapshot] to be able to call [takeVideoSnapshot] during
+  /// the recording. This adds a still capture output to the recording session
+  /// and is ignored for slow motion recordings.
+  ///
+  /// If [proxyFilePath] is given, a low resolution, low bitrate copy of the
+  /// video (without audio) is encoded at the same time from the same frames
+  /// and written to that path. Like the main file, it can be read as soon as
+  /// [stopVideoRecording] returns. Proxies are only supported on Android and
+  /// not for slow motion recordings.
+  ///
+  /// Throws a [CameraException] if the capture fails, or with the code
+  /// `streamCombinationUnsupported` if the camera doesn't support the
+  /// snapshot or proxy output next to the recording.
+  Future<void> startVideoRecording(
+    String filePath,
+    bool flashMode, {
+    bool enableVideoSnapshot = false,
+    String proxyFilePath,
+  }) async {
     if (!value.isInitialized || _isDisposed) {
       throw CameraException(
         'Uninitialized CameraController',
@@ -473,7 +1085,7 @@ class CameraController extends ValueNotifier<CameraValue> {
         'startVideoRecording was called when a recording is already started.',
       );
     }
-    if (value.isStreamingImages) {
+    if (value.isStreamingImages && !_canStreamWhileRecording) {
       throw CameraException(
         'A camera has started streaming images.',
         'startVideoRecording was called while a camera was streaming images.',
@@ -483,7 +1095,13 @@ class CameraController extends ValueNotifier<CameraValue> {
     try {
       await _channel.invokeMethod<void>(
         'startVideoRecording',
-        <String, dynamic>{'textureId': _textureId, 'filePath': filePath, 'flash': flashMode},
+        <String, dynamic>{
+          'textureId': _textureId,
+          'filePath': filePath,
+          'flash': flashMode,
+          'enableVideoSnapshot': enableVideoSnapshot,
+          'proxyFilePath': proxyFilePath,
+        },
       );
       value = value.copyWith(isRecordingVideo: true, isRecordingPaused: false);
     } on PlatformException catch (e) {
@@ -570,6 +1188,73 @@ class CameraController extends ValueNotifier<CameraValue> {
     }
   }
 
+  /// Closes the camera device and frees its buffers, keeping its
+  /// configuration for [resume].
+  ///
+  /// Use this when the app goes to the background: resuming reopens straight
+  /// into the preview, or the image stream if it was running, without
+  /// negotiating sizes again. The preview texture, image stream callback and
+  /// analysis outputs stay registered meanwhile. Pictures, recordings, focus
+  /// locks and image stream changes fail while suspended, and a recording
+  /// camera can't be suspended.
+  ///
+  /// This is only available on Android.
+  Future<void> suspend() async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController',
+        'suspend was called on uninitialized CameraController',
+      );
+    }
+    if (value.isSuspended) {
+      return;
+    }
+    try {
+      await _channel.invokeMethod<void>(
+        'suspend',
+        <String, dynamic>{'textureId': _textureId},
+      );
+      value = value.copyWith(isSuspended: true);
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  /// Reopens a camera closed by [suspend].
+  ///
+  /// Completes once the device has reopened; the time from reopening to the
+  /// first preview frame is reported as `firstPreviewFrame` by
+  /// [getCameraMetrics].
+  ///
+  /// Throws a [CameraException] if the device can't be reopened, for example
+  /// because another app holds it. The camera then stays suspended, so
+  /// [resume] can be tried again.
+  Future<void> resume() async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController',
+        'resume was called on uninitialized CameraController',
+      );
+    }
+    if (!value.isSuspended) {
+      return;
+    }
+    try {
+      await _channel.invokeMethod<void>(
+        'resume',
+        <String, dynamic>{'textureId': _textureId},
+      );
+      value = value.copyWith(isSuspended: false);
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  // Only the Android implementation can share a (non high speed) recording
+  // session with the image stream.
+  bool get _canStreamWhileRecording =>
+      defaultTargetPlatform == TargetPlatform.android && !_isSlowMo;
+
   /// Releases the resources of this camera.
   @override
   Future<void> dispose() async {
@@ -585,29 +1270,155 @@ class CameraController extends ValueNotifier<CameraValue> {
         <String, dynamic>{'textureId': _textureId},
       );
       await _eventSubscription?.cancel();
+      await _analysisSubscription?.cancel();
+      await _barcodeSubscription?.cancel();
     }
+    await _qualityChanges.close();
   }
 
-  /// Focusing
-  Future<void> lockFocus(Offset focalPoint) async {
+  /// Reports the native buffers of the camera's image readers.
+  ///
+  /// This is only available on Android.
+  Future<CameraMemoryUsage> getMemoryUsage() async {
     if (!value.isInitialized || _isDisposed) {
       throw CameraException(
         'Uninitialized CameraController',
-        'startVideoRecording was called on uninitialized CameraController',
+        'getMemoryUsage was called on uninitialized CameraController',
+      );
+    }
+    try {
+      final Map<dynamic, dynamic> usage = await _channel.invokeMethod(
+        'getMemoryUsage',
+        <String, dynamic>{'textureId': _textureId},
       );
+      return CameraMemoryUsage._fromPlatformData(usage);
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  /// Reports the queue the camera's commands wait in.
+  ///
+  /// Commands that operate the camera run one at a time. A command waiting
+  /// behind others is dropped when a newer one replaces it: a focus point by a
+  /// newer [lockFocus] or [unlockFocus], which fails the older call with
+  /// `commandSuperseded`, and an image stream or barcode scanning start by a
+  /// newer start or stop.
+  ///
+  /// This is only available on Android.
+  Future<CommandQueueStats> getCommandQueueStats() async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController',
+        'getCommandQueueStats was called on uninitialized CameraController',
+      );
+    }
+    try {
+      final Map<dynamic, dynamic> stats = await _channel.invokeMethod(
+        'getCommandQueueStats',
+        <String, dynamic>{'textureId': _textureId},
+      );
+      return CommandQueueStats._fromPlatformData(stats);
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
     }
+  }
+
+  /// The steps taken by adaptive quality, see [setAdaptiveQuality].
+  Stream<QualityChange> get qualityChanges => _qualityChanges.stream;
 
+  /// Turns adaptive quality on or off.
+  ///
+  /// While on, the camera watches the thermal status, the delivered image
+  /// stream frame rate and the time each frame takes to process. When the
+  /// device heats up or falls behind it steps down [ladder], which is ordered
+  /// from the highest quality down, and steps back up once it has been
+  /// healthy for a while. Every step is sent on [qualityChanges]. A null
+  /// [ladder] uses a default one from 30 down to 10 frames per second.
+  ///
+  /// Turning it off restores full quality. This is only available on
+  /// Android.
+  Future<void> setAdaptiveQuality(
+    bool enabled, {
+    List<QualityLevel> ladder,
+  }) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController',
+        'setAdaptiveQuality was called on uninitialized CameraController',
+      );
+    }
     try {
       await _channel.invokeMethod<void>(
+        'setAdaptiveQuality',
+        <String, dynamic>{
+          'textureId': _textureId,
+          'ladder': enabled
+              ? (ladder ?? <QualityLevel>[])
+                  .map((QualityLevel level) => level._toMap())
+                  .toList()
+              : null,
+        },
+      );
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  /// Focuses on [focalPoint] and completes once the lens has locked.
+  ///
+  /// [focalPoint] is relative to the preview as it is displayed in the
+  /// device's natural orientation, from (0, 0) at the top left to (1, 1) at
+  /// the bottom right. Exposure is metered at the same point when the camera
+  /// supports it. Focus stays locked, across recordings too, until
+  /// [unlockFocus] returns it to continuous autofocus.
+  Future<FocusLockResult> lockFocus(Offset focalPoint) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController',
+        'startVideoRecording was called on uninitialized CameraController',
+      );
+    }
+
+    try {
+      final Map<dynamic, dynamic> result = await _channel.invokeMethod(
         'lockFocus',
         <String, dynamic>{'dx': focalPoint.dx, 'dy': focalPoint.dy},
       );
+      return FocusLockResult._fromPlatformData(result);
+    } on PlatformException catch (e) {
+      throw CameraException(e.code, e.message);
+    }
+  }
+
+  /// Applies every setting of [settings] at once.
+  ///
+  /// All settings are checked against what the camera supports before any is
+  /// applied, so on an error none of them has changed. The preview picks them
+  /// up together, with one rebuild of its repeating request. Settings applied
+  /// while the camera isn't running are used once it starts.
+  ///
+  /// Throws a [CameraException] with the code `invalidSettings` if a setting
+  /// is out of range or not supported.
+  Future<void> applySettings(CameraSettings settings) async {
+    if (!value.isInitialized || _isDisposed) {
+      throw CameraException(
+        'Uninitialized CameraController',
+        'applySettings was called on uninitialized CameraController',
+      );
+    }
+
+    try {
+      await _channel.invokeMethod<void>(
+        'applySettings',
+        <String, dynamic>{'settings': settings._toMap()},
+      );
     } on PlatformException catch (e) {
       throw CameraException(e.code, e.message);
     }
   }
 
-  /// Focusing
+  /// Returns to continuous autofocus after [lockFocus].
   Future<void> unlockFocus() async {
     if (!value.isInitialized || _isDisposed) {
       throw CameraException(
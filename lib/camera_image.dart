@@ -16,6 +16,10 @@ class Plane {
         height = data['height'],
         width = data['width'];
 
+  Plane._(this.bytes, this.bytesPerPixel, this.bytesPerRow)
+      : height = null,
+        width = null;
+
   /// Bytes representing this plane.
   final Uint8List bytes;
 
@@ -62,6 +66,17 @@ enum ImageFormatGroup {
   /// On iOS, this is `kCVPixelFormatType_32BGRA`. See
   /// https://developer.apple.com/documentation/corevideo/1563591-pixel_format_identifiers/kcvpixelformattype_32bgra?language=objc
   bgra8888,
+
+  /// 32-bit RGBA, converted from YUV on the platform side.
+  ///
+  /// On Android, this is `android.graphics.PixelFormat.RGBA_8888`.
+  rgba8888,
+
+  /// 16-bit RGB 565 in little endian order, converted from YUV on the
+  /// platform side.
+  ///
+  /// On Android, this is `android.graphics.ImageFormat.RGB_565`.
+  rgb565,
 }
 
 /// Describes how pixels are represented in an image.
@@ -83,9 +98,16 @@ class ImageFormat {
 
 ImageFormatGroup _asImageFormatGroup(dynamic rawFormat) {
   if (defaultTargetPlatform == TargetPlatform.android) {
-    // android.graphics.ImageFormat.YUV_420_888
-    if (rawFormat == 35) {
-      return ImageFormatGroup.yuv420;
+    switch (rawFormat) {
+      // android.graphics.ImageFormat.YUV_420_888
+      case 35:
+        return ImageFormatGroup.yuv420;
+      // android.graphics.PixelFormat.RGBA_8888
+      case 1:
+        return ImageFormatGroup.rgba8888;
+      // android.graphics.ImageFormat.RGB_565
+      case 4:
+        return ImageFormatGroup.rgb565;
     }
   }
 
@@ -117,9 +139,50 @@ class CameraImage {
       : format = ImageFormat._fromPlatformData(data['format']),
         height = data['height'],
         width = data['width'],
+        conversionMicros = data['conversionMicros'],
+        motion = data['motion'] == null
+            ? null
+            : Motion._fromPlatformData(data['motion'], data['timestamp']),
+        sequenceNumber = null,
         planes = List<Plane>.unmodifiable(data['planes']
             .map((dynamic planeData) => Plane._fromPlatformData(planeData)));
 
+  /// Decodes a frame of the binary transport, laid out as described by the
+  /// Android plugin's `BinaryFrameSender`. The planes are views on [data].
+  CameraImage._fromBinary(ByteData data)
+      : assert(data.getInt32(0, Endian.little) == 1),
+        format =
+            ImageFormat._fromPlatformData(data.getInt32(24, Endian.little)),
+        width = data.getInt32(28, Endian.little),
+        height = data.getInt32(32, Endian.little),
+        conversionMicros = data.getInt32(36, Endian.little) < 0
+            ? null
+            : data.getInt32(36, Endian.little),
+        motion = null,
+        sequenceNumber = data.getInt64(8, Endian.little),
+        planes = _planesFromBinary(data);
+
+  static const int _binaryHeaderSize = 40;
+  static const int _binaryPlaneHeaderSize = 12;
+
+  static List<Plane> _planesFromBinary(ByteData data) {
+    final int planeCount = data.getInt32(4, Endian.little);
+    final List<Plane> planes = <Plane>[];
+    int entryOffset = _binaryHeaderSize;
+    int bytesOffset = _binaryHeaderSize + planeCount * _binaryPlaneHeaderSize;
+    for (int i = 0; i < planeCount; i++) {
+      final int length = data.getInt32(entryOffset + 8, Endian.little);
+      planes.add(Plane._(
+        data.buffer.asUint8List(data.offsetInBytes + bytesOffset, length),
+        data.getInt32(entryOffset + 4, Endian.little),
+        data.getInt32(entryOffset, Endian.little),
+      ));
+      entryOffset += _binaryPlaneHeaderSize;
+      bytesOffset += length;
+    }
+    return List<Plane>.unmodifiable(planes);
+  }
+
   /// Format of the image provided.
   ///
   /// Determines the number of planes needed to represent the image, and
@@ -138,6 +201,21 @@ class CameraImage {
   /// of the largest-resolution plane.
   final int width;
 
+  /// Time the platform spent converting this image from YUV, in microseconds.
+  ///
+  /// Will be `null` unless the image stream was started with an RGB output
+  /// format.
+  final int conversionMicros;
+
+  /// Motion in this image, if the image stream was started with a
+  /// [MotionGate].
+  final Motion motion;
+
+  /// Number of the frame among those sent since the stream started, from 0.
+  ///
+  /// Will be `null` unless the image stream uses the binary transport.
+  final int sequenceNumber;
+
   /// The pixels planes for this image.
   ///
   /// The number of planes is determined by the format of the image.
@@ -0,0 +1,46 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+part of 'camera.dart';
+
+/// The queue camera commands wait in on Android, see
+/// [CameraController.getCommandQueueStats].
+class CommandQueueStats {
+  CommandQueueStats._fromPlatformData(Map<dynamic, dynamic> data)
+      : depth = data['depth'],
+        maxDepth = data['maxDepth'],
+        running = data['running'],
+        detached = List<String>.from(data['detached']),
+        executed = data['executed'],
+        superseded = data['superseded'],
+        timedOut = data['timedOut'],
+        supersededByMethod =
+            Map<String, int>.from(data['supersededByMethod']);
+
+  /// The commands waiting now.
+  final int depth;
+
+  /// The most commands that waited at once.
+  final int maxDepth;
+
+  /// The method of the command the camera is working on, if any.
+  final String running;
+
+  /// The methods of the commands that let the next one run before replying,
+  /// such as a focus lock waiting for the lens.
+  final List<String> detached;
+
+  /// The commands that reached the camera.
+  final int executed;
+
+  /// The commands dropped because a newer one replaced them before they
+  /// replied.
+  final int superseded;
+
+  /// The commands failed because they didn't reply in time.
+  final int timedOut;
+
+  /// [superseded] by the method of the dropped command.
+  final Map<String, int> supersededByMethod;
+}
@@ -0,0 +1,24 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+part of 'camera.dart';
+
+/// The outcome of [CameraController.lockFocus].
+class FocusLockResult {
+  FocusLockResult._fromPlatformData(Map<dynamic, dynamic> data)
+      : focused = data['focused'],
+        timedOut = data['timedOut'],
+        convergenceTime = Duration(
+            microseconds: (data['convergenceMillis'] * 1000).round());
+
+  /// Whether the lens locked in focus. It can also lock out of focus, for
+  /// example when the point is closer than the minimum focus distance.
+  final bool focused;
+
+  /// Whether the camera never reported a lock and gave up waiting.
+  final bool timedOut;
+
+  /// Time from the request to the lens locking.
+  final Duration convergenceTime;
+}
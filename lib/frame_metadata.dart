@@ -0,0 +1,45 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+part of 'camera.dart';
+
+/// Capture metadata for a batch of consecutive preview frames.
+///
+/// Each list holds one entry per frame, oldest first. Values the device does
+/// not report are -1, or NaN for [focusDistances].
+class FrameMetadataBatch {
+  FrameMetadataBatch._fromPlatformData(Map<dynamic, dynamic> data)
+      : count = data['count'],
+        timestamps = data['timestamp'],
+        frameNumbers = data['frameNumber'],
+        afStates = data['afState'],
+        focusDistances = data['focusDistance'],
+        aeStates = data['aeState'],
+        exposureTimes = data['exposureTime'],
+        sensitivities = data['sensitivity'];
+
+  /// Number of frames in this batch.
+  final int count;
+
+  /// Sensor timestamps of the start of exposure, in nanoseconds.
+  final Int64List timestamps;
+
+  /// Frame numbers assigned by the camera framework.
+  final Int64List frameNumbers;
+
+  /// Android `CONTROL_AF_STATE` values.
+  final Int32List afStates;
+
+  /// Lens focus distances, in diopters.
+  final Float64List focusDistances;
+
+  /// Android `CONTROL_AE_STATE` values.
+  final Int32List aeStates;
+
+  /// Exposure times, in nanoseconds.
+  final Int64List exposureTimes;
+
+  /// Sensor sensitivities, in ISO.
+  final Int32List sensitivities;
+}
@@ -0,0 +1,48 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+part of 'camera.dart';
+
+/// Exposure and focus statistics of a frame's luma, computed on the platform
+/// side over a subsampled Y plane.
+class ImageStatistics {
+  ImageStatistics._fromPlatformData(Map<dynamic, dynamic> data)
+      : width = data['width'],
+        height = data['height'],
+        timestamp = data['timestamp'],
+        histogram = data['statistics']['histogram'],
+        sampleCount = data['statistics']['sampleCount'],
+        mean = data['statistics']['mean'],
+        clippedLowRatio = data['statistics']['clippedLowRatio'],
+        clippedHighRatio = data['statistics']['clippedHighRatio'],
+        sharpness = data['statistics']['sharpness'];
+
+  final int width;
+  final int height;
+
+  /// Capture time of the frame, in nanoseconds.
+  final int timestamp;
+
+  /// Number of samples with each luma value, from 0 to 255.
+  final Int32List histogram;
+
+  /// Number of luma samples the statistics were computed from.
+  final int sampleCount;
+
+  /// Mean luma, from 0 to 255.
+  final double mean;
+
+  /// Ratio of samples clipped to black.
+  final double clippedLowRatio;
+
+  /// Ratio of samples clipped to white.
+  final double clippedHighRatio;
+
+  /// Ratio of samples clipped to either black or white.
+  double get clippedRatio => clippedLowRatio + clippedHighRatio;
+
+  /// Variance of the Laplacian of the luma, which grows as the image gets
+  /// sharper. Only comparable between frames of the same scene and size.
+  final double sharpness;
+}
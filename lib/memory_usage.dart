@@ -0,0 +1,42 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+part of 'camera.dart';
+
+/// The native image buffers of a camera, see [CameraController.getMemoryUsage].
+class CameraMemoryUsage {
+  CameraMemoryUsage._fromPlatformData(Map<dynamic, dynamic> data)
+      : budgetBytes = data['budgetBytes'],
+        usedBytes = data['usedBytes'],
+        readers = Map<dynamic, dynamic>.from(data['readers']).map(
+            (dynamic name, dynamic reader) =>
+                MapEntry<String, ReaderMemoryUsage>(
+                    name, ReaderMemoryUsage._fromPlatformData(reader)));
+
+  /// The `memoryBudgetBytes` the camera was initialized with.
+  final int budgetBytes;
+
+  /// The bytes taken by all [readers].
+  final int usedBytes;
+
+  /// The allocated readers by name: `picture`, `imageStream`,
+  /// `recordingStream`, `videoSnapshot` or `analysis` followed by the output
+  /// id. Readers are allocated the first time their mode is used.
+  final Map<String, ReaderMemoryUsage> readers;
+}
+
+/// The buffers of one image reader, estimated from its size and format.
+class ReaderMemoryUsage {
+  ReaderMemoryUsage._fromPlatformData(Map<dynamic, dynamic> data)
+      : size = Size(data['width'].toDouble(), data['height'].toDouble()),
+        maxImages = data['maxImages'],
+        bytes = data['bytes'];
+
+  final Size size;
+
+  /// The number of buffers, fewer than usual if the budget was tight.
+  final int maxImages;
+
+  final int bytes;
+}
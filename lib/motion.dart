@@ -0,0 +1,83 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+part of 'camera.dart';
+
+/// Settings for gating the image stream on motion.
+///
+/// Every frame is reduced to a [gridColumns] by [gridRows] grid of average
+/// luma values and compared against a slowly adapting background. A cell
+/// whose luma differs by more than [cellThreshold] is changed. Motion starts
+/// when the ratio of changed cells reaches [startRatio] and ends once it
+/// stays below [stopRatio] for [holdFrames] frames.
+class MotionGate {
+  const MotionGate({
+    this.gridColumns = 32,
+    this.gridRows = 24,
+    this.cellThreshold = 15,
+    this.startRatio = 0.02,
+    this.stopRatio = 0.005,
+    this.holdFrames = 15,
+    this.backgroundAdaptRate = 0.05,
+    this.eventsOnly = false,
+  });
+
+  final int gridColumns;
+  final int gridRows;
+
+  /// Luma difference, out of 255, above which a cell counts as changed.
+  final int cellThreshold;
+
+  final double startRatio;
+  final double stopRatio;
+  final int holdFrames;
+
+  /// How far the background moves towards each frame, between 0 and 1.
+  final double backgroundAdaptRate;
+
+  /// Whether to send only [Motion] updates instead of frames.
+  final bool eventsOnly;
+
+  Map<String, dynamic> _toPlatformData() => <String, dynamic>{
+        'gridColumns': gridColumns,
+        'gridRows': gridRows,
+        'cellThreshold': cellThreshold,
+        'startRatio': startRatio,
+        'stopRatio': stopRatio,
+        'holdFrames': holdFrames,
+        'backgroundAdaptRate': backgroundAdaptRate,
+        'eventsOnly': eventsOnly,
+      };
+}
+
+/// Motion detected in a frame of a motion gated image stream.
+class Motion {
+  Motion._fromPlatformData(Map<dynamic, dynamic> data, this.timestamp)
+      : active = data['active'],
+        changedRatio = data['changedRatio'],
+        boxes = _boxesFromPlatformData(data['boxes']);
+
+  /// Whether the scene is in motion. The first update after motion ends has
+  /// this set to false.
+  final bool active;
+
+  /// Ratio of grid cells that differ from the background.
+  final double changedRatio;
+
+  /// Bounding boxes of connected changed cells, in coordinates normalized to
+  /// the frame, from 0 to 1.
+  final List<Rect> boxes;
+
+  /// Capture time of the frame, in nanoseconds.
+  final int timestamp;
+
+  static List<Rect> _boxesFromPlatformData(Float64List boxes) {
+    final List<Rect> rects = <Rect>[];
+    for (int i = 0; i + 3 < boxes.length; i += 4) {
+      rects.add(
+          Rect.fromLTRB(boxes[i], boxes[i + 1], boxes[i + 2], boxes[i + 3]));
+    }
+    return List<Rect>.unmodifiable(rects);
+  }
+}
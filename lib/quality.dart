@@ -0,0 +1,61 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+part of 'camera.dart';
+
+/// One step of the ladder [CameraController.setAdaptiveQuality] moves along.
+class QualityLevel {
+  const QualityLevel({
+    @required this.streamFps,
+    this.analysisScale = 1.0,
+    this.bitRateScale = 1.0,
+  })  : assert(streamFps > 0),
+        assert(analysisScale > 0 && analysisScale <= 1),
+        assert(bitRateScale > 0 && bitRateScale <= 1);
+
+  QualityLevel._fromPlatformData(Map<dynamic, dynamic> data)
+      : streamFps = data['streamFps'],
+        analysisScale = data['analysisScale'],
+        bitRateScale = data['bitRateScale'];
+
+  /// The most image stream frames per second.
+  final int streamFps;
+
+  /// The size of analysis outputs as a fraction of the size they were added
+  /// with. Their frames report the size they actually have.
+  final double analysisScale;
+
+  /// The video bitrate as a fraction of the full one, which is the bitrate of
+  /// the resolution preset's camcorder profile. It applies to recordings
+  /// started at this level.
+  final double bitRateScale;
+
+  Map<String, dynamic> _toMap() => <String, dynamic>{
+        'streamFps': streamFps,
+        'analysisScale': analysisScale,
+        'bitRateScale': bitRateScale,
+      };
+}
+
+/// A step of adaptive quality, sent on [CameraController.qualityChanges].
+class QualityChange {
+  QualityChange._fromPlatformData(Map<dynamic, dynamic> data)
+      : levelIndex = data['level'],
+        level = QualityLevel._fromPlatformData(data),
+        reason = data['reason'],
+        thermalStatus = data['thermalStatus'];
+
+  /// The index of [level] in the ladder, 0 being the highest quality.
+  final int levelIndex;
+
+  final QualityLevel level;
+
+  /// Why the level changed: `thermal`, `frameDrops`, `processingTime` or
+  /// `recovered`.
+  final String reason;
+
+  /// The device's thermal status, from 0 (none) to 6 (shutdown) as defined
+  /// by Android's `PowerManager`. Always 0 before Android 10.
+  final int thermalStatus;
+}
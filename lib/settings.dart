@@ -0,0 +1,77 @@
+// Copyright 2019 The Chromium Authors. All rights reserved.
+// Use of this source code is governed by a BSD-style license that can be
+// found in the LICENSE file.
+
+part of 'camera.dart';
+
+/// A color effect applied to the preview, pictures and recordings.
+///
+/// Cameras support different subsets of effects.
+enum CameraEffect {
+  none,
+  mono,
+  negative,
+  solarize,
+  sepia,
+  posterize,
+  whiteboard,
+  blackboard,
+  aqua,
+}
+
+/// Settings applied together by [CameraController.applySettings].
+///
+/// Settings left null keep their current value.
+class CameraSettings {
+  const CameraSettings({
+    this.focusPoint,
+    this.continuousFocus = false,
+    this.exposureCompensation,
+    this.flash,
+    this.effect,
+  }) : assert(focusPoint == null || !continuousFocus);
+
+  /// The point to focus and meter exposure on, like the focal point of
+  /// [CameraController.lockFocus]. Unlike it, the settings don't wait for
+  /// the lens to lock.
+  final Offset focusPoint;
+
+  /// Whether to return to continuous autofocus, like
+  /// [CameraController.unlockFocus].
+  final bool continuousFocus;
+
+  /// Exposure compensation in the camera's steps, within the range the
+  /// camera supports.
+  final int exposureCompensation;
+
+  /// Whether the torch lights pictures and the current recording.
+  ///
+  /// [CameraController.takePicture] and
+  /// [CameraController.startVideoRecording] set it again.
+  final bool flash;
+
+  /// The color effect.
+  final CameraEffect effect;
+
+  Map<String, dynamic> _toMap() {
+    final Map<String, dynamic> map = <String, dynamic>{};
+    if (focusPoint != null) {
+      map['focusPoint'] = <String, double>{
+        'x': focusPoint.dx,
+        'y': focusPoint.dy,
+      };
+    } else if (continuousFocus) {
+      map['focusPoint'] = null;
+    }
+    if (exposureCompensation != null) {
+      map['exposureCompensation'] = exposureCompensation;
+    }
+    if (flash != null) {
+      map['flash'] = flash;
+    }
+    if (effect != null) {
+      map['effect'] = effect.toString().split('.').last;
+    }
+    return map;
+  }
+}
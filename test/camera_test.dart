@@ -2,6 +2,7 @@
 // Use of this source code is governed by a BSD-style license that can be
 // found in the LICENSE file.
 
+import 'package:camera/camera.dart' as camera;
 import 'package:camera/new/camera.dart';
 import 'package:flutter/services.dart';
 import 'package:flutter_test/flutter_test.dart';
@@ -85,6 +86,238 @@ void main() {
       });
     });
   });
+
+  group('${camera.CameraController}', () {
+    const MethodChannel channel = MethodChannel('plugins.flutter.io/camera');
+    const String barcodeChannel = 'flutter.io/cameraPlugin/barcodes15';
+    final List<MethodCall> log = <MethodCall>[];
+    // The method that replies with [failure] instead of succeeding.
+    String failingMethod;
+    PlatformException failure;
+    Map<dynamic, dynamic> barcodeScanStats;
+    camera.CameraController controller;
+
+    setUpAll(() {
+      channel.setMockMethodCallHandler((MethodCall methodCall) async {
+        log.add(methodCall);
+        if (methodCall.method == failingMethod) {
+          throw failure;
+        }
+        switch (methodCall.method) {
+          case 'initialize':
+            return <String, dynamic>{
+              'textureId': 15,
+              'previewWidth': 640,
+              'previewHeight': 480,
+            };
+          case 'getBarcodeScanStats':
+            return barcodeScanStats;
+        }
+        return null;
+      });
+      // Event channels start listening through a method call of their own.
+      for (String name in <String>[
+        'flutter.io/cameraPlugin/cameraEvents15',
+        barcodeChannel,
+      ]) {
+        MethodChannel(name)
+            .setMockMethodCallHandler((MethodCall methodCall) async => null);
+      }
+    });
+
+    setUp(() async {
+      failingMethod = null;
+      barcodeScanStats = null;
+      controller = camera.CameraController(
+        camera.CameraDescription(
+          name: 'back',
+          lensDirection: camera.CameraLensDirection.back,
+          sensorOrientation: 90,
+        ),
+        camera.ResolutionPreset.high,
+      );
+      await controller.initialize(false);
+      log.clear();
+    });
+
+    tearDown(() async {
+      await controller.dispose();
+    });
+
+    test('suspend and resume are sent once each', () async {
+      await controller.suspend();
+      expect(controller.value.isSuspended, isTrue);
+      await controller.suspend();
+      await controller.resume();
+      expect(controller.value.isSuspended, isFalse);
+      await controller.resume();
+
+      expect(log, <Matcher>[
+        isMethodCall('suspend', arguments: <String, dynamic>{'textureId': 15}),
+        isMethodCall('resume', arguments: <String, dynamic>{'textureId': 15}),
+      ]);
+    });
+
+    test('a failed resume leaves the camera suspended', () async {
+      await controller.suspend();
+      failingMethod = 'resume';
+      failure = PlatformException(code: 'cameraAccess', message: 'In use');
+
+      await expectLater(
+        controller.resume(),
+        throwsA(isInstanceOf<camera.CameraException>()
+            .having((camera.CameraException e) => e.code, 'code',
+                'cameraAccess')),
+      );
+      expect(controller.value.isSuspended, isTrue);
+
+      failingMethod = null;
+      await controller.resume();
+      expect(controller.value.isSuspended, isFalse);
+    });
+
+    test('applySettings sends only the settings that were set', () async {
+      await controller.applySettings(const camera.CameraSettings(
+        focusPoint: Offset(0.25, 0.75),
+        exposureCompensation: -2,
+        effect: camera.CameraEffect.sepia,
+      ));
+      await controller.applySettings(
+          const camera.CameraSettings(continuousFocus: true, flash: true));
+
+      expect(log, <Matcher>[
+        isMethodCall('applySettings', arguments: <String, dynamic>{
+          'settings': <String, dynamic>{
+            'focusPoint': <String, double>{'x': 0.25, 'y': 0.75},
+            'exposureCompensation': -2,
+            'effect': 'sepia',
+          },
+        }),
+        isMethodCall('applySettings', arguments: <String, dynamic>{
+          'settings': <String, dynamic>{'focusPoint': null, 'flash': true},
+        }),
+      ]);
+    });
+
+    test('applySettings reports invalid settings', () async {
+      failingMethod = 'applySettings';
+      failure = PlatformException(
+          code: 'invalidSettings', message: 'exposureCompensation is 9');
+
+      await expectLater(
+        controller.applySettings(
+            const camera.CameraSettings(exposureCompensation: 9)),
+        throwsA(isInstanceOf<camera.CameraException>()
+            .having((camera.CameraException e) => e.code, 'code',
+                'invalidSettings')),
+      );
+    });
+
+    test('takeBurstPicture sends the path and frame count', () async {
+      final Future<void> burst =
+          controller.takeBurstPicture('/tmp/burst.jpg', frameCount: 4);
+      expect(controller.value.isTakingPicture, isTrue);
+      await burst;
+
+      expect(controller.value.isTakingPicture, isFalse);
+      expect(log, <Matcher>[
+        isMethodCall('takeBurstPicture', arguments: <String, dynamic>{
+          'textureId': 15,
+          'path': '/tmp/burst.jpg',
+          'frameCount': 4,
+        }),
+      ]);
+    });
+
+    test('a burst over the memory budget fails with its code', () async {
+      failingMethod = 'takeBurstPicture';
+      failure = PlatformException(
+          code: 'memoryBudgetExceeded', message: 'burstMerge needs 74 MB');
+
+      await expectLater(
+        controller.takeBurstPicture('/tmp/burst.jpg'),
+        throwsA(isInstanceOf<camera.CameraException>()
+            .having((camera.CameraException e) => e.code, 'code',
+                'memoryBudgetExceeded')),
+      );
+      expect(controller.value.isTakingPicture, isFalse);
+    });
+
+    test('barcode scans are sent to the callback', () async {
+      final List<camera.BarcodeScan> scans = <camera.BarcodeScan>[];
+      await controller.startBarcodeScanning(
+        scans.add,
+        formats: <camera.BarcodeFormat>[camera.BarcodeFormat.qrCode],
+        scanRegion: const Rect.fromLTRB(0.25, 0.25, 0.75, 0.75),
+      );
+      expect(log, <Matcher>[
+        isMethodCall('startBarcodeScanning', arguments: <String, dynamic>{
+          'formats': <String>['qrCode'],
+          'scanRegion': <String, double>{
+            'left': 0.25,
+            'top': 0.25,
+            'right': 0.75,
+            'bottom': 0.75,
+          },
+        }),
+      ]);
+
+      await defaultBinaryMessenger.handlePlatformMessage(
+        barcodeChannel,
+        const StandardMethodCodec()
+            .encodeSuccessEnvelope(<String, dynamic>{
+          'barcodes': <dynamic>[
+            <String, dynamic>{
+              'format': 'qrCode',
+              'text': 'HELLO QR',
+              'corners': <double>[10, 20, 110, 20, 110, 120, 10, 120],
+            },
+          ],
+          'width': 1280,
+          'height': 720,
+          'timestamp': 42,
+          'latencyMicros': 1500,
+        }),
+        (ByteData reply) {},
+      );
+
+      expect(scans, hasLength(1));
+      final camera.Barcode barcode = scans.single.barcodes.single;
+      expect(barcode.format, camera.BarcodeFormat.qrCode);
+      expect(barcode.text, 'HELLO QR');
+      expect(barcode.corners, <Offset>[
+        const Offset(10, 20),
+        const Offset(110, 20),
+        const Offset(110, 120),
+        const Offset(10, 120),
+      ]);
+      expect(scans.single.frameSize, const Size(1280, 720));
+      expect(scans.single.timestamp, 42);
+      expect(scans.single.latency, const Duration(microseconds: 1500));
+
+      await controller.stopBarcodeScanning();
+      expect(log.last, isMethodCall('stopBarcodeScanning', arguments: null));
+    });
+
+    test('getBarcodeScanStats reads the first result time', () async {
+      expect(await controller.getBarcodeScanStats(), isNull);
+
+      barcodeScanStats = <String, dynamic>{
+        'attempts': 12,
+        'attemptsPerSecond': 24.0,
+        'skippedFrames': 3,
+        'successfulAttempts': 2,
+        'firstResultMillis': 250.5,
+      };
+      final camera.BarcodeScanStats stats =
+          await controller.getBarcodeScanStats();
+      expect(stats.attempts, 12);
+      expect(stats.attemptsPerSecond, 24.0);
+      expect(stats.skippedFrames, 3);
+      expect(stats.successfulAttempts, 2);
+      expect(stats.firstResult, const Duration(microseconds: 250500));
+    });
+  });
 }
 
 class MockCameraDescription extends CameraDescription {